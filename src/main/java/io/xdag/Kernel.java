@@ -40,10 +40,12 @@ import io.xdag.core.Blockchain;
 import io.xdag.core.BlockchainImpl;
 import io.xdag.core.XdagState;
 import io.xdag.core.XdagStats;
+import io.xdag.crypto.Sign;
 import io.xdag.crypto.jni.Native;
 import io.xdag.db.DatabaseFactory;
 import io.xdag.db.DatabaseName;
 import io.xdag.db.rocksdb.RocksdbFactory;
+import io.xdag.db.BlockPruner;
 import io.xdag.db.BlockStore;
 import io.xdag.db.OrphanPool;
 import io.xdag.event.EventProcesser;
@@ -59,7 +61,6 @@ import io.xdag.net.XdagServer;
 import io.xdag.net.libp2p.Libp2pNetwork;
 import io.xdag.net.manager.NetDBManager;
 import io.xdag.net.manager.XdagChannelManager;
-import io.xdag.net.message.MessageQueue;
 import io.xdag.net.message.NetDB;
 import io.xdag.net.node.NodeManager;
 import io.xdag.mine.randomx.RandomX;
@@ -104,6 +105,7 @@ public class Kernel {
     private BlockStore blockStore;
     private OrphanPool orphanPool;
     private Blockchain blockchain;
+    private BlockPruner blockPruner;
     private NetDB netDB;
     private XdagClient client;
     private XdagChannelManager channelMgr;
@@ -166,6 +168,9 @@ public class Kernel {
         isRunning.set(true);
         startEpoch = XdagTime.getCurrentEpoch();
 
+        boolean nativeSign = Sign.useNative(config.getNodeSpec().isNativeSecp256k1());
+        log.info("Secp256k1 backend: {}", nativeSign ? "native" : "java");
+
         EventProcesser.getEventBus().register(this);
 
         // ====================================
@@ -191,9 +196,11 @@ public class Kernel {
         dbFactory = new RocksdbFactory(this.config);
         blockStore = new BlockStore(
                 dbFactory.getDB(DatabaseName.INDEX),
-                dbFactory.getDB(DatabaseName.BLOCK),
                 dbFactory.getDB(DatabaseName.TIME),
-                dbFactory.getDB(DatabaseName.TXHISTORY));
+                dbFactory.getDB(DatabaseName.BLOCK),
+                dbFactory.getDB(DatabaseName.TXHISTORY),
+                config.getNodeSpec().getStoreBlockInfoCacheSize());
+        blockStore.setSumsFlushInterval(config.getNodeSpec().getStoreSumsFlushInterval());
         log.info("Block Store init.");
         blockStore.init();
 
@@ -258,6 +265,12 @@ public class Kernel {
 
         log.info("RandomX reload");
 
+        if (config.getNodeSpec().getStorePruneEpochs() > 0) {
+            blockPruner = new BlockPruner(blockchain, blockStore, config.getNodeSpec().getStorePruneEpochs(),
+                    config.getNodeSpec().getStorePruneBatchSize());
+            blockPruner.start();
+        }
+
         // log.debug("Net Status:"+netStatus);
 
         // ====================================
@@ -465,8 +478,6 @@ public class Kernel {
         log.info("ChannelManager stop.");
 //        discoveryController.stop();
 //        libp2pNetwork.stop();
-        // close timer
-        MessageQueue.timer.shutdown();
 
         // close server
         p2p.close();
@@ -483,11 +494,13 @@ public class Kernel {
 
         // 3. 数据层关闭
         // TODO 关闭checkmain线程
+        if (blockPruner != null) {
+            blockPruner.stop();
+        }
         blockchain.stopCheckMain();
+        blockStore.flushSums();
 
-        for (DatabaseName name : DatabaseName.values()) {
-            dbFactory.getDB(name).close();
-        }
+        dbFactory.close();
 
         // release
         randomx.randomXPoolReleaseMem();
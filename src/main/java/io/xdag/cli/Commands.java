@@ -30,6 +30,7 @@ import com.google.common.primitives.UnsignedLong;
 import io.xdag.Kernel;
 import io.xdag.core.BlockState;
 import io.xdag.core.*;
+import io.xdag.db.Page;
 import io.xdag.mine.MinerChannel;
 import io.xdag.mine.miner.Miner;
 import io.xdag.mine.miner.MinerCalculate;
@@ -66,6 +67,11 @@ import static io.xdag.utils.BytesUtils.long2UnsignedLong;
 @Slf4j
 public class Commands {
 
+    /**
+     * block 命令每页显示的交易历史条数
+     */
+    public static final int TX_HISTORY_LIMIT = 100;
+
     @Getter
     private final Kernel kernel;
 
@@ -404,15 +410,23 @@ public class Commands {
      * @return block info
      */
     public String block(Bytes32 blockhash) {
+        return block(blockhash, null, TX_HISTORY_LIMIT);
+    }
+
+    /**
+     * @param txCursor 上一页交易历史的 cursor, 第一页为 null
+     * @param txLimit 本页最多显示的交易历史条数
+     */
+    public String block(Bytes32 blockhash, byte[] txCursor, int txLimit) {
         try {
             MutableBytes32 hashLow = MutableBytes32.create();
             hashLow.set(8, blockhash.slice(8, 24));
             Block block = kernel.getBlockStore().getRawBlockByHash(hashLow);
             if (block == null) {
                 block = kernel.getBlockStore().getBlockInfoByHash(hashLow);
-                return printBlockInfo(block, false);
+                return printBlockInfo(block, false, txCursor, txLimit);
             } else {
-                return printBlockInfo(block, true);
+                return printBlockInfo(block, true, txCursor, txLimit);
             }
         } catch (Exception e) {
             log.error(e.getMessage(), e);
@@ -426,6 +440,10 @@ public class Commands {
     }
 
     public String printBlockInfo(Block block, boolean raw) {
+        return printBlockInfo(block, raw, null, TX_HISTORY_LIMIT);
+    }
+
+    public String printBlockInfo(Block block, boolean raw, byte[] txCursor, int txLimit) {
         block.parse();
         long time = XdagTime.xdagTimestampToMs(block.getTimestamp());
         String heightFormat = ((block.getInfo().getFlags() & BI_MAIN) == 0 ? "" : "    height: %08d\n");
@@ -475,16 +493,17 @@ public class Commands {
                  direction  address                                    amount                 time
                        """;
         StringBuilder tx = new StringBuilder();
-        if (getStateByFlags(block.getInfo().getFlags()).equals(MAIN.getDesc()) && block.getInfo().getHeight() > kernel.getConfig().getSnapshotSpec().getSnapshotHeight()) {
+        // 挖矿收益只在第一页显示
+        if (txCursor == null && getStateByFlags(block.getInfo().getFlags()).equals(MAIN.getDesc()) && block.getInfo().getHeight() > kernel.getConfig().getSnapshotSpec().getSnapshotHeight()) {
             tx.append(String.format("    earn: %s           %.9f   %s%n", hash2Address(block.getHashLow()),
                     amount2xdag(kernel.getBlockchain().getReward(block.getInfo().getHeight())),
                     FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss.SSS")
                             .format(XdagTime.xdagTimestampToMs(block.getTimestamp()))));
         }
-        for (TxHistory txHistory : kernel.getBlockchain().getBlockTxHistoryByAddress(block.getHashLow())) {
+        Page<TxHistory> txPage = kernel.getBlockchain().getBlockTxHistoryByAddress(block.getHashLow(), txCursor, txLimit);
+        for (TxHistory txHistory : txPage.getItems()) {
             Address address = txHistory.getAddress();
-            BlockInfo blockInfo = kernel.getBlockchain().getBlockByHash(address.getHashLow(), false).getInfo();
-            if((blockInfo.flags&BI_APPLIED)==0){
+            if (!txHistory.isApplied()) {
                 continue;
             }
             if (address.getType().equals(XDAG_FIELD_IN)) {
@@ -526,6 +545,8 @@ public class Commands {
                 + txHisFormat
                 + "\n"
                 + tx
+                + (txPage.hasMore() ? String.format("    more: block --cursor=%s %s%n",
+                        Hex.toHexString(txPage.getCursor()), hash2Address(block.getHash())) : "")
                 ;
     }
 
@@ -42,6 +42,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.bytes.MutableBytes32;
+import org.bouncycastle.util.encoders.Hex;
 import org.jline.builtins.Options;
 import org.jline.builtins.TTop;
 import org.jline.builtins.telnet.Telnet;
@@ -159,8 +160,10 @@ public class Shell extends JlineCommandRegistry implements CommandRegistry, Teln
     private void processBlock(CommandInput input) {
         final String[] usage = {
                 "block -  print extended info for the block corresponding to the address or hash [A]",
-                "Usage: block [ADDRESS|HASH]",
+                "Usage: block [OPTIONS] [ADDRESS|HASH]",
                 "  -? --help                    Show help",
+                "  -c --cursor=CURSOR           show the tx history page after CURSOR",
+                "  -n --limit=NUM               show at most NUM tx history records",
         };
         try {
             Options opt = parseOptions(usage, input.args());
@@ -188,7 +191,13 @@ public class Shell extends JlineCommandRegistry implements CommandRegistry, Teln
                     println("No param");
                     return;
                 }
-                println(commands.block(Bytes32.wrap(hash)));
+                byte[] cursor = opt.isSet("cursor") ? Hex.decode(opt.get("cursor")) : null;
+                int limit = opt.isSet("limit") ? Integer.parseInt(opt.get("limit")) : Commands.TX_HISTORY_LIMIT;
+                if (limit <= 0) {
+                    println("Limit must be positive");
+                    return;
+                }
+                println(commands.block(Bytes32.wrap(hash), cursor, limit));
             } catch (Exception e) {
                 println("Argument is incorrect.");
             }
@@ -36,6 +36,7 @@ import io.xdag.crypto.Sign;
 import io.xdag.crypto.jni.Native;
 import io.xdag.db.DatabaseFactory;
 import io.xdag.db.DatabaseName;
+import io.xdag.db.KVSource;
 import io.xdag.db.rocksdb.RocksdbFactory;
 import io.xdag.db.rocksdb.RocksdbKVSource;
 import io.xdag.db.SnapshotJ;
@@ -563,14 +564,15 @@ public class XdagCli extends Launcher {
 
         long start = System.currentTimeMillis();
         this.getConfig().getSnapshotSpec().setSnapshotJ(true);
-        RocksdbKVSource blockSource = new RocksdbKVSource(DatabaseName.TIME.toString());
-        blockSource.setConfig(getConfig());
+        RocksdbFactory dbFactory = new RocksdbFactory(getConfig());
+        KVSource<byte[], byte[]> blockSource = dbFactory.getDB(DatabaseName.BLOCK);
         blockSource.init();
         RocksdbKVSource snapshotSource = new RocksdbKVSource("SNAPSHOTJ");
         snapshotSource.setConfig(getConfig());
         snapshotSource.init();
         SnapshotJ index = new SnapshotJ(DatabaseName.INDEX.toString());
         index.setConfig(getConfig());
+        index.setFactory(dbFactory);
         index.init();
         index.makeSnapshot(blockSource, snapshotSource);
 
@@ -90,6 +90,8 @@ public class AbstractConfig implements Config, AdminSpec, PoolSpec, NodeSpec, Wa
     protected int maxShareCountPerChannel = 20;
     protected int awardEpoch = 0xf;
     protected int waitEpoch = 10;
+    protected int shareThreads = Runtime.getRuntime().availableProcessors();
+    protected int shareQueueSize = 1024;
 
     // =========================
     // Node spec
@@ -110,6 +112,21 @@ public class AbstractConfig implements Config, AdminSpec, PoolSpec, NodeSpec, Wa
     protected int storeMaxOpenFiles = 1024;
     protected int storeMaxThreads = 1;
     protected boolean storeFromBackup = false;
+    protected long storeBlockInfoCacheSize = 64L * 1024 * 1024;
+    protected boolean storeSyncWrite = false;
+    protected long storeSumsFlushInterval = 0;
+    protected long storeBlockCacheSize = 256L * 1024 * 1024;
+    protected long storeWriteBufferSize = 128L * 1024 * 1024;
+    protected boolean nativeSecp256k1 = true;
+    protected boolean storeMappedBlocks = false;
+    protected long storePruneEpochs = 0;
+    protected int storePruneBatchSize = 1024;
+    protected int importThreads = Runtime.getRuntime().availableProcessors();
+    protected int importQueueSize = 4096;
+    protected int syncMaxInflightPerPeer = 4;
+    protected boolean relayInventory = false;
+    protected long replyMaxPendingBytes = 512L * 1024;
+    protected int randomxVmPoolSize = Runtime.getRuntime().availableProcessors();
     protected String originStoreDir = "./testdate";
 
     protected String whitelistUrl;
@@ -263,6 +280,21 @@ public class AbstractConfig implements Config, AdminSpec, PoolSpec, NodeSpec, Wa
             nodeIp = config.getString("node.ip", "127.0.0.1");
             nodePort = config.getInt("node.port", 8001);
             maxInboundConnectionsPerIp = config.getInt("node.maxInboundConnectionsPerIp");
+            storeBlockInfoCacheSize = config.getLong("node.store.blockInfoCacheSize", storeBlockInfoCacheSize);
+            storeSyncWrite = config.getBoolean("node.store.syncWrite", storeSyncWrite);
+            storeSumsFlushInterval = config.getLong("node.store.sumsFlushInterval", storeSumsFlushInterval);
+            storeBlockCacheSize = config.getLong("node.store.blockCacheSize", storeBlockCacheSize);
+            storeWriteBufferSize = config.getLong("node.store.writeBufferSize", storeWriteBufferSize);
+            nativeSecp256k1 = config.getBoolean("node.crypto.nativeSecp256k1", nativeSecp256k1);
+            storeMappedBlocks = config.getBoolean("node.store.mappedBlocks", storeMappedBlocks);
+            storePruneEpochs = config.getLong("node.store.pruneEpochs", storePruneEpochs);
+            storePruneBatchSize = config.getInt("node.store.pruneBatchSize", storePruneBatchSize);
+            importThreads = config.getInt("node.import.threads", importThreads);
+            importQueueSize = config.getInt("node.import.queueSize", importQueueSize);
+            syncMaxInflightPerPeer = config.getInt("node.sync.maxInflightPerPeer", syncMaxInflightPerPeer);
+            relayInventory = config.getBoolean("node.relay.inventory", relayInventory);
+            replyMaxPendingBytes = config.getLong("node.reply.maxPendingBytes", replyMaxPendingBytes);
+            randomxVmPoolSize = config.getInt("node.randomx.vmPoolSize", randomxVmPoolSize);
 
             String[] whiteIpArray = config.get(String[].class, "node.whiteIPs");
             if (whiteIpArray != null) {
@@ -287,6 +319,8 @@ public class AbstractConfig implements Config, AdminSpec, PoolSpec, NodeSpec, Wa
             globalMinerChannelLimit = config.getInt("miner.globalMinerChannelLimit");
             maxConnectPerIp = config.getInt("miner.maxConnectPerIp");
             maxMinerPerAccount = config.getInt("miner.maxMinerPerAccount");
+            shareThreads = config.getInt("miner.share.threads", shareThreads);
+            shareQueueSize = config.getInt("miner.share.queueSize", shareQueueSize);
 
             // rpc
             rpcEnabled = config.getBoolean("rpc.enabled", false);
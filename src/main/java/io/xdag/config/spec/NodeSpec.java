@@ -86,6 +86,63 @@ public interface NodeSpec {
 
     boolean isStoreFromBackup();
 
+    long getStoreBlockInfoCacheSize();
+
+    boolean isStoreSyncWrite();
+
+    long getStoreSumsFlushInterval();
+
+    /**
+     * 所有 column family 共用的 block cache 大小
+     */
+    long getStoreBlockCacheSize();
+
+    /**
+     * 所有 column family 的 memtable 总大小上限, 计入 block cache
+     */
+    long getStoreWriteBufferSize();
+
+    /**
+     * 区块原始数据存放在内存映射的追加写文件中, 不再写入 RocksDB
+     */
+    boolean isStoreMappedBlocks();
+
+    /**
+     * 只保留最近多少个主块周期的区块源数据和交易历史, 0 表示不裁剪; 必须远大于可能的回滚深度
+     */
+    long getStorePruneEpochs();
+
+    /**
+     * 后台裁剪每轮处理的条数
+     */
+    int getStorePruneBatchSize();
+
+    /**
+     * 使用 libsecp256k1 做签名和验签, 不可用时退回纯 Java 实现; 默认开启, false 时强制使用纯 Java 实现
+     */
+    boolean isNativeSecp256k1();
+
+    int getImportThreads();
+
+    int getImportQueueSize();
+
+    int getSyncMaxInflightPerPeer();
+
+    /**
+     * 转发区块时先广播hash，对方缺少时再拉取区块，需要对端也支持
+     */
+    boolean isRelayInventory();
+
+    /**
+     * 响应BLOCKS_REQUEST时, 每个节点允许积压未发送的最大字节数, 超过后暂停读取区块
+     */
+    long getReplyMaxPendingBytes();
+
+    /**
+     * 每个 RandomX seed 创建的 VM 数量, 即可同时计算 hash 的线程数
+     */
+    int getRandomxVmPoolSize();
+
     /**
      * 用于测试加载已有区块数据 从C版本生成的数据 请将所需要的数据放在该目录下
      */
@@ -48,6 +48,16 @@ public interface PoolSpec {
 
     int getMaxShareCountPerChannel();
 
+    /**
+     * share校验线程数，同一channel的share固定落在同一线程上
+     */
+    int getShareThreads();
+
+    /**
+     * 每个share校验线程的队列长度，队列满时直接丢弃
+     */
+    int getShareQueueSize();
+
     int getConnectionTimeout();
 
 
@@ -39,13 +39,22 @@ import io.xdag.utils.XdagTime;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.commons.lang3.time.FastDateFormat;
 import org.apache.tuweni.bytes.Bytes32;
 
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -82,6 +91,22 @@ public class SyncManager {
      * Queue for poll oldest block
      */
     private ConcurrentLinkedQueue<Bytes32> syncQueue = new ConcurrentLinkedQueue<>();
+    /**
+     * 导入流水线: 解码/哈希/验签在 verifyExecutor 并行完成, 按到达顺序进入 importQueue,
+     * 由 importThread 单线程连接入链. 队列超过 importQueueSize 时暂停来源连接的读取,
+     * 消化到一半以下再恢复, 不阻塞网络线程也不丢块
+     */
+    private BlockingQueue<Future<BlockWrapper>> importQueue;
+    private int importHighWater;
+    private int importLowWater;
+    /**
+     * 因积压暂停读取的连接, 暂停和恢复在该集合上加锁, 与 autoRead 状态保持一致
+     */
+    private final Set<Channel> pausedChannels = new HashSet<>();
+    private ExecutorService verifyExecutor;
+    private Thread importThread;
+    private volatile boolean importRunning = false;
+
     public SyncManager(Kernel kernel) {
         this.kernel = kernel;
         this.blockchain = kernel.getBlockchain();
@@ -91,9 +116,136 @@ public class SyncManager {
 
     public void start() {
         log.debug("Download receiveBlock run...");
+        startImport();
         new Thread(this.stateListener, "xdag-stateListener").start();
     }
 
+    private void startImport() {
+        int threads = Math.max(1, kernel.getConfig().getNodeSpec().getImportThreads());
+        importHighWater = Math.max(1, kernel.getConfig().getNodeSpec().getImportQueueSize());
+        importLowWater = importHighWater / 2;
+        importQueue = new LinkedBlockingQueue<>();
+        verifyExecutor = Executors.newFixedThreadPool(threads, new BasicThreadFactory.Builder()
+                .namingPattern("xdag-import-verify-%d")
+                .daemon(true)
+                .build());
+        importRunning = true;
+        importThread = new Thread(this::importLoop, "xdag-import-connect");
+        importThread.setDaemon(true);
+        importThread.start();
+    }
+
+    public void submitBlock(BlockWrapper blockWrapper) {
+        submitBlock(blockWrapper, null);
+    }
+
+    /**
+     * 网络区块入口. 只负责排队, 连接结果不返回给调用方
+     *
+     * @param source 区块来源连接, 导入跟不上时暂停它的读取
+     */
+    public void submitBlock(BlockWrapper blockWrapper, Channel source) {
+        if (!importRunning) {
+            validateAndAddNewBlock(blockWrapper);
+            return;
+        }
+        FutureTask<BlockWrapper> task = new FutureTask<>(() -> prepare(blockWrapper));
+        // 先入队再提交, 保证连接顺序与到达顺序一致.
+        // 调用方是 netty 的 event loop, 不能阻塞; 积压时停止从来源连接读取, 已读到的区块照常入队
+        importQueue.add(task);
+        if (source != null && importQueue.size() >= importHighWater) {
+            synchronized (pausedChannels) {
+                if (pausedChannels.add(source)) {
+                    log.debug("import queue full, pause reading from {}", source.getInetSocketAddress());
+                    source.setAutoRead(false);
+                }
+                // 暂停前队列可能已被取空, 此时导入线程不会再来恢复
+                resumeReadsIfDrained();
+            }
+        }
+        try {
+            verifyExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            log.debug("import pipeline stopped, drop block:{}", blockWrapper.getBlock().getHashLow());
+        }
+    }
+
+    private void resumeReadsIfDrained() {
+        synchronized (pausedChannels) {
+            // 在锁内判断, 避免与并发的暂停交错后把刚暂停的连接又打开
+            if (pausedChannels.isEmpty() || importQueue.size() > importLowWater) {
+                return;
+            }
+            for (Channel channel : pausedChannels) {
+                log.debug("import queue drained, resume reading from {}", channel.getInetSocketAddress());
+                channel.setAutoRead(true);
+            }
+            pausedChannels.clear();
+        }
+    }
+
+    private void importLoop() {
+        while (importRunning) {
+            try {
+                Future<BlockWrapper> task = importQueue.take();
+                if (importQueue.size() <= importLowWater) {
+                    resumeReadsIfDrained();
+                }
+                BlockWrapper blockWrapper = task.get();
+                connectBlock(blockWrapper);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                log.warn("prepare block failed: {}", e.getCause().toString());
+            } catch (Throwable e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 与链状态无关的导入步骤, 可在任意线程并行执行: 从原始512字节重新解码(公钥解压, 计算哈希),
+     * 并提前完成输入签名校验, 结果缓存在区块中供 canUseInput 使用.
+     * 已预处理过的区块(NO_PARENT 后重放)只补验之前缺失的输入
+     */
+    private BlockWrapper prepare(BlockWrapper blockWrapper) {
+        Block block = blockWrapper.getPrepared();
+        if (block == null) {
+            blockWrapper.getBlock().parse();
+            block = new Block(new XdagBlock(blockWrapper.getBlock().getXdagBlock().getData().toArray()));
+            // 签名和公钥是延迟解码的, 在这里完成, 避免占用串行的 tryToConnect
+            block.getPubKeys();
+            blockWrapper.setPrepared(block);
+        }
+        if (!block.getInputs().isEmpty()) {
+            block.verifiedKeys();
+            blockchain.verifyInputs(block);
+        }
+        return blockWrapper;
+    }
+
+    /**
+     * 并行预处理一批区块, 返回结果与 blockWrappers 一一对应; 流水线未启动时就地执行
+     */
+    private List<Future<BlockWrapper>> prepareAll(List<BlockWrapper> blockWrappers) {
+        List<Future<BlockWrapper>> res = new ArrayList<>(blockWrappers.size());
+        for (BlockWrapper bw : blockWrappers) {
+            FutureTask<BlockWrapper> task = new FutureTask<>(() -> prepare(bw));
+            if (importRunning) {
+                try {
+                    verifyExecutor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    task.run();
+                }
+            } else {
+                task.run();
+            }
+            res.add(task);
+        }
+        return res;
+    }
+
     /**
      * 监听kernel状态 判断是否该自启
      */
@@ -130,8 +282,13 @@ public class SyncManager {
     //todo:修改共识
     public ImportResult importBlock(BlockWrapper blockWrapper) {
         log.debug("importBlock:{}", blockWrapper.getBlock().getHashLow());
-        ImportResult importResult = blockchain
-                .tryToConnect(new Block(new XdagBlock(blockWrapper.getBlock().getXdagBlock().getData().toArray())));
+        Block block = blockWrapper.getPrepared();
+        if (block == null) {
+            block = new Block(new XdagBlock(blockWrapper.getBlock().getXdagBlock().getData().toArray()));
+            blockWrapper.setPrepared(block);
+        }
+        // 预处理结果保留给 NO_PARENT 后的重放; 未入库区块的 flags 重试时会按同样规则重新计算
+        ImportResult importResult = blockchain.tryToConnect(block);
 
         if (importResult == EXIST) {
             log.debug("Block have exist:" + blockWrapper.getBlock().getHashLow());
@@ -171,8 +328,13 @@ public class SyncManager {
         return importResult;
     }
 
-    public synchronized ImportResult validateAndAddNewBlock(BlockWrapper blockWrapper) {
-        blockWrapper.getBlock().parse();
+    public ImportResult validateAndAddNewBlock(BlockWrapper blockWrapper) {
+        // 验签在锁外完成
+        prepare(blockWrapper);
+        return connectBlock(blockWrapper);
+    }
+
+    private synchronized ImportResult connectBlock(BlockWrapper blockWrapper) {
         ImportResult result = importBlock(blockWrapper);
         log.debug("validateAndAddNewBlock:{}, {}", blockWrapper.getBlock().getHashLow(), result);
         switch (result) {
@@ -259,7 +421,18 @@ public class SyncManager {
             syncMap.remove(block.getHashLow());
             syncQueue.remove(block.getHashLow());
             blockchain.getXdagStats().nwaitsync--;
-            queue.forEach(bw -> {
+            // 父块已入库, 子块并行补验之前缺失的输入, 再按顺序连接
+            List<BlockWrapper> children = new ArrayList<>(queue);
+            List<Future<BlockWrapper>> prepared = prepareAll(children);
+            for (int i = 0; i < children.size(); i++) {
+                BlockWrapper bw = children.get(i);
+                try {
+                    prepared.get(i).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    log.warn("prepare block failed: {}", e.getCause().toString());
+                }
                 ImportResult importResult = importBlock(bw);
                 switch (importResult) {
                     case EXIST:
@@ -285,7 +458,7 @@ public class SyncManager {
                     default:
                         break;
                 }
-            });
+            }
         }
     }
 
@@ -324,6 +497,17 @@ public class SyncManager {
         if (this.stateListener.isRunning) {
             this.stateListener.isRunning = false;
         }
+        if (importRunning) {
+            importRunning = false;
+            importThread.interrupt();
+            verifyExecutor.shutdownNow();
+            try {
+                // 等正在连接的区块提交完成, 之后才能关闭数据库
+                importThread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     public void distributeBlock(BlockWrapper blockWrapper) {
@@ -25,6 +25,7 @@
 package io.xdag.consensus;
 
 import io.xdag.core.XdagField;
+import io.xdag.crypto.Sha256Midstate;
 import io.xdag.utils.XdagSha256Digest;
 import lombok.Getter;
 import lombok.Setter;
@@ -47,6 +48,13 @@ public class Task implements Cloneable {
     @Setter
     private XdagSha256Digest digest;
 
+    /**
+     * 区块前 480 字节(448 字节 + 第14个字段)的 sha256 中间状态, 校验 share 时只需再处理 nonce
+     */
+    @Getter
+    @Setter
+    private Sha256Midstate midstate;
+
     @Override
     public String toString() {
         return "Task:{ tasktime:" + taskTime + ", taskIndex:" + taskIndex + ", digest:" + digest.toString() +"}";
@@ -27,6 +27,7 @@ package io.xdag.consensus;
 import io.xdag.Kernel;
 import io.xdag.core.*;
 import io.xdag.crypto.Hash;
+import io.xdag.crypto.Sha256Midstate;
 import io.xdag.listener.BlockMessage;
 import io.xdag.listener.Listener;
 import io.xdag.listener.PretopMessage;
@@ -282,9 +283,9 @@ public class XdagPow implements PoW, Listener, Runnable {
                 hash = Bytes32.wrap(kernel.getRandomx()
                         .randomXPoolCalcHash(taskData, taskData.size(), task.getTaskTime()).reverse());
             } else {
-                XdagSha256Digest digest = new XdagSha256Digest(task.getDigest());
-//                hash = Bytes32.wrap(digest.sha256Final(Arrays.reverse(shareInfo.getData().toArray())));
-                hash = Bytes32.wrap(digest.sha256Final(shareInfo.getData().reverse()));
+                byte[] out = new byte[32];
+                task.getMidstate().doubleHash(shareInfo.getData().reverse(), true, out, 0);
+                hash = Bytes32.wrap(out);
             }
 
             synchronized (minHash) {
@@ -375,6 +376,7 @@ public class XdagPow implements PoW, Listener, Runnable {
         data.set(0, block.getXdagBlock().getData().slice(0, 448));
 
         XdagSha256Digest currentTaskDigest = new XdagSha256Digest();
+        Sha256Midstate midstate = Sha256Midstate.of(block.getXdagBlock().getData().slice(0, 480));
         try {
             currentTaskDigest.sha256Update(data);
             byte[] state = currentTaskDigest.getState();
@@ -387,6 +389,7 @@ public class XdagPow implements PoW, Listener, Runnable {
         newTask.setTaskTime(XdagTime.getEpoch(sendTime));
         newTask.setTaskIndex(taskIndex.get());
         newTask.setDigest(currentTaskDigest);
+        newTask.setMidstate(midstate);
         return newTask;
     }
 
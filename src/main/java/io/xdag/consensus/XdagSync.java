@@ -27,6 +27,7 @@ package io.xdag.consensus;
 import static io.xdag.config.Constants.REQUEST_BLOCKS_MAX_TIME;
 import static io.xdag.config.Constants.REQUEST_WAIT;
 
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import io.xdag.Kernel;
 import io.xdag.db.BlockStore;
@@ -34,28 +35,40 @@ import io.xdag.net.Channel;
 import io.xdag.net.manager.XdagChannelManager;
 
 import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nonnull;
 
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.RandomUtils;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.MutableBytes;
 
 @Slf4j
 public class XdagSync {
 
+    /**
+     * 同一区间超时后最多换节点重试的次数
+     */
+    public static final int MAX_RETRY = 3;
+
     private static final ThreadFactory factory = new ThreadFactory() {
         private final AtomicInteger cnt = new AtomicInteger(0);
 
@@ -72,15 +85,26 @@ public class XdagSync {
     private final ConcurrentHashMap<Long, SettableFuture<Bytes>> sumsRequestMap;
     @Getter
     private final ConcurrentHashMap<Long, SettableFuture<Bytes>> blocksRequestMap;
+    /**
+     * 每个节点同时在途的请求数上限
+     */
+    private final int maxInflightPerPeer;
+    /**
+     * 节点评分, 只在同步线程中访问
+     */
+    private final Map<Channel, PeerScore> peerScores = new HashMap<>();
 
     @Getter@Setter
     private Status status;
+    @Getter@Setter
+    private long requestTimeout = TimeUnit.SECONDS.toMillis(REQUEST_WAIT);
     private ScheduledFuture<?> sendFuture;
     private volatile boolean isRunning;
 
     public XdagSync(Kernel kernel) {
         this.channelMgr = kernel.getChannelMgr();
         this.blockStore = kernel.getBlockStore();
+        this.maxInflightPerPeer = Math.max(1, kernel.getConfig().getNodeSpec().getSyncMaxInflightPerPeer());
         sendTask = new ScheduledThreadPoolExecutor(1, factory);
         sumsRequestMap = new ConcurrentHashMap<>();
         blocksRequestMap = new ConcurrentHashMap<>();
@@ -104,67 +128,190 @@ public class XdagSync {
         try {
             // TODO: paulochen 开始同步的时间点/快照时间点
             requestBlocks(0, 1L << 48);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (Throwable e) {
             log.error("error when requestBlocks {}", e.getMessage());
         }
         log.debug("End syncLoop");
     }
 
-    private void requestBlocks(long t, long dt) {
-        // 如果当前状态不是sync start
-        if (status != Status.SYNCING) {
-            return;
-        }
-        List<Channel> any = getAnyNode();
-        long randomSeq;
-        SettableFuture<Bytes> sf = SettableFuture.create();
-        if (any != null && any.size() != 0) {
-            // TODO:随机选一个
-            int index = RandomUtils.nextInt() % any.size();
-            Channel xc = any.get(index);
-            if (dt <= REQUEST_BLOCKS_MAX_TIME) {
-                randomSeq = xc.getXdag().sendGetBlocks(t, t + dt);
-                blocksRequestMap.put(randomSeq, sf);
-                try {
-                    sf.get(REQUEST_WAIT, TimeUnit.SECONDS);
-                } catch (InterruptedException | ExecutionException | TimeoutException e) {
-                    blocksRequestMap.remove(randomSeq);
-                    log.error(e.getMessage(), e);
-                    return;
-                }
-                blocksRequestMap.remove(randomSeq);
-            } else {
-                MutableBytes lSums = MutableBytes.create(256);
-                Bytes rSums;
-                if (blockStore.loadSum(t, t + dt, lSums) <= 0) {
-                    return;
+    /**
+     * 比对 [t, t + dt) 的sums树, 不一致的16分区间同时分发给多个节点, 直到区间足够小后请求区块.
+     * 每个节点最多 maxInflightPerPeer 个在途请求, 优先选择响应快的节点, 超时的区间换节点重试
+     */
+    void requestBlocks(long t, long dt) throws InterruptedException {
+        Deque<SyncRange> pending = new ArrayDeque<>();
+        Map<Long, SyncRequest> inflight = new HashMap<>();
+        BlockingQueue<SyncRequest> replied = new LinkedBlockingQueue<>();
+        pending.add(new SyncRange(t, dt));
+        try {
+            while (status == Status.SYNCING && (!pending.isEmpty() || !inflight.isEmpty())) {
+                dispatch(pending, inflight, replied);
+                if (inflight.isEmpty()) {
+                    // 没有可用节点
+                    break;
                 }
-                randomSeq = xc.getXdag().sendGetSums(t, t + dt);
-                sumsRequestMap.put(randomSeq, sf);
-                try {
-                    Bytes sums = sf.get(REQUEST_WAIT, TimeUnit.SECONDS);
-                    rSums = sums.copy();
-                } catch (InterruptedException | ExecutionException | TimeoutException e) {
-                    sumsRequestMap.remove(randomSeq);
-                    log.error(e.getMessage(), e);
-                    return;
+                long now = System.currentTimeMillis();
+                long wait = Long.MAX_VALUE;
+                for (SyncRequest request : inflight.values()) {
+                    wait = Math.min(wait, request.sendTime + requestTimeout - now);
                 }
-                sumsRequestMap.remove(randomSeq);
-                dt >>= 4;
-                for (int i = 0; i < 16; i++) {
-                    long lSumsSum = lSums.getLong(i * 16, ByteOrder.LITTLE_ENDIAN);
-                    long lSumsSize = lSums.getLong(i * 16 + 8, ByteOrder.LITTLE_ENDIAN);
-                    long rSumsSum = rSums.getLong(i * 16, ByteOrder.LITTLE_ENDIAN);
-                    long rSumsSize = rSums.getLong(i * 16 + 8, ByteOrder.LITTLE_ENDIAN);
-
-                    if (lSumsSize != rSumsSize || lSumsSum != rSumsSum) {
-                        requestBlocks(t + i * dt, dt);
+                SyncRequest request = replied.poll(Math.max(0, wait), TimeUnit.MILLISECONDS);
+                while (request != null) {
+                    if (inflight.remove(request.seq) != null) {
+                        onReply(request, pending);
                     }
+                    request = replied.poll();
                 }
+                expire(inflight, pending);
+            }
+        } finally {
+            for (SyncRequest request : inflight.values()) {
+                finish(request);
             }
         }
     }
 
+    private void dispatch(Deque<SyncRange> pending, Map<Long, SyncRequest> inflight,
+            BlockingQueue<SyncRequest> replied) {
+        List<Channel> channels = getAnyNode();
+        if (channels == null || channels.isEmpty()) {
+            return;
+        }
+        peerScores.keySet().retainAll(channels);
+        Iterator<SyncRange> it = pending.iterator();
+        while (it.hasNext()) {
+            SyncRange range = it.next();
+            Channel channel = selectPeer(channels, range);
+            if (channel == null) {
+                // 所有节点都已满载
+                return;
+            }
+            it.remove();
+            SyncRequest request = send(channel, range);
+            if (request != null) {
+                inflight.put(request.seq, request);
+                request.future.addListener(() -> replied.add(request), MoreExecutors.directExecutor());
+            }
+        }
+    }
+
+    /**
+     * 选择未满载且平均响应最快的节点, 优先选择该区间未尝试过的节点
+     */
+    private Channel selectPeer(List<Channel> channels, SyncRange range) {
+        Channel best = null;
+        boolean bestTried = true;
+        double bestLatency = Double.MAX_VALUE;
+        for (Channel channel : channels) {
+            PeerScore score = peerScores.computeIfAbsent(channel, c -> new PeerScore());
+            if (score.inflight >= maxInflightPerPeer) {
+                continue;
+            }
+            boolean tried = range.tried.contains(channel);
+            if (best == null || (bestTried && !tried)
+                    || (bestTried == tried && score.latency < bestLatency)) {
+                best = channel;
+                bestTried = tried;
+                bestLatency = score.latency;
+            }
+        }
+        return best;
+    }
+
+    private SyncRequest send(Channel channel, SyncRange range) {
+        SettableFuture<Bytes> sf = SettableFuture.create();
+        long randomSeq;
+        MutableBytes lSums = null;
+        if (range.dt <= REQUEST_BLOCKS_MAX_TIME) {
+            randomSeq = channel.getXdag().sendGetBlocks(range.t, range.t + range.dt);
+            blocksRequestMap.put(randomSeq, sf);
+        } else {
+            lSums = MutableBytes.create(256);
+            if (blockStore.loadSum(range.t, range.t + range.dt, lSums) <= 0) {
+                return null;
+            }
+            randomSeq = channel.getXdag().sendGetSums(range.t, range.t + range.dt);
+            sumsRequestMap.put(randomSeq, sf);
+        }
+        peerScores.get(channel).inflight++;
+        return new SyncRequest(randomSeq, range, channel, lSums, sf);
+    }
+
+    private void onReply(SyncRequest request, Deque<SyncRange> pending) {
+        finish(request);
+        PeerScore score = peerScores.get(request.channel);
+        if (score != null) {
+            score.update(System.currentTimeMillis() - request.sendTime);
+        }
+        if (request.lSums == null) {
+            return;
+        }
+        Bytes rSums;
+        try {
+            rSums = request.future.get().copy();
+        } catch (InterruptedException | ExecutionException e) {
+            log.error(e.getMessage(), e);
+            return;
+        }
+        long t = request.range.t;
+        long dt = request.range.dt >> 4;
+        MutableBytes lSums = request.lSums;
+        for (int i = 0; i < 16; i++) {
+            long lSumsSum = lSums.getLong(i * 16, ByteOrder.LITTLE_ENDIAN);
+            long lSumsSize = lSums.getLong(i * 16 + 8, ByteOrder.LITTLE_ENDIAN);
+            long rSumsSum = rSums.getLong(i * 16, ByteOrder.LITTLE_ENDIAN);
+            long rSumsSize = rSums.getLong(i * 16 + 8, ByteOrder.LITTLE_ENDIAN);
+
+            if (lSumsSize != rSumsSize || lSumsSum != rSumsSum) {
+                pending.add(new SyncRange(t + i * dt, dt));
+            }
+        }
+    }
+
+    /**
+     * 超时或节点已断开的请求, 降低节点评分后把区间交给其他节点
+     */
+    private void expire(Map<Long, SyncRequest> inflight, Deque<SyncRange> pending) {
+        long now = System.currentTimeMillis();
+        Iterator<SyncRequest> it = inflight.values().iterator();
+        while (it.hasNext()) {
+            SyncRequest request = it.next();
+            if (now - request.sendTime < requestTimeout && request.channel.isActive()) {
+                continue;
+            }
+            it.remove();
+            finish(request);
+            PeerScore score = peerScores.get(request.channel);
+            if (score != null) {
+                score.update(requestTimeout);
+            }
+            SyncRange range = request.range;
+            range.tried.add(request.channel);
+            if (range.tried.size() <= MAX_RETRY) {
+                log.debug("request [{}, {}) to {} timeout, retry", range.t, range.t + range.dt,
+                        request.channel.getInetSocketAddress());
+                pending.addFirst(range);
+            } else {
+                log.debug("request [{}, {}) timeout {} times, give up", range.t, range.t + range.dt,
+                        range.tried.size());
+            }
+        }
+    }
+
+    private void finish(SyncRequest request) {
+        if (request.lSums == null) {
+            blocksRequestMap.remove(request.seq);
+        } else {
+            sumsRequestMap.remove(request.seq);
+        }
+        PeerScore score = peerScores.get(request.channel);
+        if (score != null && score.inflight > 0) {
+            score.inflight--;
+        }
+    }
+
     public List<Channel> getAnyNode() {
         return channelMgr.getActiveChannels();
     }
@@ -193,6 +340,52 @@ public class XdagSync {
         return isRunning;
     }
 
+    private static class SyncRange {
+        final long t;
+        final long dt;
+        /**
+         * 已超时的节点
+         */
+        final Set<Channel> tried = new HashSet<>();
+
+        SyncRange(long t, long dt) {
+            this.t = t;
+            this.dt = dt;
+        }
+    }
+
+    private static class SyncRequest {
+        final long seq;
+        final SyncRange range;
+        final Channel channel;
+        /**
+         * 本地sums, 为null表示区块请求
+         */
+        final MutableBytes lSums;
+        final SettableFuture<Bytes> future;
+        final long sendTime = System.currentTimeMillis();
+
+        SyncRequest(long seq, SyncRange range, Channel channel, MutableBytes lSums, SettableFuture<Bytes> future) {
+            this.seq = seq;
+            this.range = range;
+            this.channel = channel;
+            this.lSums = lSums;
+            this.future = future;
+        }
+    }
+
+    /**
+     * 节点响应时延(毫秒)的滑动平均, 超时按超时时间计入
+     */
+    private static class PeerScore {
+        double latency = 0;
+        int inflight;
+
+        void update(long millis) {
+            latency = latency * 0.7 + millis * 0.3;
+        }
+    }
+
     public enum Status {
         /**
          * syncing
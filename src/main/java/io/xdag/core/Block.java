@@ -33,6 +33,8 @@ import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_SIGN_OUT;
 
 import io.xdag.config.Config;
 import io.xdag.crypto.Hash;
+import io.xdag.crypto.PubKeyCache;
+import io.xdag.crypto.Sha256Midstate;
 import io.xdag.crypto.Sign;
 import io.xdag.utils.BytesUtils;
 import java.math.BigInteger;
@@ -40,11 +42,14 @@ import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -55,7 +60,6 @@ import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.bytes.MutableBytes;
 import org.apache.tuweni.bytes.MutableBytes32;
 import org.hyperledger.besu.crypto.KeyPair;
-import org.bouncycastle.math.ec.ECPoint;
 import org.hyperledger.besu.crypto.SECPPublicKey;
 import org.hyperledger.besu.crypto.SECPSignature;
 
@@ -100,6 +104,36 @@ public class Block implements Cloneable {
     @Getter
     @Setter
     private BigInteger pretopCandidateDiff;
+    /**
+     * verifiedKeys() 的结果缓存, 签名后失效
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile List<SECPPublicKey> verifiedKeys;
+    /**
+     * parse() 只解析头部, 链接在首次访问时才解码
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile boolean linksDecoded = true;
+    /**
+     * 签名和公钥(需要解压 EC 点)在首次访问时才解码
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile boolean keysDecoded = true;
+    /**
+     * 导入前已校验过的输入 <输入hashlow, 签出该输入的key>
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile Map<Bytes32, SECPPublicKey> verifiedInputs;
+    /**
+     * getLinkView() 的结果缓存
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile BlockLinks linkView;
 
     public Block(
             Config config,
@@ -148,9 +182,7 @@ public class Block implements Cloneable {
 
         if (CollectionUtils.isNotEmpty(keys)) {
             for (KeyPair key : keys) {
-                byte[] keydata = Sign.publicKeyBytesFromPrivate(key.getPrivateKey().getEncodedBytes().toUnsignedBigInteger(), true); //poor performance
-//                byte[] keydata = key.getCompressPubKeyBytes(); //good performance
-                boolean yBit = BytesUtils.toByte(BytesUtils.subArray(keydata, 0, 1)) == 0x03;
+                boolean yBit = PubKeyCache.compress(key.getPublicKey()).get(0) == 0x03;
                 XdagField.FieldType type = yBit ? XDAG_FIELD_PUBLIC_KEY_1 : XDAG_FIELD_PUBLIC_KEY_0;
                 setType(type, lenghth++);
                 pubKeys.add(key.getPublicKey());
@@ -208,7 +240,9 @@ public class Block implements Cloneable {
         if (xdagBlock == null) {
             xdagBlock = getXdagBlock();
         }
-        return Bytes32.wrap(Hash.hashTwice(Bytes.wrap(xdagBlock.getData())).reverse()).toArray();
+        byte[] hash = new byte[32];
+        Sha256Midstate.hashTwice(xdagBlock.getData(), true, hash, 0);
+        return hash;
     }
 
     /**
@@ -216,11 +250,11 @@ public class Block implements Cloneable {
      **/
     public Bytes32 recalcHash() {
         xdagBlock = new XdagBlock(toBytes());
-        return Bytes32.wrap(Hash.hashTwice(Bytes.wrap(xdagBlock.getData())).reverse());
+        return Bytes32.wrap(calcHash());
     }
 
     /**
-     * 解析512字节数据*
+     * 解析512字节数据的头部, remark 和 nonce, 链接/签名/公钥留到首次访问时再解码*
      */
     public void parse() {
         if (this.parsed) {
@@ -240,10 +274,48 @@ public class Block implements Cloneable {
             if (field == null) {
                 throw new IllegalArgumentException("xdagBlock field:" + i + " is null");
             }
+            if (field.getType() == XDAG_FIELD_REMARK) {
+                this.info.setRemark(field.getData().toArray());
+            } else if (i == MAX_LINKS && field.getType() == XDAG_FIELD_SIGN_IN) {
+                this.nonce = Bytes32.wrap(field.getData());
+            }
+        }
+        this.linksDecoded = false;
+        this.keysDecoded = false;
+        this.linkView = null;
+        this.parsed = true;
+    }
+
+    private synchronized void decodeLinks() {
+        if (linksDecoded) {
+            return;
+        }
+        List<Address> in = new CopyOnWriteArrayList<>();
+        List<Address> out = new CopyOnWriteArrayList<>();
+        for (int i = 1; i < XdagBlock.XDAG_BLOCK_FIELDS; i++) {
+            XdagField field = xdagBlock.getField(i);
+            switch (field.getType()) {
+            case XDAG_FIELD_IN -> in.add(new Address(field));
+            case XDAG_FIELD_OUT -> out.add(new Address(field));
+            default -> {
+            }
+            }
+        }
+        this.inputs = in;
+        this.outputs = out;
+        this.linksDecoded = true;
+    }
+
+    private synchronized void decodeKeys() {
+        if (keysDecoded) {
+            return;
+        }
+        Map<SECPSignature, Integer> sigs = new LinkedHashMap<>();
+        SECPSignature out = null;
+        List<SECPPublicKey> keys = new CopyOnWriteArrayList<>();
+        for (int i = 1; i < XdagBlock.XDAG_BLOCK_FIELDS; i++) {
+            XdagField field = xdagBlock.getField(i);
             switch (field.getType()) {
-            case XDAG_FIELD_IN -> inputs.add(new Address(xdagBlock.getField(i)));
-            case XDAG_FIELD_OUT -> outputs.add(new Address(field));
-            case XDAG_FIELD_REMARK -> this.info.setRemark(field.getData().toArray());
             case XDAG_FIELD_SIGN_IN, XDAG_FIELD_SIGN_OUT -> {
                 BigInteger r;
                 BigInteger s;
@@ -267,44 +339,38 @@ public class Block implements Cloneable {
 
                             SECPSignature tmp = SECPSignature.create(r, s, (byte) 0, Sign.CURVE.getN());
                             if (ixf.getType().ordinal() == XDAG_FIELD_SIGN_IN.ordinal()) {
-                                insigs.put(tmp, i);
+                                sigs.put(tmp, i);
                             } else {
-                                outsig = tmp;
+                                out = tmp;
                             }
                         }
                     }
                 }
-                if (i == MAX_LINKS && field.getType().ordinal() == XDAG_FIELD_SIGN_IN.ordinal()) {
-                    this.nonce = Bytes32.wrap(xdagBlock.getField(i).getData());
-                }
             }
             case XDAG_FIELD_PUBLIC_KEY_0, XDAG_FIELD_PUBLIC_KEY_1 -> {
                 Bytes key = xdagBlock.getField(i).getData();
                 boolean yBit = (field.getType().ordinal() == XDAG_FIELD_PUBLIC_KEY_1.ordinal());
-                ECPoint point = Sign.decompressKey(key.toUnsignedBigInteger(), yBit);
-                // 解析成非压缩去前缀 公钥
-                byte[] encodePub = point.getEncoded(false);
-                SECPPublicKey publicKey = SECPPublicKey.create(
-                        new BigInteger(1, Arrays.copyOfRange(encodePub, 1, encodePub.length)), Sign.CURVE_NAME);
-                pubKeys.add(publicKey);
+                keys.add(PubKeyCache.decompress(key, yBit));
             }
             default -> {
             }
-            //                    log.debug("no match xdagBlock field type:" + field.getType());
             }
         }
-        this.parsed = true;
+        this.insigs = sigs;
+        this.outsig = out;
+        this.pubKeys = keys;
+        this.keysDecoded = true;
     }
 
     public byte[] toBytes() {
         SimpleEncoder encoder = new SimpleEncoder();
         encoder.write(getEncodedBody());
 
-        for (SECPSignature sig : insigs.keySet()) {
+        for (SECPSignature sig : getInsigs().keySet()) {
             encoder.writeSignature(BytesUtils.subArray(sig.encodedBytes().toArray(), 0, 64));
         }
-        if (outsig != null) {
-            encoder.writeSignature(BytesUtils.subArray(outsig.encodedBytes().toArray(), 0, 64));
+        if (getOutsig() != null) {
+            encoder.writeSignature(BytesUtils.subArray(getOutsig().encodedBytes().toArray(), 0, 64));
         }
         int length = encoder.getWriteFieldIndex();
         tempLength = length;
@@ -328,18 +394,16 @@ public class Block implements Cloneable {
         SimpleEncoder encoder = new SimpleEncoder();
         encoder.writeField(getEncodedHeader());
         List<Address> all = new ArrayList<>();
-        all.addAll(inputs);
-        all.addAll(outputs);
+        all.addAll(getInputs());
+        all.addAll(getOutputs());
         for (Address link : all) {
             encoder.writeField(link.getData().reverse().toArray());
         }
         if (info.getRemark() != null) {
             encoder.write(info.getRemark());
         }
-        for (SECPPublicKey publicKey : pubKeys) {
-            byte[] pubkeyBytes = publicKey.asEcPoint(Sign.CURVE).getEncoded(true);
-            byte[] key = BytesUtils.subArray(pubkeyBytes, 1, 32);
-            encoder.writeField(key);
+        for (SECPPublicKey publicKey : getPubKeys()) {
+            encoder.writeField(PubKeyCache.compress(publicKey).slice(1).toArray());
         }
         encoded = encoder.toBytes();
         return encoded;
@@ -370,10 +434,10 @@ public class Block implements Cloneable {
     }
 
     private void sign(KeyPair ecKey, XdagField.FieldType type) {
+        verifiedKeys = null;
         byte[] encoded = toBytes();
         // log.debug("sign encoded:{}", Hex.toHexString(encoded));
-        byte[] pubkeyBytes = ecKey.getPublicKey().asEcPoint(Sign.CURVE).getEncoded(true);
-        byte[] digest = BytesUtils.merge(encoded, pubkeyBytes);
+        byte[] digest = BytesUtils.merge(encoded, PubKeyCache.compress(ecKey.getPublicKey()).toArrayUnsafe());
         //log.debug("sign digest:{}", Hex.toHexString(digest));
         Bytes32 hash = Hash.hashTwice(Bytes.wrap(digest));
         //log.debug("sign hash:{}", Hex.toHexString(hash.toArray()));
@@ -381,7 +445,7 @@ public class Block implements Cloneable {
         if (type == XDAG_FIELD_SIGN_OUT) {
             outsig = signature;
         } else {
-            insigs.put(signature, tempLength);
+            getInsigs().put(signature, tempLength);
         }
     }
 
@@ -389,6 +453,15 @@ public class Block implements Cloneable {
      * 只匹配输入签名 并返回有用的key
      */
     public List<SECPPublicKey> verifiedKeys() {
+        List<SECPPublicKey> res = verifiedKeys;
+        if (res == null) {
+            res = Collections.unmodifiableList(calcVerifiedKeys());
+            verifiedKeys = res;
+        }
+        return res;
+    }
+
+    private List<SECPPublicKey> calcVerifiedKeys() {
         List<SECPPublicKey> keys = getPubKeys();
         List<SECPPublicKey> res = new ArrayList<>();
         Bytes digest;
@@ -396,9 +469,7 @@ public class Block implements Cloneable {
         for (SECPSignature sig : this.getInsigs().keySet()) {
             digest = getSubRawData(this.getInsigs().get(sig) - 1);
             for (SECPPublicKey publicKey : keys) {
-                // TODO： paulochen 是不是可以替换
-                byte[] pubkeyBytes = publicKey.asEcPoint(Sign.CURVE).getEncoded(true);
-                hash = Hash.hashTwice(Bytes.wrap(digest, Bytes.wrap(pubkeyBytes)));
+                hash = Hash.hashTwice(Bytes.wrap(digest, PubKeyCache.compress(publicKey)));
                 if (Sign.SECP256K1.verify(hash, sig, publicKey)) {
                     res.add(publicKey);
                 }
@@ -406,9 +477,7 @@ public class Block implements Cloneable {
         }
         digest = getSubRawData(getOutsigIndex() - 2);
         for (SECPPublicKey publicKey : keys) {
-            // TODO： paulochen 是不是可以替换
-            byte[] pubkeyBytes = publicKey.asEcPoint(Sign.CURVE).getEncoded(true);
-            hash = Hash.hashTwice(Bytes.wrap(digest, Bytes.wrap(pubkeyBytes)));
+            hash = Hash.hashTwice(Bytes.wrap(digest, PubKeyCache.compress(publicKey)));
             if (Sign.SECP256K1.verify(hash, this.getOutsig(), publicKey)) {
                 res.add(publicKey);
             }
@@ -416,6 +485,28 @@ public class Block implements Cloneable {
         return res;
     }
 
+    public void setVerifiedInput(Bytes32 input, SECPPublicKey key) {
+        Map<Bytes32, SECPPublicKey> res = verifiedInputs;
+        if (res == null) {
+            synchronized (this) {
+                res = verifiedInputs;
+                if (res == null) {
+                    res = new ConcurrentHashMap<>();
+                    verifiedInputs = res;
+                }
+            }
+        }
+        res.put(input.copy(), key);
+    }
+
+    /**
+     * @return 提前校验时签出该输入的key, 未校验过返回 null
+     */
+    public SECPPublicKey getVerifiedInput(Bytes32 input) {
+        Map<Bytes32, SECPPublicKey> res = verifiedInputs;
+        return res == null ? null : res.get(input);
+    }
+
     /**
      * 取输出签名在字段的索引
      */
@@ -446,14 +537,23 @@ public class Block implements Cloneable {
     }
 
     public List<Address> getOutputs() {
+        if (!linksDecoded) {
+            decodeLinks();
+        }
         return outputs;
     }
 
     public List<Address> getInputs() {
+        if (!linksDecoded) {
+            decodeLinks();
+        }
         return inputs;
     }
 
     public List<SECPPublicKey> getPubKeys() {
+        if (!keysDecoded) {
+            decodeKeys();
+        }
         return pubKeys;
     }
 
@@ -462,10 +562,16 @@ public class Block implements Cloneable {
     }
 
     public SECPSignature getOutsig() {
-        return outsig == null ? null : outsig;
+        if (!keysDecoded) {
+            decodeKeys();
+        }
+        return outsig;
     }
 
     public Map<SECPSignature, Integer> getInsigs() {
+        if (!keysDecoded) {
+            decodeKeys();
+        }
         return insigs;
     }
 
@@ -528,6 +634,18 @@ public class Block implements Cloneable {
         this.info.type |= typeByte << (n << 2);
     }
 
+    /**
+     * 链接的紧凑视图, 导入路径上按下标遍历, 避免反复创建 Address 列表
+     */
+    public BlockLinks getLinkView() {
+        BlockLinks res = linkView;
+        if (res == null) {
+            res = linksDecoded ? BlockLinks.of(getInputs(), getOutputs()) : BlockLinks.of(xdagBlock);
+            linkView = res;
+        }
+        return res;
+    }
+
     public List<Address> getLinks() {
         List<Address> links = new ArrayList<>();
         links.addAll(getInputs());
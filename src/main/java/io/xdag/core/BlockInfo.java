@@ -53,6 +53,34 @@ public class BlockInfo {
     private boolean isSnapshot = false;
     private SnapshotInfo snapshotInfo = null;
 
+    /**
+     * Deep copy, so that a cached instance never shares mutable state with callers.
+     */
+    public BlockInfo copy() {
+        BlockInfo info = new BlockInfo();
+        info.type = type;
+        info.flags = flags;
+        info.height = height;
+        info.difficulty = difficulty;
+        info.ref = copyOf(ref);
+        info.maxDiffLink = copyOf(maxDiffLink);
+        info.fee = fee;
+        info.remark = copyOf(remark);
+        info.hash = copyOf(hash);
+        info.hashlow = copyOf(hashlow);
+        info.amount = amount;
+        info.timestamp = timestamp;
+        info.isSnapshot = isSnapshot;
+        if (snapshotInfo != null) {
+            info.snapshotInfo = new SnapshotInfo(snapshotInfo.getType(), copyOf(snapshotInfo.getData()));
+        }
+        return info;
+    }
+
+    private static byte[] copyOf(byte[] data) {
+        return data == null ? null : data.clone();
+    }
+
     @Override
     public String toString() {
         return "BlockInfo{" +
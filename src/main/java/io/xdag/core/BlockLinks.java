@@ -0,0 +1,147 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_IN;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_OUT;
+
+import java.nio.ByteOrder;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * 区块链接的紧凑视图, 顺序与 Block.getLinks() 一致(先输入后输出).
+ * hashlow 连续存放在同一个数组中, amount 为原始 long, 按下标遍历不需要创建 Address 和 BigInteger
+ */
+public final class BlockLinks {
+
+    public static final BlockLinks EMPTY = new BlockLinks(0);
+
+    private final byte[] hashLows;
+    /**
+     * hashLows 上的切片, 创建视图时一次建好, 遍历时不再分配
+     */
+    private final Bytes32[] slices;
+    private final long[] amounts;
+    private final boolean[] inputs;
+    private int size;
+
+    private BlockLinks(int capacity) {
+        this.hashLows = new byte[capacity * 32];
+        this.slices = new Bytes32[capacity];
+        this.amounts = new long[capacity];
+        this.inputs = new boolean[capacity];
+    }
+
+    /**
+     * 直接从512字节数据中读取链接字段
+     */
+    public static BlockLinks of(XdagBlock xdagBlock) {
+        Bytes data = xdagBlock.getData();
+        long type = data.getLong(8, ByteOrder.LITTLE_ENDIAN);
+        int count = 0;
+        for (int i = 1; i < XdagBlock.XDAG_BLOCK_FIELDS; i++) {
+            long t = type >> (i << 2) & 0xf;
+            if (t == XDAG_FIELD_IN.asByte() || t == XDAG_FIELD_OUT.asByte()) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            return EMPTY;
+        }
+        BlockLinks links = new BlockLinks(count);
+        links.addFields(data, type, XDAG_FIELD_IN);
+        links.addFields(data, type, XDAG_FIELD_OUT);
+        return links;
+    }
+
+    public static BlockLinks of(List<Address> inputs, List<Address> outputs) {
+        if (inputs.isEmpty() && outputs.isEmpty()) {
+            return EMPTY;
+        }
+        BlockLinks links = new BlockLinks(inputs.size() + outputs.size());
+        for (Address in : inputs) {
+            links.add(in, true);
+        }
+        for (Address out : outputs) {
+            links.add(out, false);
+        }
+        return links;
+    }
+
+    private void addFields(Bytes data, long type, XdagField.FieldType fieldType) {
+        byte[] raw = data.toArrayUnsafe();
+        for (int i = 1; i < XdagBlock.XDAG_BLOCK_FIELDS; i++) {
+            if ((type >> (i << 2) & 0xf) != fieldType.asByte()) {
+                continue;
+            }
+            // 字段内为小端: 前24字节是 hash[8..32] 的逆序, 后8字节是 amount
+            int offset = i * 32;
+            int dst = size * 32 + 8;
+            for (int k = 0; k < 24; k++) {
+                hashLows[dst + k] = raw[offset + 23 - k];
+            }
+            amounts[size] = data.getLong(offset + 24, ByteOrder.LITTLE_ENDIAN);
+            inputs[size] = fieldType == XDAG_FIELD_IN;
+            slices[size] = Bytes32.wrap(hashLows, size * 32);
+            size++;
+        }
+    }
+
+    private void add(Address address, boolean input) {
+        System.arraycopy(address.getHashLow().toArrayUnsafe(), 0, hashLows, size * 32, 32);
+        amounts[size] = address.getAmount().longValue();
+        inputs[size] = input;
+        slices[size] = Bytes32.wrap(hashLows, size * 32);
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return 共享底层数组的 hashlow 视图, 不要修改
+     */
+    public Bytes32 getHashLow(int i) {
+        return slices[i];
+    }
+
+    public long getAmount(int i) {
+        return amounts[i];
+    }
+
+    public boolean isInput(int i) {
+        return inputs[i];
+    }
+
+    public XdagField.FieldType getType(int i) {
+        return inputs[i] ? XDAG_FIELD_IN : XDAG_FIELD_OUT;
+    }
+}
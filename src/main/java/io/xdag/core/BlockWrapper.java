@@ -40,6 +40,10 @@ public class BlockWrapper implements Cloneable {
     private Node remoteNode;
     // NO_PARENT waiting time
     private long time;
+    /**
+     * 导入流水线预处理得到的区块副本(已解析, 已验签), 连接时使用一次
+     */
+    private Block prepared;
 
     public BlockWrapper(Block block, int ttl, Node remoteNode) {
         this.block = block;
@@ -24,6 +24,7 @@
 
 package io.xdag.core;
 
+import io.xdag.db.Page;
 import io.xdag.listener.Listener;
 
 import java.util.List;
@@ -40,6 +41,11 @@ public interface Blockchain {
 
     ImportResult tryToConnect(Block block);
 
+    /**
+     * 与链状态无关的输入签名校验, 可在连接前并行执行
+     */
+    void verifyInputs(Block block);
+
     Block createNewBlock(Map<Address, KeyPair> pairs, List<Address> to, boolean mining, String remark);
 
     Block getBlockByHash(Bytes32 hash, boolean isRaw);
@@ -74,7 +80,15 @@ public interface Blockchain {
     // 注册监听器
     void registerListener(Listener listener);
 
-    List<TxHistory> getBlockTxHistoryByAddress(Bytes32 addressHashlow);
+    /**
+     * 按时间从新到旧分页取出地址的交易历史
+     */
+    Page<TxHistory> getBlockTxHistoryByAddress(Bytes32 addressHashlow, byte[] cursor, int limit);
+
+    /**
+     * 裁剪 [startTime, horizonTime) 内已被主链引用区块的源数据, 与区块连接互斥
+     */
+    Page<Bytes32> pruneBlocks(long startTime, long horizonTime, byte[] cursor, int limit);
 
     XdagExtStats getXdagExtStats();
 }
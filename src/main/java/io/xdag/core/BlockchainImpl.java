@@ -30,11 +30,12 @@ import io.xdag.Kernel;
 import io.xdag.config.MainnetConfig;
 import io.xdag.core.XdagField.FieldType;
 import io.xdag.crypto.Hash;
+import io.xdag.crypto.PubKeyCache;
 import io.xdag.crypto.Sign;
 import io.xdag.db.DatabaseName;
-import io.xdag.db.rocksdb.RocksdbFactory;
 import io.xdag.db.BlockStore;
 import io.xdag.db.OrphanPool;
+import io.xdag.db.Page;
 import io.xdag.listener.BlockMessage;
 import io.xdag.listener.Listener;
 import io.xdag.listener.PretopMessage;
@@ -54,7 +55,6 @@ import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.bytes.MutableBytes;
 import org.apache.tuweni.bytes.MutableBytes32;
-import org.bouncycastle.math.ec.ECPoint;
 import org.bouncycastle.util.Arrays;
 import org.bouncycastle.util.encoders.Hex;
 import org.hyperledger.besu.crypto.KeyPair;
@@ -119,6 +119,10 @@ public class BlockchainImpl implements Blockchain {
     private final XdagExtStats xdagExtStats;
     @Getter
     private byte[] preSeed;
+    /**
+     * 当前批处理开始前的内存状态, 回滚时恢复; 只在持有 this 锁时访问
+     */
+    private MemUndo memUndo;
 
     public BlockchainImpl(Kernel kernel) {
         this.kernel = kernel;
@@ -142,7 +146,7 @@ public class BlockchainImpl implements Blockchain {
                 initSnapshotJ();
             } else {
                 this.snapshotChainStore = new SnapshotChainStoreImpl(
-                        new RocksdbFactory(kernel.getConfig()).getDB(DatabaseName.SNAPSHOT));
+                        kernel.getDbFactory().getDB(DatabaseName.SNAPSHOT));
                 initSnapshot();
             }
 
@@ -259,7 +263,7 @@ public class BlockchainImpl implements Blockchain {
             onNewTxHistory(Bytes32.wrap(blockInfo.getHashlow()),Bytes32.wrap(blockInfo.getHashlow()),
                     FieldType.XDAG_FIELD_SNAPSHOT,BigInteger.valueOf(blockInfo.getAmount()),
                     kernel.getConfig().getSnapshotSpec().getSnapshotTime(),0,
-                    blockInfo.getRemark());
+                    blockInfo.getRemark(), (blockInfo.flags & BI_APPLIED) != 0);
             blockStore.saveBlockInfo(blockInfo);
             if (snapshotUnit.getKeyIndex() > -1) {
                 blockStore.saveOurBlock(snapshotUnit.getKeyIndex(), blockInfo.getHashlow());
@@ -285,216 +289,259 @@ public class BlockchainImpl implements Blockchain {
      */
     @Override
     public synchronized ImportResult tryToConnect(Block block) {
+        // everything the import writes is committed together
+        beginBatch();
+        try {
+            ImportResult result = connect(block);
+            commitBatch();
+            return result;
+        } catch (Throwable e) {
+            rollbackBatch();
+            log.error(e.getMessage(), e);
+            return ImportResult.ERROR;
+        }
+    }
 
-        // TODO: if current height is snapshot height, we need change logic to process new block
+    private ImportResult connect(Block block) {
 
-        try {
-            ImportResult result = ImportResult.IMPORTED_NOT_BEST;
+        // TODO: if current height is snapshot height, we need change logic to process new block
 
-            long type = block.getType() & 0xf;
-            if (kernel.getConfig() instanceof MainnetConfig) {
-                if (type != XDAG_FIELD_HEAD.asByte()) {
-                    result = ImportResult.ERROR;
-                    result.setErrorInfo("Block type error, is not a mainnet block");
-                    return result;
-                }
-            } else {
-                if (type != XDAG_FIELD_HEAD_TEST.asByte()) {
-                    result = ImportResult.ERROR;
-                    result.setErrorInfo("Block type error, is not a testnet block");
-                    return result;
-                }
-            }
+        ImportResult result = ImportResult.IMPORTED_NOT_BEST;
 
-            if (block.getTimestamp() > (XdagTime.getCurrentTimestamp() + MAIN_CHAIN_PERIOD / 4)
-                    || block.getTimestamp() < kernel.getConfig().getXdagEra()
-//                    || (limit && timestamp - tmpNodeBlock.time > limit)
-            ) {
-                result = ImportResult.INVALID_BLOCK;
-                result.setErrorInfo("Block's time is illegal");
+        long type = block.getType() & 0xf;
+        if (kernel.getConfig() instanceof MainnetConfig) {
+            if (type != XDAG_FIELD_HEAD.asByte()) {
+                result = ImportResult.ERROR;
+                result.setErrorInfo("Block type error, is not a mainnet block");
                 return result;
             }
-
-            if (isExist(block.getHashLow())) {
-                return ImportResult.EXIST;
+        } else {
+            if (type != XDAG_FIELD_HEAD_TEST.asByte()) {
+                result = ImportResult.ERROR;
+                result.setErrorInfo("Block type error, is not a testnet block");
+                return result;
             }
+        }
 
-            if (isExistInMem(block.getHashLow())){
-                return ImportResult.IN_MEM;
-            }
+        if (block.getTimestamp() > (XdagTime.getCurrentTimestamp() + MAIN_CHAIN_PERIOD / 4)
+                || block.getTimestamp() < kernel.getConfig().getXdagEra()
+//                    || (limit && timestamp - tmpNodeBlock.time > limit)
+        ) {
+            result = ImportResult.INVALID_BLOCK;
+            result.setErrorInfo("Block's time is illegal");
+            return result;
+        }
 
-            if (isExtraBlock(block)) {
-                updateBlockFlag(block, BI_EXTRA, true);
-            }
+        if (isExist(block.getHashLow())) {
+            return ImportResult.EXIST;
+        }
 
-            List<Address> all = block.getLinks().stream().distinct().toList();
-            // 检查区块的引用区块是否都存在,对所有input和output放入block（可能在pending或db中取出
-            for (Address ref : all) {
-                if (ref != null) {
-                    Block refBlock = getBlockByHash(ref.getHashLow(), false);
-                    if (refBlock == null) {
-//                        log.debug("No Parent " + Hex.toHexString(ref.getHashLow()));
-                        result = ImportResult.NO_PARENT;
-                        result.setHashlow(ref.getHashLow());
-                        result.setErrorInfo("Block have no parent for " + result.getHashlow().toHexString());
-                        return result;
-                    } else {
-                        // 链接块的时间需要小于该块时间，否则为不合法区块
-                        if (refBlock.getTimestamp() >= block.getTimestamp()) {
-                            result = ImportResult.INVALID_BLOCK;
-                            result.setHashlow(refBlock.getHashLow());
-                            result.setErrorInfo("Ref block's time >= block's time");
-                            return result;
-                        }
+        if (isExistInMem(block.getHashLow())){
+            return ImportResult.IN_MEM;
+        }
 
-                    }
+        if (isExtraBlock(block)) {
+            updateBlockFlag(block, BI_EXTRA, true);
+        }
 
+        BlockLinks all = block.getLinkView();
+        // 检查区块的引用区块是否都存在,对所有input和output放入block（可能在pending或db中取出
+        for (int i = 0; i < all.size(); i++) {
+            Bytes32 ref = all.getHashLow(i);
+            Block refBlock = getBlockByHash(ref, false);
+            if (refBlock == null) {
+//                    log.debug("No Parent " + Hex.toHexString(ref.getHashLow()));
+                result = ImportResult.NO_PARENT;
+                result.setHashlow(ref.mutableCopy());
+                result.setErrorInfo("Block have no parent for " + result.getHashlow().toHexString());
+                return result;
+            } else {
+                // 链接块的时间需要小于该块时间，否则为不合法区块
+                if (refBlock.getTimestamp() >= block.getTimestamp()) {
+                    result = ImportResult.INVALID_BLOCK;
+                    result.setHashlow(refBlock.getHashLow());
+                    result.setErrorInfo("Ref block's time >= block's time");
+                    return result;
                 }
 
-                // TODO: 如果是交易块 不设置extra
-                if (ref != null && !ref.getAmount().equals(BigInteger.ZERO)) {
-                    updateBlockFlag(block, BI_EXTRA, false);
-                }
-            }
-            // 检查区块合法性 检查input是否能使用
-            if (!canUseInput(block)) {
-                result = ImportResult.INVALID_BLOCK;
-                result.setHashlow(block.getHashLow());
-                result.setErrorInfo("Block's input can't be used");
-                return ImportResult.INVALID_BLOCK;
             }
 
-            int id = 0;
-            // remove links
-            for (Address ref : all) {
-                removeOrphan(ref.getHashLow(),
-                        (block.getInfo().flags & BI_EXTRA) != 0
-                                ? OrphanRemoveActions.ORPHAN_REMOVE_EXTRA
-                                : OrphanRemoveActions.ORPHAN_REMOVE_NORMAL);
-                // TODO:add backref
-                if (!ref.getAmount().equals(BigInteger.ZERO)) {
-                    if (ref.getType().equals(FieldType.XDAG_FIELD_IN)) {
-                        onNewTxHistory(ref.getHashLow(), block.getHashLow(), FieldType.XDAG_FIELD_OUT, ref.getAmount(),
-                                block.getTimestamp(), id, block.getInfo().getRemark());
-                    } else {
-                        onNewTxHistory(ref.getHashLow(), block.getHashLow(), FieldType.XDAG_FIELD_IN, ref.getAmount(),
-                                block.getTimestamp(), id, block.getInfo().getRemark());
-                    }
-                }
-                id++;
+            // TODO: 如果是交易块 不设置extra
+            if (all.getAmount(i) != 0) {
+                updateBlockFlag(block, BI_EXTRA, false);
             }
-
-            // 检查当前主链
-            checkNewMain();
-
-            // 如果是自己的区块
-            if (checkMineAndAdd(block)) {
-                log.debug("A block hash:" + block.getHashLow().toHexString() + " become mine");
-                updateBlockFlag(block, BI_OURS, true);
+        }
+        // 检查区块合法性 检查input是否能使用
+        if (!canUseInput(block)) {
+            result = ImportResult.INVALID_BLOCK;
+            result.setHashlow(block.getHashLow());
+            result.setErrorInfo("Block's input can't be used");
+            return ImportResult.INVALID_BLOCK;
+        }
+
+        // remove links
+        for (int id = 0; id < all.size(); id++) {
+            Bytes32 ref = all.getHashLow(id);
+            removeOrphan(ref,
+                    (block.getInfo().flags & BI_EXTRA) != 0
+                            ? OrphanRemoveActions.ORPHAN_REMOVE_EXTRA
+                            : OrphanRemoveActions.ORPHAN_REMOVE_NORMAL);
+            // TODO:add backref
+            if (all.getAmount(id) != 0) {
+                BigInteger amount = BigInteger.valueOf(all.getAmount(id));
+                if (all.isInput(id)) {
+                    onNewTxHistory(ref, block.getHashLow(), FieldType.XDAG_FIELD_OUT, amount,
+                            block.getTimestamp(), id, block.getInfo().getRemark(), false);
+                } else {
+                    onNewTxHistory(ref, block.getHashLow(), FieldType.XDAG_FIELD_IN, amount,
+                            block.getTimestamp(), id, block.getInfo().getRemark(), false);
+                }
             }
+        }
 
-            // 更新区块难度和maxDiffLink
-            BigInteger cuDiff = calculateCurrentBlockDiff(block);
-            BigInteger diff = calculateBlockDiff(block,cuDiff);
-
-            // 更新preTop
-            setPreTop(block, diff);
-            setPreTop(getBlockByHash(xdagTopStatus.getTop() == null ? null : Bytes32.wrap(xdagTopStatus.getTop()),
-                    false), xdagTopStatus.getTopDiff());
-
-            // 通知XdagPoW 新pretop产生
-            onNewPretop();
-
-            // TODO:extra 处理
-            processExtraBlock();
-
-            // 根据难度更新主链
-            // 判断难度是否是比当前最大，并以此更新topMainChain
-            if (block.getInfo().getDifficulty().compareTo(xdagTopStatus.getTopDiff()) > 0) {
-                // 切换主链 fork
-                long currentHeight = xdagStats.nmain;
-                // 找到共同祖先blockref
-                Block blockRef = findAncestor(block, isSyncFixFork(xdagStats.nmain));
-                // 将主链回退到blockRef
-                unWindMain(blockRef);
-                // 更新新的链
-                updateNewChain(block, isSyncFixFork(xdagStats.nmain));
-                // 发生回退
-                if (currentHeight - xdagStats.nmain > 1) {
-                    log.info("XDAG:Before unwind, height = {}, After unwind, height = {}, unwind number = {}",
-                            currentHeight, xdagStats.nmain, currentHeight - xdagStats.nmain);
-                }
-                xdagTopStatus.setTopDiff(block.getInfo().getDifficulty());
-                xdagTopStatus.setTop(block.getHashLow().toArray());
-                result = ImportResult.IMPORTED_BEST;
-                xdagStats.updateMaxDiff(xdagTopStatus.getTopDiff());
-                xdagStats.updateDiff(xdagTopStatus.getTopDiff());
+        // 检查当前主链
+        checkNewMain();
+
+        // 如果是自己的区块
+        if (checkMineAndAdd(block)) {
+            log.debug("A block hash:" + block.getHashLow().toHexString() + " become mine");
+            updateBlockFlag(block, BI_OURS, true);
+        }
+
+        // 更新区块难度和maxDiffLink
+        BigInteger cuDiff = calculateCurrentBlockDiff(block);
+        BigInteger diff = calculateBlockDiff(block,cuDiff);
+
+        // 更新preTop
+        setPreTop(block, diff);
+        setPreTop(getBlockByHash(xdagTopStatus.getTop() == null ? null : Bytes32.wrap(xdagTopStatus.getTop()),
+                false), xdagTopStatus.getTopDiff());
+
+        // 通知XdagPoW 新pretop产生
+        onNewPretop();
+
+        // TODO:extra 处理
+        processExtraBlock();
+
+        // 根据难度更新主链
+        // 判断难度是否是比当前最大，并以此更新topMainChain
+        if (block.getInfo().getDifficulty().compareTo(xdagTopStatus.getTopDiff()) > 0) {
+            // 切换主链 fork
+            long currentHeight = xdagStats.nmain;
+            // 找到共同祖先blockref
+            Block blockRef = findAncestor(block, isSyncFixFork(xdagStats.nmain));
+            // 将主链回退到blockRef
+            unWindMain(blockRef);
+            // 更新新的链
+            updateNewChain(block, isSyncFixFork(xdagStats.nmain));
+            // 发生回退
+            if (currentHeight - xdagStats.nmain > 1) {
+                log.info("XDAG:Before unwind, height = {}, After unwind, height = {}, unwind number = {}",
+                        currentHeight, xdagStats.nmain, currentHeight - xdagStats.nmain);
             }
+            xdagTopStatus.setTopDiff(block.getInfo().getDifficulty());
+            xdagTopStatus.setTop(block.getHashLow().toArray());
+            result = ImportResult.IMPORTED_BEST;
+            xdagStats.updateMaxDiff(xdagTopStatus.getTopDiff());
+            xdagStats.updateDiff(xdagTopStatus.getTopDiff());
+        }
 
-            // 新增区块
-            xdagStats.nblocks++;
-            xdagStats.totalnblocks = Math.max(xdagStats.nblocks, xdagStats.totalnblocks);
+        // 新增区块
+        xdagStats.nblocks++;
+        xdagStats.totalnblocks = Math.max(xdagStats.nblocks, xdagStats.totalnblocks);
 //            if (xdagStats.getTotalnblocks() < xdagStats.getNblocks()) {
 //                xdagStats.setTotalnblocks(xdagStats.getNblocks());
 //            }
 
-            //orphan (hash , block)
+        //orphan (hash , block)
 //            log.debug("======New block waiting to link======,{}",Hex.toHexString(block.getHashLow()));
-            if ((block.getInfo().flags & BI_EXTRA) != 0) {
+        if ((block.getInfo().flags & BI_EXTRA) != 0) {
 //                log.debug("block:{} is extra, put it into memOrphanPool waiting to link.", Hex.toHexString(block.getHashLow()));
-                memOrphanPool.put(block.getHashLow(), block);
-                xdagStats.nextra++;
+            rememberOrphan(block.getHashLow());
+            memOrphanPool.put(block.getHashLow(), block);
+            xdagStats.nextra++;
 //                 TODO：设置为返回 IMPORTED_EXTRA
 //                result = ImportResult.IMPORTED_EXTRA;
-            } else {
+        } else {
 //                log.debug("block:{} is extra, put it into orphanPool waiting to link.", Hex.toHexString(block.getHashLow()));
-                saveBlock(block);
-                orphanPool.addOrphan(block);
-                xdagStats.nnoref++;
-            }
-            blockStore.saveXdagStatus(xdagStats);
+            saveBlock(block);
+            orphanPool.addOrphan(block);
+            xdagStats.nnoref++;
+        }
+        blockStore.saveXdagStatus(xdagStats);
 
-            // 如果区块输入不为0说明是交易块
-            if (block.getInputs().size() != 0) {
-                if ((block.getInfo().getFlags() & BI_OURS) != 0) {
-                    log.info("XDAG:pool transaction(reward). block hash:{}", block.getHash().toHexString());
-                }
+        // 如果区块输入不为0说明是交易块
+        if (block.getInputs().size() != 0) {
+            if ((block.getInfo().getFlags() & BI_OURS) != 0) {
+                log.info("XDAG:pool transaction(reward). block hash:{}", block.getHash().toHexString());
             }
+        }
 
-            //把过去四个小时每个时间片的diff都记录下来，后面会用这些diff去转换出一个全局hashrate
-            int i = (int)(XdagTime.getEpoch(block.getTimestamp())& (HASH_RATE_LAST_MAX_TIME - 1));
-            if(XdagTime.getEpoch(block.getTimestamp())>XdagTime.getEpoch(xdagExtStats.getHashrate_last_time())){
-                xdagExtStats.getHashRateTotal()[i] = BigInteger.ZERO;
-                xdagExtStats.getHashRateOurs()[i] = BigInteger.ZERO;
-                xdagExtStats.setHashrate_last_time(block.getTimestamp());
-            }
+        //把过去四个小时每个时间片的diff都记录下来，后面会用这些diff去转换出一个全局hashrate
+        int i = (int)(XdagTime.getEpoch(block.getTimestamp())& (HASH_RATE_LAST_MAX_TIME - 1));
+        if(XdagTime.getEpoch(block.getTimestamp())>XdagTime.getEpoch(xdagExtStats.getHashrate_last_time())){
+            xdagExtStats.getHashRateTotal()[i] = BigInteger.ZERO;
+            xdagExtStats.getHashRateOurs()[i] = BigInteger.ZERO;
+            xdagExtStats.setHashrate_last_time(block.getTimestamp());
+        }
 
-            if(cuDiff.compareTo(xdagExtStats.getHashRateTotal()[i])>0){
-                xdagExtStats.getHashRateTotal()[i] = cuDiff;
-            }
+        if(cuDiff.compareTo(xdagExtStats.getHashRateTotal()[i])>0){
+            xdagExtStats.getHashRateTotal()[i] = cuDiff;
+        }
 
-            if((block.getInfo().getFlags()&BI_OURS)!=0
-                    &&cuDiff.compareTo(xdagExtStats.getHashRateOurs()[i])>0){
-                xdagExtStats.getHashRateOurs()[i] = cuDiff;
+        if((block.getInfo().getFlags()&BI_OURS)!=0
+                &&cuDiff.compareTo(xdagExtStats.getHashRateOurs()[i])>0){
+            xdagExtStats.getHashRateOurs()[i] = cuDiff;
 
-            }
+        }
 
-            return result;
-        } catch (Throwable e) {
-            log.error(e.getMessage(), e);
-            return ImportResult.ERROR;
+        return result;
+    }
+
+    private void beginBatch() {
+        memUndo = new MemUndo(xdagStats, xdagTopStatus, xdagExtStats);
+        blockStore.beginBatch();
+        orphanPool.beginBatch();
+    }
+
+    private void commitBatch() {
+        boolean sync = kernel.getConfig().getNodeSpec().isStoreSyncWrite();
+        blockStore.commitBatch(sync);
+        orphanPool.commitBatch(sync);
+        memUndo = null;
+    }
+
+    private void rollbackBatch() {
+        orphanPool.rollbackBatch();
+        blockStore.rollbackBatch();
+        if (memUndo != null) {
+            memUndo.restore(xdagStats, xdagTopStatus, xdagExtStats, memOrphanPool, memOurBlocks);
+            memUndo = null;
         }
     }
 
 
     public void onNewTxHistory(Bytes32 addressHashlow, Bytes32 txHashlow, XdagField.FieldType type,
-            BigInteger amount, long time, int id, byte[] remark) {
-        blockStore.saveTxHistory(addressHashlow, txHashlow, type, amount, time, id, remark);
+            BigInteger amount, long time, int id, byte[] remark, boolean applied) {
+        blockStore.saveTxHistory(addressHashlow, txHashlow, type, amount, time, id, remark, applied);
     }
 
+    /**
+     * 交易区块执行或撤销后更新它写入的交易历史, 条件与 tryToConnect 中写入时一致
+     */
+    private void updateTxHistoryApplied(Block block, boolean applied) {
+        BlockLinks links = block.getLinkView();
+        for (int id = 0; id < links.size(); id++) {
+            if (links.getAmount(id) != 0) {
+                blockStore.updateTxHistoryApplied(links.getHashLow(id), block.getHashLow(), block.getTimestamp(), id,
+                        applied);
+            }
+        }
+    }
 
-    public List<TxHistory> getBlockTxHistoryByAddress(Bytes32 addressHashlow) {
-        return blockStore.getTxHistoryByAddress(addressHashlow);
+    @Override
+    public Page<TxHistory> getBlockTxHistoryByAddress(Bytes32 addressHashlow, byte[] cursor, int limit) {
+        return blockStore.getTxHistoryByAddress(addressHashlow, cursor, limit);
     }
 
     /**
@@ -660,21 +707,21 @@ public class BlockchainImpl implements Blockchain {
         // 设置为已处理
         updateBlockFlag(block, BI_MAIN_REF, true);
 
-        List<Address> links = block.getLinks();
-        if (links == null || links.size() == 0) {
+        BlockLinks links = block.getLinkView();
+        if (links.isEmpty()) {
             updateBlockFlag(block, BI_APPLIED, true);
             return UnsignedLong.ZERO;
         }
 
-        for (Address link : links) {
+        for (int i = 0; i < links.size(); i++) {
             // 预处理时不需要拿回全部数据
-            Block ref = getBlockByHash(link.getHashLow(), false);
+            Block ref = getBlockByHash(links.getHashLow(i), false);
             UnsignedLong ret;
             // 如果处理过
             if ((ref.getInfo().flags & BI_MAIN_REF) != 0) {
                 ret = UnsignedLong.ZERO.minus(UnsignedLong.ONE);
             } else {
-                ref = getBlockByHash(link.getHashLow(), true);
+                ref = getBlockByHash(links.getHashLow(i), true);
                 ret = applyBlock(ref);
             }
             if (ret.compareTo(UnsignedLong.ZERO.minus(UnsignedLong.ONE)) == 0) {
@@ -690,32 +737,33 @@ public class BlockchainImpl implements Blockchain {
             }
         }
 
-        for (Address link : links) {
-            if (link.getType() == XdagField.FieldType.XDAG_FIELD_IN) {
-                Block ref = getBlockByHash(link.getHashLow(), false);
+        for (int i = 0; i < links.size(); i++) {
+            long amount = links.getAmount(i);
+            if (links.isInput(i)) {
+                Block ref = getBlockByHash(links.getHashLow(i), false);
 
-                if (compareAmountTo(ref.getInfo().getAmount(),link.getAmount().longValue())<0) {
+                if (compareAmountTo(ref.getInfo().getAmount(), amount) < 0) {
 //                if (ref.getInfo().getAmount() < link.getAmount().longValue()) {
                     log.debug("This input ref doesn't have enough amount,hash:{},amount:{},need:{}",
                             Hex.toHexString(ref.getInfo().getHashlow()), ref.getInfo().getAmount(),
-                            link.getAmount().longValue());
+                            amount);
                     return UnsignedLong.ZERO;
                 }
 
-                if (sumIn.plus(long2UnsignedLong(link.getAmount().longValue())).compareTo(sumIn) < 0) {
+                if (sumIn.plus(long2UnsignedLong(amount)).compareTo(sumIn) < 0) {
 //                if (sumIn.plus(UnsignedLong.valueOf(link.getAmount())).longValue() < sumIn.longValue()) {
                     log.debug("This input ref's amount less than 0");
                     return UnsignedLong.ZERO;
                 }
-                sumIn = sumIn.plus(long2UnsignedLong(link.getAmount().longValue()));
+                sumIn = sumIn.plus(long2UnsignedLong(amount));
 //                sumIn = sumIn.plus(UnsignedLong.valueOf(link.getAmount()));
             } else {
-                if (sumOut.plus(long2UnsignedLong(link.getAmount().longValue())).compareTo(sumOut) < 0) {
+                if (sumOut.plus(long2UnsignedLong(amount)).compareTo(sumOut) < 0) {
 //                if (sumOut.plus(UnsignedLong.valueOf(link.getAmount())).longValue() < sumOut.longValue()) {
                     log.debug("This output ref's amount less than 0");
                     return UnsignedLong.ZERO;
                 }
-                sumOut = sumOut.plus(long2UnsignedLong(link.getAmount().longValue()));
+                sumOut = sumOut.plus(long2UnsignedLong(amount));
 //                sumOut = sumOut.plus(UnsignedLong.valueOf(link.getAmount()));
             }
         }
@@ -729,12 +777,12 @@ public class BlockchainImpl implements Blockchain {
             return UnsignedLong.ZERO;
         }
 
-        for (Address link : links) {
-            Block ref = getBlockByHash(link.getHashLow(), false);
-            if (link.getType() == XdagField.FieldType.XDAG_FIELD_IN) {
-                acceptAmount(ref, UnsignedLong.ZERO.minus(long2UnsignedLong(link.getAmount().longValue())));
+        for (int i = 0; i < links.size(); i++) {
+            Block ref = getBlockByHash(links.getHashLow(i), false);
+            if (links.isInput(i)) {
+                acceptAmount(ref, UnsignedLong.ZERO.minus(long2UnsignedLong(links.getAmount(i))));
             } else {
-                acceptAmount(ref, long2UnsignedLong(link.getAmount().longValue()));
+                acceptAmount(ref, long2UnsignedLong(links.getAmount(i)));
             }
 //            blockStore.saveBlockInfo(ref.getInfo()); // TODO：acceptAmount时已经保存了 这里还需要保存吗
         }
@@ -743,32 +791,35 @@ public class BlockchainImpl implements Blockchain {
         UnsignedLong remain = sumIn.minus(sumOut);
         acceptAmount(block, remain);
         updateBlockFlag(block, BI_APPLIED, true);
+        updateTxHistoryApplied(block, true);
         return UnsignedLong.ZERO;
     }
 
     // TODO: unapply block which in snapshot
     public UnsignedLong unApplyBlock(Block block) {
-        List<Address> links = block.getLinks();
+        BlockLinks links = block.getLinkView();
         if ((block.getInfo().flags & BI_APPLIED) != 0) {
             UnsignedLong sum = UnsignedLong.ZERO;
-            for (Address link : links) {
-                Block ref = getBlockByHash(link.getHashLow(), false);
-                if (link.getType() == XdagField.FieldType.XDAG_FIELD_IN) {
-                    acceptAmount(ref, long2UnsignedLong(link.getAmount().longValue()));
-                    sum = sum.minus(long2UnsignedLong(link.getAmount().longValue()));
+            for (int i = 0; i < links.size(); i++) {
+                Block ref = getBlockByHash(links.getHashLow(i), false);
+                UnsignedLong amount = long2UnsignedLong(links.getAmount(i));
+                if (links.isInput(i)) {
+                    acceptAmount(ref, amount);
+                    sum = sum.minus(amount);
                 } else {
-                    acceptAmount(ref, UnsignedLong.ZERO.minus(long2UnsignedLong(link.getAmount().longValue())));
-                    sum = sum.plus(long2UnsignedLong(link.getAmount().longValue()));
+                    acceptAmount(ref, UnsignedLong.ZERO.minus(amount));
+                    sum = sum.plus(amount);
                 }
             }
             acceptAmount(block, sum);
             updateBlockFlag(block, BI_APPLIED, false);
+            updateTxHistoryApplied(block, false);
         }
         updateBlockFlag(block, BI_MAIN_REF, false);
         updateBlockRef(block, null);
 
-        for (Address link : links) {
-            Block ref = getBlockByHash(link.getHashLow(), false);
+        for (int i = 0; i < links.size(); i++) {
+            Block ref = getBlockByHash(links.getHashLow(i), false);
             if (ref.getInfo().getRef() != null
                     && equalBytes(ref.getInfo().getRef(), block.getHashLow().toArray())
                     && ((ref.getInfo().flags & BI_MAIN_REF) != 0)) {
@@ -1002,18 +1053,19 @@ public class BlockchainImpl implements Blockchain {
         block.getInfo().setDifficulty(cuDiff);
 
         BigInteger maxDiff = cuDiff;
-        Address maxDiffLink = null;
+        Bytes32 maxDiffLink = null;
 
         // 临时区块
         Block tmpBlock;
-        if (block.getLinks().size() == 0) {
+        BlockLinks links = block.getLinkView();
+        if (links.isEmpty()) {
             return cuDiff;
         }
 
         // 遍历所有link 找maxLink
-        List<Address> links = block.getLinks();
-        for (Address ref : links) {
-            Block refBlock = getBlockByHash(ref.getHashLow(), false);
+        for (int i = 0; i < links.size(); i++) {
+            Bytes32 ref = links.getHashLow(i);
+            Block refBlock = getBlockByHash(ref, false);
             if (refBlock == null) {
                 break;
             }
@@ -1058,7 +1110,7 @@ public class BlockchainImpl implements Blockchain {
         block.getInfo().setDifficulty(maxDiff);
 
         if (maxDiffLink != null) {
-            block.getInfo().setMaxDiffLink(maxDiffLink.getHashLow().toArray());
+            block.getInfo().setMaxDiffLink(maxDiffLink.toArray());
         }
         return maxDiff;
     }
@@ -1087,16 +1139,23 @@ public class BlockchainImpl implements Blockchain {
 
     // ADD: 新版本-通过高度获取区块
     public Block getBlockByHeightNew(long height) {
+        if (height > xdagStats.nmain || height < minMainHeight()) {
+            return null;
+        }
+        return blockStore.getBlockByHeight(height);
+    }
+
+    /**
+     * 可以按高度查询的最低主块高度
+     */
+    private long minMainHeight() {
         // TODO: if snapshto enabled, need height > snapshotHeight - 128
-        if (kernel.getConfig().getSnapshotSpec().isSnapshotEnabled() && (height < snapshotHeight - 128)
+        if (kernel.getConfig().getSnapshotSpec().isSnapshotEnabled()
                 && !kernel.getConfig().getSnapshotSpec().isSnapshotJ()) {
-            return null;
+            return Math.max(1, snapshotHeight - 128);
         }
         // 补充高度低于0时不返回
-        if (height > xdagStats.nmain || height <= 0) {
-            return null;
-        }
-        return blockStore.getBlockByHeight(height);
+        return 1;
     }
 
     @Override
@@ -1141,16 +1200,16 @@ public class BlockchainImpl implements Blockchain {
                 // 那removeBlockInfo就是完整的
                 // 从MemOrphanPool中去除
                 Bytes key = b.getHashLow();
-                Block removeBlockRaw = memOrphanPool.get(key);
-                memOrphanPool.remove(key);
+                rememberOrphan(key);
+                Block removeBlockRaw = memOrphanPool.remove(key);
                 if (action != OrphanRemoveActions.ORPHAN_REMOVE_REUSE) {
                     // 将区块保存
                     saveBlock(removeBlockRaw);
                     // 移除所有EXTRA块链接的块
                     if (removeBlockRaw != null) {
-                        List<Address> all = removeBlockRaw.getLinks();
-                        for (Address addr : all) {
-                            removeOrphan(addr.getHashLow(), OrphanRemoveActions.ORPHAN_REMOVE_NORMAL);
+                        BlockLinks all = removeBlockRaw.getLinkView();
+                        for (int i = 0; i < all.size(); i++) {
+                            removeOrphan(all.getHashLow(i), OrphanRemoveActions.ORPHAN_REMOVE_NORMAL);
                         }
                     }
                 }
@@ -1207,6 +1266,7 @@ public class BlockchainImpl implements Blockchain {
                 blockStore.saveXdagStatus(xdagStats);
             }
             addOurBlock(memOurBlocks.get(block.getHash()), block);
+            rememberOurBlock(block.getHash());
             memOurBlocks.remove(block.getHash());
         }
 
@@ -1228,22 +1288,62 @@ public class BlockchainImpl implements Blockchain {
     }
 
     public boolean canUseInput(Block block) {
-        List<SECPPublicKey> keys = block.verifiedKeys();
         List<Address> inputs = block.getInputs();
         if (inputs == null || inputs.size() == 0) {
             return true;
         }
+        // 导入流水线中通常已提前验签, 这里直接取缓存结果
+        List<SECPPublicKey> keys = block.verifiedKeys();
         for (Address in : inputs) {
-            if (!verifySignature(in, keys)) {
+            SECPPublicKey key = block.getVerifiedInput(in.getHashLow());
+            Block inBlock = key == null ? null : getBlockByHash(in.getHashLow(), false);
+            if (inBlock != null && inBlock.getInfo() != null) {
+                saveInputKey(inBlock.getInfo(), key);
+            } else if (!verifySignature(in, keys)) {
                 return false;
             }
         }
         return true;
     }
 
+    /**
+     * 在连接锁之外提前校验输入区块的输出签名, 结果缓存在区块中供 canUseInput 使用.
+     * 只处理已落库的非快照输入, 其余情况留给 canUseInput
+     */
+    @Override
+    public void verifyInputs(Block block) {
+        List<Address> inputs = block.getInputs();
+        if (inputs.isEmpty()) {
+            return;
+        }
+        try {
+            List<SECPPublicKey> keys = block.verifiedKeys();
+            for (Address in : inputs) {
+                if (block.getVerifiedInput(in.getHashLow()) != null) {
+                    continue;
+                }
+                Block inBlock = blockStore.getBlockInfoByHash(in.getHashLow());
+                if (inBlock == null || inBlock.getInfo().isSnapshot()) {
+                    continue;
+                }
+                inBlock = blockStore.getBlockByHash(in.getHashLow(), true);
+                SECPPublicKey key = findSigner(inBlock.getSubRawData(inBlock.getOutsigIndex() - 2),
+                        inBlock.getOutsig(), keys);
+                if (key != null) {
+                    block.setVerifiedInput(in.getHashLow(), key);
+                }
+            }
+        } catch (Exception e) {
+            log.debug("verify inputs of {} failed: {}", block.getHashLow(), e.getMessage());
+        }
+    }
+
     private boolean verifySignature(Address in, List<SECPPublicKey> publicKeys) {
         // TODO: 判断in是不是snapshot中的块, 使用isRaw为false的方式获取blockinfo
         Block block = getBlockByHash(in.getHashLow(), false);
+        if (block == null || block.getInfo() == null) {
+            return false;
+        }
         boolean isSnapshotBlock = block.getInfo().isSnapshot();
         if (isSnapshotBlock) {
             return verifySignatureFromSnapshot(in, publicKeys);
@@ -1260,13 +1360,12 @@ public class BlockchainImpl implements Blockchain {
     private boolean verifySignatureFromSnapshot(Address in, List<SECPPublicKey> publicKeys) {
         BlockInfo blockInfo = blockStore.getBlockInfoByHash(in.getHashLow()).getInfo();
         SnapshotInfo snapshotInfo = blockInfo.getSnapshotInfo();
+        // 快照中缺少验签数据
+        if (snapshotInfo == null) {
+            return false;
+        }
         if (snapshotInfo.getType()) {
-            BigInteger xBn = Bytes.wrap(snapshotInfo.getData()).slice(1, 32).toUnsignedBigInteger();
-            boolean yBit = snapshotInfo.getData()[0] == 0x03;
-            ECPoint point = Sign.decompressKey(xBn, yBit);
-            // 解析成非压缩去前缀 公钥
-            byte[] encodePub = point.getEncoded(false);
-            SECPPublicKey targetPublicKey = SECPPublicKey.create(new BigInteger(1, java.util.Arrays.copyOfRange(encodePub, 1, encodePub.length)), Sign.CURVE_NAME);
+            SECPPublicKey targetPublicKey = PubKeyCache.decompress(Bytes.wrap(snapshotInfo.getData()).slice(0, 33));
             for (SECPPublicKey publicKey : publicKeys) {
                 if (publicKey.equals(targetPublicKey)) {
                     return true;
@@ -1287,44 +1386,51 @@ public class BlockchainImpl implements Blockchain {
     }
 
     private boolean verifySignature(MutableBytes subdata, SECPSignature sig, List<SECPPublicKey> publicKeys, BlockInfo blockInfo) {
+        SECPPublicKey publicKey = findSigner(subdata, sig, publicKeys);
+        if (publicKey == null) {
+            return false;
+        }
+        saveInputKey(blockInfo, publicKey);
+        return true;
+    }
+
+    /**
+     * @return publicKeys 中签出 sig 的key, 没有返回 null
+     */
+    private SECPPublicKey findSigner(MutableBytes subdata, SECPSignature sig, List<SECPPublicKey> publicKeys) {
         for (SECPPublicKey publicKey : publicKeys) {
-            byte[] publicKeyBytes = publicKey.asEcPoint(Sign.CURVE).getEncoded(true);
-            Bytes digest = Bytes.wrap(subdata, Bytes.wrap(publicKeyBytes));
+            Bytes digest = Bytes.wrap(subdata, PubKeyCache.compress(publicKey));
 //            log.debug("verify encoded:{}", Hex.toHexString(digest));
             Bytes32 hash = Hash.hashTwice(digest);
             if (Sign.SECP256K1.verify(hash, sig, publicKey)) {
-                SnapshotInfo snapshotInfo = blockInfo.getSnapshotInfo();
-                byte[] pubkeyBytes = publicKey.asEcPoint(Sign.CURVE).getEncoded(true);
-                if (snapshotInfo != null) {
-                    snapshotInfo.setData(pubkeyBytes);
-                    snapshotInfo.setType(true);
-                } else {
-                    blockInfo.setSnapshotInfo(new SnapshotInfo(true, pubkeyBytes));
-                }
-                blockStore.saveBlockInfo(blockInfo);
-                return true;
+                return publicKey;
             }
         }
-        return false;
+        return null;
+    }
+
+    /**
+     * 记录输入区块的公钥
+     */
+    private void saveInputKey(BlockInfo blockInfo, SECPPublicKey publicKey) {
+        SnapshotInfo snapshotInfo = blockInfo.getSnapshotInfo();
+        byte[] pubkeyBytes = PubKeyCache.compress(publicKey).toArray();
+        if (snapshotInfo != null) {
+            snapshotInfo.setData(pubkeyBytes);
+            snapshotInfo.setType(true);
+        } else {
+            blockInfo.setSnapshotInfo(new SnapshotInfo(true, pubkeyBytes));
+        }
+        blockStore.saveBlockInfo(blockInfo);
     }
 
     public boolean checkMineAndAdd(Block block) {
-        List<KeyPair> ourkeys = wallet.getAccounts();
-        // 输出签名只有一个
-        SECPSignature signature = block.getOutsig();
-        // 遍历所有key
-        for (int i = 0; i < ourkeys.size(); i++) {
-            KeyPair ecKey = ourkeys.get(i);
-            // TODO: 优化
-            byte[] publicKeyBytes = ecKey.getPublicKey().asEcPoint(Sign.CURVE).getEncoded(true);
-            Bytes digest = Bytes.wrap(block.getSubRawData(block.getOutsigIndex() - 2), Bytes.wrap(publicKeyBytes));
-            Bytes32 hash = Hash.hashTwice(Bytes.wrap(digest));
-            // use hyperledger besu crypto native secp256k1
-            if (Sign.SECP256K1.verify(hash, signature, ecKey.getPublicKey())) {
-                log.debug("verify block success hash={}.", hash.toHexString());
-                addOurBlock(i, block);
-                return true;
-            }
+        // 先按公钥索引和默认key匹配; 非默认key签名且未嵌入公钥的区块(如钱包换过默认key)还需逐个尝试其余key
+        int i = wallet.getKeyIndex().findSigner(block, block.getOutsig(), true);
+        if (i >= 0) {
+            log.debug("verify block success hash={}.", block.getHashLow().toHexString());
+            addOurBlock(i, block);
+            return true;
         }
         return false;
     }
@@ -1332,6 +1438,7 @@ public class BlockchainImpl implements Blockchain {
     public void addOurBlock(int keyIndex, Block block) {
         xdagStats.setOurLastBlockHash(block.getHash().toArray());
         if (!block.isSaved()) {
+            rememberOurBlock(block.getHash());
             memOurBlocks.put(block.getHash(), keyIndex);
         } else {
             blockStore.saveOurBlock(keyIndex, block.getInfo().getHashlow());
@@ -1340,6 +1447,7 @@ public class BlockchainImpl implements Blockchain {
 
     public void removeOurBlock(Block block) {
         if (!block.isSaved) {
+            rememberOurBlock(block.getHash());
             memOurBlocks.remove(block.getHash());
         } else {
             blockStore.removeOurBlock(block.getHashLow().toArray());
@@ -1405,12 +1513,15 @@ public class BlockchainImpl implements Blockchain {
         }
     }
 
-    public void checkMain() {
+    public synchronized void checkMain() {
+        beginBatch();
         try {
             checkNewMain();
             // checkNewMain后xdagStats状态会发生改变
             blockStore.saveXdagStatus(xdagStats);
+            commitBatch();
         } catch (Throwable e) {
+            rollbackBatch();
             log.error(e.getMessage(), e);
         }
     }
@@ -1482,15 +1593,9 @@ public class BlockchainImpl implements Blockchain {
 
     // ADD: 使用新版本方法获取主块
     public List<Block> listMainBlocksByHeight(int count) {
-        List<Block> res = new ArrayList<>();
         long currentHeight = xdagStats.nmain;
-        for (int i = 0; i < count; i++) {
-            Block block = getBlockByHeightNew(currentHeight - i);
-            if (block != null) {
-                res.add(block);
-            }
-        }
-        return res;
+        // 按高度从高到低, 一次扫描主链索引
+        return blockStore.getMainBlocks(Math.max(currentHeight - count + 1, minMainHeight()), currentHeight);
     }
 
 
@@ -1499,6 +1604,20 @@ public class BlockchainImpl implements Blockchain {
         return listMainBlocksByHeight(count);
     }
 
+    @Override
+    public synchronized Page<Bytes32> pruneBlocks(long startTime, long horizonTime, byte[] cursor, int limit) {
+        // 一页一个批处理, 快照信息与源数据的删除一起提交
+        blockStore.beginBatch();
+        try {
+            Page<Bytes32> page = blockStore.pruneBlocks(startTime, horizonTime, cursor, limit);
+            blockStore.commitBatch(kernel.getConfig().getNodeSpec().isStoreSyncWrite());
+            return page;
+        } catch (RuntimeException e) {
+            blockStore.rollbackBatch();
+            throw e;
+        }
+    }
+
     // TODO: 列出本矿池生成的主块，如果本矿池只在前期产块或者从未产块，会导致需要遍历所有的区块数据，这部分应该需要优化
     @Override
     public List<Block> listMinedBlocks(int count) {
@@ -1527,6 +1646,115 @@ public class BlockchainImpl implements Blockchain {
         return memOurBlocks;
     }
 
+    private void rememberOrphan(Bytes hashlow) {
+        if (memUndo != null) {
+            memUndo.rememberOrphan(hashlow, memOrphanPool.get(hashlow));
+        }
+    }
+
+    private void rememberOurBlock(Bytes hash) {
+        if (memUndo != null) {
+            memUndo.ourBlocks.putIfAbsent(hash, Optional.ofNullable(memOurBlocks.get(hash)));
+        }
+    }
+
+    /**
+     * connect() 对内存状态的改动: stats/top/pretop 记下原值, 两个内存池记下第一次改动前的条目
+     */
+    private static class MemUndo {
+
+        private final long nblocks;
+        private final long totalnblocks;
+        private final long nmain;
+        private final long nnoref;
+        private final long nextra;
+        private final long balance;
+        private final BigInteger difficulty;
+        private final BigInteger maxdifficulty;
+        private final byte[] globalMiner;
+        private final byte[] ourLastBlockHash;
+        private final byte[] top;
+        private final BigInteger topDiff;
+        private final byte[] preTop;
+        private final BigInteger preTopDiff;
+        private final BigInteger[] hashRateTotal;
+        private final BigInteger[] hashRateOurs;
+        private final long hashrateLastTime;
+        // 原本不在池中的为 null, 原有块连同改动前的 info 一起保存
+        private final Map<Bytes, Block> orphans = new HashMap<>();
+        private final Map<Bytes, BlockInfo> orphanInfos = new HashMap<>();
+        private final Map<Bytes, Optional<Integer>> ourBlocks = new HashMap<>();
+
+        MemUndo(XdagStats stats, XdagTopStatus topStatus, XdagExtStats extStats) {
+            this.nblocks = stats.nblocks;
+            this.totalnblocks = stats.totalnblocks;
+            this.nmain = stats.nmain;
+            this.nnoref = stats.nnoref;
+            this.nextra = stats.nextra;
+            this.balance = stats.balance;
+            this.difficulty = stats.difficulty;
+            this.maxdifficulty = stats.maxdifficulty;
+            this.globalMiner = stats.getGlobalMiner();
+            this.ourLastBlockHash = stats.getOurLastBlockHash();
+            this.top = topStatus.getTop();
+            this.topDiff = topStatus.getTopDiff();
+            this.preTop = topStatus.getPreTop();
+            this.preTopDiff = topStatus.getPreTopDiff();
+            this.hashRateTotal = extStats.getHashRateTotal().clone();
+            this.hashRateOurs = extStats.getHashRateOurs().clone();
+            this.hashrateLastTime = extStats.getHashrate_last_time();
+        }
+
+        void rememberOrphan(Bytes hashlow, Block block) {
+            if (orphans.containsKey(hashlow)) {
+                return;
+            }
+            orphans.put(hashlow, block);
+            if (block != null && block.getInfo() != null) {
+                orphanInfos.put(hashlow, block.getInfo().copy());
+            }
+        }
+
+        void restore(XdagStats stats, XdagTopStatus topStatus, XdagExtStats extStats,
+                Map<Bytes, Block> memOrphanPool, Map<Bytes, Integer> memOurBlocks) {
+            stats.nblocks = nblocks;
+            stats.totalnblocks = totalnblocks;
+            stats.nmain = nmain;
+            stats.nnoref = nnoref;
+            stats.nextra = nextra;
+            stats.balance = balance;
+            stats.difficulty = difficulty;
+            stats.maxdifficulty = maxdifficulty;
+            stats.setGlobalMiner(globalMiner);
+            stats.setOurLastBlockHash(ourLastBlockHash);
+            topStatus.setTop(top);
+            topStatus.setTopDiff(topDiff);
+            topStatus.setPreTop(preTop);
+            topStatus.setPreTopDiff(preTopDiff);
+            // 原地拷回, 不替换数组引用
+            System.arraycopy(hashRateTotal, 0, extStats.getHashRateTotal(), 0, hashRateTotal.length);
+            System.arraycopy(hashRateOurs, 0, extStats.getHashRateOurs(), 0, hashRateOurs.length);
+            extStats.setHashrate_last_time(hashrateLastTime);
+            orphans.forEach((hashlow, block) -> {
+                if (block == null) {
+                    memOrphanPool.remove(hashlow);
+                } else {
+                    if (orphanInfos.containsKey(hashlow)) {
+                        block.setInfo(orphanInfos.get(hashlow));
+                    }
+                    memOrphanPool.put(hashlow, block);
+                }
+            });
+            ourBlocks.forEach((hash, keyIndex) -> {
+                if (keyIndex.isPresent()) {
+                    memOurBlocks.put(hash, keyIndex.get());
+                } else {
+                    memOurBlocks.remove(hash);
+                }
+            });
+        }
+    }
+
     enum OrphanRemoveActions {
         ORPHAN_REMOVE_NORMAL, ORPHAN_REMOVE_REUSE, ORPHAN_REMOVE_EXTRA
     }
@@ -31,10 +31,13 @@ public class TxHistory {
     Address address;
     long timeStamp;
     String remark;
+    // 交易区块是否已执行
+    boolean applied;
 
-    public TxHistory(Address address, long timeStamp, String remark) {
+    public TxHistory(Address address, long timeStamp, String remark, boolean applied) {
         this.address = address;
         this.timeStamp = timeStamp;
         this.remark = remark;
+        this.applied = applied;
     }
 }
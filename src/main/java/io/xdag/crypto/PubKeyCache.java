@@ -0,0 +1,90 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.crypto;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.math.BigInteger;
+import java.util.Arrays;
+import org.apache.tuweni.bytes.Bytes;
+import org.bouncycastle.math.ec.ECPoint;
+import org.hyperledger.besu.crypto.SECPPublicKey;
+
+/**
+ * 压缩公钥与解压后公钥的双向缓存. 同一批地址的公钥反复出现在交易中,
+ * 缓存后不必每次都做 EC 点解压和压缩编码
+ */
+public final class PubKeyCache {
+
+    public static final int MAX_SIZE = 64 * 1024;
+
+    /**
+     * <33字节压缩公钥, 公钥>
+     */
+    private static final Cache<Bytes, SECPPublicKey> DECOMPRESSED = Caffeine.newBuilder()
+            .maximumSize(MAX_SIZE)
+            .build();
+    /**
+     * <公钥, 33字节压缩公钥>
+     */
+    private static final Cache<SECPPublicKey, Bytes> COMPRESSED = Caffeine.newBuilder()
+            .maximumSize(MAX_SIZE)
+            .build();
+
+    private PubKeyCache() {
+    }
+
+    /**
+     * @param x    公钥的 x 坐标
+     * @param yBit y 坐标是否为奇数
+     */
+    public static SECPPublicKey decompress(Bytes x, boolean yBit) {
+        return decompress(Bytes.wrap(Bytes.of(yBit ? 0x03 : 0x02), x));
+    }
+
+    /**
+     * @param compressed 33字节压缩公钥
+     */
+    public static SECPPublicKey decompress(Bytes compressed) {
+        Bytes key = compressed.copy();
+        SECPPublicKey publicKey = DECOMPRESSED.getIfPresent(key);
+        if (publicKey == null) {
+            ECPoint point = Sign.decompressKey(key.slice(1).toUnsignedBigInteger(), key.get(0) == 0x03);
+            // 解析成非压缩去前缀 公钥
+            byte[] encodePub = point.getEncoded(false);
+            publicKey = SECPPublicKey.create(new BigInteger(1, Arrays.copyOfRange(encodePub, 1, encodePub.length)),
+                    Sign.CURVE_NAME);
+            DECOMPRESSED.put(key, publicKey);
+            COMPRESSED.put(publicKey, key);
+        }
+        return publicKey;
+    }
+
+    /**
+     * @return 33字节压缩公钥
+     */
+    public static Bytes compress(SECPPublicKey publicKey) {
+        return COMPRESSED.get(publicKey, k -> Bytes.wrap(k.asEcPoint(Sign.CURVE).getEncoded(true)));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.crypto;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import org.apache.tuweni.bytes.Bytes;
+
+/**
+ * 保存一段前缀已经吸收进 sha256 后的中间状态, 之后每次只需处理剩余数据即可得到 double sha256.
+ * 矿池校验 share 时前 448 字节固定, 只有最后一个字段(nonce)在变.
+ * 第二轮 sha256 使用线程私有的 digest, 结果直接写入调用方提供的数组.
+ */
+public final class Sha256Midstate {
+
+    public static final int HASH_SIZE = 32;
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(Sha256Midstate::newDigest);
+
+    /**
+     * 只用于 clone, 不再 update
+     */
+    private final MessageDigest midstate;
+    private final long length;
+
+    private Sha256Midstate(MessageDigest midstate, long length) {
+        this.midstate = midstate;
+        this.length = length;
+    }
+
+    public static Sha256Midstate of(Bytes prefix) {
+        MessageDigest digest = newDigest();
+        prefix.update(digest);
+        return new Sha256Midstate(digest, prefix.size());
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * sha256(sha256(prefix || tail)) 写入 out[outOffset, outOffset + 32)
+     *
+     * @param reverse 是否按字节逆序输出(XDAG hash 的字节序)
+     */
+    public void doubleHash(Bytes tail, boolean reverse, byte[] out, int outOffset) {
+        MessageDigest digest;
+        try {
+            digest = (MessageDigest) midstate.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+        tail.update(digest);
+        finish(digest, reverse, out, outOffset);
+    }
+
+    /**
+     * 对整段数据做 double sha256, 不产生临时对象
+     *
+     * @param reverse 是否按字节逆序输出(XDAG hash 的字节序)
+     */
+    public static void hashTwice(Bytes data, boolean reverse, byte[] out, int outOffset) {
+        MessageDigest digest = SHA256.get();
+        data.update(digest);
+        finish(digest, reverse, out, outOffset);
+    }
+
+    private static void finish(MessageDigest first, boolean reverse, byte[] out, int outOffset) {
+        MessageDigest second = SHA256.get();
+        try {
+            first.digest(out, outOffset, HASH_SIZE);
+            second.update(out, outOffset, HASH_SIZE);
+            second.digest(out, outOffset, HASH_SIZE);
+        } catch (DigestException e) {
+            throw new IllegalArgumentException(e);
+        }
+        if (reverse) {
+            for (int i = outOffset, j = outOffset + HASH_SIZE - 1; i < j; i++, j--) {
+                byte b = out[i];
+                out[i] = out[j];
+                out[j] = b;
+            }
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -35,6 +35,7 @@ import org.hyperledger.besu.crypto.SECPSignature;
 
 import java.math.BigInteger;
 import java.util.Arrays;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * Transaction signing logic.
@@ -43,6 +44,7 @@ import java.util.Arrays;
  * href="https://github.com/bitcoinj/bitcoinj/blob/master/core/src/main/java/org/bitcoinj/core/ECKey.java">
  * BitcoinJ ECKey</a> implementation.
  */
+@Slf4j
 public class Sign {
 
     public static final String CURVE_NAME = "secp256k1";
@@ -58,6 +60,28 @@ public class Sign {
     public static final SECP256K1 SECP256K1 = new SECP256K1();
     static final BigInteger HALF_CURVE_ORDER = CURVE_PARAMS.getN().shiftRight(1);
 
+    /**
+     * 选择签名/验签/恢复公钥的后端. native 使用 libsecp256k1 (besu-native),
+     * 当前平台加载失败时自动退回纯 Java 实现. besu 加载成功时默认即为 native, 只有显式关闭才切到纯 Java
+     *
+     * @param enable 是否尝试使用 libsecp256k1
+     * @return 实际是否使用 libsecp256k1
+     */
+    public static synchronized boolean useNative(boolean enable) {
+        if (!enable) {
+            SECP256K1.disableNative();
+            return false;
+        }
+        if (!SECP256K1.isNative() && !SECP256K1.maybeEnableNative()) {
+            log.warn("libsecp256k1 is not available on this platform, fall back to java secp256k1");
+        }
+        return SECP256K1.isNative();
+    }
+
+    public static boolean isNative() {
+        return SECP256K1.isNative();
+    }
+
     /**
      * Decompress a compressed public key (x co-ord and low-bit of y-coord).
      */
@@ -0,0 +1,247 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
+import io.xdag.core.BlockInfo;
+import io.xdag.core.SnapshotInfo;
+import io.xdag.db.execption.DeserializationException;
+import io.xdag.db.execption.SerializationException;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * BlockInfo的定长二进制编码, 不使用反射, 也不需要全局锁.
+ *
+ * <pre>
+ * magic(3) version(1) mask(1) type(8) flags(4) height(8) amount(8) fee(8) timestamp(8)
+ * [difficulty(16)] [ref(32)] [maxDiffLink(32)] [hash(32)] [hashlow(32)]
+ * [remarkLen(1) remark] [snapshotType(1) snapshotLen(2) snapshotData]
+ * </pre>
+ * mask的每一位表示对应的可选字段是否存在. 不以magic开头或长度对不上的值按旧的Kryo格式解析, 旧数据在下次保存时转为新格式.
+ */
+public final class BlockInfoCodec {
+
+    public static final byte VERSION = 1;
+    private static final byte[] MAGIC = {'X', 'B', 'I'};
+
+    private static final int HEADER_SIZE = MAGIC.length + 1 + 1 + 8 + 4 + 8 + 8 + 8 + 8;
+    private static final int HASH_SIZE = 32;
+    private static final int DIFF_SIZE = 16;
+
+    private static final int HAS_DIFFICULTY = 1;
+    private static final int HAS_REF = 1 << 1;
+    private static final int HAS_MAX_DIFF_LINK = 1 << 2;
+    private static final int HAS_HASH = 1 << 3;
+    private static final int HAS_HASHLOW = 1 << 4;
+    private static final int HAS_REMARK = 1 << 5;
+    private static final int HAS_SNAPSHOT_INFO = 1 << 6;
+    private static final int IS_SNAPSHOT = 1 << 7;
+
+    private static final ThreadLocal<ByteBuffer> BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(1024));
+    private static final ThreadLocal<Kryo> LEGACY_KRYO = ThreadLocal.withInitial(BlockStore::newKryo);
+
+    private BlockInfoCodec() {
+    }
+
+    public static byte[] encode(BlockInfo info) throws SerializationException {
+        int size = encodedSize(info);
+        ByteBuffer buffer = BUFFER.get();
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(size);
+            BUFFER.set(buffer);
+        }
+        buffer.clear();
+        buffer.put(MAGIC).put(VERSION).put((byte) mask(info));
+        buffer.putLong(info.getType())
+                .putInt(info.getFlags())
+                .putLong(info.getHeight())
+                .putLong(info.getAmount())
+                .putLong(info.getFee())
+                .putLong(info.getTimestamp());
+        if (info.getDifficulty() != null) {
+            putDifficulty(buffer, info.getDifficulty());
+        }
+        putHash(buffer, info.getRef());
+        putHash(buffer, info.getMaxDiffLink());
+        putHash(buffer, info.getHash());
+        putHash(buffer, info.getHashlow());
+        if (info.getRemark() != null) {
+            buffer.put((byte) info.getRemark().length).put(info.getRemark());
+        }
+        SnapshotInfo snapshotInfo = info.getSnapshotInfo();
+        if (snapshotInfo != null) {
+            byte[] data = snapshotInfo.getData() == null ? new byte[0] : snapshotInfo.getData();
+            buffer.put((byte) (snapshotInfo.getType() ? 1 : 0)).putShort((short) data.length).put(data);
+        }
+        return Arrays.copyOf(buffer.array(), size);
+    }
+
+    public static BlockInfo decode(byte[] value) throws DeserializationException {
+        if (isCurrent(value)) {
+            try {
+                BlockInfo info = decodeCurrent(ByteBuffer.wrap(value));
+                if (info != null) {
+                    return info;
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                // 碰巧以magic开头的旧数据
+            }
+        }
+        return decodeLegacy(value);
+    }
+
+    /**
+     * 是否为新格式, 用于统计或迁移
+     */
+    public static boolean isCurrent(byte[] value) {
+        return value.length >= HEADER_SIZE
+                && value[0] == MAGIC[0] && value[1] == MAGIC[1] && value[2] == MAGIC[2]
+                && value[3] == VERSION;
+    }
+
+    private static BlockInfo decodeCurrent(ByteBuffer buffer) {
+        buffer.position(MAGIC.length + 1);
+        int mask = buffer.get() & 0xff;
+        BlockInfo info = new BlockInfo();
+        info.setType(buffer.getLong());
+        info.setFlags(buffer.getInt());
+        info.setHeight(buffer.getLong());
+        info.setAmount(buffer.getLong());
+        info.setFee(buffer.getLong());
+        info.setTimestamp(buffer.getLong());
+        if ((mask & HAS_DIFFICULTY) != 0) {
+            byte[] diff = new byte[DIFF_SIZE];
+            buffer.get(diff);
+            info.setDifficulty(new BigInteger(1, diff));
+        }
+        info.setRef(getHash(buffer, mask, HAS_REF));
+        info.setMaxDiffLink(getHash(buffer, mask, HAS_MAX_DIFF_LINK));
+        info.setHash(getHash(buffer, mask, HAS_HASH));
+        info.setHashlow(getHash(buffer, mask, HAS_HASHLOW));
+        if ((mask & HAS_REMARK) != 0) {
+            byte[] remark = new byte[buffer.get() & 0xff];
+            buffer.get(remark);
+            info.setRemark(remark);
+        }
+        if ((mask & HAS_SNAPSHOT_INFO) != 0) {
+            boolean type = buffer.get() != 0;
+            byte[] data = new byte[buffer.getShort() & 0xffff];
+            buffer.get(data);
+            info.setSnapshotInfo(new SnapshotInfo(type, data));
+        }
+        info.setSnapshot((mask & IS_SNAPSHOT) != 0);
+        return buffer.hasRemaining() ? null : info;
+    }
+
+    static BlockInfo decodeLegacy(byte[] value) throws DeserializationException {
+        try {
+            return LEGACY_KRYO.get().readObject(new Input(value), BlockInfo.class);
+        } catch (IllegalArgumentException | KryoException | NullPointerException e) {
+            throw new DeserializationException(e.getMessage(), e);
+        }
+    }
+
+    private static int mask(BlockInfo info) {
+        int mask = 0;
+        mask |= info.getDifficulty() != null ? HAS_DIFFICULTY : 0;
+        mask |= info.getRef() != null ? HAS_REF : 0;
+        mask |= info.getMaxDiffLink() != null ? HAS_MAX_DIFF_LINK : 0;
+        mask |= info.getHash() != null ? HAS_HASH : 0;
+        mask |= info.getHashlow() != null ? HAS_HASHLOW : 0;
+        mask |= info.getRemark() != null ? HAS_REMARK : 0;
+        mask |= info.getSnapshotInfo() != null ? HAS_SNAPSHOT_INFO : 0;
+        mask |= info.isSnapshot() ? IS_SNAPSHOT : 0;
+        return mask;
+    }
+
+    private static int encodedSize(BlockInfo info) throws SerializationException {
+        int size = HEADER_SIZE;
+        BigInteger difficulty = info.getDifficulty();
+        if (difficulty != null) {
+            if (difficulty.signum() < 0 || difficulty.bitLength() > DIFF_SIZE * 8) {
+                throw new SerializationException("invalid difficulty: " + difficulty, null);
+            }
+            size += DIFF_SIZE;
+        }
+        size += hashSize(info.getRef(), "ref");
+        size += hashSize(info.getMaxDiffLink(), "maxDiffLink");
+        size += hashSize(info.getHash(), "hash");
+        size += hashSize(info.getHashlow(), "hashlow");
+        if (info.getRemark() != null) {
+            if (info.getRemark().length > 0xff) {
+                throw new SerializationException("remark too long: " + info.getRemark().length, null);
+            }
+            size += 1 + info.getRemark().length;
+        }
+        if (info.getSnapshotInfo() != null) {
+            byte[] data = info.getSnapshotInfo().getData();
+            int length = data == null ? 0 : data.length;
+            if (length > 0xffff) {
+                throw new SerializationException("snapshot data too long: " + length, null);
+            }
+            size += 1 + 2 + length;
+        }
+        return size;
+    }
+
+    private static int hashSize(byte[] hash, String name) throws SerializationException {
+        if (hash == null) {
+            return 0;
+        }
+        if (hash.length != HASH_SIZE) {
+            throw new SerializationException("invalid " + name + " length: " + hash.length, null);
+        }
+        return HASH_SIZE;
+    }
+
+    private static void putHash(ByteBuffer buffer, byte[] hash) {
+        if (hash != null) {
+            buffer.put(hash);
+        }
+    }
+
+    private static byte[] getHash(ByteBuffer buffer, int mask, int bit) {
+        if ((mask & bit) == 0) {
+            return null;
+        }
+        byte[] hash = new byte[HASH_SIZE];
+        buffer.get(hash);
+        return hash;
+    }
+
+    private static void putDifficulty(ByteBuffer buffer, BigInteger difficulty) {
+        byte[] raw = difficulty.toByteArray();
+        int length = Math.min(raw.length, DIFF_SIZE);
+        for (int i = 0; i < DIFF_SIZE - length; i++) {
+            buffer.put((byte) 0);
+        }
+        buffer.put(raw, raw.length - length, length);
+    }
+}
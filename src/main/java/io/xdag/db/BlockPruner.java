@@ -0,0 +1,164 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db;
+
+import io.xdag.core.Blockchain;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * 后台裁剪保留范围之外的区块源数据和交易历史, 每轮只处理 batchSize 条, 轮与轮之间让出连接锁
+ */
+@Slf4j
+public class BlockPruner {
+
+    private static final long ROUND_DELAY = 100;
+    private static final long PASS_INTERVAL = 60 * 60 * 1000;
+
+    private final Blockchain blockchain;
+    private final BlockStore blockStore;
+    private final long epochs;
+    private final int batchSize;
+
+    private final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1,
+            new BasicThreadFactory.Builder()
+                    .namingPattern("BlockPruner-thread-%d")
+                    .daemon(true)
+                    .build());
+
+    private boolean inPass;
+    private boolean blocksDone;
+    private byte[] blockCursor;
+    private byte[] txCursor;
+    private long nextPass;
+    // 已裁剪到的时间, 之前的区块不再扫描
+    private long prunedTo;
+
+    @Getter
+    private volatile long horizon;
+    @Getter
+    private volatile long passes;
+    private final AtomicLong prunedBlocks = new AtomicLong();
+    private final AtomicLong prunedTxHistory = new AtomicLong();
+
+    public BlockPruner(Blockchain blockchain, BlockStore blockStore, long epochs, int batchSize) {
+        this.blockchain = blockchain;
+        this.blockStore = blockStore;
+        this.epochs = epochs;
+        this.batchSize = batchSize;
+    }
+
+    public void start() {
+        executor.scheduleWithFixedDelay(this::round, ROUND_DELAY, ROUND_DELAY, TimeUnit.MILLISECONDS);
+        log.info("BlockPruner started, keep {} epochs.", epochs);
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    public long getPrunedBlocks() {
+        return prunedBlocks.get();
+    }
+
+    public long getPrunedTxHistory() {
+        return prunedTxHistory.get();
+    }
+
+    private void round() {
+        try {
+            step();
+        } catch (Exception e) {
+            log.error("prune failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 处理一页, 一次裁剪过程中保留范围不变
+     *
+     * @return 本次裁剪过程是否还有剩余
+     */
+    boolean step() {
+        if (!inPass) {
+            if (System.currentTimeMillis() < nextPass) {
+                return false;
+            }
+            long time = horizonTime();
+            if (time <= prunedTo) {
+                nextPass = System.currentTimeMillis() + PASS_INTERVAL;
+                return false;
+            }
+            horizon = time;
+            inPass = true;
+        }
+        if (!blocksDone) {
+            Page<Bytes32> page = blockchain.pruneBlocks(prunedTo, horizon, blockCursor, batchSize);
+            prunedBlocks.addAndGet(page.getItems().size());
+            blockCursor = page.getCursor();
+            blocksDone = !page.hasMore();
+            return true;
+        }
+        Page<byte[]> page;
+        blockStore.beginBatch();
+        try {
+            page = blockStore.pruneTxHistory(horizon, txCursor, batchSize);
+            blockStore.commitBatch(false);
+        } catch (RuntimeException e) {
+            blockStore.rollbackBatch();
+            throw e;
+        }
+        prunedTxHistory.addAndGet(page.getItems().size());
+        txCursor = page.getCursor();
+        if (page.hasMore()) {
+            return true;
+        }
+        prunedTo = horizon;
+        passes++;
+        inPass = false;
+        blocksDone = false;
+        nextPass = System.currentTimeMillis() + PASS_INTERVAL;
+        log.info("Prune pass {} done, horizon:{}, pruned blocks:{}, tx history:{}",
+                passes, Long.toHexString(horizon), prunedBlocks.get(), prunedTxHistory.get());
+        return false;
+    }
+
+    /**
+     * 第 nmain - epochs 个主块所在时间段的起点
+     */
+    private long horizonTime() {
+        long height = blockchain.getXdagStats().nmain - epochs;
+        if (height < 1) {
+            return 0;
+        }
+        MainChainRecord record = blockStore.getMainChainRecord(height);
+        return record == null ? 0 : record.getTimestamp() & ~0xffffL;
+    }
+}
@@ -24,12 +24,19 @@
 
 package io.xdag.db;
 
+import static io.xdag.config.Constants.BI_APPLIED;
+import static io.xdag.config.Constants.BI_MAIN;
+import static io.xdag.config.Constants.BI_MAIN_REF;
+import static io.xdag.config.Constants.BI_OURS;
 import static io.xdag.utils.BytesUtils.equalBytes;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.KryoException;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.google.common.collect.Lists;
 import com.google.common.primitives.UnsignedLong;
 import io.xdag.core.Address;
@@ -40,28 +47,36 @@ import io.xdag.core.XdagBlock;
 import io.xdag.core.XdagField;
 import io.xdag.core.XdagStats;
 import io.xdag.core.XdagTopStatus;
+import io.xdag.crypto.Hash;
+import io.xdag.crypto.PubKeyCache;
+import io.xdag.crypto.Sign;
 import io.xdag.db.execption.DeserializationException;
 import io.xdag.db.execption.SerializationException;
+import io.xdag.db.mmap.MappedBlockSource;
 import io.xdag.core.SnapshotInfo;
 import io.xdag.utils.BytesUtils;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.LongBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.bytes.MutableBytes;
 import org.bouncycastle.util.encoders.Hex;
+import org.hyperledger.besu.crypto.SECPPublicKey;
+import org.hyperledger.besu.crypto.SECPSignature;
 
 @Slf4j
 public class BlockStore {
@@ -78,17 +93,47 @@ public class BlockStore {
 
     public static final byte SNAPSHOT_BOOT = 0x70;
 
-    // ADD: 根据高度查询,添加新的标志
+    // ADD: 根据高度查询,添加新的标志; 已不再写入, 启动时迁移到 MAIN_CHAIN
     public static final byte BLOCK_HEIGHT = (byte) 0x80;
 
     public static final byte SNAPSHOT_PRESEED = (byte) 0x90;
 
     // tx history
     public static final byte TX_HISTORY = (byte) 0xa0;
+    /**
+     * 按地址和时间倒序的交易历史, 取代 TX_HISTORY, 见 {@link #getTxHistoryKey}
+     */
+    public static final byte TX_HISTORY_INDEX = (byte) 0xa1;
+    /**
+     * 交易历史的时间索引: 时间 + TX_HISTORY_INDEX 的 key 后缀, 值为空, 裁剪时按时间范围扫描
+     */
+    public static final byte TX_HISTORY_TIME = (byte) 0xa2;
+    /**
+     * 主链索引: 高度 -> {@link MainChainRecord}, 只记录主块, 取代 BLOCK_HEIGHT
+     */
+    public static final byte MAIN_CHAIN = (byte) 0xb0;
 
     public static final String SUM_FILE_NAME = "sums.dat";
 
-    private final Kryo kryo;
+    /**
+     * 单次 multiGet 的最大 key 数
+     */
+    private static final int MULTI_GET_SIZE = 1024;
+
+    /**
+     * Kryo不是线程安全的, 每个线程一个实例
+     */
+    private final ThreadLocal<Kryo> kryo = ThreadLocal.withInitial(BlockStore::newKryo);
+
+    /**
+     * <hashlow,blockInfo> write-through cache of the HASH_BLOCK_INFO entries in indexSource
+     */
+    private final Cache<Bytes32, BlockInfo> blockInfoCache;
+
+    /**
+     * 当前线程批处理中尚未提交的 BlockInfo, 提交成功后才发布到 blockInfoCache
+     */
+    private final ThreadLocal<InfoBatch> infoBatch = new ThreadLocal<>();
 
     /**
      * <prefix-hash,value> eg:<diff-hash,blockDiff>
@@ -105,16 +150,24 @@ public class BlockStore {
 
     private final KVSource<byte[], byte[]> txHistorySource;
 
+    /**
+     * sums.dat 的内存副本, SUMS_REQUEST 直接从内存应答
+     */
+    private final SumsTree sumsTree = new SumsTree(this::readSums);
+
+    /**
+     * 脏的 sums 节点写回间隔(ms), 0 表示每次提交都写回, 与区块数据原子落盘
+     */
+    @Setter
+    private long sumsFlushInterval;
+
+    private volatile long lastSumsFlush;
+
     public BlockStore(
             KVSource<byte[], byte[]> index,
             KVSource<byte[], byte[]> time,
             KVSource<byte[], byte[]> block) {
-        this.indexSource = index;
-        this.timeSource = time;
-        this.blockSource = block;
-        this.txHistorySource = null;
-        this.kryo = new Kryo();
-        kryoRegister();
+        this(index, time, block, null);
     }
 
     public BlockStore(
@@ -122,12 +175,25 @@ public class BlockStore {
             KVSource<byte[], byte[]> time,
             KVSource<byte[], byte[]> block,
             KVSource<byte[], byte[]> txHistory) {
+        // 缓存不设上限; 节点由 Kernel 按 node.store.blockInfoCacheSize 传入
+        this(index, time, block, txHistory, Long.MAX_VALUE);
+    }
+
+    public BlockStore(
+            KVSource<byte[], byte[]> index,
+            KVSource<byte[], byte[]> time,
+            KVSource<byte[], byte[]> block,
+            KVSource<byte[], byte[]> txHistory,
+            long blockInfoCacheSize) {
         this.indexSource = index;
         this.timeSource = time;
         this.blockSource = block;
-        this.kryo = new Kryo();
         this.txHistorySource = txHistory;
-        kryoRegister();
+        this.blockInfoCache = Caffeine.newBuilder()
+                .maximumWeight(blockInfoCacheSize)
+                .weigher((Bytes32 key, BlockInfo value) -> blockInfoWeight(value))
+                .recordStats()
+                .build();
     }
 
     public static List<String> getFileName(long time) {
@@ -165,6 +231,10 @@ public class BlockStore {
         return BytesUtils.merge(BLOCK_HEIGHT, BytesUtils.longToBytes(height, false));
     }
 
+    public static byte[] getMainKey(long height) {
+        return BytesUtils.merge(MAIN_CHAIN, BytesUtils.longToBytes(height, false));
+    }
+
     private static int getOurIndex(byte[] key) {
         try {
             byte[] index = BytesUtils.subArray(key, 1, 4);
@@ -183,57 +253,143 @@ public class BlockStore {
         }
     }
 
-    private void kryoRegister() {
+    /**
+     * Approximate heap footprint of a cached BlockInfo.
+     */
+    private static int blockInfoWeight(BlockInfo blockInfo) {
+        // key + object headers + primitive fields + BigInteger difficulty
+        int weight = 256;
+        weight += length(blockInfo.getHash()) + length(blockInfo.getHashlow()) + length(blockInfo.getRef())
+                + length(blockInfo.getMaxDiffLink()) + length(blockInfo.getRemark());
+        if (blockInfo.getSnapshotInfo() != null) {
+            weight += 32 + length(blockInfo.getSnapshotInfo().getData());
+        }
+        return weight;
+    }
+
+    private static int length(byte[] data) {
+        return data == null ? 0 : data.length + 16;
+    }
+
+    /**
+     * 注册顺序决定了已保存数据的编码, 不能修改
+     */
+    static Kryo newKryo() {
+        Kryo kryo = new Kryo();
         kryo.register(BigInteger.class);
         kryo.register(byte[].class);
         kryo.register(BlockInfo.class);
         kryo.register(XdagStats.class);
         kryo.register(XdagTopStatus.class);
         kryo.register(SnapshotInfo.class);
+        return kryo;
     }
 
     private byte[] serialize(final Object obj) throws SerializationException {
-        synchronized (kryo) {
-            try {
-                final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                final Output output = new Output(outputStream);
-                kryo.writeObject(output, obj);
-                output.flush();
-                output.close();
-                return outputStream.toByteArray();
-            } catch (final IllegalArgumentException | KryoException exception) {
-                throw new SerializationException(exception.getMessage(), exception);
-            }
+        try {
+            final Output output = new Output(256, -1);
+            kryo.get().writeObject(output, obj);
+            return output.toBytes();
+        } catch (final IllegalArgumentException | KryoException exception) {
+            throw new SerializationException(exception.getMessage(), exception);
         }
     }
 
     private Object deserialize(final byte[] bytes, Class<?> type) throws DeserializationException {
-        synchronized (kryo) {
-            try {
-                final ByteArrayInputStream inputStream = new ByteArrayInputStream(bytes);
-                final Input input = new Input(inputStream);
-                return kryo.readObject(input, type);
-            } catch (final IllegalArgumentException | KryoException | NullPointerException exception) {
-                log.debug("Deserialize data:{}", Hex.toHexString(bytes));
-                throw new DeserializationException(exception.getMessage(), exception);
-            }
+        try {
+            return kryo.get().readObject(new Input(bytes), type);
+        } catch (final IllegalArgumentException | KryoException | NullPointerException exception) {
+            log.debug("Deserialize data:{}", Hex.toHexString(bytes));
+            throw new DeserializationException(exception.getMessage(), exception);
         }
     }
 
     public void init() {
+        sumsTree.clear();
         indexSource.init();
         timeSource.init();
         blockSource.init();
         txHistorySource.init();
+        migrateTxHistory();
+        migrateMainChain();
     }
 
     public void reset() {
+        blockInfoCache.invalidateAll();
+        sumsTree.clear();
         indexSource.reset();
         timeSource.reset();
         blockSource.reset();
         txHistorySource.reset();
     }
 
+    /**
+     * Start buffering all writes of the calling thread, so that everything a block import touches
+     * lands in the db together on {@link #commitBatch(boolean)}.
+     */
+    public void beginBatch() {
+        InfoBatch pending = infoBatch.get();
+        if (pending == null) {
+            infoBatch.set(new InfoBatch());
+        } else {
+            pending.depth++;
+        }
+        sumsTree.beginBatch();
+        indexSource.beginBatch();
+        timeSource.beginBatch();
+        blockSource.beginBatch();
+        if (txHistorySource != null) {
+            txHistorySource.beginBatch();
+        }
+    }
+
+    public void commitBatch(boolean sync) {
+        InfoBatch pending = endInfoBatch();
+        if (pending != null) {
+            // only once the batch reached the db may other threads see the new infos, writers always overwrite
+            blockSource.onCommit(() -> pending.infos.forEach((hashlow, info) -> {
+                if (info != null) {
+                    blockInfoCache.put(hashlow, info);
+                } else {
+                    blockInfoCache.invalidate(hashlow);
+                }
+            }));
+        }
+        if (sumsTree.commitBatch()) {
+            flushSums(false);
+        }
+        if (txHistorySource != null) {
+            txHistorySource.commitBatch(sync);
+        }
+        timeSource.commitBatch(sync);
+        indexSource.commitBatch(sync);
+        // raw data last: hasBlock() treats it as the marker of a fully imported block
+        blockSource.commitBatch(sync);
+    }
+
+    public void rollbackBatch() {
+        endInfoBatch();
+        sumsTree.rollbackBatch();
+        if (txHistorySource != null) {
+            txHistorySource.rollbackBatch();
+        }
+        timeSource.rollbackBatch();
+        indexSource.rollbackBatch();
+        blockSource.rollbackBatch();
+    }
+
+    /**
+     * 结束一层批处理, 最外层时取出待发布的 BlockInfo
+     */
+    private InfoBatch endInfoBatch() {
+        InfoBatch pending = infoBatch.get();
+        if (pending == null || pending.depth-- > 0) {
+            return null;
+        }
+        infoBatch.remove();
+        return pending;
+    }
+
     public void saveXdagStatus(XdagStats status) {
         byte[] value = null;
         try {
@@ -342,16 +498,26 @@ public class BlockStore {
     }
 
     public void fetchOurBlocks(Function<Pair<Integer, Block>, Boolean> function) {
-        indexSource.fetchPrefix(new byte[]{OURS_BLOCK_INFO}, pair -> {
-            int index = getOurIndex(pair.getKey());
-//            Block block = getBlockInfoByHash(Bytes32.wrap(pair.getValue()));
-            assert getOurHash(pair.getKey()) != null;
-            Block block = getBlockInfoByHash(Bytes32.wrap(Objects.requireNonNull(getOurHash(pair.getKey()))));
-            if (function.apply(Pair.of(index, block))) {
-                return Boolean.TRUE;
+        // 按 MULTI_GET_SIZE 分段读取索引, 每段的 BlockInfo 一次 multiGet
+        List<Integer> indexes = new ArrayList<>(MULTI_GET_SIZE);
+        List<Bytes32> hashlows = new ArrayList<>(MULTI_GET_SIZE);
+        try (KVIterator<byte[], byte[]> it = indexSource.prefixIterator(new byte[]{OURS_BLOCK_INFO})) {
+            while (it.hasNext()) {
+                byte[] key = it.next().getKey();
+                indexes.add(getOurIndex(key));
+                hashlows.add(Bytes32.wrap(Objects.requireNonNull(getOurHash(key))));
+                if (hashlows.size() == MULTI_GET_SIZE || !it.hasNext()) {
+                    List<Block> blocks = getBlockInfosByHash(hashlows);
+                    for (int i = 0; i < blocks.size(); i++) {
+                        if (function.apply(Pair.of(indexes.get(i), blocks.get(i)))) {
+                            return;
+                        }
+                    }
+                    indexes.clear();
+                    hashlows.clear();
+                }
             }
-            return Boolean.FALSE;
-        });
+        }
     }
 
     public void saveBlockSums(Block block) {
@@ -365,56 +531,78 @@ public class BlockStore {
     }
 
     public MutableBytes getSums(String key) {
+        long[] node = sumsTree.get(key);
+        if (node == null) {
+            return null;
+        }
+        return toSumsBytes(node);
+    }
+
+    public void putSums(String key, Bytes sums) {
+        long[] node = toSumsNode(sums);
+        sumsTree.put(key, node);
+        writeSums(key, node);
+    }
+
+    public void updateSum(String key, long sum, long size, long index) {
+        sumsTree.add(key, (int) index, sum, size);
+        if (!sumsTree.inBatch()) {
+            flushSums(false);
+        }
+    }
+
+    /**
+     * 写回所有脏的 sums 节点, 批量写入期间调用时随批量一起提交
+     */
+    public void flushSums() {
+        flushSums(true);
+    }
+
+    private void flushSums(boolean force) {
+        long now = System.currentTimeMillis();
+        if (!sumsTree.hasDirty() || (!force && sumsFlushInterval > 0 && now - lastSumsFlush < sumsFlushInterval)) {
+            return;
+        }
+        lastSumsFlush = now;
+        for (Map.Entry<String, long[]> entry : sumsTree.drainDirty().entrySet()) {
+            writeSums(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private long[] readSums(String key) {
         byte[] value = indexSource.get(BytesUtils.merge(SUMS_BLOCK_INFO, key.getBytes(StandardCharsets.UTF_8)));
         if (value == null) {
             return null;
-        } else {
-            MutableBytes sums = null;
-            try {
-                sums = MutableBytes.wrap((byte[]) deserialize(value, byte[].class));
-            } catch (DeserializationException e) {
-                log.error(e.getMessage(), e);
-            }
-            return sums;
+        }
+        try {
+            return toSumsNode(Bytes.wrap((byte[]) deserialize(value, byte[].class)));
+        } catch (DeserializationException e) {
+            log.error(e.getMessage(), e);
+            return null;
         }
     }
 
-    public void putSums(String key, Bytes sums) {
+    private void writeSums(String key, long[] node) {
         byte[] value = null;
         try {
-            value = serialize(sums.toArray());
+            value = serialize(toSumsBytes(node).toArrayUnsafe());
         } catch (SerializationException e) {
             log.error(e.getMessage(), e);
         }
         indexSource.put(BytesUtils.merge(SUMS_BLOCK_INFO, key.getBytes(StandardCharsets.UTF_8)), value);
     }
 
-    public void updateSum(String key, long sum, long size, long index) {
-        MutableBytes sums = getSums(key);
-        if (sums == null) {
-//            sums = new byte[4096];
-            sums = MutableBytes.create(4096);
-//            System.arraycopy(BytesUtils.longToBytes(sum, true), 0, sums, (int) (16 * index), 8);
-            sums.set((int) (16 * index), Bytes.wrap(BytesUtils.longToBytes(sum, true)));
-//            System.arraycopy(BytesUtils.longToBytes(size, true), 0, sums, (int) (index * 16 + 8), 8);
-            sums.set((int) (index * 16 + 8), Bytes.wrap(BytesUtils.longToBytes(size, true)));
-            putSums(key, sums);
-        } else {
-            // size + sum
-//            byte[] data = ArrayUtils.subarray(sums, 16 * (int)index, 16 * (int)index + 16);
-            MutableBytes data = sums.slice(16 * (int) index, 16).mutableCopy();
-//            sum += BytesUtils.bytesToLong(data, 0, true);
-            sum += data.getLong(0, ByteOrder.LITTLE_ENDIAN);
-//            size += BytesUtils.bytesToLong(data, 8, true);
-            size += data.getLong(8, ByteOrder.LITTLE_ENDIAN);
-//            System.arraycopy(BytesUtils.longToBytes(sum, true), 0, data, 0, 8);
-            data.set(0, Bytes.wrap(BytesUtils.longToBytes(sum, true)));
-//            System.arraycopy(BytesUtils.longToBytes(size, true), 0, data, 8, 8);
-            data.set(8, Bytes.wrap(BytesUtils.longToBytes(size, true)));
-//            System.arraycopy(data, 0, sums, 16 * (int)index, 16);
-            sums.set(16 * (int) index, data.slice(0, 16));
-            putSums(key, sums);
-        }
+    private static MutableBytes toSumsBytes(long[] node) {
+        byte[] sums = new byte[SumsTree.ENTRIES * 16];
+        ByteBuffer.wrap(sums).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().put(node);
+        return MutableBytes.wrap(sums);
+    }
+
+    private static long[] toSumsNode(Bytes sums) {
+        long[] node = new long[SumsTree.ENTRIES * 2];
+        LongBuffer buf = ByteBuffer.wrap(sums.toArrayUnsafe()).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        buf.get(node, 0, Math.min(node.length, buf.remaining()));
+        return node;
     }
 
     public int loadSum(long starttime, long endtime, MutableBytes sums) {
@@ -480,18 +668,41 @@ public class BlockStore {
     public void saveBlockInfo(BlockInfo blockInfo) {
         byte[] value = null;
         try {
-            value = serialize(blockInfo);
+            value = BlockInfoCodec.encode(blockInfo);
         } catch (SerializationException e) {
             log.error(e.getMessage(), e);
         }
         indexSource.put(BytesUtils.merge(HASH_BLOCK_INFO, blockInfo.getHashlow()), value);
-        // 如果区块是主块的话顺便保存对应的高度信息
-        // TODO: paulochen 如果回滚了，对应高度的键值对该怎么更新(直接让其height=0的区块覆盖)
-//        if (blockInfo.getHeight() > 0) {
-        indexSource.put(getHeight(blockInfo.getHeight()), blockInfo.getHashlow());
-//        } else {
-//            indexSource.get()
-//        }
+        Bytes32 hashlow = Bytes32.wrap(blockInfo.getHashlow().clone());
+        BlockInfo info = value != null ? blockInfo.copy() : null;
+        InfoBatch pending = infoBatch.get();
+        if (pending != null) {
+            pending.infos.put(hashlow, info);
+        } else if (info != null) {
+            blockInfoCache.put(hashlow, info);
+        } else {
+            blockInfoCache.invalidate(hashlow);
+        }
+        saveMainChainRecord(blockInfo);
+    }
+
+    /**
+     * 主块(包括快照中带高度的区块)保存对应高度的记录; 失去主块身份时高度还未清零, 记录仍指向它则删除
+     */
+    private void saveMainChainRecord(BlockInfo blockInfo) {
+        long height = blockInfo.getHeight();
+        if (height <= 0) {
+            return;
+        }
+        byte[] key = getMainKey(height);
+        if ((blockInfo.getFlags() & BI_MAIN) != 0 || blockInfo.isSnapshot()) {
+            indexSource.put(key, MainChainRecord.of(blockInfo).encode());
+            return;
+        }
+        byte[] record = indexSource.get(key);
+        if (record != null && equalBytes(BytesUtils.subArray(record, 0, 32), blockInfo.getHashlow())) {
+            indexSource.delete(key);
+        }
     }
 
     public boolean hasBlock(Bytes32 hashlow) {
@@ -499,45 +710,209 @@ public class BlockStore {
     }
 
     public boolean hasBlockInfo(Bytes32 hashlow) {
+        InfoBatch pending = infoBatch.get();
+        if (pending != null && pending.infos.containsKey(hashlow)) {
+            return pending.infos.get(hashlow) != null;
+        }
+        if (blockInfoCache.getIfPresent(hashlow) != null) {
+            return true;
+        }
         return indexSource.get(BytesUtils.merge(HASH_BLOCK_INFO, hashlow.toArray())) != null;
     }
 
+    /**
+     * 取出 startTime 起, 每隔 0x10000 直到 endTime 之前的各时间段内的区块
+     */
     public List<Block> getBlocksUsedTime(long startTime, long endTime) {
-        List<Block> res = Lists.newArrayList();
-        long time = startTime;
-        while (time < endTime) {
-            List<Block> blocks = getBlocksByTime(time);
-            time += 0x10000;
-            if (CollectionUtils.isEmpty(blocks)) {
-                continue;
+        return getRawBlocksByHash(getHashlowsByTime(startTime, endTime, null, 0).getItems());
+    }
+
+    /**
+     * 按时间顺序取出 getBlocksUsedTime 所覆盖的时间段内区块的hashlow, 只 seek 一次, 空的时间段不产生开销
+     *
+     * @param cursor 上一页返回的 cursor, 从头开始时为 null
+     * @param limit 最多返回的个数, 不大于 0 时不限制
+     */
+    public Page<Bytes32> getHashlowsByTime(long startTime, long endTime, byte[] cursor, int limit) {
+        List<Bytes32> hashlows = Lists.newArrayList();
+        if (startTime >= endTime) {
+            return new Page<>(hashlows, null);
+        }
+        // 覆盖的时间段数, 最后一段是 endTime 之前最后一个 startTime + k * 0x10000 所在的段
+        long slots = (endTime - startTime + 0xffff) >>> 16;
+        // cursor 是上一页最后一个 key, 补一个 0 即为其后的第一个 key
+        byte[] start = cursor != null ? BytesUtils.merge(cursor, new byte[]{0}) : getTimeKey(startTime, null);
+        byte[] end = getTimeKey(((startTime >> 16) + slots) << 16, null);
+        try (KVIterator<byte[], byte[]> it = timeSource.rangeIterator(start, end)) {
+            byte[] key = null;
+            while (it.hasNext()) {
+                if (limit > 0 && hashlows.size() == limit) {
+                    return new Page<>(hashlows, key);
+                }
+                key = it.next().getKey();
+                // 1 + 8 : prefix + time
+                hashlows.add(Bytes32.wrap(key, 1 + 8));
             }
-            res.addAll(blocks);
         }
-        return res;
+        return new Page<>(hashlows, null);
     }
 
     public List<Block> getBlocksByTime(long startTime) {
-        List<Block> blocks = Lists.newArrayList();
-        byte[] keyPrefix = getTimeKey(startTime, null);
-        List<byte[]> keys = timeSource.prefixKeyLookup(keyPrefix);
-        for (byte[] bytes : keys) {
-            // 1 + 8 : prefix + time
-            byte[] hash = BytesUtils.subArray(bytes, 1 + 8, 32);
-            Block block = getBlockByHash(Bytes32.wrap(hash), true);
-            if (block != null) {
-                blocks.add(block);
+        return getRawBlocksByHash(getHashlowsByTime(startTime));
+    }
+
+    /**
+     * 只取出该时间段(0x10000)内区块的hashlow, 不加载区块
+     */
+    public List<Bytes32> getHashlowsByTime(long startTime) {
+        return getHashlowsByTime(startTime, startTime + 1, null, 0).getItems();
+    }
+
+    /**
+     * 裁剪 [startTime, horizonTime) 内已被主链引用的区块: 删除源数据和时间索引, BlockInfo 按 {@link SnapshotJ}
+     * 的规则转为快照区块保留. 未被主链引用或属于本钱包的区块不裁剪
+     *
+     * @param cursor 上一页返回的 cursor, 从头开始时为 null
+     * @param limit 最多扫描的时间索引数, 不大于 0 时不限制
+     * @return 本页裁剪掉的区块
+     */
+    public Page<Bytes32> pruneBlocks(long startTime, long horizonTime, byte[] cursor, int limit) {
+        List<Bytes32> pruned = Lists.newArrayList();
+        if (startTime >= horizonTime) {
+            return new Page<>(pruned, null);
+        }
+        List<byte[]> keys = Lists.newArrayList();
+        byte[] start = cursor != null ? BytesUtils.merge(cursor, new byte[]{0}) : getTimeKey(startTime, null);
+        byte[] end = getTimeKey(horizonTime, null);
+        byte[] key = null;
+        boolean hasMore = false;
+        int scanned = 0;
+        try (KVIterator<byte[], byte[]> it = timeSource.rangeIterator(start, end)) {
+            while (it.hasNext()) {
+                if (limit > 0 && scanned == limit) {
+                    hasMore = true;
+                    break;
+                }
+                key = it.next().getKey();
+                scanned++;
+                Bytes32 hashlow = Bytes32.wrap(key, 1 + 8);
+                if (pruneBlock(hashlow)) {
+                    pruned.add(hashlow);
+                    keys.add(key);
+                }
+            }
+        }
+        if (!keys.isEmpty() && keys.size() == scanned) {
+            // 整段都已裁剪, 一次删除时间索引
+            timeSource.deleteRange(start, BytesUtils.merge(key, new byte[]{0}));
+        } else {
+            for (byte[] k : keys) {
+                timeSource.delete(k);
+            }
+        }
+        return new Page<>(pruned, hasMore ? key : null);
+    }
+
+    private boolean pruneBlock(Bytes32 hashlow) {
+        Block block = getBlockInfoByHash(hashlow);
+        if (block == null) {
+            blockSource.delete(hashlow.toArray());
+            return true;
+        }
+        BlockInfo blockInfo = block.getInfo();
+        if (blockInfo == null || (blockInfo.getFlags() & BI_MAIN_REF) == 0 || (blockInfo.getFlags() & BI_OURS) != 0) {
+            return false;
+        }
+        if (!blockInfo.isSnapshot()) {
+            // 与快照一样只保留输出签名的压缩公钥, 之后作为输入时用来验签; 找不到公钥的才保留源数据
+            if (blockInfo.getSnapshotInfo() == null) {
+                MutableBytes data = getRawData(hashlow.toArray());
+                if (data == null) {
+                    return false;
+                }
+                Bytes key = findOutputKey(withRawData(block, data));
+                blockInfo.setSnapshotInfo(key != null
+                        ? new SnapshotInfo(true, key.toArray())
+                        : new SnapshotInfo(false, data.toArray()));
             }
+            blockInfo.setSnapshot(true);
+            saveBlockInfo(blockInfo);
         }
-        return blocks;
+        blockSource.delete(hashlow.toArray());
+        return true;
+    }
+
+    /**
+     * @return 区块中签出输出签名的公钥(压缩), 没有返回 null
+     */
+    private static Bytes findOutputKey(Block block) {
+        SECPSignature sig = block.getOutsig();
+        if (sig == null || block.getPubKeys().isEmpty()) {
+            return null;
+        }
+        sig = Sign.toCanonical(sig);
+        MutableBytes subdata = block.getSubRawData(block.getOutsigIndex() - 2);
+        for (SECPPublicKey publicKey : block.getPubKeys()) {
+            Bytes compressed = PubKeyCache.compress(publicKey);
+            if (Sign.SECP256K1.verify(Hash.hashTwice(Bytes.wrap(subdata, compressed)), sig, publicKey)) {
+                return compressed;
+            }
+        }
+        return null;
     }
 
     //ADD: 通过高度获取区块
     public Block getBlockByHeight(long height) {
-        byte[] hashlow = indexSource.get(getHeight(height));
+        Bytes32 hashlow = getMainHashlow(height);
         if (hashlow == null) {
             return null;
         }
-        return getBlockByHash(Bytes32.wrap(hashlow), false);
+        return getBlockByHash(hashlow, false);
+    }
+
+    public MainChainRecord getMainChainRecord(long height) {
+        byte[] record = indexSource.get(getMainKey(height));
+        return record == null ? null : MainChainRecord.decode(height, record);
+    }
+
+    /**
+     * 按高度从低到高取出 [fromHeight, toHeight] 内主块的记录, 一次范围扫描
+     */
+    public List<MainChainRecord> getMainChainRecords(long fromHeight, long toHeight) {
+        List<MainChainRecord> res = new ArrayList<>();
+        if (fromHeight > toHeight) {
+            return res;
+        }
+        try (KVIterator<byte[], byte[]> it = indexSource.rangeIterator(getMainKey(fromHeight),
+                getMainKey(toHeight + 1))) {
+            while (it.hasNext()) {
+                Pair<byte[], byte[]> pair = it.next();
+                res.add(MainChainRecord.decode(BytesUtils.bytesToLong(pair.getKey(), 1, false), pair.getValue()));
+            }
+        }
+        return res;
+    }
+
+    /**
+     * 按高度从高到低取出 [fromHeight, toHeight] 内的主块, BlockInfo 一次 multiGet
+     */
+    public List<Block> getMainBlocks(long fromHeight, long toHeight) {
+        List<Bytes32> hashlows = new ArrayList<>();
+        for (MainChainRecord record : Lists.reverse(getMainChainRecords(fromHeight, toHeight))) {
+            hashlows.add(record.getHashlow());
+        }
+        List<Block> res = new ArrayList<>(hashlows.size());
+        for (Block block : getBlockInfosByHash(hashlows)) {
+            if (block != null) {
+                res.add(block);
+            }
+        }
+        return res;
+    }
+
+    private Bytes32 getMainHashlow(long height) {
+        byte[] record = indexSource.get(getMainKey(height));
+        return record == null ? null : Bytes32.wrap(record, 0);
     }
 
     public Block getBlockByHash(Bytes32 hashlow, boolean isRaw) {
@@ -552,36 +927,151 @@ public class BlockStore {
         if (block == null) {
             return null;
         }
-//        log.debug("Data:{}",Hex.toHexString(blockSource.get(hashlow)));
         // 没有源数据
-        if (blockSource.get(hashlow.toArray()) == null) {
-//            log.error("No block origin data");
+        return withRawData(block, getRawData(hashlow.toArray()));
+    }
+
+    /**
+     * 批量加载区块, 缺少 BlockInfo 或源数据的略过; BlockInfo 与源数据各按 MULTI_GET_SIZE 分段 multiGet
+     */
+    public List<Block> getRawBlocksByHash(List<Bytes32> hashlows) {
+        List<Block> res = Lists.newArrayListWithCapacity(hashlows.size());
+        for (List<Bytes32> part : Lists.partition(hashlows, MULTI_GET_SIZE)) {
+            List<Block> infos = getBlockInfosByHash(part);
+            List<Block> found = new ArrayList<>(infos.size());
+            List<byte[]> keys = new ArrayList<>(infos.size());
+            for (int i = 0; i < infos.size(); i++) {
+                if (infos.get(i) != null) {
+                    found.add(infos.get(i));
+                    keys.add(part.get(i).toArray());
+                }
+            }
+            if (keys.isEmpty()) {
+                continue;
+            }
+            List<MutableBytes> data = getRawData(keys);
+            for (int i = 0; i < found.size(); i++) {
+                Block block = withRawData(found.get(i), data.get(i));
+                if (block != null) {
+                    res.add(block);
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * 区块源数据; 使用 {@link MappedBlockSource} 时直接引用映射内存, 不复制
+     */
+    private MutableBytes getRawData(byte[] hashlow) {
+        if (blockSource instanceof MappedBlockSource mapped) {
+            return mapped.getView(hashlow);
+        }
+        byte[] data = blockSource.get(hashlow);
+        return data == null ? null : MutableBytes.wrap(data);
+    }
+
+    private List<MutableBytes> getRawData(List<byte[]> hashlows) {
+        if (blockSource instanceof MappedBlockSource mapped) {
+            return mapped.multiGetView(hashlows);
+        }
+        List<MutableBytes> res = new ArrayList<>(hashlows.size());
+        for (byte[] data : blockSource.multiGet(hashlows)) {
+            res.add(data == null ? null : MutableBytes.wrap(data));
+        }
+        return res;
+    }
+
+    private static Block withRawData(Block block, MutableBytes data) {
+        if (data == null) {
             return null;
         }
-        block.setXdagBlock(new XdagBlock(blockSource.get(hashlow.toArray())));
+        block.setXdagBlock(new XdagBlock(data));
         block.setParsed(false);
         block.parse();
         return block;
     }
 
     public Block getBlockInfoByHash(Bytes32 hashlow) {
-        if (!hasBlockInfo(hashlow)) {
-            return null;
+        InfoBatch pending = infoBatch.get();
+        if (pending != null && pending.infos.containsKey(hashlow)) {
+            BlockInfo info = pending.infos.get(hashlow);
+            return info == null ? null : new Block(info.copy());
+        }
+        // 未命中时在缓存内加载, 与并发的写入按 key 串行, 读到的旧值不会覆盖新值
+        BlockInfo info = blockInfoCache.get(Bytes32.wrap(hashlow.toArray()), this::loadBlockInfo);
+        return info == null ? null : new Block(info.copy());
+    }
+
+    /**
+     * 批量版本的 {@link #getBlockInfoByHash(Bytes32)}, 结果与 hashlows 一一对应, 不存在的为 null;
+     * 缓存未命中的部分按 MULTI_GET_SIZE 分段 multiGet
+     */
+    public List<Block> getBlockInfosByHash(List<Bytes32> hashlows) {
+        List<Block> res = new ArrayList<>(hashlows.size());
+        List<Integer> missed = new ArrayList<>();
+        InfoBatch pending = infoBatch.get();
+        for (Bytes32 hashlow : hashlows) {
+            if (pending != null && pending.infos.containsKey(hashlow)) {
+                BlockInfo info = pending.infos.get(hashlow);
+                res.add(info == null ? null : new Block(info.copy()));
+                continue;
+            }
+            BlockInfo cached = blockInfoCache.getIfPresent(hashlow);
+            if (cached == null) {
+                missed.add(res.size());
+            }
+            res.add(cached == null ? null : new Block(cached.copy()));
+        }
+        for (List<Integer> part : Lists.partition(missed, MULTI_GET_SIZE)) {
+            List<byte[]> keys = new ArrayList<>(part.size());
+            for (int i : part) {
+                keys.add(BytesUtils.merge(HASH_BLOCK_INFO, hashlows.get(i).toArray()));
+            }
+            List<byte[]> values = indexSource.multiGet(keys);
+            for (int j = 0; j < part.size(); j++) {
+                if (values.get(j) == null) {
+                    continue;
+                }
+                int i = part.get(j);
+                BlockInfo info = decodeBlockInfo(hashlows.get(i), values.get(j));
+                if (info == null) {
+                    // 解码失败与单个查询一致, 按不存在处理
+                    continue;
+                }
+                // 只填充空位, 写入方总是覆盖, 先读到的旧值不会盖掉新值
+                blockInfoCache.asMap().putIfAbsent(Bytes32.wrap(hashlows.get(i).toArray()), info.copy());
+                res.set(i, new Block(info));
+            }
         }
-        BlockInfo blockInfo = null;
+        return res;
+    }
+
+    private BlockInfo loadBlockInfo(Bytes32 hashlow) {
         byte[] value = indexSource.get(BytesUtils.merge(HASH_BLOCK_INFO, hashlow.toArray()));
-        if (value == null) {
+        return value == null ? null : decodeBlockInfo(hashlow, value);
+    }
+
+    private BlockInfo decodeBlockInfo(Bytes32 hashlow, byte[] value) {
+        try {
+            return BlockInfoCodec.decode(value);
+        } catch (DeserializationException e) {
+            log.error("hash low:" + hashlow.toHexString());
+            log.error("can't deserialize data:{}", Hex.toHexString(value));
+            log.error(e.getMessage(), e);
             return null;
-        } else {
-            try {
-                blockInfo = (BlockInfo) deserialize(value, BlockInfo.class);
-            } catch (DeserializationException e) {
-                log.error("hash low:" + hashlow.toHexString());
-                log.error("can't deserialize data:{}", Hex.toHexString(value));
-                log.error(e.getMessage(), e);
-            }
         }
-        return new Block(blockInfo);
+    }
+
+    /**
+     * hit/miss/eviction counters of the BlockInfo cache
+     */
+    public CacheStats getBlockInfoCacheStats() {
+        return blockInfoCache.stats();
+    }
+
+    public long getBlockInfoCacheSize() {
+        return blockInfoCache.estimatedSize();
     }
 
     public boolean isSnapshotBoot() {
@@ -607,47 +1097,244 @@ public class BlockStore {
     }
 
 
+    /**
+     * 交易历史 key: 0xa1 + address hash + ~time + tx hash + id, 同一地址按时间倒序.
+     * 时间相同的按 tx hash 和 id 排序
+     */
+    public static byte[] getTxHistoryKey(Bytes32 addressHashlow, long time, Bytes32 txHashlow, int id) {
+        return BytesUtils.merge(new byte[]{TX_HISTORY_INDEX}, addressHashlow.toArray(),
+                BytesUtils.longToBytes(~time, false), txHashlow.toArray(), BytesUtils.intToBytes(id, true));
+    }
+
     public void saveTxHistory(Bytes32 addressHashlow, Bytes32 txHashlow, XdagField.FieldType type, BigInteger amount,
-            long time, int id, byte[] remark) { // id is used to avoid repeat key
+            long time, int id, byte[] remark, boolean applied) { // id is used to avoid repeat key
         if (remark == null) {
             remark = new byte[]{};
         }
-        byte[] key = BytesUtils.merge(TX_HISTORY,
-                BytesUtils.merge(addressHashlow.toArray(), BytesUtils.merge(txHashlow.toArray(),
-                        BytesUtils.intToBytes(id, true)))); // key 0xa0 + address hash + tx hash + id
-
         byte[] value;
         value = BytesUtils.merge(type.asByte(),
                 BytesUtils.merge(txHashlow.toArray(),
                         BytesUtils.merge(BytesUtils.bigIntegerToBytes(amount, 8, true),
                                 BytesUtils.merge(BytesUtils.longToBytes(time, true),
                                         BytesUtils.merge(BytesUtils.longToBytes(remark.length, true),
-                                                remark))))); // type + tx hash + amount + time + remark_length + remark
+                                                remark, new byte[]{(byte) (applied ? 1 : 0)}))))); // type + tx hash + amount + time + remark_length + remark + applied
+        putTxHistory(getTxHistoryKey(addressHashlow, time, txHashlow, id), time, value);
+    }
+
+    private void putTxHistory(byte[] key, long time, byte[] value) {
+        txHistorySource.put(key, value);
+        txHistorySource.put(getTxHistoryTimeKey(key, time), new byte[0]);
+    }
+
+    private static byte[] getTxHistoryTimeKey(byte[] key, long time) {
+        return BytesUtils.merge(new byte[]{TX_HISTORY_TIME}, BytesUtils.longToBytes(time, false),
+                BytesUtils.subArray(key, 1, key.length - 1));
+    }
+
+    /**
+     * 交易区块执行或撤销时更新对应记录的 applied 标志
+     */
+    public void updateTxHistoryApplied(Bytes32 addressHashlow, Bytes32 txHashlow, long time, int id,
+            boolean applied) {
+        byte[] key = getTxHistoryKey(addressHashlow, time, txHashlow, id);
+        byte[] value = txHistorySource.get(key);
+        if (value == null || isApplied(value) == applied) {
+            return;
+        }
+        value[value.length - 1] = (byte) (applied ? 1 : 0);
         txHistorySource.put(key, value);
     }
 
     public List<TxHistory> getTxHistoryByAddress(Bytes32 addressHashlow) {
-        List<byte[]> values = txHistorySource.prefixValueLookup(BytesUtils.merge(TX_HISTORY, addressHashlow.toArray()));
+        return getTxHistoryByAddress(addressHashlow, null, 0).getItems();
+    }
+
+    /**
+     * 按时间从新到旧分页取出地址的交易历史
+     *
+     * @param cursor 上一页返回的 cursor, 从头开始时为 null
+     * @param limit 最多返回的条数, 不大于 0 时不限制
+     */
+    public Page<TxHistory> getTxHistoryByAddress(Bytes32 addressHashlow, byte[] cursor, int limit) {
         List<TxHistory> res = new ArrayList<>();
+        byte[] prefix = BytesUtils.merge(TX_HISTORY_INDEX, addressHashlow.toArray());
+        if (cursor != null && !BytesUtils.keyStartsWith(cursor, prefix)) {
+            throw new IllegalArgumentException("invalid tx history cursor");
+        }
+        byte[] start = cursor != null ? BytesUtils.merge(cursor, new byte[]{0}) : prefix;
+        try (KVIterator<byte[], byte[]> it = txHistorySource.rangeIterator(start, null)) {
+            byte[] key = null;
+            while (it.hasNext()) {
+                Pair<byte[], byte[]> entry = it.next();
+                if (!BytesUtils.keyStartsWith(entry.getKey(), prefix)) {
+                    break;
+                }
+                if (limit > 0 && res.size() == limit) {
+                    return new Page<>(res, key);
+                }
+                key = entry.getKey();
+                res.add(toTxHistory(entry.getValue()));
+            }
+        }
+        return new Page<>(res, null);
+    }
+
+    /**
+     * 旧版本的交易历史按 0xa0 + address hash + tx hash + id 保存, 没有 applied 标志; 转为新的 key, 标志取自交易区块
+     */
+    private void migrateTxHistory() {
+        byte[] start = {TX_HISTORY};
+        byte[] end = {TX_HISTORY + 1};
+        long count = 0;
+        List<Pair<byte[], byte[]>> rows = new ArrayList<>(MULTI_GET_SIZE);
+        try (KVIterator<byte[], byte[]> it = txHistorySource.rangeIterator(start, end)) {
+            while (it.hasNext()) {
+                rows.add(it.next());
+                if (rows.size() == MULTI_GET_SIZE || !it.hasNext()) {
+                    migrateTxHistory(rows);
+                    count += rows.size();
+                    rows.clear();
+                }
+            }
+        }
+        if (count > 0) {
+            txHistorySource.deleteRange(start, end);
+            log.info("Migrated {} tx history records", count);
+        }
+    }
 
-        for (byte[] value : values) {
-            byte type = BytesUtils.subArray(value, 0, 1)[0];
-            XdagField.FieldType fieldType = XdagField.FieldType.fromByte(type);
-            Bytes32 hashlow = Bytes32.wrap(BytesUtils.subArray(value, 1, 32));
-            long amount = BytesUtils.bytesToLong(BytesUtils.subArray(value, 33, 8), 0, true);
-            long timestamp = BytesUtils.bytesToLong(BytesUtils.subArray(value, 41, 8), 0, true);
-            Address address = new Address(hashlow, fieldType, amount);
+    /**
+     * 旧版本按 BLOCK_HEIGHT + 高度 -> hashlow 保存, 非主块也写过且回滚时不删除; 只把仍是该高度主块的转为 MAIN_CHAIN 记录, 然后删除旧 key
+     */
+    private void migrateMainChain() {
+        byte[] start = {BLOCK_HEIGHT};
+        byte[] end = {BLOCK_HEIGHT + 1};
+        long count = 0;
+        long migrated = 0;
+        List<Pair<byte[], byte[]>> rows = new ArrayList<>(MULTI_GET_SIZE);
+        try (KVIterator<byte[], byte[]> it = indexSource.rangeIterator(start, end)) {
+            while (it.hasNext()) {
+                rows.add(it.next());
+                if (rows.size() == MULTI_GET_SIZE || !it.hasNext()) {
+                    migrated += migrateMainChain(rows);
+                    count += rows.size();
+                    rows.clear();
+                }
+            }
+        }
+        if (count > 0) {
+            indexSource.deleteRange(start, end);
+            log.info("Migrated {} of {} block height records", migrated, count);
+        }
+    }
 
-            long remarkLength = BytesUtils.bytesToLong(BytesUtils.subArray(value, 49, 8), 0, true);
+    private int migrateMainChain(List<Pair<byte[], byte[]>> rows) {
+        List<Bytes32> hashlows = new ArrayList<>(rows.size());
+        for (Pair<byte[], byte[]> row : rows) {
+            hashlows.add(Bytes32.wrap(row.getValue()));
+        }
+        List<Block> infos = getBlockInfosByHash(hashlows);
+        int migrated = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            long height = BytesUtils.bytesToLong(rows.get(i).getKey(), 1, false);
+            Block block = infos.get(i);
+            if (block == null || block.getInfo().getHeight() != height
+                    || ((block.getInfo().getFlags() & BI_MAIN) == 0 && !block.getInfo().isSnapshot())) {
+                continue;
+            }
+            byte[] key = getMainKey(height);
+            // 已有的新记录更可信
+            if (indexSource.get(key) == null) {
+                indexSource.put(key, MainChainRecord.of(block.getInfo()).encode());
+                migrated++;
+            }
+        }
+        return migrated;
+    }
+
+    private void migrateTxHistory(List<Pair<byte[], byte[]>> rows) {
+        List<Bytes32> txs = new ArrayList<>(rows.size());
+        for (Pair<byte[], byte[]> row : rows) {
+            txs.add(Bytes32.wrap(row.getValue(), 1));
+        }
+        List<Block> infos = getBlockInfosByHash(txs);
+        for (int i = 0; i < rows.size(); i++) {
+            byte[] key = rows.get(i).getKey();
+            byte[] value = rows.get(i).getValue();
+            Block tx = infos.get(i);
+            boolean applied = tx != null && tx.getInfo() != null && (tx.getInfo().getFlags() & BI_APPLIED) != 0;
+            // 1 + 32 + 32 : prefix + address hash + tx hash
+            Bytes32 address = Bytes32.wrap(key, 1);
+            int id = BytesUtils.bytesToInt(key, 1 + 32 + 32, true);
+            long time = txTime(value);
+            putTxHistory(getTxHistoryKey(address, time, txs.get(i), id), time,
+                    BytesUtils.merge(value, new byte[]{(byte) (applied ? 1 : 0)}));
+        }
+    }
 
-            String remark = "";
-            if (remarkLength != 0) {
-                remark = new String(BytesUtils.subArray(value, 57, (int) remarkLength), StandardCharsets.UTF_8).trim();
+    /**
+     * 按时间索引删除时间早于 horizonTime 的交易历史, 每页最多 limit 条
+     *
+     * @param cursor 上一页返回的 cursor, 从头开始时为 null
+     * @param limit 最多删除的条数, 不大于 0 时不限制
+     * @return 已删除记录的 key
+     */
+    public Page<byte[]> pruneTxHistory(long horizonTime, byte[] cursor, int limit) {
+        List<byte[]> pruned = Lists.newArrayList();
+        byte[] start = cursor != null ? BytesUtils.merge(cursor, new byte[]{0}) : new byte[]{TX_HISTORY_TIME};
+        byte[] end = BytesUtils.merge(TX_HISTORY_TIME, BytesUtils.longToBytes(horizonTime, false));
+        byte[] key = null;
+        boolean hasMore = false;
+        try (KVIterator<byte[], byte[]> it = txHistorySource.rangeIterator(start, end)) {
+            while (it.hasNext()) {
+                if (limit > 0 && pruned.size() == limit) {
+                    hasMore = true;
+                    break;
+                }
+                key = it.next().getKey();
+                // 1 + 8 : prefix + time
+                pruned.add(BytesUtils.merge(TX_HISTORY_INDEX, BytesUtils.subArray(key, 1 + 8, key.length - 1 - 8)));
             }
-            res.add(new TxHistory(address, timestamp, remark));
         }
-        return res;
+        for (byte[] k : pruned) {
+            txHistorySource.delete(k);
+        }
+        if (!pruned.isEmpty()) {
+            txHistorySource.deleteRange(start, BytesUtils.merge(key, new byte[]{0}));
+        }
+        return new Page<>(pruned, hasMore ? key : null);
+    }
 
+    // type(1) + hash(32) + amount(8) + time(8)
+    private static long txTime(byte[] value) {
+        return BytesUtils.bytesToLong(value, 41, true);
     }
-}
 
+    private static boolean isApplied(byte[] value) {
+        return value[value.length - 1] != 0;
+    }
+
+    private static TxHistory toTxHistory(byte[] value) {
+        byte type = BytesUtils.subArray(value, 0, 1)[0];
+        XdagField.FieldType fieldType = XdagField.FieldType.fromByte(type);
+        Bytes32 hashlow = Bytes32.wrap(BytesUtils.subArray(value, 1, 32));
+        long amount = BytesUtils.bytesToLong(BytesUtils.subArray(value, 33, 8), 0, true);
+        long timestamp = txTime(value);
+        Address address = new Address(hashlow, fieldType, amount);
+
+        long remarkLength = BytesUtils.bytesToLong(BytesUtils.subArray(value, 49, 8), 0, true);
+
+        String remark = "";
+        if (remarkLength != 0) {
+            remark = new String(BytesUtils.subArray(value, 57, (int) remarkLength), StandardCharsets.UTF_8).trim();
+        }
+        return new TxHistory(address, timestamp, remark, isApplied(value));
+    }
+
+    private static class InfoBatch {
+
+        // hashlow -> 待提交的 BlockInfo, null 表示该条目被删除
+        private final Map<Bytes32, BlockInfo> infos = new HashMap<>();
+        private int depth;
+    }
+}
@@ -48,5 +48,10 @@ public enum DatabaseName {
      */
     ORPHANIND,
 
-    SNAPSHOT
+    SNAPSHOT,
+
+    /**
+     * Record number of each block in the mapped block store, used instead of BLOCK when it is enabled.
+     */
+    BLOCKOFFSET
 }
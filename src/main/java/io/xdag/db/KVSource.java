@@ -50,6 +50,11 @@ public interface KVSource<K, V> {
 
     void delete(K key);
 
+    /**
+     * Delete the keys in {@code [start, end)}.
+     */
+    void deleteRange(K start, K end);
+
     Set<byte[]> keys() throws RuntimeException;
 
     List<K> prefixKeyLookup(byte[] key);
@@ -60,4 +65,46 @@ public interface KVSource<K, V> {
 
     List<Pair<byte[], byte[]>> prefixKeyAndValueLookup(byte[] key);
 
+    /**
+     * Point lookup of many keys in one call.
+     *
+     * @return values in the order of {@code keys}, {@code null} where a key is absent
+     */
+    List<V> multiGet(List<K> keys);
+
+    /**
+     * Iterate the keys in {@code [start, end)} in order; {@code end == null} means up to the last key.
+     */
+    KVIterator<K, V> rangeIterator(K start, K end);
+
+    /**
+     * Iterate the keys starting with {@code prefix} in order.
+     */
+    KVIterator<K, V> prefixIterator(K prefix);
+
+    /**
+     * Start a unit of work for the calling thread: until {@link #commitBatch(boolean)} or
+     * {@link #rollbackBatch()}, its puts and deletes are buffered, and its reads see them.
+     * Nested calls join the outer batch.
+     */
+    void beginBatch();
+
+    /**
+     * Atomically apply the buffered writes of the calling thread.
+     *
+     * @param sync whether to fsync the WAL before returning
+     */
+    void commitBatch(boolean sync);
+
+    /**
+     * Discard the buffered writes of the calling thread.
+     */
+    void rollbackBatch();
+
+    /**
+     * Run {@code action} once the batch of the calling thread has been written to the db, or right
+     * away when no batch is open. Actions of a batch that is rolled back or fails to write are dropped.
+     */
+    void onCommit(Runnable action);
+
 }
@@ -0,0 +1,85 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db;
+
+import io.xdag.core.BlockInfo;
+import io.xdag.utils.BytesUtils;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import lombok.Getter;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * 主链上一个高度的定长记录, 列出主块或按高度查找时不需要解码 BlockInfo.
+ *
+ * <pre>
+ * hashlow(32) timestamp(8) difficulty(16) amount(8)
+ * </pre>
+ */
+@Getter
+public class MainChainRecord {
+
+    public static final int SIZE = 32 + 8 + 16 + 8;
+
+    private final long height;
+    private final Bytes32 hashlow;
+    private final long timestamp;
+    private final BigInteger difficulty;
+    private final long amount;
+
+    public MainChainRecord(long height, Bytes32 hashlow, long timestamp, BigInteger difficulty, long amount) {
+        this.height = height;
+        this.hashlow = hashlow;
+        this.timestamp = timestamp;
+        this.difficulty = difficulty;
+        this.amount = amount;
+    }
+
+    public static MainChainRecord of(BlockInfo blockInfo) {
+        return new MainChainRecord(blockInfo.getHeight(), Bytes32.wrap(blockInfo.getHashlow()),
+                blockInfo.getTimestamp(), blockInfo.getDifficulty() == null ? BigInteger.ZERO : blockInfo.getDifficulty(),
+                blockInfo.getAmount());
+    }
+
+    public byte[] encode() {
+        return ByteBuffer.allocate(SIZE)
+                .put(hashlow.toArrayUnsafe())
+                .putLong(timestamp)
+                .put(BytesUtils.bigIntegerToBytes(difficulty, 16))
+                .putLong(amount)
+                .array();
+    }
+
+    public static MainChainRecord decode(long height, byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        byte[] hashlow = new byte[32];
+        buffer.get(hashlow);
+        long timestamp = buffer.getLong();
+        byte[] difficulty = new byte[16];
+        buffer.get(difficulty);
+        return new MainChainRecord(height, Bytes32.wrap(hashlow), timestamp, new BigInteger(1, difficulty),
+                buffer.getLong());
+    }
+}
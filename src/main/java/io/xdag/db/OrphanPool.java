@@ -35,8 +35,19 @@ import org.bouncycastle.util.encoders.Hex;
 
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * 孤块池. 数据持久化在 ORPHANIND 库中, 同时在内存中按时间维护有序索引,
+ * getOrphan 只需遍历最早的若干个孤块, 不再全量扫描排序.
+ * 批量写入期间的修改在提交后才对其他线程可见, 回滚时一并丢弃
+ */
 @Slf4j
 public class OrphanPool {
 
@@ -45,8 +56,20 @@ public class OrphanPool {
      * size key
      */
     private static final byte[] ORPHAN_SIZE = Hex.decode("FFFFFFFFFFFFFFFF");
+    private static final Comparator<Orphan> ORDER = Comparator.<Orphan>comparingLong(o -> o.time)
+            .thenComparing(o -> o.hashlow);
     // <hash,nexthash>
     private final KVSource<byte[], byte[]> orphanSource;
+    /**
+     * 按时间排序的孤块
+     */
+    private final NavigableSet<Orphan> orphans = new ConcurrentSkipListSet<>(ORDER);
+    private final Map<Bytes32, Orphan> index = new ConcurrentHashMap<>();
+    private final AtomicLong size = new AtomicLong();
+    /**
+     * 当前线程批量写入中尚未应用到内存索引的修改
+     */
+    private final ThreadLocal<Batch> batch = new ThreadLocal<>();
 
     public OrphanPool(KVSource<byte[], byte[]> orphan) {
         this.orphanSource = orphan;
@@ -54,67 +77,165 @@ public class OrphanPool {
 
     public void init() {
         this.orphanSource.init();
-        if (orphanSource.get(ORPHAN_SIZE) == null) {
-            this.orphanSource.put(ORPHAN_SIZE, BytesUtils.longToBytes(0, false));
+        clear();
+        for (Pair<byte[], byte[]> kv : orphanSource.prefixKeyAndValueLookup(BytesUtils.of(ORPHAN_PREFEX))) {
+            // TODO:判断时间，这里出现过orphanSource获取key时为空的情况
+            if (kv.getValue() == null) {
+                continue;
+            }
+            Orphan orphan = new Orphan(Bytes32.wrap(kv.getKey(), 1), BytesUtils.bytesToLong(kv.getValue(), 0, true));
+            if (index.putIfAbsent(orphan.hashlow, orphan) == null) {
+                orphans.add(orphan);
+                size.incrementAndGet();
+            }
         }
+        this.orphanSource.put(ORPHAN_SIZE, BytesUtils.longToBytes(size.get(), false));
+        log.debug("load {} orphans", size.get());
     }
 
     public void reset() {
         this.orphanSource.reset();
+        clear();
         this.orphanSource.put(ORPHAN_SIZE, BytesUtils.longToBytes(0, false));
     }
 
+    private void clear() {
+        batch.remove();
+        orphans.clear();
+        index.clear();
+        size.set(0);
+    }
+
+    public void beginBatch() {
+        orphanSource.beginBatch();
+        Batch current = batch.get();
+        if (current == null) {
+            current = new Batch();
+            batch.set(current);
+        }
+        current.depth++;
+    }
+
+    public void commitBatch(boolean sync) {
+        Batch current = batch.get();
+        if (current != null && --current.depth == 0) {
+            batch.remove();
+            if (!current.ops.isEmpty()) {
+                // size 只在提交时写一次; 内存索引等数据库写入成功后再更新,
+                // 与其他数据源共用 batch 时由最外层的提交触发
+                orphanSource.put(ORPHAN_SIZE, BytesUtils.longToBytes(size.get() + sizeDelta(current.ops), false));
+                orphanSource.onCommit(() -> current.ops.forEach(this::apply));
+            }
+        }
+        orphanSource.commitBatch(sync);
+    }
+
+    /**
+     * 内层回滚只退出一层, 外层的修改保留; 此时数据库 batch 已被标记为只能回滚, 外层提交不会生效
+     */
+    public void rollbackBatch() {
+        Batch current = batch.get();
+        if (current != null && --current.depth == 0) {
+            batch.remove();
+        }
+        orphanSource.rollbackBatch();
+    }
+
+    /**
+     * ops 全部生效后孤块数量的变化
+     */
+    private long sizeDelta(List<Orphan> ops) {
+        Map<Bytes32, Boolean> present = new HashMap<>();
+        long delta = 0;
+        for (Orphan op : ops) {
+            boolean was = present.computeIfAbsent(op.hashlow, index::containsKey);
+            boolean now = op.time >= 0;
+            delta += (now ? 1 : 0) - (was ? 1 : 0);
+            present.put(op.hashlow, now);
+        }
+        return delta;
+    }
+
     public List<Address> getOrphan(long num, long[] sendtime) {
         List<Address> res = new ArrayList<>();
-        if (orphanSource.get(ORPHAN_SIZE) == null || getOrphanSize() == 0) {
+        if (size.get() == 0) {
             return null;
-        } else {
-            long orphanSize = getOrphanSize();
-            long addNum = Math.min(orphanSize, num);
-            byte[] key = BytesUtils.of(ORPHAN_PREFEX);
-            List<Pair<byte[],byte[]>> ans = orphanSource.prefixKeyAndValueLookup(key);
-            ans.sort(Comparator.comparingLong(a -> BytesUtils.bytesToLong(a.getValue(), 0, true)));
-            for (Pair<byte[],byte[]> an : ans) {
-                if (addNum == 0) {
-                    break;
-                }
-                // TODO:判断时间，这里出现过orphanSource获取key时为空的情况
-                if (an.getValue() == null) {
-                    continue;
-                }
-                long time =  BytesUtils.bytesToLong(an.getValue(), 0, true);
-                if (time <= sendtime[0]) {
-                    addNum--;
-                    res.add(new Address(Bytes32.wrap(an.getKey(), 1), XdagField.FieldType.XDAG_FIELD_OUT));
-                    sendtime[1] = Math.max(sendtime[1],time);
-                }
+        }
+        // 按时间升序, 满足 time <= sendtime[0] 的孤块是有序集合的前缀
+        for (Orphan orphan : orphans) {
+            if (res.size() >= num || orphan.time > sendtime[0]) {
+                break;
             }
-            sendtime[1] = Math.min(sendtime[1]+1,sendtime[0]);
-            return res;
+            res.add(new Address(orphan.hashlow, XdagField.FieldType.XDAG_FIELD_OUT));
+            sendtime[1] = Math.max(sendtime[1], orphan.time);
         }
+        sendtime[1] = Math.min(sendtime[1] + 1, sendtime[0]);
+        return res;
     }
 
     public void deleteByHash(byte[] hashlow) {
         log.debug("deleteByhash");
         orphanSource.delete(BytesUtils.merge(ORPHAN_PREFEX, hashlow));
-        long currentsize = BytesUtils.bytesToLong(orphanSource.get(ORPHAN_SIZE), 0, false);
-        orphanSource.put(ORPHAN_SIZE, BytesUtils.longToBytes(currentsize - 1, false));
+        update(new Orphan(Bytes32.wrap(hashlow).copy(), -1));
     }
 
     public void addOrphan(Block block) {
         orphanSource.put(BytesUtils.merge(ORPHAN_PREFEX, block.getHashLow().toArray()),
                 BytesUtils.longToBytes(block.getTimestamp(), true));
-        long currentsize = BytesUtils.bytesToLong(orphanSource.get(ORPHAN_SIZE), 0, false);
-        log.debug("orphan current size:" + currentsize);
-//        log.debug(":" + Hex.toHexString(orphanSource.get(ORPHAN_SIZE)));
-        orphanSource.put(ORPHAN_SIZE, BytesUtils.longToBytes(currentsize + 1, false));
+        update(new Orphan(Bytes32.wrap(block.getHashLow().toArray()), block.getTimestamp()));
     }
 
     public long getOrphanSize() {
-        long currentsize = BytesUtils.bytesToLong(orphanSource.get(ORPHAN_SIZE), 0, false);
-        log.debug("current orphan size:" + currentsize);
-        log.debug("Hex:" + Hex.toHexString(orphanSource.get(ORPHAN_SIZE)));
-        return currentsize;
+        return size.get();
+    }
+
+    /**
+     * 无批量写入时直接生效, 否则在提交时生效
+     */
+    private void update(Orphan op) {
+        Batch current = batch.get();
+        if (current != null) {
+            current.ops.add(op);
+        } else {
+            apply(op);
+            orphanSource.put(ORPHAN_SIZE, BytesUtils.longToBytes(size.get(), false));
+        }
+    }
+
+    /**
+     * time 为负表示删除
+     */
+    private void apply(Orphan op) {
+        if (op.time < 0) {
+            Orphan old = index.remove(op.hashlow);
+            if (old != null) {
+                orphans.remove(old);
+                size.decrementAndGet();
+            }
+        } else {
+            Orphan old = index.put(op.hashlow, op);
+            if (old != null) {
+                orphans.remove(old);
+            } else {
+                size.incrementAndGet();
+            }
+            orphans.add(op);
+        }
+    }
+
+    private static class Orphan {
+        final Bytes32 hashlow;
+        final long time;
+
+        Orphan(Bytes32 hashlow, long time) {
+            this.hashlow = hashlow;
+            this.time = time;
+        }
+    }
+
+    private static class Batch {
+        final List<Orphan> ops = new ArrayList<>();
+        int depth;
     }
 
 }
@@ -49,6 +49,7 @@ import io.xdag.core.StatsBlock;
 import io.xdag.utils.BytesUtils;
 import io.xdag.utils.FileUtils;
 import io.xdag.utils.Numeric;
+import io.xdag.wallet.KeyIndex;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -266,6 +267,7 @@ public class SnapshotChainStoreImpl implements SnapshotChainStore {
      * @param mainLag  用于判断是主网的randomx lag还是测试网的randomx_lag 暂时固定128
      */
     public boolean loadFromSnapshotData(String filePath, boolean mainLag, List<KeyPair> keys) {
+        KeyIndex ourKeys = new KeyIndex(keys);
         // 1. 初始保存
         Set<Bytes32> set = new HashSet<>();
         Map<Bytes32, SnapshotBalanceData> balanceDataMap = new HashMap<>();
@@ -395,36 +397,15 @@ public class SnapshotChainStoreImpl implements SnapshotChainStore {
             int keyIndex = -1;
             // 4.1 如果公钥存在，对比公钥
             if (ecKeyPair != null) {
-                for (int i = 0; i < keys.size(); i++) {
-                    KeyPair key = keys.get(i);
-                    // 如果有相等的说明是我们的区块
-                    if (Bytes.wrap(key.getPublicKey().asEcPoint(Sign.CURVE).getEncoded(true)).compareTo(Bytes.wrap(ecKeyPair)) == 0) {
-                        flag |= BI_OURS;
-                        keyIndex = i;
-                        // TODO: 添加我们的balance
-                        ourBalance += balanceData.getAmount();
-                        break;
-                    }
-                }
+                keyIndex = ourKeys.indexOf(Bytes.wrap(ecKeyPair));
             } else { // 4.2 否则对比签名
                 Block tmpBlock = new Block(new XdagBlock(data));
-                SECPSignature outsig = tmpBlock.getOutsig();
-                for (int i = 0; i < keys.size(); i++) {
-                    KeyPair keyPair = keys.get(i);
-                    byte[] publicKeyBytes = keyPair.getPublicKey().asEcPoint(Sign.CURVE).getEncoded(true);
-                    Bytes digest = Bytes
-                            .wrap(tmpBlock.getSubRawData(tmpBlock.getOutsigIndex() - 2), Bytes.wrap(publicKeyBytes));
-                    Bytes32 hash = Hash.hashTwice(Bytes.wrap(digest));
-                    if (Sign.SECP256K1.verify(hash, Sign.toCanonical(outsig), keyPair.getPublicKey())) {
-                        //int flag = balanceData.getFlags();
-                        flag |= BI_OURS;
-                        //balanceData.setFlags(flag);
-                        keyIndex = i;
-//                         TODO: 添加我们的balance
-                        ourBalance += balanceData.getAmount();
-                        break;
-                    }
-                }
+                keyIndex = ourKeys.findSigner(tmpBlock, Sign.toCanonical(tmpBlock.getOutsig()), true);
+            }
+            if (keyIndex >= 0) {
+                flag |= BI_OURS;
+                // TODO: 添加我们的balance
+                ourBalance += balanceData.getAmount();
             }
             balanceData.setFlags(flag);
 
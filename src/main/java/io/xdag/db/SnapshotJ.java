@@ -37,6 +37,7 @@ import io.xdag.db.rocksdb.RocksdbKVSource;
 import io.xdag.core.SnapshotInfo;
 
 import io.xdag.utils.BytesUtils;
+import io.xdag.wallet.KeyIndex;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
@@ -50,6 +51,7 @@ import java.io.ByteArrayOutputStream;
 import java.math.BigInteger;
 import java.util.List;
 
+import static io.xdag.config.Constants.BI_APPLIED;
 import static io.xdag.config.Constants.BI_OURS;
 import static io.xdag.db.BlockStore.*;
 
@@ -69,14 +71,14 @@ public class SnapshotJ extends RocksdbKVSource {
         super(name);
     }
 
-    public void makeSnapshot(RocksdbKVSource blockSource, RocksdbKVSource snapshotSource) {
+    public void makeSnapshot(KVSource<byte[], byte[]> blockSource, KVSource<byte[], byte[]> snapshotSource) {
 
-        try (RocksIterator iter = getDb().newIterator()) {
+        try (RocksIterator iter = getDb().newIterator(getHandle())) {
             for (iter.seek(new byte[]{HASH_BLOCK_INFO}); iter.key()[0] < 0x40; iter.next()) {
                 BlockInfo blockInfo = new BlockInfo();
                 if (iter.value() != null) {
                     try {
-                        blockInfo = (BlockInfo) deserialize(iter.value(), BlockInfo.class);
+                        blockInfo = BlockInfoCodec.decode(iter.value());
                     } catch (DeserializationException e) {
                         log.error("hash low:" + Hex.toHexString(blockInfo.getHashlow()));
                         log.error("can't deserialize data:{}", Hex.toHexString(iter.value()));
@@ -114,13 +116,14 @@ public class SnapshotJ extends RocksdbKVSource {
     }
 
     public void saveSnapshotToIndex(BlockStore blockStore, List<KeyPair> keys,long snapshotTime) {
-        try (RocksIterator iter = getDb().newIterator()) {
+        KeyIndex ourKeys = new KeyIndex(keys);
+        try (RocksIterator iter = getDb().newIterator(getHandle())) {
             for (iter.seekToFirst(); iter.isValid(); iter.next()) {
                 if (iter.key()[0] == 0x30) {
                     BlockInfo blockInfo = new BlockInfo();
                     if (iter.value() != null) {
                         try {
-                            blockInfo = (BlockInfo) deserialize(iter.value(), BlockInfo.class);
+                            blockInfo = BlockInfoCodec.decode(iter.value());
                         } catch (DeserializationException e) {
                             log.error("hash low:" + Hex.toHexString(blockInfo.getHashlow()));
                             log.error("can't deserialize data:{}", Hex.toHexString(iter.value()));
@@ -133,32 +136,14 @@ public class SnapshotJ extends RocksdbKVSource {
                         if (blockInfo.getSnapshotInfo() != null) {
                             //public key exists
                             if (snapshotInfo.getType()) {
-                                byte[] ecKeyPair = snapshotInfo.getData();
-                                for (int i = 0; i < keys.size(); i++) {
-                                    KeyPair key = keys.get(i);
-                                    if (Bytes.wrap(key.getPublicKey().asEcPoint(Sign.CURVE).getEncoded(true)).compareTo(Bytes.wrap(ecKeyPair)) == 0) {
-                                        flag |= BI_OURS;
-                                        keyIndex = i;
-                                        ourBalance += blockInfo.getAmount();
-                                        break;
-                                    }
-                                }
+                                keyIndex = ourKeys.indexOf(Bytes.wrap(snapshotInfo.getData()));
                             } else {    //Verify signature
                                 Block block = new Block(new XdagBlock(snapshotInfo.getData()));
-                                SECPSignature outSig = block.getOutsig();
-                                for (int i = 0; i < keys.size(); i++) {
-                                    KeyPair keyPair = keys.get(i);
-                                    byte[] publicKeyBytes = keyPair.getPublicKey().asEcPoint(Sign.CURVE).getEncoded(true);
-                                    Bytes digest = Bytes
-                                            .wrap(block.getSubRawData(block.getOutsigIndex() - 2), Bytes.wrap(publicKeyBytes));
-                                    Bytes32 hash = Hash.hashTwice(Bytes.wrap(digest));
-                                    if (Sign.SECP256K1.verify(hash, Sign.toCanonical(outSig), keyPair.getPublicKey())) {
-                                        flag |= BI_OURS;
-                                        keyIndex = i;
-                                        ourBalance += blockInfo.getAmount();
-                                        break;
-                                    }
-                                }
+                                keyIndex = ourKeys.findSigner(block, Sign.toCanonical(block.getOutsig()), true);
+                            }
+                            if (keyIndex >= 0) {
+                                flag |= BI_OURS;
+                                ourBalance += blockInfo.getAmount();
                             }
                         }
                         blockInfo.setFlags(flag);
@@ -168,7 +153,7 @@ public class SnapshotJ extends RocksdbKVSource {
                         blockStore.saveTxHistory(Bytes32.wrap(blockInfo.getHashlow()),Bytes32.wrap(blockInfo.getHashlow()),
                                 XdagField.FieldType.XDAG_FIELD_SNAPSHOT,BigInteger.valueOf(blockInfo.getAmount()),
                                 snapshotTime,0,
-                                blockInfo.getRemark());
+                                blockInfo.getRemark(), (flag & BI_APPLIED) != 0);
                         blockStore.saveBlockInfo(blockInfo);
                     }
                 } else if (iter.key()[0] == (byte) 0x90) {
@@ -180,7 +165,7 @@ public class SnapshotJ extends RocksdbKVSource {
         }
     }
 
-    private void save(RocksIterator iter, BlockInfo blockInfo, RocksdbKVSource snapshotSource) {
+    private void save(RocksIterator iter, BlockInfo blockInfo, KVSource<byte[], byte[]> snapshotSource) {
         byte[] value = null;
         try {
             value = serialize(blockInfo);
@@ -0,0 +1,188 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.db;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * sums.dat 各层级在内存中的副本. 节点按需从库中加载, 修改只标记为脏节点, 由 BlockStore 批量写回.
+ * 批量写入期间的修改在提交后才对其他线程可见, 回滚时一并丢弃
+ */
+class SumsTree {
+
+    /**
+     * 每个节点 256 项, 每项为 sum, size
+     */
+    static final int ENTRIES = 256;
+
+    /**
+     * 库中没有该节点
+     */
+    private static final long[] ABSENT = new long[0];
+
+    private final Function<String, long[]> loader;
+    private final Map<String, long[]> nodes = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<Batch> batch = new ThreadLocal<>();
+
+    SumsTree(Function<String, long[]> loader) {
+        this.loader = loader;
+    }
+
+    void clear() {
+        batch.remove();
+        nodes.clear();
+        dirty.clear();
+    }
+
+    void beginBatch() {
+        Batch current = batch.get();
+        if (current == null) {
+            current = new Batch();
+            batch.set(current);
+        }
+        current.depth++;
+    }
+
+    /**
+     * @return 最外层提交时返回 true, 此时批量中的修改已应用到内存
+     */
+    boolean commitBatch() {
+        Batch current = batch.get();
+        if (current == null || --current.depth > 0) {
+            return false;
+        }
+        batch.remove();
+        for (Update update : current.updates) {
+            apply(update);
+        }
+        return true;
+    }
+
+    void rollbackBatch() {
+        batch.remove();
+    }
+
+    void add(String key, int index, long sum, long size) {
+        Update update = new Update(key, index, sum, size);
+        Batch current = batch.get();
+        if (current != null) {
+            current.updates.add(update);
+        } else {
+            apply(update);
+        }
+    }
+
+    boolean inBatch() {
+        return batch.get() != null;
+    }
+
+    /**
+     * 直接替换节点, 不标记为脏
+     */
+    void put(String key, long[] node) {
+        nodes.put(key, node);
+        dirty.remove(key);
+    }
+
+    /**
+     * @return 节点的拷贝, 不存在时返回 null
+     */
+    long[] get(String key) {
+        long[] node = load(key);
+        if (node == ABSENT) {
+            return null;
+        }
+        synchronized (node) {
+            return node.clone();
+        }
+    }
+
+    boolean hasDirty() {
+        return !dirty.isEmpty();
+    }
+
+    /**
+     * 取出所有脏节点的拷贝并清除标记, 取出后的修改会重新标记
+     */
+    Map<String, long[]> drainDirty() {
+        Map<String, long[]> res = new LinkedHashMap<>();
+        for (String key : new ArrayList<>(dirty)) {
+            if (dirty.remove(key)) {
+                long[] node = nodes.get(key);
+                if (node != null && node != ABSENT) {
+                    synchronized (node) {
+                        res.put(key, node.clone());
+                    }
+                }
+            }
+        }
+        return res;
+    }
+
+    private long[] load(String key) {
+        return nodes.computeIfAbsent(key, k -> {
+            long[] node = loader.apply(k);
+            return node == null ? ABSENT : node;
+        });
+    }
+
+    private void apply(Update update) {
+        long[] node = load(update.key);
+        if (node == ABSENT) {
+            node = nodes.compute(update.key, (k, v) -> v == null || v == ABSENT ? new long[ENTRIES * 2] : v);
+        }
+        synchronized (node) {
+            node[update.index * 2] += update.sum;
+            node[update.index * 2 + 1] += update.size;
+        }
+        dirty.add(update.key);
+    }
+
+    private static class Update {
+        final String key;
+        final int index;
+        final long sum;
+        final long size;
+
+        Update(String key, int index, long sum, long size) {
+            this.key = key;
+            this.index = index;
+            this.sum = sum;
+            this.size = size;
+        }
+    }
+
+    private static class Batch {
+        final List<Update> updates = new ArrayList<>();
+        int depth;
+    }
+
+}
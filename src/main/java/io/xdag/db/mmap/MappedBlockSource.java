@@ -0,0 +1,498 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.mmap;
+
+import io.xdag.db.KVIterator;
+import io.xdag.db.KVSource;
+import io.xdag.utils.BytesUtils;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Function;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.tuweni.bytes.MutableBytes;
+
+/**
+ * 区块原始数据的追加写存储: 512 字节的记录依次写入分段文件并通过 {@link MappedByteBuffer} 读取,
+ * 免去 LSM 的写放大, 压缩和 compaction. hashlow 到记录序号的索引存放在 offsets 中, 与其他数据源共用 batch,
+ * 回滚的记录只是成为无用空间.
+ * <p>
+ * 每个分段有 segmentRecords 条记录, NNNNNNNN.dat 存数据, NNNNNNNN.key 存对应的 32 字节 key, 用于启动时找回写入位置.
+ */
+@Slf4j
+public class MappedBlockSource implements KVSource<byte[], byte[]> {
+
+    public static final int RECORD_SIZE = 512;
+    public static final int KEY_SIZE = 32;
+    /**
+     * 每个分段 64MB 数据
+     */
+    public static final int DEFAULT_SEGMENT_RECORDS = 1 << 17;
+    /**
+     * 写入位置的提示, 与索引在同一个 batch 中写入, 启动时从这里向后扫描
+     */
+    private static final byte[] POSITION_KEY = {0};
+
+    @Getter
+    private final Path dir;
+    @Getter
+    private final KVSource<byte[], byte[]> offsets;
+    private final int segmentRecords;
+    /**
+     * 启用前写在 RocksDB 中的区块, 首次打开时导入并清空
+     */
+    @Setter
+    private KVSource<byte[], byte[]> legacy;
+    @Getter
+    @Setter
+    private String name;
+    private volatile Segment[] segments = new Segment[0];
+    private long position;
+    /**
+     * 该序号之前的记录已落盘
+     */
+    private long forced;
+    private volatile boolean alive;
+
+    public MappedBlockSource(String name, Path dir, KVSource<byte[], byte[]> offsets, int segmentRecords) {
+        this.name = name;
+        this.dir = dir;
+        this.offsets = offsets;
+        this.segmentRecords = segmentRecords;
+    }
+
+    @Override
+    public synchronized void init() {
+        if (alive) {
+            return;
+        }
+        offsets.init();
+        try {
+            Files.createDirectories(dir);
+            List<Segment> list = new ArrayList<>();
+            while (Files.exists(dataPath(list.size()))) {
+                list.add(new Segment(list.size()));
+            }
+            segments = list.toArray(new Segment[0]);
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+            throw new RuntimeException("Failed to initialize block store " + dir, e);
+        }
+        position = recover();
+        forced = position;
+        alive = true;
+        if (legacy != null) {
+            migrate();
+        }
+        log.debug("Mapped block store {} opened at record {}", dir, position);
+    }
+
+    /**
+     * 从提示的位置向后扫描已写入 key 的记录, 写入位置是其中最后一条已提交(索引指向它)的记录之后
+     */
+    private long recover() {
+        byte[] hint = offsets.get(POSITION_KEY);
+        long n = hint == null ? 0 : BytesUtils.bytesToLong(hint, 0, false);
+        long end = n;
+        byte[] key = new byte[KEY_SIZE];
+        for (; n < (long) segments.length * segmentRecords; n++) {
+            segment(n).keys.get(slot(n) * KEY_SIZE, key);
+            if (isZero(key)) {
+                break;
+            }
+            byte[] offset = offsets.get(key);
+            if (offset != null && BytesUtils.bytesToLong(offset, 0, false) == n) {
+                end = n + 1;
+            }
+        }
+        return end;
+    }
+
+    private void migrate() {
+        legacy.init();
+        long count = 0;
+        try (KVIterator<byte[], byte[]> it = legacy.rangeIterator(new byte[0], null)) {
+            while (it.hasNext()) {
+                Pair<byte[], byte[]> pair = it.next();
+                if (offsets.get(pair.getKey()) == null) {
+                    put(pair.getKey(), pair.getValue());
+                    count++;
+                }
+            }
+        }
+        if (count > 0) {
+            force();
+            log.info("Moved {} blocks from {} into {}", count, legacy.getName(), dir);
+        }
+        legacy.reset();
+    }
+
+    @Override
+    public void put(byte[] key, byte[] val) {
+        if (val == null) {
+            delete(key);
+            return;
+        }
+        if (key.length != KEY_SIZE || val.length != RECORD_SIZE) {
+            throw new IllegalArgumentException("expect " + KEY_SIZE + " bytes key and " + RECORD_SIZE + " bytes value");
+        }
+        long n = append(key, val);
+        offsets.put(key, BytesUtils.longToBytes(n, false));
+        offsets.put(POSITION_KEY, BytesUtils.longToBytes(n + 1, false));
+    }
+
+    private synchronized long append(byte[] key, byte[] val) {
+        long n = position;
+        if (n == (long) segments.length * segmentRecords) {
+            grow();
+        }
+        Segment segment = segment(n);
+        segment.data.put(slot(n) * RECORD_SIZE, val);
+        segment.keys.put(slot(n) * KEY_SIZE, key);
+        position = n + 1;
+        return n;
+    }
+
+    private void grow() {
+        try {
+            Segment[] grown = Arrays.copyOf(segments, segments.length + 1);
+            grown[segments.length] = new Segment(segments.length);
+            segments = grown;
+        } catch (IOException e) {
+            log.error("Failed to create segment in {}", dir, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        return read(offsets.get(key));
+    }
+
+    /**
+     * 不复制数据, 直接返回映射内存上的只读视图
+     */
+    public MutableBytes getView(byte[] key) {
+        return view(offsets.get(key));
+    }
+
+    public List<MutableBytes> multiGetView(List<byte[]> keys) {
+        List<MutableBytes> ret = new ArrayList<>(keys.size());
+        for (byte[] offset : offsets.multiGet(keys)) {
+            ret.add(view(offset));
+        }
+        return ret;
+    }
+
+    @Override
+    public List<byte[]> multiGet(List<byte[]> keys) {
+        List<byte[]> ret = new ArrayList<>(keys.size());
+        for (byte[] offset : offsets.multiGet(keys)) {
+            ret.add(read(offset));
+        }
+        return ret;
+    }
+
+    private byte[] read(byte[] offset) {
+        if (offset == null) {
+            return null;
+        }
+        long n = BytesUtils.bytesToLong(offset, 0, false);
+        byte[] ret = new byte[RECORD_SIZE];
+        segment(n).data.get(slot(n) * RECORD_SIZE, ret);
+        return ret;
+    }
+
+    private MutableBytes view(byte[] offset) {
+        if (offset == null) {
+            return null;
+        }
+        long n = BytesUtils.bytesToLong(offset, 0, false);
+        return MutableBytes.wrapByteBuffer(segment(n).data.slice(slot(n) * RECORD_SIZE, RECORD_SIZE)
+                .asReadOnlyBuffer());
+    }
+
+    /**
+     * 只删除索引, 记录占用的空间不回收
+     */
+    @Override
+    public void delete(byte[] key) {
+        offsets.delete(key);
+    }
+
+    @Override
+    public void deleteRange(byte[] start, byte[] end) {
+        List<byte[]> keys = new ArrayList<>();
+        try (KVIterator<byte[], byte[]> it = offsets.rangeIterator(start, end)) {
+            while (it.hasNext()) {
+                byte[] key = it.next().getKey();
+                if (!isPositionKey(key)) {
+                    keys.add(key);
+                }
+            }
+        }
+        for (byte[] key : keys) {
+            offsets.delete(key);
+        }
+    }
+
+    @Override
+    public Set<byte[]> keys() throws RuntimeException {
+        Set<byte[]> ret = new HashSet<>();
+        for (byte[] key : offsets.keys()) {
+            if (!isPositionKey(key)) {
+                ret.add(key);
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public List<byte[]> prefixKeyLookup(byte[] key) {
+        List<byte[]> ret = new ArrayList<>();
+        fetchPrefix(key, pair -> {
+            ret.add(pair.getKey());
+            return Boolean.FALSE;
+        });
+        return ret;
+    }
+
+    @Override
+    public void fetchPrefix(byte[] key, Function<Pair<byte[], byte[]>, Boolean> func) {
+        offsets.fetchPrefix(key, pair -> !isPositionKey(pair.getKey())
+                && func.apply(Pair.of(pair.getKey(), read(pair.getValue()))));
+    }
+
+    @Override
+    public List<byte[]> prefixValueLookup(byte[] key) {
+        List<byte[]> ret = new ArrayList<>();
+        fetchPrefix(key, pair -> {
+            ret.add(pair.getValue());
+            return Boolean.FALSE;
+        });
+        return ret;
+    }
+
+    @Override
+    public List<Pair<byte[], byte[]>> prefixKeyAndValueLookup(byte[] key) {
+        List<Pair<byte[], byte[]>> ret = new ArrayList<>();
+        fetchPrefix(key, pair -> {
+            ret.add(pair);
+            return Boolean.FALSE;
+        });
+        return ret;
+    }
+
+    @Override
+    public KVIterator<byte[], byte[]> rangeIterator(byte[] start, byte[] end) {
+        return new RecordIterator(offsets.rangeIterator(start, end));
+    }
+
+    @Override
+    public KVIterator<byte[], byte[]> prefixIterator(byte[] prefix) {
+        return new RecordIterator(offsets.prefixIterator(prefix));
+    }
+
+    @Override
+    public void beginBatch() {
+        offsets.beginBatch();
+    }
+
+    /**
+     * 同步提交时先把新追加的记录落盘, 再提交指向它们的索引
+     */
+    @Override
+    public void commitBatch(boolean sync) {
+        if (sync) {
+            force();
+        }
+        offsets.commitBatch(sync);
+    }
+
+    @Override
+    public void rollbackBatch() {
+        offsets.rollbackBatch();
+    }
+
+    @Override
+    public void onCommit(Runnable action) {
+        offsets.onCommit(action);
+    }
+
+    private synchronized void force() {
+        for (long n = forced; n < position; n = (n / segmentRecords + 1) * segmentRecords) {
+            Segment segment = segment(n);
+            int from = slot(n);
+            int to = (int) Math.min(segmentRecords, position - n + from);
+            segment.data.force(from * RECORD_SIZE, (to - from) * RECORD_SIZE);
+            segment.keys.force(from * KEY_SIZE, (to - from) * KEY_SIZE);
+        }
+        forced = position;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!alive) {
+            return;
+        }
+        log.debug("Close mapped block store: {}", dir);
+        try {
+            force();
+            for (Segment segment : segments) {
+                segment.close();
+            }
+        } catch (IOException e) {
+            log.error("Error closing block store '{}'", dir, e);
+        }
+        // 映射在 buffer 被回收时解除
+        segments = new Segment[0];
+        offsets.close();
+        if (legacy != null) {
+            legacy.close();
+        }
+        alive = false;
+    }
+
+    @Override
+    public synchronized void reset() {
+        close();
+        offsets.reset();
+        try {
+            FileUtils.deleteDirectory(dir.toFile());
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        }
+        init();
+    }
+
+    @Override
+    public boolean isAlive() {
+        return alive;
+    }
+
+    private Segment segment(long n) {
+        return segments[(int) (n / segmentRecords)];
+    }
+
+    private int slot(long n) {
+        return (int) (n % segmentRecords);
+    }
+
+    private Path dataPath(int index) {
+        return dir.resolve(String.format("%08d.dat", index));
+    }
+
+    private Path keyPath(int index) {
+        return dir.resolve(String.format("%08d.key", index));
+    }
+
+    private static boolean isPositionKey(byte[] key) {
+        return Arrays.equals(key, POSITION_KEY);
+    }
+
+    private static boolean isZero(byte[] key) {
+        for (byte b : key) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private class Segment {
+
+        private final FileChannel dataChannel;
+        private final FileChannel keyChannel;
+        private final MappedByteBuffer data;
+        private final MappedByteBuffer keys;
+
+        Segment(int index) throws IOException {
+            dataChannel = open(dataPath(index));
+            keyChannel = open(keyPath(index));
+            // 整段映射, 文件一次扩展到最终大小, 未写入的部分是稀疏的
+            data = dataChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) segmentRecords * RECORD_SIZE);
+            keys = keyChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) segmentRecords * KEY_SIZE);
+        }
+
+        private FileChannel open(Path path) throws IOException {
+            return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        }
+
+        void close() throws IOException {
+            dataChannel.close();
+            keyChannel.close();
+        }
+    }
+
+    private class RecordIterator implements KVIterator<byte[], byte[]> {
+
+        private final KVIterator<byte[], byte[]> it;
+        private Pair<byte[], byte[]> next;
+
+        RecordIterator(KVIterator<byte[], byte[]> it) {
+            this.it = it;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && it.hasNext()) {
+                Pair<byte[], byte[]> pair = it.next();
+                if (!isPositionKey(pair.getKey())) {
+                    next = pair;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Pair<byte[], byte[]> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Pair<byte[], byte[]> ret = Pair.of(next.getKey(), read(next.getValue()));
+            next = null;
+            return ret;
+        }
+
+        @Override
+        public void close() {
+            it.close();
+        }
+    }
+}
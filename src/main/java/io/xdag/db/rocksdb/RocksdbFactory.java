@@ -21,49 +21,291 @@
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
  * THE SOFTWARE.
  */
-
 package io.xdag.db.rocksdb;
 
 import io.xdag.config.Config;
+import io.xdag.config.spec.NodeSpec;
+import io.xdag.db.BlockStore;
 import io.xdag.db.DatabaseFactory;
 import io.xdag.db.DatabaseName;
 import io.xdag.db.KVSource;
+import io.xdag.db.mmap.MappedBlockSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.EnumMap;
-import org.apache.commons.lang3.StringUtils;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.rocksdb.BackupEngine;
+import org.rocksdb.BackupEngineOptions;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.CompressionType;
+import org.rocksdb.DBOptions;
+import org.rocksdb.Env;
+import org.rocksdb.LRUCache;
+import org.rocksdb.Options;
+import org.rocksdb.RestoreOptions;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteBufferManager;
+import org.rocksdb.WriteOptions;
 
+/**
+ * 所有数据源存放在同一个 RocksDB 中, 每个 {@link DatabaseName} 一个 column family,
+ * 共用 block cache, memtable 配额, WAL 和后台线程. 同一线程内各数据源的 batch 是同一个, 提交时原子写入.
+ */
+@Slf4j
 public class RocksdbFactory implements DatabaseFactory {
 
+    public static final String DB_NAME = "XDAGDB";
+    public static final String MAPPED_BLOCKS_DIR = "blocks";
+
+    private static final int MIGRATE_BATCH_SIZE = 10000;
+
+    static {
+        RocksDB.loadLibrary();
+    }
+
     private final EnumMap<DatabaseName, KVSource<byte[], byte[]>> databases = new EnumMap<>(DatabaseName.class);
+    private final EnumMap<DatabaseName, ColumnFamilyHandle> handles = new EnumMap<>(DatabaseName.class);
+    private final EnumMap<DatabaseName, ColumnFamilyOptions> cfOptions = new EnumMap<>(DatabaseName.class);
+    private final ThreadLocal<RocksdbKVSource.Batch> batch = new ThreadLocal<>();
 
     protected Config config;
 
+    private RocksDB db;
+    private DBOptions dbOptions;
+    private LRUCache blockCache;
+    private WriteBufferManager writeBufferManager;
+    private ColumnFamilyHandle defaultHandle;
+
     public RocksdbFactory(Config config) {
         this.config = config;
     }
 
     @Override
-    public KVSource<byte[], byte[]> getDB(DatabaseName name) {
-        return databases.computeIfAbsent(
-                name, k -> {
-                    RocksdbKVSource dataSource;
-                    // time data source must set fixed prefix length
-                    if (StringUtils.equals(DatabaseName.TIME.toString(), name.toString())) {
-                        dataSource = new RocksdbKVSource(name.toString(), 9);
-                    } else if (StringUtils.equals(DatabaseName.TXHISTORY.toString(), name.toString())) {
-                        dataSource = new RocksdbKVSource(name.toString(), 33);
-                    } else {
-                        dataSource = new RocksdbKVSource(name.toString());
-                    }
-                    dataSource.setConfig(config);
-                    return dataSource;
-                });
+    public synchronized KVSource<byte[], byte[]> getDB(DatabaseName name) {
+        return databases.computeIfAbsent(name, k -> {
+            if (name == DatabaseName.BLOCK && config.getNodeSpec().isStoreMappedBlocks()) {
+                MappedBlockSource dataSource = new MappedBlockSource(name.toString(),
+                        Paths.get(config.getNodeSpec().getStoreDir(), MAPPED_BLOCKS_DIR),
+                        newSource(DatabaseName.BLOCKOFFSET), MappedBlockSource.DEFAULT_SEGMENT_RECORDS);
+                dataSource.setLegacy(newSource(DatabaseName.BLOCK));
+                return dataSource;
+            }
+            return newSource(name);
+        });
+    }
+
+    private RocksdbKVSource newSource(DatabaseName name) {
+        RocksdbKVSource dataSource = new RocksdbKVSource(name.toString());
+        dataSource.setConfig(config);
+        dataSource.setFactory(this);
+        return dataSource;
+    }
+
+    ThreadLocal<RocksdbKVSource.Batch> getBatch() {
+        return batch;
+    }
+
+    synchronized ColumnFamilyHandle getHandle(String name) {
+        return handles.get(DatabaseName.valueOf(name));
+    }
+
+    /**
+     * 打开共享数据库, 已打开时直接返回
+     */
+    synchronized RocksDB open() {
+        if (db != null) {
+            return db;
+        }
+        NodeSpec spec = config.getNodeSpec();
+        blockCache = new LRUCache(spec.getStoreBlockCacheSize());
+        writeBufferManager = new WriteBufferManager(spec.getStoreWriteBufferSize(), blockCache);
+        dbOptions = new DBOptions()
+                .setCreateIfMissing(true)
+                .setCreateMissingColumnFamilies(true)
+                .setMaxOpenFiles(spec.getStoreMaxOpenFiles())
+                .setIncreaseParallelism(spec.getStoreMaxThreads())
+                .setWriteBufferManager(writeBufferManager);
+
+        List<ColumnFamilyDescriptor> descriptors = new ArrayList<>();
+        descriptors.add(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY));
+        for (DatabaseName name : DatabaseName.values()) {
+            cfOptions.put(name, newColumnFamilyOptions(name));
+            descriptors.add(new ColumnFamilyDescriptor(name.toString().getBytes(StandardCharsets.UTF_8),
+                    cfOptions.get(name)));
+        }
+        try {
+            Path path = getPath();
+            if (!Files.isSymbolicLink(path.getParent())) {
+                Files.createDirectories(path.getParent());
+            }
+            restoreFromBackup();
+            List<ColumnFamilyHandle> list = new ArrayList<>();
+            db = RocksDB.open(dbOptions, path.toString(), descriptors, list);
+            defaultHandle = list.get(0);
+            for (DatabaseName name : DatabaseName.values()) {
+                handles.put(name, list.get(name.ordinal() + 1));
+            }
+            for (DatabaseName name : DatabaseName.values()) {
+                migrate(name);
+            }
+        } catch (RocksDBException | IOException e) {
+            log.error(e.getMessage(), e);
+            throw new RuntimeException("Failed to initialize database", e);
+        }
+        return db;
+    }
+
+    /**
+     * 清空一个 column family
+     */
+    synchronized void resetColumnFamily(String name) {
+        DatabaseName databaseName = DatabaseName.valueOf(name);
+        open();
+        try {
+            ColumnFamilyHandle handle = handles.get(databaseName);
+            db.dropColumnFamily(handle);
+            handle.close();
+            handles.put(databaseName, db.createColumnFamily(new ColumnFamilyDescriptor(
+                    name.getBytes(StandardCharsets.UTF_8), cfOptions.get(databaseName))));
+        } catch (RocksDBException e) {
+            log.error("Failed to reset column family '{}'", name, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private ColumnFamilyOptions newColumnFamilyOptions(DatabaseName name) {
+        // most of these options are suggested by
+        // https://github.com/facebook/rocksdb/wiki/Set-Up-Options
+        ColumnFamilyOptions options = new ColumnFamilyOptions()
+                .setCompressionType(CompressionType.LZ4_COMPRESSION)
+                .setBottommostCompressionType(CompressionType.LZ4_COMPRESSION)
+                .setLevelCompactionDynamicLevelBytes(true);
+        BlockBasedTableConfig tableCfg = new BlockBasedTableConfig()
+                .setBlockSize(16 * 1024)
+                .setBlockCache(blockCache)
+                .setCacheIndexAndFilterBlocks(true)
+                .setPinL0FilterAndIndexBlocksInCache(true);
+        switch (name) {
+        case BLOCK:
+            // 按 hash 点查且基本都能命中, 过滤器只会占用缓存
+            break;
+        case TIME:
+            // 只按 type + time 前缀扫描
+            options.useFixedLengthPrefixExtractor(9);
+            tableCfg.setFilterPolicy(new BloomFilter(10, false)).setWholeKeyFiltering(false);
+            break;
+        case TXHISTORY:
+            // 只按 type + 地址 hashlow 前缀扫描
+            options.useFixedLengthPrefixExtractor(33);
+            tableCfg.setFilterPolicy(new BloomFilter(10, false)).setWholeKeyFiltering(false);
+            break;
+        default:
+            tableCfg.setFilterPolicy(new BloomFilter(10, false));
+        }
+        return options.setTableFormatConfig(tableCfg);
+    }
+
+    /**
+     * 旧版本每个数据源单独一个库(storeDir/name), 首次打开时导入到对应的 column family 后改名为 name.migrated.
+     * 中途退出时旧库保持原名, 下次启动重新导入
+     */
+    private void migrate(DatabaseName name) throws RocksDBException, IOException {
+        Path legacy = Paths.get(config.getNodeSpec().getStoreDir(), name.toString());
+        if (!Files.isDirectory(legacy)) {
+            return;
+        }
+        long count = 0;
+        try (Options options = new Options();
+                RocksDB old = RocksDB.openReadOnly(options, legacy.toString());
+                RocksIterator it = old.newIterator();
+                WriteBatch writes = new WriteBatch();
+                WriteOptions writeOpts = new WriteOptions()) {
+            it.seekToFirst();
+            DatabaseName target = it.isValid() ? migrateTarget(name, it.key()) : name;
+            log.info("Migrating {} into column family {}", legacy, target);
+            ColumnFamilyHandle handle = handles.get(target);
+            for (; it.isValid(); it.next()) {
+                writes.put(handle, it.key(), it.value());
+                if (writes.count() >= MIGRATE_BATCH_SIZE) {
+                    db.write(writeOpts, writes);
+                    writes.clear();
+                }
+                count++;
+            }
+            db.write(writeOpts.setSync(true), writes);
+        }
+        Files.move(legacy, legacy.resolveSibling(name + ".migrated"));
+        log.info("Migrated {} entries of {}", count, name);
+    }
+
+    /**
+     * 旧版本 Kernel 创建 BlockStore 时 TIME 和 BLOCK 两个库传反了, 按 key 的格式判断实际内容
+     */
+    private static DatabaseName migrateTarget(DatabaseName name, byte[] firstKey) {
+        if (name != DatabaseName.TIME && name != DatabaseName.BLOCK) {
+            return name;
+        }
+        // 时间索引 key: TIME_HASH_INFO + time(8) + hashlow(32), 区块 key: hashlow(32)
+        boolean timeKey = firstKey.length == 41 && firstKey[0] == BlockStore.TIME_HASH_INFO;
+        return timeKey ? DatabaseName.TIME : DatabaseName.BLOCK;
+    }
+
+    private void restoreFromBackup() {
+        Path backupPath = Paths.get(config.getNodeSpec().getStoreDir(), "backup", DB_NAME);
+        if (!config.getNodeSpec().isStoreFromBackup() || !backupPath.toFile().canWrite()) {
+            return;
+        }
+        log.debug("Restoring database from backup: '{}'", DB_NAME);
+        try (BackupEngineOptions backupOptions = new BackupEngineOptions(backupPath.toString());
+                RestoreOptions restoreOptions = new RestoreOptions(false);
+                BackupEngine backups = BackupEngine.open(Env.getDefault(), backupOptions)) {
+            if (!backups.getBackupInfo().isEmpty()) {
+                backups.restoreDbFromLatestBackup(getPath().toString(), getPath().toString(), restoreOptions);
+            }
+        } catch (RocksDBException e) {
+            log.error("Failed to restore database '{}' from backup", DB_NAME, e);
+        }
+    }
+
+    private Path getPath() {
+        return Paths.get(config.getNodeSpec().getStoreDir(), DB_NAME);
     }
 
     @Override
-    public void close() {
-        for (KVSource<byte[], byte[]> db : databases.values()) {
-            db.close();
+    public synchronized void close() {
+        for (KVSource<byte[], byte[]> source : databases.values()) {
+            source.close();
         }
         databases.clear();
+        if (db == null) {
+            return;
+        }
+        log.debug("Close db: {}", DB_NAME);
+        for (ColumnFamilyHandle handle : handles.values()) {
+            handle.close();
+        }
+        handles.clear();
+        defaultHandle.close();
+        db.close();
+        db = null;
+        dbOptions.close();
+        for (ColumnFamilyOptions options : cfOptions.values()) {
+            options.close();
+        }
+        cfOptions.clear();
+        writeBufferManager.close();
+        blockCache.close();
     }
 }
@@ -26,6 +26,7 @@ package io.xdag.db.rocksdb;
 
 import com.google.common.collect.Lists;
 import io.xdag.config.Config;
+import io.xdag.db.KVIterator;
 import io.xdag.db.KVSource;
 import io.xdag.utils.BytesUtils;
 import java.io.File;
@@ -33,8 +34,12 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -49,6 +54,7 @@ import org.rocksdb.BackupEngine;
 import org.rocksdb.BackupEngineOptions;
 import org.rocksdb.BlockBasedTableConfig;
 import org.rocksdb.BloomFilter;
+import org.rocksdb.ColumnFamilyHandle;
 import org.rocksdb.CompressionType;
 import org.rocksdb.Env;
 import org.rocksdb.LRUCache;
@@ -58,6 +64,9 @@ import org.rocksdb.RestoreOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
 import org.rocksdb.RocksIterator;
+import org.rocksdb.Slice;
+import org.rocksdb.WriteBatchWithIndex;
+import org.rocksdb.WriteOptions;
 
 @Slf4j
 @Setter
@@ -75,9 +84,19 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
      * on init/close/delete operations
      */
     private final ReadWriteLock resetDbLock = new ReentrantReadWriteLock();
+    /**
+     * unit of work of the current thread, see {@link #beginBatch()}
+     */
+    private final ThreadLocal<Batch> localBatch = new ThreadLocal<>();
     private Config config;
     private String name;
+    /**
+     * 不为 null 时使用 factory 打开的共享数据库中名为 name 的 column family, 并与同一 factory 的其他数据源共用 batch,
+     * 否则单独打开 storeDir/name
+     */
+    private RocksdbFactory factory;
     private RocksDB db;
+    private ColumnFamilyHandle handle;
     private ReadOptions readOpts;
     private boolean alive;
     private int prefixSeekLength;
@@ -107,6 +126,15 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
                 throw new NullPointerException("no name set to the db");
             }
 
+            if (factory != null) {
+                db = factory.open();
+                handle = factory.getHandle(name);
+                readOpts = new ReadOptions().setPrefixSameAsStart(true).setVerifyChecksums(false);
+                alive = true;
+                log.debug("<~ RocksdbKVSource.init(): " + name);
+                return;
+            }
+
             try (Options options = new Options()) {
                 // most of these options are suggested by
                 // https://github.com/facebook/rocksdb/wiki/Set-Up-Options
@@ -160,6 +188,7 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
                     log.debug("Initializing new or existing database: '{}'", name);
                     try {
                         db = RocksDB.open(options, dbPath.toString());
+                        handle = db.getDefaultColumnFamily();
                     } catch (RocksDBException e) {
                         log.error(e.getMessage(), e);
                         throw new RuntimeException("Failed to initialize database", e);
@@ -216,14 +245,19 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
                                 + ", "
                                 + (val == null ? "null" : val.length));
             }
+            Batch current = batch().get();
             if (val != null) {
                 if (db == null) {
                     log.error("db is null");
+                } else if (current != null) {
+                    current.writes.put(handle, key, val);
                 } else {
-                    db.put(key, val);
+                    db.put(handle, key, val);
                 }
+            } else if (current != null) {
+                current.writes.delete(handle, key);
             } else {
-                db.delete(key);
+                db.delete(handle, key);
             }
             if (log.isTraceEnabled()) {
                 log.trace(
@@ -252,7 +286,10 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
             if (log.isTraceEnabled()) {
                 log.trace("~> RocksdbKVSource.get(): " + name + ", key: " + Hex.encodeHexString(key));
             }
-            byte[] ret = db.get(readOpts, key);
+            Batch current = batch().get();
+            byte[] ret = current != null
+                    ? current.writes.getFromBatchAndDB(db, handle, readOpts, key)
+                    : db.get(handle, readOpts, key);
             if (log.isTraceEnabled()) {
                 log.trace(
                         "<~ RocksdbKVSource.get(): "
@@ -279,7 +316,12 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
             if (log.isTraceEnabled()) {
                 log.trace("~> RocksdbKVSource.delete(): " + name + ", key: " + Hex.encodeHexString(key));
             }
-            db.delete(key);
+            Batch current = batch().get();
+            if (current != null) {
+                current.writes.delete(handle, key);
+            } else {
+                db.delete(handle, key);
+            }
             if (log.isTraceEnabled()) {
                 log.trace("<~ RocksdbKVSource.delete(): " + name + ", key: " + Hex.encodeHexString(key));
             }
@@ -291,6 +333,29 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
         }
     }
 
+    @Override
+    public void deleteRange(byte[] start, byte[] end) {
+        resetDbLock.readLock().lock();
+        try {
+            Batch current = batch().get();
+            if (current == null) {
+                db.deleteRange(handle, start, end);
+                return;
+            }
+            // WriteBatchWithIndex 不支持 deleteRange, 逐个删除
+            try (KVIterator<byte[], byte[]> it = rangeIterator(start, end)) {
+                while (it.hasNext()) {
+                    current.writes.delete(handle, it.next().getKey());
+                }
+            }
+        } catch (RocksDBException e) {
+            log.error("Failed to delete range from db '{}'", name, e);
+            throw new RuntimeException(e);
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
     @Override
     public Set<byte[]> keys() throws RuntimeException {
         resetDbLock.readLock().lock();
@@ -298,7 +363,7 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
             if (log.isTraceEnabled()) {
                 log.trace("~> RocksdbKVSource.keys(): " + name);
             }
-            try (RocksIterator iterator = db.newIterator()) {
+            try (RocksIterator iterator = db.newIterator(handle)) {
                 Set<byte[]> result = new HashSet<>();
                 for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
                     result.add(iterator.key());
@@ -351,7 +416,7 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
     @Override
     public void fetchPrefix(byte[] key, Function<Pair<byte[], byte[]>, Boolean> func) {
         resetDbLock.readLock().lock();
-        try (RocksIterator it = db.newIterator(readOpts)) {
+        try (RocksIterator it = newIterator()) {
             for (it.seek(key); it.isValid(); it.next()) {
                 if (BytesUtils.keyStartsWith(it.key(), key)) {
                     if (func.apply(Pair.of(it.key(), it.value()))) {
@@ -370,6 +435,139 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
         }
     }
 
+    @Override
+    public List<byte[]> multiGet(List<byte[]> keys) {
+        resetDbLock.readLock().lock();
+        try {
+            Batch current = batch().get();
+            if (current == null) {
+                return db.multiGetAsList(readOpts, Collections.nCopies(keys.size(), handle), keys);
+            }
+            // WriteBatchWithIndex 没有 multiGet, 有未提交的写入时逐个读
+            List<byte[]> ret = new ArrayList<>(keys.size());
+            for (byte[] key : keys) {
+                ret.add(current.writes.getFromBatchAndDB(db, handle, readOpts, key));
+            }
+            return ret;
+        } catch (RocksDBException e) {
+            log.error("Failed to multiGet from db '{}'", name, e);
+            hintOnTooManyOpenFiles(e);
+            throw new RuntimeException(e);
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public KVIterator<byte[], byte[]> rangeIterator(byte[] start, byte[] end) {
+        resetDbLock.readLock().lock();
+        try {
+            return new RangeIterator(start, end);
+        } catch (RuntimeException e) {
+            resetDbLock.readLock().unlock();
+            throw e;
+        }
+    }
+
+    @Override
+    public KVIterator<byte[], byte[]> prefixIterator(byte[] prefix) {
+        return rangeIterator(prefix, prefixEnd(prefix));
+    }
+
+    /**
+     * Smallest key greater than every key starting with prefix, null if there is none.
+     */
+    static byte[] prefixEnd(byte[] prefix) {
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            if (prefix[i] != (byte) 0xff) {
+                byte[] end = Arrays.copyOf(prefix, i + 1);
+                end[i]++;
+                return end;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void beginBatch() {
+        Batch current = batch().get();
+        if (current == null) {
+            batch().set(new Batch());
+        } else {
+            current.depth++;
+        }
+    }
+
+    @Override
+    public void commitBatch(boolean sync) {
+        Batch current = batch().get();
+        if (current == null) {
+            return;
+        }
+        if (current.depth-- > 0) {
+            return;
+        }
+        batch().remove();
+        if (current.rollbackOnly) {
+            // an inner scope rolled back, nothing of this batch may reach the db
+            current.writes.close();
+            throw new IllegalStateException("Batch of db '" + name + "' was marked rollback-only");
+        }
+        resetDbLock.readLock().lock();
+        try (WriteBatchWithIndex writes = current.writes;
+                WriteOptions writeOpts = new WriteOptions().setSync(sync)) {
+            if (writes.count() > 0) {
+                db.write(writeOpts, writes);
+            }
+        } catch (RocksDBException e) {
+            log.error("Failed to write batch into db '{}'", name, e);
+            hintOnTooManyOpenFiles(e);
+            throw new RuntimeException(e);
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+        current.onCommit.forEach(Runnable::run);
+    }
+
+    @Override
+    public void rollbackBatch() {
+        Batch current = batch().get();
+        if (current == null) {
+            return;
+        }
+        if (current.depth-- > 0) {
+            current.rollbackOnly = true;
+            return;
+        }
+        batch().remove();
+        current.writes.close();
+    }
+
+    @Override
+    public void onCommit(Runnable action) {
+        Batch current = batch().get();
+        if (current == null) {
+            action.run();
+        } else {
+            current.onCommit.add(action);
+        }
+    }
+
+    private ThreadLocal<Batch> batch() {
+        return factory != null ? factory.getBatch() : localBatch;
+    }
+
+    /**
+     * Iterator over the db, merged with the pending writes of the current thread if any.
+     */
+    private RocksIterator newIterator() {
+        Batch current = batch().get();
+        if (current != null) {
+            return current.writes.newIteratorWithBase(handle, db.newIterator(handle, readOpts));
+        }
+        return db.newIterator(handle, readOpts);
+    }
+
     @Override
     public void close() {
         resetDbLock.writeLock().lock();
@@ -379,7 +577,10 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
             }
 
             log.debug("Close db: {}", name);
-            db.close();
+            // 共享的数据库由 factory 关闭
+            if (factory == null) {
+                db.close();
+            }
             readOpts.close();
 
             alive = false;
@@ -394,6 +595,11 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
     @Override
     public void reset() {
         close();
+        if (factory != null) {
+            factory.resetColumnFamily(name);
+            init();
+            return;
+        }
         try {
             FileUtils.deleteDirectory(new File(getPath().toString()));
         } catch (IOException e) {
@@ -407,7 +613,7 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
     }
 
     private Path backupPath() {
-        return Paths.get(config.getNodeSpec().getStoreDir(), "backup", name);
+        return Paths.get(config.getNodeSpec().getStoreDir(), "backup", factory != null ? RocksdbFactory.DB_NAME : name);
     }
 
     private void hintOnTooManyOpenFiles(Exception e) {
@@ -419,4 +625,70 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
             log.info("");
         }
     }
+
+    /**
+     * Holds the read lock of the source until closed. Seeks in total order since a range may span several
+     * prefixes of the prefix extractor, and stops at end through the upper bound.
+     */
+    private class RangeIterator implements KVIterator<byte[], byte[]> {
+
+        private final byte[] end;
+        private final Slice upperBound;
+        private final ReadOptions opts;
+        private final RocksIterator it;
+        private boolean closed;
+
+        RangeIterator(byte[] start, byte[] end) {
+            this.end = end;
+            upperBound = end == null ? null : new Slice(end);
+            opts = new ReadOptions().setTotalOrderSeek(true).setVerifyChecksums(false);
+            if (upperBound != null) {
+                opts.setIterateUpperBound(upperBound);
+            }
+            Batch current = batch().get();
+            it = current != null
+                    ? current.writes.newIteratorWithBase(handle, db.newIterator(handle, opts))
+                    : db.newIterator(handle, opts);
+            it.seek(start);
+        }
+
+        @Override
+        public boolean hasNext() {
+            // the upper bound does not apply to the pending writes of a batch
+            return !closed && it.isValid() && (end == null || Arrays.compareUnsigned(it.key(), end) < 0);
+        }
+
+        @Override
+        public Pair<byte[], byte[]> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Pair<byte[], byte[]> ret = Pair.of(it.key(), it.value());
+            it.next();
+            return ret;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            it.close();
+            opts.close();
+            if (upperBound != null) {
+                upperBound.close();
+            }
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    static class Batch {
+
+        // overwrite_key, so that reads through the batch see the latest write of a key
+        private final WriteBatchWithIndex writes = new WriteBatchWithIndex(true);
+        private int depth;
+        private boolean rollbackOnly;
+        private final List<Runnable> onCommit = new ArrayList<>();
+    }
 }
@@ -77,7 +77,7 @@ public class Miner03 extends SimpleChannelInboundHandler<Message> {
     protected void channelRead0(ChannelHandlerContext ctx, Message msg) {
         switch (msg.getCommand()) {
             case NEW_BALANCE -> processNewBalance((NewBalanceMessage) msg);
-            case TASK_SHARE -> processTaskShare((TaskShareMessage) msg);
+            case TASK_SHARE -> minerManager.submitShare(channel, () -> processTaskShare((TaskShareMessage) msg));
             case NEW_TASK -> processNewTask((NewTaskMessage) msg);
             case NEW_BLOCK -> processNewBlock((NewBlockMessage) msg);
             case WORKER_NAME ->processWorkerName((WorkerNameMessage) msg);
@@ -41,6 +41,11 @@ public interface MinerManager {
 
     void onNewShare(MinerChannel channel, Message msg);
 
+    /**
+     * 将share的处理交给share线程池，过期或队列已满时返回false
+     */
+    boolean submitShare(MinerChannel channel, Runnable task);
+
     void setPoW(PoW pow);
 
     void start();
@@ -44,6 +44,7 @@ import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
@@ -88,9 +89,16 @@ public class MinerManagerImpl implements MinerManager, Runnable {
     private ScheduledFuture<?> updateFuture;
     private ScheduledFuture<?> cleanChannelFuture;
     private ScheduledFuture<?> cleanMinerFuture;
+    /**
+     * share校验线程池，不占用netty io线程
+     */
+    @Getter
+    private final ShareProcessor shareProcessor;
 
     public MinerManagerImpl(Kernel kernel) {
         this.kernel = kernel;
+        this.shareProcessor = new ShareProcessor(kernel.getConfig().getPoolSpec().getShareThreads(),
+                kernel.getConfig().getPoolSpec().getShareQueueSize());
     }
 
     private final Object obj1 = new Object();
@@ -107,6 +115,7 @@ public class MinerManagerImpl implements MinerManager, Runnable {
     public void start() {
         isRunning = true;
         init();
+        shareProcessor.start();
         mainExecutor.execute(this);
         log.debug("MinerManager started.");
     }
@@ -160,6 +169,7 @@ public class MinerManagerImpl implements MinerManager, Runnable {
         }
         mainExecutor.shutdown();
         scheduledExecutor.shutdown();
+        shareProcessor.stop();
         closeMiners();
     }
 
@@ -261,6 +271,16 @@ public class MinerManagerImpl implements MinerManager, Runnable {
         return activateMiners;
     }
 
+    @Override
+    public boolean submitShare(MinerChannel channel, Runnable task) {
+        // 入队时的任务号，任务切换后队列里剩下的share直接作废
+        final long taskIndex = channel.getTaskIndex();
+        return shareProcessor.submit(channel.getInetAddress(), () -> {
+            Task task0 = currentTask;
+            return task0 == null || task0.getTaskIndex() != taskIndex;
+        }, task);
+    }
+
     @Override
     public void onNewShare(MinerChannel channel, Message msg) {
         if (currentTask == null) {
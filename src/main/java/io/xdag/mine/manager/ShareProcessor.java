@@ -0,0 +1,144 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.mine.manager;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+/**
+ * 将share校验从netty io线程中剥离出来.
+ * 每个worker有自己的有界队列, 同一个key(channel)总是落在同一个worker上, 保证单个channel内share的处理顺序;
+ * 队列满时直接丢弃, 避免矿工洪泛拖垮io线程.
+ */
+@Slf4j
+public class ShareProcessor {
+
+    private final BlockingQueue<Runnable>[] queues;
+    private final ExecutorService executor;
+    private volatile boolean isRunning = false;
+
+    @Getter
+    private final AtomicLong accepted = new AtomicLong();
+    @Getter
+    private final AtomicLong dropped = new AtomicLong();
+    @Getter
+    private final AtomicLong stale = new AtomicLong();
+    @Getter
+    private final AtomicLong processed = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    public ShareProcessor(int threads, int queueSize) {
+        int n = Math.max(1, threads);
+        this.queues = new BlockingQueue[n];
+        for (int i = 0; i < n; i++) {
+            queues[i] = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        }
+        this.executor = Executors.newFixedThreadPool(n, new BasicThreadFactory.Builder()
+                .namingPattern("MinerManager-Share-Thread-%d")
+                .daemon(true)
+                .build());
+    }
+
+    public void start() {
+        isRunning = true;
+        for (BlockingQueue<Runnable> queue : queues) {
+            executor.execute(() -> loop(queue));
+        }
+    }
+
+    public void stop() {
+        isRunning = false;
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.debug("ShareProcessor stopped, accepted:{}, dropped:{}, stale:{}, processed:{}",
+                accepted.get(), dropped.get(), stale.get(), processed.get());
+    }
+
+    /**
+     * 提交一个share处理任务, isStale 在入队前和真正执行前各检查一次, 过期的share不再排队也不再处理
+     *
+     * @return 是否入队成功
+     */
+    public boolean submit(Object key, BooleanSupplier isStale, Runnable task) {
+        if (isStale.getAsBoolean()) {
+            stale.incrementAndGet();
+            return false;
+        }
+        BlockingQueue<Runnable> queue = queues[Math.floorMod(key.hashCode(), queues.length)];
+        boolean offered = queue.offer(() -> {
+            if (isStale.getAsBoolean()) {
+                stale.incrementAndGet();
+                return;
+            }
+            task.run();
+            processed.incrementAndGet();
+        });
+        if (!offered) {
+            dropped.incrementAndGet();
+            log.debug("Share queue is full, drop share from {}", key);
+            return false;
+        }
+        accepted.incrementAndGet();
+        return true;
+    }
+
+    public int size() {
+        int size = 0;
+        for (BlockingQueue<Runnable> queue : queues) {
+            size += queue.size();
+        }
+        return size;
+    }
+
+    private void loop(BlockingQueue<Runnable> queue) {
+        while (isRunning) {
+            Runnable r;
+            try {
+                r = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                r.run();
+            } catch (Exception e) {
+                log.error("Process share error: {}", e.getMessage(), e);
+            }
+        }
+    }
+}
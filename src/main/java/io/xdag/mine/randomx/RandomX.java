@@ -33,9 +33,6 @@ import static io.xdag.config.RandomXConstants.SEEDHASH_EPOCH_TESTNET_LAG;
 import static io.xdag.config.RandomXConstants.XDAG_RANDOMX;
 import static io.xdag.crypto.jni.RandomX.allocCache;
 import static io.xdag.crypto.jni.RandomX.allocDataSet;
-import static io.xdag.crypto.jni.RandomX.calculateHash;
-import static io.xdag.crypto.jni.RandomX.createVm;
-import static io.xdag.crypto.jni.RandomX.destroyVm;
 import static io.xdag.crypto.jni.RandomX.initCache;
 import static io.xdag.crypto.jni.RandomX.initDataSet;
 import static io.xdag.crypto.jni.RandomX.releaseCache;
@@ -79,9 +76,14 @@ public class RandomX {
 
     protected boolean is_full_mem;
     protected boolean is_Large_pages;
+    /**
+     * 每个seed创建的VM数量, 即可同时计算hash的线程数
+     */
+    protected int vmPoolSize;
 
     public RandomX(Config config) {
         this.config = config;
+        this.vmPoolSize = Math.max(1, config.getNodeSpec().getRandomxVmPoolSize());
         if (config instanceof MainnetConfig) {
             isTestNet = false;
         }
@@ -193,11 +195,12 @@ public class RandomX {
             readWriteLock = globalMemoryLock[(int) (randomXPoolMemIndex) & 1];
         }
 
-        readWriteLock.writeLock().lock();
+        // 读锁: 多个share可同时计算, 只与seed更新互斥
+        readWriteLock.readLock().lock();
         try {
-            hash = Bytes32.wrap(calculateHash(memory.poolVm, data.toArray(), dataSize));
+            hash = Bytes32.wrap(vmPool(memory).calculate(data.toArray(), dataSize));
         } finally {
-            readWriteLock.writeLock().unlock();
+            readWriteLock.readLock().unlock();
         }
 
         return hash;
@@ -231,26 +234,32 @@ public class RandomX {
             }
         }
 
-        readWriteLock.writeLock().lock();
+        readWriteLock.readLock().lock();
         try {
             log.debug("Use seed {}", Hex.toHexString(Arrays.reverse(memory.seed)));
-            hash = calculateHash(memory.blockVm, data, dataSize);
+            hash = vmPool(memory).calculate(data, dataSize);
         } finally {
-            readWriteLock.writeLock().unlock();
+            readWriteLock.readLock().unlock();
         }
 
         return hash;
     }
 
 
-    public long randomXUpdateVm(RandomXMemory randomXMemory, boolean isPoolVm) {
-        if (isPoolVm) {
-            randomXMemory.poolVm = createVm(randomXMemory.rxCache, randomXMemory.rxDataset, 4);
-            return randomXMemory.poolVm;
-        } else {
-            randomXMemory.blockVm = createVm(randomXMemory.rxCache, randomXMemory.rxDataset, 4);
-            return randomXMemory.blockVm;
+    /**
+     * seed 更新失败或已释放时 vmPool 为 null, 与池中没有可用 VM 一样按计算失败处理. 需持有读锁
+     */
+    private static RandomXVmPool vmPool(RandomXMemory memory) {
+        RandomXVmPool vmPool = memory.vmPool;
+        if (vmPool == null) {
+            throw new IllegalStateException("No randomx vm pool for seed height " + memory.seedHeight);
         }
+        return vmPool;
+    }
+
+    public int randomXUpdateVm(RandomXMemory randomXMemory) {
+        randomXMemory.vmPool = new RandomXVmPool(randomXMemory.rxCache, randomXMemory.rxDataset, vmPoolSize);
+        return randomXMemory.vmPool.size();
     }
 
 
@@ -259,6 +268,11 @@ public class RandomX {
         readWriteLock.writeLock().lock();
         try {
             RandomXMemory rx_memory = globalMemory[(int) (memIndex) & 1];
+            // 旧的VM引用旧dataset, 重新初始化前销毁
+            if (rx_memory.vmPool != null) {
+                rx_memory.vmPool.destroy();
+                rx_memory.vmPool = null;
+            }
             if (rx_memory.rxCache == 0) {
                 rx_memory.rxCache = allocCache();
                 if (rx_memory.rxCache == 0) {
@@ -282,16 +296,9 @@ public class RandomX {
 
             randomXPoolInitDataset(rx_memory.rxCache, rx_memory.rxDataset, 4);
 
-            if (randomXUpdateVm(rx_memory, true) <= 0) {
-                // update failed
-                log.debug("Update pool vm failed");
-                return;
-            }
-
-            // update finished
-            if (randomXUpdateVm(rx_memory, false) <= 0) {
+            if (randomXUpdateVm(rx_memory) <= 0) {
                 // update failed
-                log.debug("Update block vm failed");
+                log.debug("Update vm pool failed");
             }
 
             // update finished
@@ -307,11 +314,9 @@ public class RandomX {
             globalMemoryLock[i].writeLock().lock();
             try {
                 RandomXMemory rx_memory = globalMemory[i];
-                if (rx_memory.poolVm != 0) {
-                    destroyVm(rx_memory.poolVm);
-                }
-                if (rx_memory.blockVm != 0) {
-                    destroyVm(rx_memory.blockVm);
+                if (rx_memory.vmPool != null) {
+                    rx_memory.vmPool.destroy();
+                    rx_memory.vmPool = null;
                 }
                 if (rx_memory.rxCache != 0) {
                     releaseCache(rx_memory.rxCache);
@@ -38,8 +38,10 @@ public class RandomXMemory {
     protected int isSwitched;
     protected long rxCache;
     protected long rxDataset;
-    protected long poolVm;
-    protected long blockVm;
+    /**
+     * 矿池share与区块hash共用
+     */
+    protected RandomXVmPool vmPool;
 
     public RandomXMemory() {
         this.switchTime = -1;
@@ -0,0 +1,94 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.mine.randomx;
+
+import static io.xdag.crypto.jni.RandomX.calculateHash;
+import static io.xdag.crypto.jni.RandomX.createVm;
+import static io.xdag.crypto.jni.RandomX.destroyVm;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 共享同一 cache/dataset 的一组 RandomX VM. VM 本身不是线程安全的,
+ * 每次计算独占一个 VM, 因此最多可以有 size 个线程同时计算 hash.
+ * dataset 重新初始化前必须先 destroy
+ */
+@Slf4j
+public class RandomXVmPool {
+
+    private final long[] vms;
+    private final BlockingQueue<Long> idle;
+
+    public RandomXVmPool(long rxCache, long rxDataset, int size) {
+        long[] created = new long[Math.max(1, size)];
+        int n = 0;
+        for (; n < created.length; n++) {
+            created[n] = createVm(rxCache, rxDataset, 4);
+            if (created[n] <= 0) {
+                log.debug("Create vm failed, pool size {}", n);
+                break;
+            }
+        }
+        this.vms = Arrays.copyOf(created, n);
+        this.idle = new ArrayBlockingQueue<>(Math.max(1, n));
+        for (long vm : vms) {
+            idle.add(vm);
+        }
+    }
+
+    public int size() {
+        return vms.length;
+    }
+
+    public byte[] calculate(byte[] data, int dataSize) {
+        if (vms.length == 0) {
+            throw new IllegalStateException("No randomx vm available");
+        }
+        long vm;
+        try {
+            vm = idle.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for randomx vm", e);
+        }
+        try {
+            return calculateHash(vm, data, dataSize);
+        } finally {
+            idle.add(vm);
+        }
+    }
+
+    /**
+     * 调用方需保证没有正在进行的计算
+     */
+    public void destroy() {
+        for (long vm : vms) {
+            destroyVm(vm);
+        }
+        idle.clear();
+    }
+}
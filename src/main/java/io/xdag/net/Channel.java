@@ -24,6 +24,8 @@
 
 package io.xdag.net;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import io.netty.channel.socket.SocketChannel;
 import io.xdag.Kernel;
 import io.xdag.core.BlockWrapper;
@@ -31,8 +33,10 @@ import io.xdag.net.handler.Xdag;
 import io.xdag.net.message.MessageQueue;
 import io.xdag.net.node.Node;
 import java.net.InetSocketAddress;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import org.apache.tuweni.bytes.Bytes32;
 
 /**
  * @author wawa
@@ -49,6 +53,34 @@ public abstract class Channel {
     protected boolean isActive;
     protected boolean isDisconnected = false;
 
+    private static final int KNOWN_BLOCKS_SIZE = 16384;
+    /**
+     * 对方已经拥有的区块(从对方收到的或已发给对方的), 转发时跳过
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final Cache<Bytes32, Boolean> knownBlocks = Caffeine.newBuilder().maximumSize(KNOWN_BLOCKS_SIZE).build();
+
+    /**
+     * 标记对方已拥有该区块, 之前未标记过时返回true
+     */
+    public boolean markKnownBlock(Bytes32 hashLow) {
+        return knownBlocks.asMap().putIfAbsent(hashLow, Boolean.TRUE) == null;
+    }
+
+    public boolean isKnownBlock(Bytes32 hashLow) {
+        return knownBlocks.getIfPresent(hashLow) != null;
+    }
+
+    /**
+     * 暂停/恢复从该连接读取消息, 用于导入积压时的反压
+     */
+    public void setAutoRead(boolean autoRead) {
+        if (socketChannel != null) {
+            socketChannel.config().setAutoRead(autoRead);
+        }
+    }
+
     public abstract InetSocketAddress getInetSocketAddress();
 
     public abstract boolean isActive();
@@ -0,0 +1,235 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net.handler;
+
+import io.xdag.core.Block;
+import io.xdag.db.BlockStore;
+import io.xdag.db.Page;
+import io.xdag.net.message.Message;
+import io.xdag.net.message.MessageQueue;
+import io.xdag.net.message.impl.NewBlockMessage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * 流式响应BLOCKS_REQUEST: 分页范围扫描时间索引, 逐步读取区块并写入消息队列. channel不可写或队列积压超过上限时暂停,
+ * 由消息队列的可写通知({@link MessageQueue#addWritableListener})恢复.
+ * 同一节点的多个请求按顺序处理, 每个请求的区块发送完后再发送对应的BLOCKS_REPLY.
+ */
+@Slf4j
+public class BlocksResponder {
+
+    private static final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(
+            Math.max(2, Runtime.getRuntime().availableProcessors() / 2),
+            new BasicThreadFactory.Builder()
+                    .namingPattern("BlocksResponder-%d")
+                    .daemon(true)
+                    .build());
+
+    /**
+     * 每个节点最多排队的请求数
+     */
+    static final int MAX_PENDING_REQUESTS = 16;
+    /**
+     * 每轮最多发送的区块数, 避免长时间占用线程; 也是每次范围扫描读取的hashlow数
+     */
+    static final int MAX_BLOCKS_PER_ROUND = 256;
+    /**
+     * {@link #step()} 因背压暂停时的返回值
+     */
+    static final long PAUSED = -2;
+
+    private final BlockStore blockStore;
+    private final MessageQueue msgQueue;
+    private final long maxPendingBytes;
+
+    private final Queue<Request> requests = new ArrayDeque<>();
+    private boolean scheduled = false;
+    private boolean paused = false;
+    private volatile boolean closed = false;
+
+    public BlocksResponder(BlockStore blockStore, MessageQueue msgQueue, long maxPendingBytes) {
+        this.blockStore = blockStore;
+        this.msgQueue = msgQueue;
+        this.maxPendingBytes = maxPendingBytes;
+        msgQueue.addWritableListener(this::onWritable);
+    }
+
+    /**
+     * 消息队列可以继续写入, 恢复暂停的发送
+     */
+    public void onWritable() {
+        synchronized (this) {
+            if (!paused || closed) {
+                return;
+            }
+            paused = false;
+        }
+        executor.execute(this::run);
+    }
+
+    /**
+     * @param reply 该时间段的区块发送完后发送的消息
+     * @return 请求过多被拒绝时返回false
+     */
+    public boolean submit(long startTime, long endTime, Supplier<Message> reply) {
+        synchronized (this) {
+            if (closed || requests.size() >= MAX_PENDING_REQUESTS) {
+                return false;
+            }
+            requests.add(new Request(startTime, endTime, reply));
+            if (scheduled) {
+                return true;
+            }
+            scheduled = true;
+        }
+        executor.execute(this::run);
+        return true;
+    }
+
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            requests.clear();
+        }
+    }
+
+    public synchronized int pendingRequests() {
+        return requests.size();
+    }
+
+    private void run() {
+        try {
+            long delay = step();
+            synchronized (this) {
+                if (delay == PAUSED && !closed) {
+                    // 仍算作已调度, 由onWritable恢复; 在锁内再检查一次, 避免错过暂停前到达的通知
+                    if (backlogged()) {
+                        paused = true;
+                        return;
+                    }
+                    delay = 0;
+                }
+                if (delay < 0 || closed) {
+                    scheduled = false;
+                    return;
+                }
+            }
+            executor.schedule(this::run, delay, TimeUnit.MILLISECONDS);
+        } catch (Throwable e) {
+            log.error("Stream blocks error: {}", e.getMessage(), e);
+            synchronized (this) {
+                requests.clear();
+                scheduled = false;
+            }
+        }
+    }
+
+    /**
+     * 处理一轮
+     *
+     * @return 下一轮的延迟, 没有请求时返回-1, 背压时返回 {@link #PAUSED}
+     */
+    long step() {
+        int sent = 0;
+        while (!closed && msgQueue.isRunning()) {
+            Request request;
+            synchronized (this) {
+                request = requests.peek();
+                if (request == null) {
+                    return -1;
+                }
+            }
+            if (backlogged()) {
+                return PAUSED;
+            }
+            if (sent >= MAX_BLOCKS_PER_ROUND) {
+                return 0;
+            }
+            request.fill();
+            Bytes32 hashlow = request.hashlows.poll();
+            if (hashlow == null) {
+                msgQueue.sendMessage(request.reply.get());
+                synchronized (this) {
+                    requests.poll();
+                }
+                continue;
+            }
+            Block block = blockStore.getBlockByHash(hashlow, true);
+            if (block != null) {
+                msgQueue.sendMessage(new NewBlockMessage(block, 1));
+                sent++;
+            }
+        }
+        synchronized (this) {
+            requests.clear();
+        }
+        return -1;
+    }
+
+    /**
+     * channel不可写, 或队列中的消息已足够把出站缓冲区写到高水位, 或超过积压上限
+     */
+    private boolean backlogged() {
+        return !msgQueue.isWritable()
+                || msgQueue.pendingBytes() >= Math.min(maxPendingBytes, msgQueue.bytesBeforeUnwritable());
+    }
+
+    private class Request {
+        final long startTime;
+        final long endTime;
+        final Supplier<Message> reply;
+        final Deque<Bytes32> hashlows = new ArrayDeque<>();
+        byte[] cursor;
+        boolean done;
+
+        Request(long startTime, long endTime, Supplier<Message> reply) {
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.reply = reply;
+        }
+
+        /**
+         * 已读取的hashlow发送完后, 从上次的位置继续范围扫描下一页
+         */
+        void fill() {
+            if (!hashlows.isEmpty() || done) {
+                return;
+            }
+            Page<Bytes32> page = blockStore.getHashlowsByTime(startTime, endTime, cursor, MAX_BLOCKS_PER_ROUND);
+            hashlows.addAll(page.getItems());
+            cursor = page.getCursor();
+            done = !page.hasMore();
+        }
+    }
+}
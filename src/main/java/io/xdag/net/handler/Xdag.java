@@ -27,6 +27,8 @@ package io.xdag.net.handler;
 import io.xdag.core.Block;
 import io.xdag.net.XdagVersion;
 import io.xdag.net.message.Message;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.bytes.MutableBytes32;
 
 public interface Xdag {
@@ -35,6 +37,8 @@ public interface Xdag {
 
     void sendNewBlock(Block newBlock, int ttl);
 
+    void sendNewBlockHashes(List<Bytes32> hashes, int[] ttls);
+
     long sendGetBlocks(long startTime, long endTime);
 
     long sendGetBlock(MutableBytes32 hash);
@@ -46,6 +46,8 @@ import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.bytes.MutableBytes;
 import org.apache.tuweni.bytes.MutableBytes32;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 @EqualsAndHashCode(callSuper = true)
@@ -53,6 +55,8 @@ import java.util.List;
 @Slf4j
 public class Xdag03 extends XdagHandler {
 
+    private BlocksResponder blocksResponder;
+
     public Xdag03(Kernel kernel, Channel channel) {
         this.kernel = kernel;
         this.channel = channel;
@@ -72,6 +76,8 @@ public class Xdag03 extends XdagHandler {
             case SUMS_REQUEST -> processSumsRequest((SumRequestMessage) msg);
             case SUMS_REPLY -> processSumsReply((SumReplyMessage) msg);
             case BLOCKEXT_REQUEST -> processBlockExtRequest((BlockExtRequestMessage) msg);
+            case NEW_BLOCK_HASHES -> processNewBlockHashes((NewBlockHashesMessage) msg);
+            case GET_BLOCKS_BY_HASH -> processGetBlocksByHash((GetBlocksByHashMessage) msg);
             default -> {
             }
         }
@@ -82,6 +88,14 @@ public class Xdag03 extends XdagHandler {
         msgQueue.activate(ctx);
     }
 
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable()) {
+            msgQueue.onWritable();
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
     @Override
     public void channelInactive(ChannelHandlerContext ctx) {
         log.debug("channelInactive:[{}] ", ctx.toString());
@@ -106,6 +120,9 @@ public class Xdag03 extends XdagHandler {
     public void killTimers() {
         log.debug("msgQueue stop");
         msgQueue.close();
+        if (blocksResponder != null) {
+            blocksResponder.close();
+        }
     }
 
     /**
@@ -114,12 +131,45 @@ public class Xdag03 extends XdagHandler {
     protected void processNewBlock(NewBlockMessage msg) {
         Block block = msg.getBlock();
         log.debug("processNewBlock:{} from node {}", block.getHashLow(), channel.getInetSocketAddress());
+        channel.markKnownBlock(block.getHashLow());
+        kernel.getChannelMgr().onBlockReceived(block.getHashLow());
         BlockWrapper bw = new BlockWrapper(block, msg.getTtl() - 1, channel.getNode());
-        syncMgr.validateAndAddNewBlock(bw);
+        syncMgr.submitBlock(bw, channel);
     }
 
     /**
-     * 区块请求响应一个区块 并开启一个线程不断发送一段时间内的区块 *
+     * 对方广播的区块hash, 本地没有且没有向其他节点请求过的才去拉取
+     */
+    protected void processNewBlockHashes(NewBlockHashesMessage msg) {
+        List<Bytes32> hashes = msg.getHashes();
+        List<Bytes32> want = new ArrayList<>(hashes.size());
+        int[] ttls = new int[hashes.size()];
+        for (int i = 0; i < hashes.size(); i++) {
+            Bytes32 hashLow = hashes.get(i);
+            channel.markKnownBlock(hashLow);
+            if (blockchain.getBlockByHash(hashLow, false) == null && kernel.getChannelMgr().markRequested(hashLow, channel, msg.getTtl(i))) {
+                ttls[want.size()] = msg.getTtl(i);
+                want.add(hashLow);
+            }
+        }
+        if (!want.isEmpty()) {
+            log.debug("Request {} announced blocks from node {}", want.size(), channel.getInetSocketAddress());
+            sendMessage(new GetBlocksByHashMessage(want, Arrays.copyOf(ttls, want.size())));
+        }
+    }
+
+    protected void processGetBlocksByHash(GetBlocksByHashMessage msg) {
+        List<Bytes32> hashes = msg.getHashes();
+        for (int i = 0; i < hashes.size(); i++) {
+            Block block = blockchain.getBlockByHash(hashes.get(i), true);
+            if (block != null) {
+                sendNewBlock(block, msg.getTtl(i));
+            }
+        }
+    }
+
+    /**
+     * 区块请求按时间段流式发送区块, 发送完后回复BlocksReply
      */
     protected void processBlocksRequest(BlocksRequestMessage msg) {
 //        log.debug("processBlocksRequest:" + msg);
@@ -129,21 +179,20 @@ public class Xdag03 extends XdagHandler {
         long endTime = msg.getEndtime();
         long random = msg.getRandom();
 
-        // TODO: paulochen 处理多区块请求
-//        // 如果大于快照点的话 我可以发送
-//        if (startTime > 1658318225407L) {
-//            // TODO: 如果请求时间间隔过大，启动新线程发送，目的是避免攻击
         log.debug("Send blocks between {} and {} to node {}",
                 FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss.SSS").format(XdagTime.xdagTimestampToMs(startTime)),
                 FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss.SSS").format(XdagTime.xdagTimestampToMs(endTime)),
                 channel.getInetSocketAddress());
-        List<Block> blocks = blockchain.getBlocksByTime(startTime, endTime);
-        for (Block block : blocks) {
-            sendNewBlock(block, 1);
+        if (blocksResponder == null) {
+            blocksResponder = new BlocksResponder(kernel.getBlockStore(), msgQueue,
+                    kernel.getConfig().getNodeSpec().getReplyMaxPendingBytes());
+        }
+        boolean accepted = blocksResponder.submit(startTime, endTime,
+                () -> new BlocksReplyMessage(startTime, endTime, random, kernel.getBlockchain().getXdagStats(),
+                        netDBManager.getNetDB()));
+        if (!accepted) {
+            log.debug("Too many blocks requests from node {}, ignore", channel.getInetSocketAddress());
         }
-        sendMessage(new BlocksReplyMessage(startTime, endTime, random, kernel.getBlockchain().getXdagStats(),
-                netDBManager.getNetDB()));
-//        }
     }
 
     protected void processBlocksReply(BlocksReplyMessage msg) {
@@ -199,10 +248,17 @@ public class Xdag03 extends XdagHandler {
     public void sendNewBlock(Block newBlock, int TTL) {
 //        log.debug("sendNewBlock:" + Hex.toHexString(newBlock.getHashLow()));
         log.debug("send block:{} to node:{}", newBlock.getHashLow(), channel.getInetSocketAddress());
+        channel.markKnownBlock(newBlock.getHashLow());
         NewBlockMessage msg = new NewBlockMessage(newBlock, TTL);
         sendMessage(msg);
     }
 
+    @Override
+    public void sendNewBlockHashes(List<Bytes32> hashes, int[] ttls) {
+        log.debug("announce {} blocks to node:{}", hashes.size(), channel.getInetSocketAddress());
+        sendMessage(new NewBlockHashesMessage(hashes, ttls));
+    }
+
     @Override
     public long sendGetBlocks(long startTime, long endTime) {
         log.debug("Request blocks between {} and {} from node {}",
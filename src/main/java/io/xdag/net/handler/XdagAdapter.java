@@ -27,6 +27,8 @@ package io.xdag.net.handler;
 import io.xdag.core.Block;
 import io.xdag.net.XdagVersion;
 import io.xdag.net.message.Message;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.bytes.MutableBytes32;
 
 public class XdagAdapter implements Xdag {
@@ -36,6 +38,10 @@ public class XdagAdapter implements Xdag {
         // TODO Auto-generated method stub
     }
 
+    @Override
+    public void sendNewBlockHashes(List<Bytes32> hashes, int[] ttls) {
+    }
+
     @Override
     public long sendGetBlocks(long startTime, long endTime) {
         // TODO Auto-generated method stub
@@ -29,17 +29,28 @@ import com.github.benmanes.caffeine.cache.Caffeine;
 import io.xdag.Kernel;
 import io.xdag.core.BlockWrapper;
 import io.xdag.net.Channel;
+import io.xdag.net.message.impl.BlockHashesMessage;
+import io.xdag.net.message.impl.GetBlocksByHashMessage;
 import io.xdag.net.node.Node;
 import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.tuweni.bytes.Bytes32;
 
 import static io.xdag.utils.BasicUtils.hash2Address;
@@ -59,6 +70,26 @@ public class XdagChannelManager {
     protected ConcurrentHashMap<String, Channel> activeChannels = new ConcurrentHashMap<>();
 
     private static final int LRU_CACHE_SIZE = 1024;
+    private static final int DISTRIBUTE_BATCH_SIZE = 256;
+    private static final int REQUESTED_CACHE_SIZE = 16384;
+    private static final long REQUEST_TIMEOUT_MS = 5000;
+    private static final long REQUEST_CHECK_INTERVAL_MS = 1000;
+
+    /**
+     * 是否只广播区块hash
+     */
+    private final boolean relayInventory;
+    /**
+     * 向其他节点拉取中的区块及其通告者, 超时或被请求的节点断开时改向下一个通告者拉取
+     */
+    private final Cache<Bytes32, BlockRequest> requestedBlocks = Caffeine.newBuilder()
+            .maximumSize(REQUESTED_CACHE_SIZE)
+            .build();
+    private final ScheduledExecutorService requestTimer = Executors.newSingleThreadScheduledExecutor(
+            new BasicThreadFactory.Builder()
+                    .namingPattern("ChannelManager-request-%d")
+                    .daemon(true)
+                    .build());
 
     @Getter
     private final Cache<InetSocketAddress, Long> channelLastConnect = Caffeine.newBuilder().maximumSize(LRU_CACHE_SIZE).build();
@@ -66,6 +97,7 @@ public class XdagChannelManager {
 
     public XdagChannelManager(Kernel kernel) {
         this.kernel = kernel;
+        this.relayInventory = kernel.getConfig().getNodeSpec().isRelayInventory();
         // Resending new blocks to network in loop
         this.blockDistributeThread = new Thread(this::newBlocksDistributeLoop, "NewSyncThreadBlocks");
         initWhiteIPs();
@@ -73,6 +105,8 @@ public class XdagChannelManager {
 
     public void start() {
         blockDistributeThread.start();
+        requestTimer.scheduleWithFixedDelay(this::checkRequests, REQUEST_CHECK_INTERVAL_MS,
+                REQUEST_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
     }
 
     public void add(Channel ch) {
@@ -104,26 +138,60 @@ public class XdagChannelManager {
      * Processing new blocks received from other peers from queue
      */
     private void newBlocksDistributeLoop() {
+        List<BlockWrapper> batch = new ArrayList<>();
         while (!Thread.currentThread().isInterrupted()) {
-            BlockWrapper wrapper = null;
             try {
-                wrapper = newForeignBlocks.take();
-                log.debug("no problem..");
-                sendNewBlock(wrapper);
+                batch.add(newForeignBlocks.take());
+                newForeignBlocks.drainTo(batch, DISTRIBUTE_BATCH_SIZE - 1);
+                relayBlocks(batch);
             } catch (InterruptedException e) {
                 break;
             } catch (Throwable e) {
-                if (wrapper != null) {
-                    log.error("Block dump: {}", wrapper.getBlock(),e);
-                } else {
-                    log.error("Error broadcasting unknown block", e);
-                }
+                log.error("Error broadcasting blocks: {}", batch, e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 转发其他节点的区块, 开启inventory时只广播hash, 由对方按需拉取
+     */
+    private void relayBlocks(List<BlockWrapper> blockWrappers) {
+        if (!relayInventory) {
+            blockWrappers.forEach(this::sendNewBlock);
+            return;
+        }
+        Map<Channel, List<BlockWrapper>> announces = new HashMap<>();
+        for (BlockWrapper blockWrapper : blockWrappers) {
+            for (Channel channel : relayTargets(blockWrapper)) {
+                announces.computeIfAbsent(channel, c -> new ArrayList<>()).add(blockWrapper);
             }
         }
+        announces.forEach((channel, list) -> {
+            for (int from = 0; from < list.size(); from += BlockHashesMessage.MAX_HASHES) {
+                List<BlockWrapper> part = list.subList(from, Math.min(from + BlockHashesMessage.MAX_HASHES, list.size()));
+                List<Bytes32> hashes = new ArrayList<>(part.size());
+                int[] ttls = new int[part.size()];
+                for (int i = 0; i < part.size(); i++) {
+                    hashes.add(part.get(i).getBlock().getHashLow());
+                    ttls[i] = part.get(i).getTtl();
+                }
+                channel.getXdag().sendNewBlockHashes(hashes, ttls);
+            }
+        });
     }
 
-    // TODO:怎么发送 目前是发给除receive的节点
     public void sendNewBlock(BlockWrapper blockWrapper) {
+        for (Channel channel : relayTargets(blockWrapper)) {
+            channel.sendNewBlock(blockWrapper);
+        }
+    }
+
+    /**
+     * 需要转发的节点: 不包括发送者以及已经拥有该区块的节点
+     */
+    private List<Channel> relayTargets(BlockWrapper blockWrapper) {
         Node receive;
         // 说明是自己产生的
         if (blockWrapper.getRemoteNode() == null
@@ -133,13 +201,93 @@ public class XdagChannelManager {
             Channel receiveChannel = activeChannels.get(blockWrapper.getRemoteNode().getHexId());
             receive = receiveChannel != null ? receiveChannel.getNode() : null;
         }
+        Bytes32 hashLow = blockWrapper.getBlock().getHashLow();
+        List<Channel> targets = new ArrayList<>();
         for (Channel channel : activeChannels.values()) {
             if (receive != null && channel.getNode().getHexId().equals(receive.getHexId())) {
                 log.debug("not send to sender node");
                 continue;
             }
-            channel.sendNewBlock(blockWrapper);
+            if (!channel.markKnownBlock(hashLow)) {
+                continue;
+            }
+            targets.add(channel);
         }
+        return targets;
+    }
+
+    /**
+     * 记录区块的通告者. 同一区块同时只向一个节点拉取, 没有在途请求时返回true, 由调用方向 announcer 请求
+     */
+    public boolean markRequested(Bytes32 hashLow, Channel announcer, int ttl) {
+        boolean[] first = new boolean[1];
+        requestedBlocks.asMap().compute(hashLow, (k, request) -> {
+            if (request == null) {
+                first[0] = true;
+                request = new BlockRequest(ttl);
+                request.requestFrom(announcer);
+            } else if (request.requested != announcer && !request.announcers.contains(announcer)) {
+                request.announcers.add(announcer);
+            }
+            return request;
+        });
+        return first[0];
+    }
+
+    /**
+     * 收到拉取的区块, 不再重试; 标记保留到超时, 期间同一区块的通告不会重复拉取
+     */
+    public void onBlockReceived(Bytes32 hashLow) {
+        requestedBlocks.asMap().computeIfPresent(hashLow, (k, request) -> {
+            request.requested = null;
+            return request;
+        });
+    }
+
+    private void checkRequests() {
+        try {
+            long expired = System.currentTimeMillis() - REQUEST_TIMEOUT_MS;
+            for (Bytes32 hashLow : requestedBlocks.asMap().keySet()) {
+                retryRequest(hashLow, request -> request.requestedAt <= expired);
+            }
+        } catch (Throwable e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 满足条件时改向下一个仍在线的通告者拉取, 没有可用的通告者或区块已收到时清除标记
+     */
+    private void retryRequest(Bytes32 hashLow, Predicate<BlockRequest> condition) {
+        Channel[] next = new Channel[1];
+        int[] ttl = new int[1];
+        requestedBlocks.asMap().computeIfPresent(hashLow, (k, request) -> {
+            if (!condition.test(request)) {
+                return request;
+            }
+            if (request.requested == null) {
+                return null;
+            }
+            Channel channel;
+            do {
+                channel = request.announcers.poll();
+            } while (channel != null && !isActive(channel));
+            if (channel == null) {
+                return null;
+            }
+            request.requestFrom(channel);
+            next[0] = channel;
+            ttl[0] = request.ttl;
+            return request;
+        });
+        if (next[0] != null) {
+            log.debug("Request block {} again from node {}", hashLow, next[0].getInetSocketAddress());
+            next[0].getXdag().sendMessage(new GetBlocksByHashMessage(List.of(hashLow), new int[]{ttl[0]}));
+        }
+    }
+
+    private boolean isActive(Channel channel) {
+        return channel.getNode() != null && activeChannels.get(channel.getNode().getHexId()) == channel;
     }
 
     public void onChannelActive(Channel channel, Node node) {
@@ -167,6 +315,10 @@ public class XdagChannelManager {
             activeChannels.remove(ch.getNode().getHexId());
             ch.setActive(false);
         }
+        // 向断开的节点发出的请求不会再有回应
+        for (Bytes32 hashLow : requestedBlocks.asMap().keySet()) {
+            retryRequest(hashLow, request -> request.requested == ch);
+        }
     }
 
     public boolean isAcceptable(InetSocketAddress address) {
@@ -201,9 +353,29 @@ public class XdagChannelManager {
             // 中断
             blockDistributeThread.interrupt();
         }
+        requestTimer.shutdownNow();
         // 关闭所有连接
         for (Channel channel : activeChannels.values()) {
             channel.dropConnection();
         }
     }
+
+    private static class BlockRequest {
+
+        // 尚未请求过的通告者
+        private final Deque<Channel> announcers = new ArrayDeque<>();
+        private final int ttl;
+        // 正在等待回应的节点, 收到区块后为 null
+        private Channel requested;
+        private long requestedAt;
+
+        BlockRequest(int ttl) {
+            this.ttl = ttl;
+        }
+
+        void requestFrom(Channel channel) {
+            requested = channel;
+            requestedAt = System.currentTimeMillis();
+        }
+    }
 }
@@ -24,37 +24,47 @@
 
 package io.xdag.net.message;
 
-import static io.xdag.config.Constants.SEND_PERIOD;
+import static io.xdag.core.XdagBlock.XDAG_BLOCK_SIZE;
 
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.xdag.net.Channel;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 
+/**
+ * 出站消息队列. 入队时和channel重新可写时在channel的eventLoop上发送, channel不可写时停止写入,
+ * 由netty的高低水位控制背压. 请求消息优先于响应消息发送, 避免本节点的同步请求排在大量区块响应之后.
+ */
 @Slf4j
 public class MessageQueue {
 
-    private static final AtomicInteger cnt = new AtomicInteger(0);
-    public static final ScheduledExecutorService timer = new ScheduledThreadPoolExecutor(
-            4,
-            new BasicThreadFactory.Builder()
-                    .namingPattern("MessageQueueTimer-" + cnt.getAndIncrement())
-                    .daemon(true)
-                    .build());
     private final Queue<Message> requestQueue = new ConcurrentLinkedQueue<>();
     private final Queue<Message> respondQueue = new ConcurrentLinkedQueue<>();
     private final Channel channel;
-    boolean isRunning = false;
-    private ChannelHandlerContext ctx = null;
-    private ScheduledFuture<?> timerTask;
+    volatile boolean isRunning = false;
+    private volatile ChannelHandlerContext ctx = null;
+    /**
+     * 是否已经有发送任务提交到eventLoop
+     */
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+
+    /**
+     * 队列长度(两个队列之和)及其历史最大值
+     */
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final AtomicInteger maxQueueSize = new AtomicInteger();
+    private final AtomicLong sentMessages = new AtomicLong();
+    /**
+     * channel重新可写或队列发送完时通知, 供按背压暂停的生产者恢复
+     */
+    private final List<Runnable> writableListeners = new CopyOnWriteArrayList<>();
 
     public MessageQueue(Channel channel) {
         this.channel = channel;
@@ -63,44 +73,7 @@ public class MessageQueue {
     public void activate(ChannelHandlerContext ctx) {
         this.ctx = ctx;
         isRunning = true;
-        timerTask = timer.scheduleAtFixedRate(
-                () -> {
-                    try {
-                        nudgeQueue();
-                    } catch (Throwable t) {
-                        log.error("Unhandled exception", t);
-                    }
-                },
-                10,
-                // TODO: 发送周期缩短会不会有影响，但能有效加快同步速度
-                SEND_PERIOD,
-                // 2毫秒执行一次
-                TimeUnit.MILLISECONDS);
-    }
-
-    /**
-     * 每2毫秒执行一次
-     */
-    private void nudgeQueue() {
-        int n = Math.min(5, size());
-        if (n == 0) {
-            return;
-        }
-        // write out n messages
-        for (int i = 0; i < n; i++) {
-            // Now send the next message
-            // log.debug("Sent to Wire with the message,msg:"+msg.getCommand());
-            Message respondMsg = respondQueue.poll();
-            Message requestMsg = requestQueue.poll();
-            if (respondMsg != null) {
-                ctx.write(respondMsg).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
-            }
-            if (requestMsg != null) {
-                ctx.write(requestMsg).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
-            }
-
-        }
-        ctx.flush();
+        scheduleDrain();
     }
 
     public void sendMessage(Message msg) {
@@ -109,11 +82,77 @@ public class MessageQueue {
             return;
         }
 
+        int size = queueSize.incrementAndGet();
+        maxQueueSize.accumulateAndGet(size, Math::max);
         if (msg.getAnswerMessage() != null) {
             requestQueue.add(msg);
         } else {
             respondQueue.add(msg);
         }
+        scheduleDrain();
+    }
+
+    /**
+     * channel重新可写时由handler调用
+     */
+    public void onWritable() {
+        scheduleDrain();
+        notifyWritable();
+    }
+
+    public void addWritableListener(Runnable listener) {
+        writableListeners.add(listener);
+    }
+
+    private void notifyWritable() {
+        for (Runnable listener : writableListeners) {
+            listener.run();
+        }
+    }
+
+    private void scheduleDrain() {
+        ChannelHandlerContext context = ctx;
+        if (context == null || !isRunning || size() == 0) {
+            return;
+        }
+        if (drainScheduled.compareAndSet(false, true)) {
+            context.executor().execute(this::drain);
+        }
+    }
+
+    /**
+     * 在eventLoop上执行, 一直写到队列为空或channel不可写
+     */
+    private void drain() {
+        drainScheduled.set(false);
+        if (!isRunning) {
+            return;
+        }
+        int written = 0;
+        while (ctx.channel().isWritable()) {
+            Message msg = requestQueue.poll();
+            if (msg == null) {
+                msg = respondQueue.poll();
+            }
+            if (msg == null) {
+                break;
+            }
+            queueSize.decrementAndGet();
+            ctx.write(msg).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+            written++;
+        }
+        if (written > 0) {
+            sentMessages.addAndGet(written);
+            ctx.flush();
+        }
+        // 写入期间有新消息入队但未能提交任务时, 由这里补上; 不可写时等待onWritable
+        if (ctx.channel().isWritable()) {
+            scheduleDrain();
+            if (written > 0 && size() == 0) {
+                // 队列已清空而channel始终可写时不会有可写事件, 在这里通知
+                notifyWritable();
+            }
+        }
     }
 
     public void disconnect() {
@@ -122,9 +161,6 @@ public class MessageQueue {
 
     public void close() {
         isRunning = false;
-        if (timerTask != null) {
-            timerTask.cancel(false);
-        }
     }
 
     public boolean isRunning() {
@@ -132,6 +168,45 @@ public class MessageQueue {
     }
 
     public int size() {
-        return requestQueue.size() + respondQueue.size();
+        return queueSize.get();
+    }
+
+    public int getRequestQueueSize() {
+        return requestQueue.size();
+    }
+
+    public int getRespondQueueSize() {
+        return respondQueue.size();
+    }
+
+    public int getMaxQueueSize() {
+        return maxQueueSize.get();
+    }
+
+    public long getSentMessages() {
+        return sentMessages.get();
+    }
+
+    /**
+     * 队列中还未交给netty的字节数
+     */
+    public long pendingBytes() {
+        return (long) size() * XDAG_BLOCK_SIZE;
+    }
+
+    /**
+     * netty出站缓冲区是否低于高水位, 可在任意线程调用
+     */
+    public boolean isWritable() {
+        ChannelHandlerContext context = ctx;
+        return context != null && context.channel().isWritable();
+    }
+
+    /**
+     * 出站缓冲区达到高水位前还能写入的字节数
+     */
+    public long bytesBeforeUnwritable() {
+        ChannelHandlerContext context = ctx;
+        return context == null ? 0 : context.channel().bytesBeforeUnwritable();
     }
 }
@@ -60,7 +60,10 @@ public enum XdagMessageCodes {
     NEW_TASK(0x09),
     NEW_BALANCE(0x0A),
     NEW_BLOCK(0x0B),
-    WORKER_NAME(0x0C);
+    WORKER_NAME(0x0C),
+    // 区块hash广播及按hash拉取区块
+    NEW_BLOCK_HASHES(0x0D),
+    GET_BLOCKS_BY_HASH(0x0E);
 
     private static final Map<XdagVersion, Map<Integer, XdagMessageCodes>> intToTypeMap = new HashMap<>();
     private static final Map<XdagVersion, XdagMessageCodes[]> versionToValuesMap = new HashMap<>();
@@ -81,7 +84,9 @@ public enum XdagMessageCodes {
                         NEW_TASK,
                         NEW_BALANCE,
                         NEW_BLOCK,
-                        WORKER_NAME
+                        WORKER_NAME,
+                        NEW_BLOCK_HASHES,
+                        GET_BLOCKS_BY_HASH
                 });
 
         for (XdagVersion v : XdagVersion.values()) {
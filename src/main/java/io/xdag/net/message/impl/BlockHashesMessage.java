@@ -0,0 +1,127 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net.message.impl;
+
+import static io.xdag.config.Constants.DNET_PKT_XDAG;
+import static io.xdag.core.XdagBlock.XDAG_BLOCK_SIZE;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_NONCE;
+
+import io.xdag.net.message.Message;
+import io.xdag.utils.BytesUtils;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.bytes.MutableBytes;
+import org.apache.tuweni.bytes.MutableBytes32;
+
+/**
+ * 携带一组区块hashlow的消息, 第0个field为头部(数量放在第16字节), 后面每个field放一个hash.
+ * hashlow的前8个字节恒为0, 这里用来存放该区块的ttl
+ */
+public abstract class BlockHashesMessage extends Message {
+
+    /**
+     * 一个消息最多携带的hash数量
+     */
+    public static final int MAX_HASHES = 15;
+
+    protected List<Bytes32> hashes;
+    protected int[] ttls;
+
+    public BlockHashesMessage(MutableBytes encoded) {
+        super(encoded);
+        parse();
+    }
+
+    public BlockHashesMessage(List<Bytes32> hashes, int[] ttls) {
+        if (hashes.size() > MAX_HASHES || hashes.size() != ttls.length) {
+            throw new IllegalArgumentException("Invalid hashes size " + hashes.size());
+        }
+        this.hashes = new ArrayList<>(hashes);
+        this.ttls = ttls.clone();
+        encode();
+    }
+
+    public List<Bytes32> getHashes() {
+        return hashes;
+    }
+
+    public int getTtl(int i) {
+        return ttls[i];
+    }
+
+    private void parse() {
+        if (parsed) {
+            return;
+        }
+        int count = (int) Math.min(Math.max(encoded.getLong(16, ByteOrder.LITTLE_ENDIAN), 0), MAX_HASHES);
+        hashes = new ArrayList<>(count);
+        ttls = new int[count];
+        for (int i = 0; i < count; i++) {
+            int offset = (i + 1) * 32;
+            ttls[i] = (int) encoded.getLong(offset, ByteOrder.LITTLE_ENDIAN);
+            MutableBytes32 hashLow = MutableBytes32.create();
+            hashLow.set(8, encoded.slice(offset + 8, 24));
+            hashes.add(hashLow);
+        }
+        parsed = true;
+    }
+
+    private void encode() {
+        parsed = true;
+        encoded = MutableBytes.create(XDAG_BLOCK_SIZE);
+        long transportheader = (1 << 8) | DNET_PKT_XDAG | (XDAG_BLOCK_SIZE << 16);
+        long type = ((long) getCommand().asByte() << 4) | XDAG_FIELD_NONCE.asByte();
+        encoded.set(0, Bytes.wrap(BytesUtils.longToBytes(transportheader, true)));
+        encoded.set(8, Bytes.wrap(BytesUtils.longToBytes(type, true)));
+        encoded.set(16, Bytes.wrap(BytesUtils.longToBytes(hashes.size(), true)));
+        for (int i = 0; i < hashes.size(); i++) {
+            int offset = (i + 1) * 32;
+            encoded.set(offset, Bytes.wrap(BytesUtils.longToBytes(ttls[i], true)));
+            encoded.set(offset + 8, hashes.get(i).slice(8, 24));
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(encoded.toArray(), 0, XDAG_BLOCK_SIZE);
+        encoded.set(4, Bytes.wrap(BytesUtils.intToBytes((int) crc32.getValue(), true)));
+    }
+
+    @Override
+    public Bytes getEncoded() {
+        return encoded;
+    }
+
+    @Override
+    public Class<?> getAnswerMessage() {
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + getCommand().name() + " hashes=" + hashes + "]";
+    }
+}
@@ -46,6 +46,8 @@ public class Xdag03MessageFactory implements MessageFactory {
             case BLOCKEXT_REPLY -> new BlockExtReplyMessage(encoded);
             case BLOCK_REQUEST -> new BlockRequestMessage(encoded);
             case NEW_BLOCK -> new NewBlockMessage(encoded);
+            case NEW_BLOCK_HASHES -> new NewBlockHashesMessage(encoded);
+            case GET_BLOCKS_BY_HASH -> new GetBlocksByHashMessage(encoded);
             default -> throw new IllegalArgumentException("No such message code" + code);
         };
     }
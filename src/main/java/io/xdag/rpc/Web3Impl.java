@@ -190,6 +190,11 @@ public class Web3Impl implements Web3 {
         return web3XdagModule.xdag_getBlockByHash(blockHash);
     }
 
+    @Override
+    public BlockResultDTO xdag_getBlockByHash(String blockHash, String txCursor, String txLimit) {
+        return web3XdagModule.xdag_getBlockByHash(blockHash, txCursor, txLimit);
+    }
+
     @Override
     public StatusDTO xdag_getStatus() throws Exception {
         return web3XdagModule.xdag_getStatus();
@@ -67,6 +67,7 @@ public class BlockResultDTO {
     private String flags;
     private List<Link> refs; // means all the ref block
     private List<TxLink> transactions; // means transaction a wallet have
+    private String txCursor; // next page of transactions, null if none
 
 
     @Data
@@ -96,6 +96,10 @@ public interface Web3XdagModule {
         return getXdagModule().getBlockByHash(blockHash);
     }
 
+    default BlockResultDTO xdag_getBlockByHash(String blockHash, String txCursor, String txLimit) {
+        return getXdagModule().getBlockByHash(blockHash, txCursor, txLimit);
+    }
+
     StatusDTO xdag_getStatus() throws Exception;
 
     Object xdag_netType() throws Exception;
@@ -89,6 +89,11 @@ public class XdagModule implements XdagModuleTransaction, XdagModuleWallet, Xdag
         return xdagModuleChain.getBlockByHash(hash);
     }
 
+    @Override
+    public BlockResultDTO getBlockByHash(String hash, String txCursor, String txLimit) {
+        return xdagModuleChain.getBlockByHash(hash, txCursor, txLimit);
+    }
+
     @Override
     public BlockResultDTO getBlockByNumber(String bnOrId) {
         return xdagModuleChain.getBlockByNumber(bnOrId);
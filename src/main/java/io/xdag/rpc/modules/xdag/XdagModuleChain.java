@@ -32,6 +32,12 @@ public interface XdagModuleChain {
 
     BlockResultDTO getBlockByHash(String hash);
 
+    /**
+     * @param txCursor txCursor of the previous page, null for the first page
+     * @param txLimit max transactions of the page, null for the default
+     */
+    BlockResultDTO getBlockByHash(String hash, String txCursor, String txLimit);
+
     BlockResultDTO getBlockByNumber(String bnOrId);
 
     String getRewardByNumber(String bnOrId);
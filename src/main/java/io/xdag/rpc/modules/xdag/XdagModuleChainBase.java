@@ -25,7 +25,6 @@
 package io.xdag.rpc.modules.xdag;
 
 import static io.xdag.cli.Commands.getStateByFlags;
-import static io.xdag.config.Constants.BI_APPLIED;
 import static io.xdag.core.BlockState.MAIN;
 import static io.xdag.core.BlockType.MAIN_BLOCK;
 import static io.xdag.core.BlockType.SNAPSHOT;
@@ -42,6 +41,7 @@ import static io.xdag.utils.XdagTime.xdagTimestampToMs;
 import io.xdag.Kernel;
 import io.xdag.cli.Commands;
 import io.xdag.core.*;
+import io.xdag.db.Page;
 import io.xdag.rpc.dto.BlockResultDTO;
 import io.xdag.rpc.dto.BlockResultDTO.Link;
 import io.xdag.rpc.dto.BlockResultDTO.TxLink;
@@ -54,9 +54,16 @@ import java.util.List;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.tuweni.bytes.Bytes32;
+import org.bouncycastle.util.encoders.Hex;
 
 public class XdagModuleChainBase implements XdagModuleChain {
 
+    /**
+     * 区块详情中每页返回的交易历史条数
+     */
+    public static final int DEFAULT_TX_LIMIT = 100;
+    public static final int MAX_TX_LIMIT = 1000;
+
     private final Blockchain blockchain;
     private final Kernel kernel;
 
@@ -75,6 +82,15 @@ public class XdagModuleChainBase implements XdagModuleChain {
         return getBlockDTOByHash(hash);
     }
 
+    @Override
+    public BlockResultDTO getBlockByHash(String hash, String txCursor, String txLimit) {
+        int limit = txLimit == null ? DEFAULT_TX_LIMIT : Math.min(Integer.parseInt(txLimit), MAX_TX_LIMIT);
+        if (limit <= 0) {
+            throw new IllegalArgumentException("txLimit must be positive");
+        }
+        return getBlockDTOByHash(hash, txCursor == null ? null : Hex.decode(txCursor), limit);
+    }
+
     @Override
     public BlockResultDTO getBlockByNumber(String bnOrId) {
         Block blockFalse = blockchain.getBlockByHeight(Long.parseLong(bnOrId));
@@ -83,9 +99,9 @@ public class XdagModuleChainBase implements XdagModuleChain {
         }
         Block blockTrue = blockchain.getBlockByHash(blockFalse.getHash(), true);
         if (blockTrue == null) {
-            return transferBlockInfoToBlockResultDTO(blockFalse);
+            return transferBlockInfoToBlockResultDTO(blockFalse, null, DEFAULT_TX_LIMIT);
         }
-        return transferBlockToBlockResultDTO(blockTrue);
+        return transferBlockToBlockResultDTO(blockTrue, null, DEFAULT_TX_LIMIT);
     }
 
     @Override
@@ -115,7 +131,7 @@ public class XdagModuleChainBase implements XdagModuleChain {
             List<Block> blocks = blockchain.listMainBlocks(number);
             List<BlockResultDTO> resultDTOS = new ArrayList<>();
             for (Block block : blocks) {
-                BlockResultDTO dto = transferBlockToBriefBlockResultDTO(blockchain.getBlockByHash(block.getHash(), false));
+                BlockResultDTO dto = transferBlockToBriefBlockResultDTO(block);
                 if (dto != null) {
                     resultDTOS.add(dto);
                 }
@@ -132,6 +148,10 @@ public class XdagModuleChainBase implements XdagModuleChain {
     }
 
     public BlockResultDTO getBlockDTOByHash(String hash) {
+        return getBlockDTOByHash(hash, null, DEFAULT_TX_LIMIT);
+    }
+
+    public BlockResultDTO getBlockDTOByHash(String hash, byte[] txCursor, int txLimit) {
         Bytes32 blockHash;
         if (StringUtils.length(hash) == 32) {
             blockHash = address2Hash(hash);
@@ -141,9 +161,9 @@ public class XdagModuleChainBase implements XdagModuleChain {
         Block block = blockchain.getBlockByHash(blockHash, true);
         if (block == null) {
             block = blockchain.getBlockByHash(blockHash, false);
-            return transferBlockInfoToBlockResultDTO(block);
+            return transferBlockInfoToBlockResultDTO(block, txCursor, txLimit);
         }
-        return transferBlockToBlockResultDTO(block);
+        return transferBlockToBlockResultDTO(block, txCursor, txLimit);
     }
 
     private BlockResultDTO transferBlockToBriefBlockResultDTO(Block block) {
@@ -166,7 +186,7 @@ public class XdagModuleChainBase implements XdagModuleChain {
         return BlockResultDTOBuilder.build();
     }
 
-    private BlockResultDTO transferBlockInfoToBlockResultDTO(Block block) {
+    private BlockResultDTO transferBlockInfoToBlockResultDTO(Block block, byte[] txCursor, int txLimit) {
         if (null == block) {
             return null;
         }
@@ -176,7 +196,7 @@ public class XdagModuleChainBase implements XdagModuleChain {
                 .balance(String.format("%.9f", amount2xdag(block.getInfo().getAmount())))
                 .type(SNAPSHOT.getDesc())
                 .blockTime(xdagTimestampToMs(kernel.getConfig().getSnapshotSpec().getSnapshotTime()))
-                .timeStamp(kernel.getConfig().getSnapshotSpec().getSnapshotTime())
+                .timeStamp(kernel.getConfig().getSnapshotSpec().getSnapshotTime());
 //                .flags(Integer.toHexString(block.getInfo().getFlags()))
 //                .diff(toQuantityJsonHex(block.getInfo().getDifficulty()))
 //                .remark(block.getInfo().getRemark() == null ? "" : new String(block.getInfo().getRemark(),
@@ -185,11 +205,11 @@ public class XdagModuleChainBase implements XdagModuleChain {
 //                .type(getType(block))
 //                .refs(getLinks(block))
 //                .height(block.getInfo().getHeight())
-                .transactions(getTxLinks(block));
+        setTxLinks(BlockResultDTOBuilder, block, txCursor, txLimit);
         return BlockResultDTOBuilder.build();
     }
 
-    private BlockResultDTO transferBlockToBlockResultDTO(Block block) {
+    private BlockResultDTO transferBlockToBlockResultDTO(Block block, byte[] txCursor, int txLimit) {
         if (null == block) {
             return null;
         }
@@ -206,8 +226,8 @@ public class XdagModuleChainBase implements XdagModuleChain {
                 .state(getStateByFlags(block.getInfo().getFlags()))
                 .type(getType(block))
                 .refs(getLinks(block))
-                .height(block.getInfo().getHeight())
-                .transactions(getTxLinks(block));
+                .height(block.getInfo().getHeight());
+        setTxLinks(BlockResultDTOBuilder, block, txCursor, txLimit);
         return BlockResultDTOBuilder.build();
     }
 
@@ -248,11 +268,19 @@ public class XdagModuleChainBase implements XdagModuleChain {
         return links;
     }
 
-    private List<TxLink> getTxLinks(Block block) {
-        List<TxHistory> txHistories = blockchain.getBlockTxHistoryByAddress(block.getHashLow());
+    /**
+     * 一页交易历史, 挖矿收益只在第一页
+     */
+    private void setTxLinks(BlockResultDTO.BlockResultDTOBuilder builder, Block block, byte[] txCursor, int txLimit) {
+        Page<TxHistory> page = blockchain.getBlockTxHistoryByAddress(block.getHashLow(), txCursor, txLimit);
+        builder.transactions(getTxLinks(block, page.getItems(), txCursor == null))
+                .txCursor(page.hasMore() ? Hex.toHexString(page.getCursor()) : null);
+    }
+
+    private List<TxLink> getTxLinks(Block block, List<TxHistory> txHistories, boolean withEarning) {
         List<TxLink> txLinks = new ArrayList<>();
         // 1. earning info
-        if (getStateByFlags(block.getInfo().getFlags()).equals(MAIN.getDesc()) && block.getInfo().getHeight() > kernel.getConfig().getSnapshotSpec().getSnapshotHeight()) {
+        if (withEarning && getStateByFlags(block.getInfo().getFlags()).equals(MAIN.getDesc()) && block.getInfo().getHeight() > kernel.getConfig().getSnapshotSpec().getSnapshotHeight()) {
             TxLink.TxLinkBuilder txLinkBuilder = TxLink.builder();
             String remark = "";
             if (block.getInfo().getRemark() != null && block.getInfo().getRemark().length != 0) {
@@ -268,8 +296,7 @@ public class XdagModuleChainBase implements XdagModuleChain {
         }
         // 2. tx history info
         for (TxHistory txHistory : txHistories) {
-            BlockInfo blockInfo = blockchain.getBlockByHash(txHistory.getAddress().getHashLow(), false).getInfo();
-            if((blockInfo.flags&BI_APPLIED)==0){
+            if (!txHistory.isApplied()) {
                 continue;
             }
             TxLink.TxLinkBuilder txLinkBuilder = TxLink.builder();
@@ -0,0 +1,125 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.wallet;
+
+import io.xdag.core.Block;
+import io.xdag.crypto.Hash;
+import io.xdag.crypto.PubKeyCache;
+import io.xdag.crypto.Sign;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.hyperledger.besu.crypto.KeyPair;
+import org.hyperledger.besu.crypto.SECPPublicKey;
+import org.hyperledger.besu.crypto.SECPSignature;
+
+/**
+ * 钱包公钥索引, 以压缩公钥为键, 下标与 Wallet.getAccounts() 一致.
+ * 输出签名的摘要包含签名者公钥, 无法从签名恢复公钥, 因此判断区块是否属于我们时
+ * 先查区块中嵌入的公钥, 再试默认key, 常见情况下只需一次验签
+ */
+public class KeyIndex {
+
+    private final List<KeyPair> keys;
+    private final List<Bytes> pubKeys;
+    private final Map<Bytes, Integer> index;
+
+    public KeyIndex(List<KeyPair> keys) {
+        this.keys = Collections.unmodifiableList(new ArrayList<>(keys));
+        this.pubKeys = new ArrayList<>(keys.size());
+        this.index = new HashMap<>(keys.size() * 2);
+        for (int i = 0; i < keys.size(); i++) {
+            Bytes pubKey = compress(keys.get(i).getPublicKey());
+            pubKeys.add(pubKey);
+            index.putIfAbsent(pubKey, i);
+        }
+    }
+
+    public static Bytes compress(SECPPublicKey publicKey) {
+        return PubKeyCache.compress(publicKey);
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    public KeyPair get(int i) {
+        return keys.get(i);
+    }
+
+    /**
+     * @param pubKey 33字节压缩公钥
+     * @return 钱包中的下标, 不存在返回 -1
+     */
+    public int indexOf(Bytes pubKey) {
+        Integer i = index.get(pubKey);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * 查找对区块输出签名的钱包key.
+     *
+     * @param fullScan 为 true 时在快速匹配失败后逐个尝试其余的key; 没有嵌入公钥的区块也可能由非默认key签名
+     * @return 钱包中的下标, 不是我们的区块返回 -1
+     */
+    public int findSigner(Block block, SECPSignature outsig, boolean fullScan) {
+        if (outsig == null || keys.isEmpty()) {
+            return -1;
+        }
+        Bytes prefix = block.getSubRawData(block.getOutsigIndex() - 2);
+        boolean[] tried = new boolean[keys.size()];
+        // 输出签名的key通常嵌入在区块中
+        for (SECPPublicKey publicKey : block.getPubKeys()) {
+            int i = indexOf(compress(publicKey));
+            if (i >= 0 && !tried[i]) {
+                tried[i] = true;
+                if (verify(prefix, outsig, i)) {
+                    return i;
+                }
+            }
+        }
+        // 没有嵌入公钥的区块(主块, 链接块, 默认key签名的交易块)用默认key签名
+        if (!tried[0] && verify(prefix, outsig, 0)) {
+            return 0;
+        }
+        tried[0] = true;
+        if (fullScan) {
+            for (int i = 0; i < keys.size(); i++) {
+                if (!tried[i] && verify(prefix, outsig, i)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private boolean verify(Bytes prefix, SECPSignature outsig, int i) {
+        Bytes32 hash = Hash.hashTwice(Bytes.wrap(prefix, pubKeys.get(i)));
+        return Sign.SECP256K1.verify(hash, outsig, keys.get(i).getPublicKey());
+    }
+}
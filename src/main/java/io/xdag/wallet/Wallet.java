@@ -92,6 +92,10 @@ public class Wallet {
     private final Config config;
 
     private final Map<Bytes, KeyPair> accounts = Collections.synchronizedMap(new LinkedHashMap<>());
+    /**
+     * accounts 的公钥索引, 账户变化时重建
+     */
+    private volatile KeyIndex keyIndex;
     private String password;
 
     // hd wallet key
@@ -138,7 +142,10 @@ public class Wallet {
      */
     public void lock() {
         password = null;
-        accounts.clear();
+        synchronized (accounts) {
+            accounts.clear();
+            keyIndex = null;
+        }
     }
 
     public KeyPair getDefKey() {
@@ -189,6 +196,7 @@ public class Wallet {
                         Bytes b = Bytes.wrap(Keys.toBytesAddress(account));
                         accounts.put(b, account);
                     }
+                    keyIndex = null;
                 }
             }
             this.password = password;
@@ -283,14 +291,33 @@ public class Wallet {
         }
     }
 
+    /**
+     * Returns the public key index of the accounts, in the same order as {@link #getAccounts()}.
+     */
+    public KeyIndex getKeyIndex() {
+        requireUnlocked();
+        KeyIndex res = keyIndex;
+        if (res == null) {
+            synchronized (accounts) {
+                res = new KeyIndex(new ArrayList<>(accounts.values()));
+                keyIndex = res;
+            }
+        }
+        return res;
+    }
+
     /**
      * Sets the accounts inside this wallet.
      */
     public void setAccounts(List<KeyPair> list) {
         requireUnlocked();
-        accounts.clear();
-        for (KeyPair key : list) {
-            addAccount(key);
+        synchronized (accounts) {
+            accounts.clear();
+            for (KeyPair key : list) {
+                addAccount(key);
+            }
+            // 索引在账户列表改完之后才失效, 否则并发重建的索引可能基于旧列表
+            keyIndex = null;
         }
     }
 
@@ -372,6 +399,7 @@ public class Wallet {
             }
 
             accounts.put(b, newKey);
+            keyIndex = null;
             return true;
         }
     }
@@ -412,7 +440,9 @@ public class Wallet {
     public boolean removeAccount(byte[] address) {
         requireUnlocked();
         synchronized (accounts) {
-            return accounts.remove(Bytes.of(address)) != null;
+            boolean removed = accounts.remove(Bytes.of(address)) != null;
+            keyIndex = null;
+            return removed;
         }
     }
 
@@ -474,6 +504,7 @@ public class Wallet {
             Bip32ECKeyPair bip44Keypair = WalletUtils.generateBip44KeyPair(masterKeypair, nextAccountIndex++);
             Bytes b = Bytes.wrap(Keys.toBytesAddress(bip44Keypair.getKeyPair()));
             accounts.put(b, bip44Keypair.getKeyPair());
+            keyIndex = null;
             return bip44Keypair.getKeyPair();
         }
     }
@@ -0,0 +1,149 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.consensus;
+
+import static io.xdag.BlockBuilder.generateAddressBlock;
+import static io.xdag.BlockBuilder.generateExtraBlock;
+import static io.xdag.BlockBuilder.generateTransactionBlock;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_IN;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_OUT;
+import static io.xdag.utils.BasicUtils.xdag2amount;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.Lists;
+import io.xdag.Kernel;
+import io.xdag.config.AbstractConfig;
+import io.xdag.core.Address;
+import io.xdag.core.Block;
+import io.xdag.core.BlockWrapper;
+import io.xdag.crypto.SampleKeys;
+import io.xdag.crypto.Sign;
+import io.xdag.net.Channel;
+import io.xdag.utils.XdagTime;
+import java.security.Security;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes32;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.hyperledger.besu.crypto.KeyPair;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+public class SyncManagerTest {
+
+    static { Security.addProvider(new BouncyCastleProvider());  }
+
+    @Rule
+    public TemporaryFolder root = new TemporaryFolder();
+
+    @Test
+    public void testImportPipeline() throws Exception {
+        Kernel kernel = new SyncTest().createKernel(root, false, 0);
+        SyncManager syncMgr = new SyncManager(kernel);
+        // 不触发出块
+        syncMgr.getSyncDone().set(true);
+        syncMgr.start();
+
+        KeyPair poolKey = KeyPair.create(SampleKeys.SRIVATE_KEY, Sign.CURVE, Sign.CURVE_NAME);
+        long generateTime = 1600616700000L;
+        Block addressBlock = generateAddressBlock(kernel.getConfig(), poolKey, generateTime);
+        List<Block> blocks = Lists.newArrayList(addressBlock);
+        List<Address> pending = Lists.newArrayList();
+        Bytes32 ref = addressBlock.getHashLow();
+        for (int i = 1; i <= 10; i++) {
+            generateTime += 64000L;
+            pending.clear();
+            pending.add(new Address(ref, XDAG_FIELD_OUT));
+            long xdagTime = XdagTime.getEndOfEpoch(XdagTime.msToXdagtimestamp(generateTime));
+            Block extraBlock = generateExtraBlock(kernel.getConfig(), poolKey, xdagTime, pending);
+            ref = extraBlock.getHashLow();
+            blocks.add(extraBlock);
+        }
+        // 带输入的交易块, 走并行验签
+        Address from = new Address(blocks.get(1).getHashLow(), XDAG_FIELD_IN);
+        Address to = new Address(addressBlock.getHashLow(), XDAG_FIELD_OUT);
+        long xdagTime = XdagTime.getEndOfEpoch(XdagTime.msToXdagtimestamp(generateTime));
+        Block txBlock = generateTransactionBlock(kernel.getConfig(), poolKey, xdagTime - 1, from, to, xdag2amount(100.00));
+        blocks.add(txBlock);
+
+        for (Block block : blocks) {
+            syncMgr.submitBlock(new BlockWrapper(block, 0));
+        }
+        long deadline = System.currentTimeMillis() + 30000;
+        while (kernel.getBlockchain().getXdagStats().nblocks < blocks.size() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        syncMgr.stop();
+
+        assertEquals(blocks.size(), kernel.getBlockchain().getXdagStats().nblocks);
+        assertNotNull(kernel.getBlockchain().getBlockByHash(txBlock.getHashLow(), false));
+    }
+
+    @Test
+    public void testPauseReadsWhenQueueFull() throws Exception {
+        Kernel kernel = new SyncTest().createKernel(root, false, 0);
+        ((AbstractConfig) kernel.getConfig()).setImportQueueSize(2);
+        SyncManager syncMgr = new SyncManager(kernel);
+        syncMgr.getSyncDone().set(true);
+        syncMgr.start();
+
+        KeyPair poolKey = KeyPair.create(SampleKeys.SRIVATE_KEY, Sign.CURVE, Sign.CURVE_NAME);
+        long generateTime = 1600616700000L;
+        List<Block> blocks = Lists.newArrayList();
+        for (int i = 0; i < 6; i++) {
+            blocks.add(generateAddressBlock(kernel.getConfig(), poolKey, generateTime + i * 64000L));
+        }
+        Channel source = mock(Channel.class);
+        // 导入线程卡在 tryToConnect 时, 提交方不阻塞, 积压后暂停来源连接的读取
+        synchronized (kernel.getBlockchain()) {
+            for (Block block : blocks) {
+                syncMgr.submitBlock(new BlockWrapper(block, 0), source);
+            }
+            assertFalse(lastAutoRead(source));
+        }
+        long deadline = System.currentTimeMillis() + 30000;
+        while (kernel.getBlockchain().getXdagStats().nblocks < blocks.size() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        syncMgr.stop();
+
+        // 队列消化后恢复读取, 积压期间的区块没有丢
+        assertTrue(lastAutoRead(source));
+        assertEquals(blocks.size(), kernel.getBlockchain().getXdagStats().nblocks);
+    }
+
+    private static boolean lastAutoRead(Channel channel) {
+        ArgumentCaptor<Boolean> captor = ArgumentCaptor.forClass(Boolean.class);
+        verify(channel, atLeastOnce()).setAutoRead(captor.capture());
+        return captor.getValue();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.consensus;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.SettableFuture;
+import io.xdag.Kernel;
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.db.BlockStore;
+import io.xdag.net.Channel;
+import io.xdag.net.handler.Xdag;
+import io.xdag.net.manager.XdagChannelManager;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.MutableBytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class XdagSyncTest {
+
+    Config config = new DevnetConfig();
+    ScheduledExecutorService replyExecutor = Executors.newSingleThreadScheduledExecutor();
+    AtomicLong seq = new AtomicLong();
+    XdagSync sync;
+    Xdag slowXdag;
+    Xdag fastXdag;
+
+    @Before
+    public void setUp() {
+        BlockStore blockStore = mock(BlockStore.class);
+        when(blockStore.loadSum(anyLong(), anyLong(), any())).thenReturn(1);
+
+        // 慢节点从不回复
+        slowXdag = mock(Xdag.class);
+        when(slowXdag.sendGetSums(anyLong(), anyLong())).thenAnswer(i -> seq.incrementAndGet());
+        when(slowXdag.sendGetBlocks(anyLong(), anyLong())).thenAnswer(i -> seq.incrementAndGet());
+
+        // 快节点的sums只有第一个分区与本地不同
+        MutableBytes sums = MutableBytes.create(256);
+        sums.set(8, Bytes.ofUnsignedLong(1, ByteOrder.LITTLE_ENDIAN));
+        fastXdag = mock(Xdag.class);
+        when(fastXdag.sendGetSums(anyLong(), anyLong())).thenAnswer(i -> reply(sync.getSumsRequestMap(), sums));
+        when(fastXdag.sendGetBlocks(anyLong(), anyLong()))
+                .thenAnswer(i -> reply(sync.getBlocksRequestMap(), Bytes.wrap(new byte[]{0})));
+
+        List<Channel> channels = Arrays.asList(channel(slowXdag), channel(fastXdag));
+        XdagChannelManager channelMgr = mock(XdagChannelManager.class);
+        when(channelMgr.getActiveChannels()).thenReturn(channels);
+
+        Kernel kernel = mock(Kernel.class);
+        when(kernel.getConfig()).thenReturn(config);
+        when(kernel.getBlockStore()).thenReturn(blockStore);
+        when(kernel.getChannelMgr()).thenReturn(channelMgr);
+
+        sync = new XdagSync(kernel);
+        sync.setRequestTimeout(200);
+        sync.setStatus(XdagSync.Status.SYNCING);
+    }
+
+    @After
+    public void tearDown() {
+        replyExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testRetryOnOtherPeer() throws InterruptedException {
+        sync.requestBlocks(0, 1L << 48);
+
+        // 根区间先发给慢节点, 超时后换到快节点, 之后优先选择快节点
+        verify(slowXdag).sendGetSums(0, 1L << 48);
+        verify(fastXdag).sendGetSums(0, 1L << 48);
+        verify(fastXdag, times(7)).sendGetSums(anyLong(), anyLong());
+        verify(fastXdag).sendGetBlocks(0, 1L << 20);
+        verify(slowXdag, never()).sendGetBlocks(anyLong(), anyLong());
+        assertTrue(sync.getSumsRequestMap().isEmpty());
+        assertTrue(sync.getBlocksRequestMap().isEmpty());
+    }
+
+    private long reply(Map<Long, SettableFuture<Bytes>> requests, Bytes data) {
+        long id = seq.incrementAndGet();
+        replyExecutor.schedule(() -> {
+            SettableFuture<Bytes> sf = requests.get(id);
+            if (sf != null) {
+                sf.set(data);
+            }
+        }, 10, TimeUnit.MILLISECONDS);
+        return id;
+    }
+
+    private Channel channel(Xdag xdag) {
+        Channel channel = mock(Channel.class);
+        when(channel.getXdag()).thenReturn(xdag);
+        when(channel.isActive()).thenReturn(true);
+        return channel;
+    }
+}
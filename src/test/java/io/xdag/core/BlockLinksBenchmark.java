@@ -0,0 +1,122 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_IN;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_OUT;
+
+import io.xdag.config.DevnetConfig;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.tuweni.bytes.Bytes32;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 导入路径上遍历链接: Address 列表与 BlockLinks 视图对比, 开启 gc profiler 查看每次操作的分配量.
+ * 运行: mvn test-compile 后执行main方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockLinksBenchmark {
+
+    private XdagBlock xdagBlock;
+    private Block block;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<Address> links = new ArrayList<>();
+        for (int i = 0; i < 14; i++) {
+            links.add(new Address(Bytes32.random(), i % 2 == 0 ? XDAG_FIELD_IN : XDAG_FIELD_OUT, 1000L + i));
+        }
+        Block built = new Block(new DevnetConfig(), 0x17a0f1b2c3dL, links, null, false, null, null, -1);
+        xdagBlock = new XdagBlock(built.toBytes());
+        block = new Block(xdagBlock);
+        block.getLinks();
+        block.getLinkView();
+    }
+
+    /**
+     * applyBlock/unApplyBlock 中每次调用 getLinks() 的写法
+     */
+    @Benchmark
+    public long iterateAddresses() {
+        long sum = 0;
+        for (Address link : block.getLinks()) {
+            sum += link.getAmount().longValue() + link.getHashLow().getLong(24);
+            if (link.getType() == XDAG_FIELD_IN) {
+                sum++;
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long iterateView() {
+        BlockLinks links = block.getLinkView();
+        long sum = 0;
+        for (int i = 0; i < links.size(); i++) {
+            sum += links.getAmount(i) + links.getHashLow(i).getLong(24);
+            if (links.isInput(i)) {
+                sum++;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 新收到的区块第一次解码链接
+     */
+    @Benchmark
+    public List<Address> decodeAddresses() {
+        return new Block(xdagBlock).getLinks();
+    }
+
+    @Benchmark
+    public BlockLinks decodeView() {
+        return new Block(xdagBlock).getLinkView();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(BlockLinksBenchmark.class.getSimpleName()).addProfiler("gc").build())
+                .run();
+    }
+}
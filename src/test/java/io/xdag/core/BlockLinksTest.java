@@ -0,0 +1,82 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import static io.xdag.BlockBuilder.generateAddressBlock;
+import static io.xdag.BlockBuilder.generateExtraBlock;
+import static io.xdag.BlockBuilder.generateTransactionBlock;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_IN;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.crypto.Keys;
+import io.xdag.utils.XdagTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.hyperledger.besu.crypto.KeyPair;
+import org.junit.Test;
+
+public class BlockLinksTest {
+
+    Config config = new DevnetConfig();
+
+    private static void assertSameLinks(Block block, BlockLinks links) {
+        List<Address> expected = block.getLinks();
+        assertEquals(expected.size(), links.size());
+        for (int i = 0; i < links.size(); i++) {
+            assertEquals(expected.get(i).getHashLow(), links.getHashLow(i));
+            assertEquals(expected.get(i).getAmount().longValue(), links.getAmount(i));
+            // pending 链接没有设置类型, 按输出处理
+            assertEquals(expected.get(i).getType() == XDAG_FIELD_IN, links.isInput(i));
+        }
+    }
+
+    @Test
+    public void testViewMatchesAddresses() throws Exception {
+        KeyPair key = Keys.createEcKeyPair();
+        long time = XdagTime.getCurrentTimestamp();
+        Block from = generateAddressBlock(config, key, time);
+        Block to = generateAddressBlock(config, key, time);
+        Block tx = generateTransactionBlock(config, key, time, new Address(from), new Address(to), 0x123456789L);
+        List<Address> pendings = new ArrayList<>();
+        pendings.add(new Address(from));
+        pendings.add(new Address(tx));
+        Block extra = generateExtraBlock(config, key, time, pendings);
+
+        for (Block block : new Block[]{tx, extra}) {
+            // 构造的区块从 Address 列表生成
+            assertSameLinks(block, block.getLinkView());
+            // 收到的区块直接读取原始数据
+            Block parsed = new Block(new XdagBlock(block.toBytes()));
+            BlockLinks view = parsed.getLinkView();
+            assertSame(view, parsed.getLinkView());
+            assertSameLinks(block, view);
+        }
+        assertTrue(generateAddressBlock(config, key, time).getLinkView().isEmpty());
+        assertTrue(new Block(new XdagBlock(from.toBytes())).getLinkView().isEmpty());
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import static io.xdag.BlockBuilder.generateAddressBlock;
+import static io.xdag.BlockBuilder.generateTransactionBlock;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_PUBLIC_KEY_0;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_PUBLIC_KEY_1;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.crypto.Keys;
+import io.xdag.utils.XdagTime;
+import java.util.Arrays;
+import org.hyperledger.besu.crypto.KeyPair;
+import org.junit.Test;
+
+public class BlockParseTest {
+
+    Config config = new DevnetConfig();
+
+    private Block transactionBlock() throws Exception {
+        KeyPair key = Keys.createEcKeyPair();
+        long time = XdagTime.getCurrentTimestamp();
+        Block from = generateAddressBlock(config, key, time);
+        Block to = generateAddressBlock(config, Keys.createEcKeyPair(), time);
+        return generateTransactionBlock(config, key, time, new Address(from), new Address(to), 100);
+    }
+
+    @Test
+    public void testLazyDecode() throws Exception {
+        Block block = transactionBlock();
+        Block parsed = new Block(new XdagBlock(block.toBytes()));
+
+        assertEquals(block.getHash(), parsed.getHash());
+        assertEquals(block.getTimestamp(), parsed.getTimestamp());
+        assertEquals(block.getInputs().get(0).getHashLow(), parsed.getInputs().get(0).getHashLow());
+        assertEquals(block.getOutputs().get(0).getHashLow(), parsed.getOutputs().get(0).getHashLow());
+        assertEquals(block.getPubKeys(), parsed.getPubKeys());
+        assertEquals(block.getOutsig().getR(), parsed.getOutsig().getR());
+        assertEquals(block.getOutsig().getS(), parsed.getOutsig().getS());
+        assertEquals(1, parsed.verifiedKeys().size());
+        assertArrayEquals(block.toBytes(), parsed.toBytes());
+
+        // 克隆在解码前后都不共享解码结果
+        Block copy = (Block) new Block(new XdagBlock(block.toBytes())).clone();
+        assertEquals(1, copy.getInputs().size());
+        assertEquals(1, copy.getPubKeys().size());
+    }
+
+    @Test
+    public void testKeysDecodedOnDemand() throws Exception {
+        Block block = transactionBlock();
+        byte[] raw = block.toBytes();
+        for (int i = 1; i < XdagBlock.XDAG_BLOCK_FIELDS; i++) {
+            XdagField.FieldType type = XdagField.FieldType.fromByte((byte) ((block.getType() >> (i << 2)) & 0xf));
+            if (type == XDAG_FIELD_PUBLIC_KEY_0 || type == XDAG_FIELD_PUBLIC_KEY_1) {
+                // x >= p, 不是合法的压缩公钥
+                Arrays.fill(raw, i * 32, i * 32 + 32, (byte) 0xff);
+            }
+        }
+
+        Block parsed = new Block(new XdagBlock(raw));
+        parsed.getHashLow();
+        assertEquals(block.getTimestamp(), parsed.getTimestamp());
+        assertEquals(1, parsed.getInputs().size());
+        assertEquals(1, parsed.getOutputs().size());
+        assertThrows(IllegalArgumentException.class, parsed::getPubKeys);
+    }
+}
@@ -25,6 +25,7 @@
 package io.xdag.core;
 
 import static io.xdag.BlockBuilder.generateAddressBlock;
+import static io.xdag.config.Constants.BI_MAIN;
 import static io.xdag.BlockBuilder.generateExtraBlock;
 import static io.xdag.BlockBuilder.generateExtraBlockGivenRandom;
 import static io.xdag.BlockBuilder.generateTransactionBlock;
@@ -36,10 +37,15 @@ import static io.xdag.utils.BasicUtils.amount2xdag;
 import static io.xdag.utils.BasicUtils.xdag2amount;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
 
@@ -157,6 +163,57 @@ public class BlockchainTest {
         assertArrayEquals(addressBlock.getHashLow().toArray(), storedBlock.getHashLow().toArray());
     }
 
+    @Test
+    public void testFailedImportRestoresState() {
+        long generateTime = 1600616700000L;
+        KeyPair key = KeyPair.create(secretkey_1, Sign.CURVE, Sign.CURVE_NAME);
+        BlockStore blockStore = spy(kernel.getBlockStore());
+        kernel.setBlockStore(blockStore);
+        MockBlockchain blockchain = new MockBlockchain(kernel);
+        Block addressBlock = generateAddressBlock(config, key, generateTime);
+        assertSame(IMPORTED_BEST, blockchain.tryToConnect(addressBlock));
+        assertChainStatus(1, 0, 0, 1, blockchain);
+
+        List<Address> pending = Lists.newArrayList(new Address(addressBlock.getHashLow(), XDAG_FIELD_OUT));
+        long xdagTime = XdagTime.getEndOfEpoch(XdagTime.msToXdagtimestamp(generateTime + 64000L));
+        Block extraBlock = generateExtraBlock(config, key, xdagTime, pending);
+        // 导入在写完内存状态之后失败
+        doThrow(new IllegalStateException("injected")).when(blockStore).saveXdagStatus(any());
+        assertSame(ImportResult.ERROR, blockchain.tryToConnect(extraBlock));
+        assertChainStatus(1, 0, 0, 1, blockchain);
+        assertArrayEquals(addressBlock.getHashLow().toArray(), blockchain.getXdagTopStatus().getTop());
+        assertFalse(blockchain.isExistInMem(extraBlock.getHashLow()));
+
+        // 提交失败时 hashrate 统计也要还原
+        doCallRealMethod().when(blockStore).saveXdagStatus(any());
+        XdagExtStats extStats = blockchain.getXdagExtStats();
+        BigInteger[] hashRateTotal = extStats.getHashRateTotal().clone();
+        long hashrateLastTime = extStats.getHashrate_last_time();
+        doThrow(new IllegalStateException("injected")).when(blockStore).commitBatch(anyBoolean());
+        assertSame(ImportResult.ERROR, blockchain.tryToConnect(extraBlock));
+        assertArrayEquals(hashRateTotal, extStats.getHashRateTotal());
+        assertEquals(hashrateLastTime, extStats.getHashrate_last_time());
+
+        doCallRealMethod().when(blockStore).commitBatch(anyBoolean());
+        assertSame(IMPORTED_BEST, blockchain.tryToConnect(extraBlock));
+        assertChainStatus(2, 0, 1, 1, blockchain);
+        assertArrayEquals(extraBlock.getHashLow().toArray(), blockchain.getXdagTopStatus().getTop());
+        assertNotEquals(hashrateLastTime, extStats.getHashrate_last_time());
+    }
+
+    @Test
+    public void testCheckMineWithNonDefaultKey() {
+        KeyPair other = KeyPair.create(secretkey_2, Sign.CURVE, Sign.CURVE_NAME);
+        wallet.addAccount(other);
+        MockBlockchain blockchain = new MockBlockchain(kernel);
+        long time = new Date().getTime();
+        // 非默认key签名且没有嵌入公钥的区块
+        Block block = generateAddressBlock(config, other, time);
+        assertTrue(blockchain.checkMineAndAdd(new Block(block.getXdagBlock())));
+        Block foreign = generateAddressBlock(config, KeyPair.create(secretkey_1, Sign.CURVE, Sign.CURVE_NAME), time);
+        assertFalse(blockchain.checkMineAndAdd(new Block(foreign.getXdagBlock())));
+    }
+
     @Test
     public void testExtraBlock() {
 //        Date date = fastDateFormat.parse("2020-09-20 23:45:00");
@@ -248,12 +305,22 @@ public class BlockchainTest {
         // 5. remote check
         assertTrue(blockchain.canUseInput(new Block(txBlock.getXdagBlock())));
         assertTrue(blockchain.checkMineAndAdd(txBlock));
+        // 6. remote check with inputs verified in advance
+        Block remoteBlock = new Block(txBlock.getXdagBlock());
+        blockchain.verifyInputs(remoteBlock);
+        assertEquals(poolKey.getPublicKey(), remoteBlock.getVerifiedInput(from.getHashLow()));
+        assertTrue(blockchain.canUseInput(remoteBlock));
 
         result = blockchain.tryToConnect(txBlock);
         // import transaction block, result may be IMPORTED_NOT_BEST or IMPORTED_BEST
         assertTrue(result == IMPORTED_NOT_BEST || result == IMPORTED_BEST);
         // there is 12 blocks and 10 mainblocks
         assertChainStatus(12, 10, 1, 1, blockchain);
+        // 交易区块执行前交易历史未生效
+        List<TxHistory> histories = blockchain.getBlockTxHistoryByAddress(to.getHashLow(), null, 0).getItems();
+        assertEquals(1, histories.size());
+        assertEquals(txBlock.getHashLow(), histories.get(0).getAddress().getHashLow());
+        assertFalse(histories.get(0).isApplied());
 
         pending.clear();
         pending.add(new Address(txBlock.getHashLow()));
@@ -277,6 +344,8 @@ public class BlockchainTest {
         assertEquals("1124.0", String.valueOf(amount2xdag(toBlock.getInfo().getAmount())));
         // block reword 1024 - 100 = 924.0
         assertEquals("924.0", String.valueOf(amount2xdag(fromBlock.getInfo().getAmount())));
+        assertTrue(blockchain.getBlockTxHistoryByAddress(to.getHashLow(), null, 0).getItems().get(0).isApplied());
+        assertTrue(blockchain.getBlockTxHistoryByAddress(from.getHashLow(), null, 0).getItems().get(0).isApplied());
 
         // test two key to use
         // 4. make one transaction(100 XDAG) block(from No.1 mainblock to address block)
@@ -358,6 +427,13 @@ public class BlockchainTest {
         // 2. remote check
         Block block = new Block(txBlock.getXdagBlock());
         assertTrue(blockchain.canUseInput(block));
+
+        // 3. verified in advance but input block is not stored
+        Address missing = new Address(toAddrBlock.getHashLow(), XDAG_FIELD_IN);
+        Block verified = generateTransactionBlock(config, toKey, xdagTime - 1, missing,
+                new Address(fromAddrBlock), xdag2amount(100.00));
+        verified.setVerifiedInput(missing.getHashLow(), toKey.getPublicKey());
+        assertFalse(blockchain.canUseInput(verified));
     }
 
     @Test
@@ -495,6 +571,15 @@ public class BlockchainTest {
         Bytes32 second = blockchain.getBlockByHeight(5).getHash();
         assertNotEquals(first, second);
 
+        // 主链索引随分叉更新, 从高到低列出
+        List<Block> mains = blockchain.listMainBlocks(40);
+        assertEquals(29, mains.size());
+        for (int i = 0; i < mains.size(); i++) {
+            assertEquals(29 - i, mains.get(i).getInfo().getHeight());
+            assertTrue((mains.get(i).getInfo().getFlags() & BI_MAIN) != 0);
+        }
+        assertEquals(second, mains.get(24).getHash());
+
     }
 
     static class MockBlockchain extends BlockchainImpl {
@@ -0,0 +1,49 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.crypto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.hyperledger.besu.crypto.KeyPair;
+import org.hyperledger.besu.crypto.SECPPublicKey;
+import org.junit.Test;
+
+public class PubKeyCacheTest {
+
+    @Test
+    public void testCompressAndDecompress() throws Exception {
+        for (int i = 0; i < 16; i++) {
+            KeyPair keyPair = Keys.createEcKeyPair();
+            SECPPublicKey publicKey = keyPair.getPublicKey();
+            Bytes compressed = PubKeyCache.compress(publicKey);
+            assertEquals(Bytes.wrap(publicKey.asEcPoint(Sign.CURVE).getEncoded(true)), compressed);
+
+            SECPPublicKey decompressed = PubKeyCache.decompress(compressed);
+            assertEquals(publicKey, decompressed);
+            assertSame(decompressed, PubKeyCache.decompress(compressed.slice(1), compressed.get(0) == 0x03));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.crypto;
+
+import io.xdag.utils.XdagSha256Digest;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.tuweni.bytes.Bytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * share 校验: 复制 XdagSha256Digest 与从 Sha256Midstate 出发的对比, 以及 512 字节区块 hash 的对比.
+ * 开启 gc profiler 查看每次操作的分配量. 运行: mvn test-compile 后执行main方法
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Sha256MidstateBenchmark {
+
+    private XdagSha256Digest digest;
+    private Sha256Midstate midstate;
+    private Bytes field;
+    private Bytes share;
+    private Bytes block;
+    private final byte[] out = new byte[32];
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Bytes prefix = Bytes.random(448);
+        field = Bytes.random(32);
+        share = Bytes.random(32);
+        block = Bytes.wrap(prefix, field, share).copy();
+        digest = new XdagSha256Digest();
+        digest.sha256Update(prefix);
+        digest.sha256Update(field);
+        midstate = Sha256Midstate.of(Bytes.wrap(prefix, field));
+    }
+
+    /**
+     * XdagPow.onNewShare 原来的写法
+     */
+    @Benchmark
+    public byte[] shareDigest() throws IOException {
+        return new XdagSha256Digest(digest).sha256Final(share);
+    }
+
+    @Benchmark
+    public byte[] shareMidstate() {
+        midstate.doubleHash(share, true, out, 0);
+        return out;
+    }
+
+    /**
+     * Block.calcHash 的写法
+     */
+    @Benchmark
+    public Bytes blockHash() {
+        return Hash.hashTwice(block).reverse();
+    }
+
+    @Benchmark
+    public byte[] blockMidstate() {
+        Sha256Midstate.hashTwice(block, true, out, 0);
+        return out;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(Sha256MidstateBenchmark.class.getSimpleName()).addProfiler("gc")
+                .build()).run();
+    }
+}
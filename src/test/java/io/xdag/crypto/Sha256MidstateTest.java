@@ -0,0 +1,76 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.crypto;
+
+import static org.junit.Assert.assertEquals;
+
+import io.xdag.utils.XdagSha256Digest;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.Test;
+
+public class Sha256MidstateTest {
+
+    @Test
+    public void testShareHash() throws Exception {
+        Bytes prefix = Bytes.random(448);
+        Bytes field = Bytes.random(32);
+        Bytes share = Bytes.random(32);
+
+        XdagSha256Digest digest = new XdagSha256Digest();
+        digest.sha256Update(prefix);
+        digest.sha256Update(field);
+        byte[] expected = new XdagSha256Digest(digest).sha256Final(share);
+
+        Sha256Midstate midstate = Sha256Midstate.of(Bytes.wrap(prefix, field));
+        assertEquals(480, midstate.getLength());
+        byte[] out = new byte[40];
+        midstate.doubleHash(share, true, out, 8);
+        assertEquals(Bytes.wrap(expected), Bytes.wrap(out, 8, 32));
+    }
+
+    @Test
+    public void testHashTwice() {
+        for (int len : new int[]{0, 33, 512}) {
+            Bytes data = Bytes.random(len);
+            byte[] out = new byte[32];
+            Sha256Midstate.hashTwice(data, false, out, 0);
+            assertEquals(Hash.hashTwice(data), Bytes32.wrap(out));
+            Sha256Midstate.hashTwice(data, true, out, 0);
+            assertEquals(Hash.hashTwice(data).reverse(), Bytes32.wrap(out));
+        }
+    }
+
+    @Test
+    public void testMidstateReuse() {
+        Bytes prefix = Bytes.random(100);
+        Sha256Midstate midstate = Sha256Midstate.of(prefix);
+        byte[] out = new byte[32];
+        for (int i = 0; i < 3; i++) {
+            Bytes tail = Bytes.random(20 + i);
+            midstate.doubleHash(tail, false, out, 0);
+            assertEquals(Hash.hashTwice(Bytes.wrap(prefix, tail)), Bytes32.wrap(out));
+        }
+    }
+}
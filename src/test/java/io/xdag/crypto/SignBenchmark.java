@@ -0,0 +1,107 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.crypto;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.hyperledger.besu.crypto.KeyPair;
+import org.hyperledger.besu.crypto.SECPSignature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 纯 Java 与 libsecp256k1 两种后端的签名, 验签, 公钥解压吞吐对比.
+ * 当前平台没有原生库时 native 一组实际跑的是纯 Java 实现, 启动日志中会有提示.
+ * 运行: mvn test-compile 后执行main方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignBenchmark {
+
+    @Param({"java", "native"})
+    public String backend;
+
+    private KeyPair key;
+    private Bytes32 hash;
+    private SECPSignature signature;
+    private Bytes compressed;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Sign.useNative("native".equals(backend));
+        key = Sign.SECP256K1.generateKeyPair();
+        hash = Hash.hashTwice(Bytes32.random());
+        signature = Sign.SECP256K1.sign(hash, key);
+        compressed = Bytes.wrap(key.getPublicKey().asEcPoint(Sign.CURVE).getEncoded(true));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Sign.useNative(false);
+    }
+
+    @Benchmark
+    public SECPSignature sign() {
+        return Sign.SECP256K1.sign(hash, key);
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return Sign.SECP256K1.verify(hash, signature, key.getPublicKey());
+    }
+
+    /**
+     * 不经过 PubKeyCache 的公钥解压
+     */
+    @Benchmark
+    public Object decompress() {
+        return Sign.SECP256K1.createPublicKey(Bytes.wrap(Sign.decompressKey(compressed.slice(1).toUnsignedBigInteger(),
+                compressed.get(0) == 0x03).getEncoded(false)).slice(1));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SignBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
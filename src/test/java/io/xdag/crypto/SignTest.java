@@ -98,6 +98,26 @@ public class SignTest {
         return end - start;
     }
 
+    @Test
+    public void testNativeBackend() throws Exception {
+        KeyPair key = Keys.createEcKeyPair();
+        Bytes32 hash = Hash.hashTwice(Bytes.wrap(TEST_MESSAGE));
+        boolean wasNative = Sign.isNative();
+        try {
+            assertFalse(Sign.useNative(false));
+            assertFalse(Sign.isNative());
+            SECPSignature javaSig = Sign.SECP256K1.sign(hash, key);
+            // 原生库不可用时退回纯 Java 实现, 两种后端的签名结果应可互相验证
+            assertEquals(Sign.useNative(true), Sign.isNative());
+            SECPSignature sig = Sign.SECP256K1.sign(hash, key);
+            assertTrue(Sign.SECP256K1.verify(hash, sig, key.getPublicKey()));
+            assertTrue(Sign.SECP256K1.verify(hash, javaSig, key.getPublicKey()));
+        } finally {
+            Sign.useNative(wasNative);
+        }
+        assertEquals(wasNative, Sign.isNative());
+    }
+
     @Test
     public void testToCanonical(){
         String encode = "00000000000000002163550000000000a40348a18a0100000000000000000000"+
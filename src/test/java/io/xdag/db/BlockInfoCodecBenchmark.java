@@ -0,0 +1,127 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import io.xdag.core.BlockInfo;
+import io.xdag.db.execption.DeserializationException;
+import io.xdag.db.execption.SerializationException;
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+import org.apache.tuweni.bytes.Bytes32;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * BlockInfoCodec与原来的synchronized Kryo对比, 4个线程同时编解码.
+ * 运行: mvn test-compile 后执行main方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class BlockInfoCodecBenchmark {
+
+    private final Kryo kryo = BlockStore.newKryo();
+    private BlockInfo info;
+    private byte[] kryoBytes;
+    private byte[] codecBytes;
+
+    @Setup(Level.Trial)
+    public void setup() throws SerializationException {
+        info = sampleBlockInfo();
+        kryoBytes = kryoEncode(info);
+        codecBytes = BlockInfoCodec.encode(info);
+    }
+
+    @Benchmark
+    public byte[] kryoEncode() {
+        return kryoEncode(info);
+    }
+
+    @Benchmark
+    public Object kryoDecode() {
+        synchronized (kryo) {
+            return kryo.readObject(new Input(kryoBytes), BlockInfo.class);
+        }
+    }
+
+    @Benchmark
+    public byte[] codecEncode() throws SerializationException {
+        return BlockInfoCodec.encode(info);
+    }
+
+    @Benchmark
+    public BlockInfo codecDecode() throws DeserializationException {
+        return BlockInfoCodec.decode(codecBytes);
+    }
+
+    private byte[] kryoEncode(BlockInfo info) {
+        synchronized (kryo) {
+            Output output = new Output(256, -1);
+            kryo.writeObject(output, info);
+            return output.toBytes();
+        }
+    }
+
+    static BlockInfo sampleBlockInfo() {
+        BlockInfo info = new BlockInfo();
+        info.setType(0x1f4L);
+        info.setFlags(0x3f);
+        info.setHeight(1234567);
+        info.setDifficulty(new BigInteger("31354286420799284945296"));
+        info.setRef(Bytes32.random().toArray());
+        info.setMaxDiffLink(Bytes32.random().toArray());
+        info.setFee(100);
+        info.setRemark(Bytes32.random().toArray());
+        info.setHash(Bytes32.random().toArray());
+        info.setHashlow(Bytes32.random().toArray());
+        info.setAmount(1024L << 32);
+        info.setTimestamp(0x17a0f1b2c3dL);
+        return info;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(BlockInfoCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.esotericsoftware.kryo.io.Output;
+import io.xdag.core.BlockInfo;
+import io.xdag.core.SnapshotInfo;
+import io.xdag.db.execption.SerializationException;
+import java.math.BigInteger;
+import org.apache.tuweni.bytes.Bytes32;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Test;
+
+public class BlockInfoCodecTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        BlockInfo info = BlockInfoCodecBenchmark.sampleBlockInfo();
+        info.setSnapshot(true);
+        info.setSnapshotInfo(new SnapshotInfo(true, Bytes32.random().toArray()));
+
+        byte[] encoded = BlockInfoCodec.encode(info);
+        assertTrue(BlockInfoCodec.isCurrent(encoded));
+        BlockInfo decoded = BlockInfoCodec.decode(encoded);
+        assertAllFields(info, decoded);
+        assertTrue(decoded.isSnapshot());
+        assertTrue(decoded.getSnapshotInfo().getType());
+        assertArrayEquals(info.getSnapshotInfo().getData(), decoded.getSnapshotInfo().getData());
+    }
+
+    @Test
+    public void testNullFields() throws Exception {
+        BlockInfo info = new BlockInfo();
+        info.setHeight(100);
+        BlockInfo decoded = BlockInfoCodec.decode(BlockInfoCodec.encode(info));
+        assertEquals(info, decoded);
+        assertNull(decoded.getDifficulty());
+        assertNull(decoded.getRef());
+        assertNull(decoded.getRemark());
+        assertNull(decoded.getSnapshotInfo());
+        assertFalse(decoded.isSnapshot());
+    }
+
+    @Test
+    public void testLegacyKryo() throws Exception {
+        // 旧版本BlockStore用Kryo保存的数据
+        String data = "000b0b06a3b82241967b51a190003821c85e4170076aaca3b2ca5157c4e32be33164847e5a4ab0b03abe6202b0cd2712210000000000000000b2ca5157c4e32be33164847e5a4ab0b03abe6202b0cd271200210000000000000000ed08bcea6ac58a3cc883ad35e862caf1e60fe8f77d0933ba210000000000000000b8cb3358f9fbca51916d3d7378b00190dc75b3e55703180f00feff97d8f85bf0d482808080808080";
+        byte[] legacy = Hex.decode(data);
+        assertFalse(BlockInfoCodec.isCurrent(legacy));
+        BlockInfo info = BlockInfoCodec.decode(legacy);
+        assertEquals("31354286420799284945296", info.getDifficulty().toString());
+
+        // 重新保存后为新格式, 内容不变
+        byte[] migrated = BlockInfoCodec.encode(info);
+        assertTrue(BlockInfoCodec.isCurrent(migrated));
+        assertAllFields(info, BlockInfoCodec.decode(migrated));
+    }
+
+    @Test
+    public void testLegacyRoundTrip() throws Exception {
+        BlockInfo info = BlockInfoCodecBenchmark.sampleBlockInfo();
+        Output output = new Output(256, -1);
+        BlockStore.newKryo().writeObject(output, info);
+        assertAllFields(info, BlockInfoCodec.decode(output.toBytes()));
+    }
+
+    @Test(expected = SerializationException.class)
+    public void testInvalidHash() throws Exception {
+        BlockInfo info = new BlockInfo();
+        info.setHash(new byte[31]);
+        BlockInfoCodec.encode(info);
+    }
+
+    @Test(expected = SerializationException.class)
+    public void testInvalidDifficulty() throws Exception {
+        BlockInfo info = new BlockInfo();
+        info.setDifficulty(BigInteger.ONE.shiftLeft(128));
+        BlockInfoCodec.encode(info);
+    }
+
+    private static void assertAllFields(BlockInfo expected, BlockInfo actual) {
+        assertEquals(expected, actual);
+        assertEquals(expected.getDifficulty(), actual.getDifficulty());
+        assertEquals(expected.getFee(), actual.getFee());
+        assertArrayEquals(expected.getRef(), actual.getRef());
+        assertArrayEquals(expected.getMaxDiffLink(), actual.getMaxDiffLink());
+        assertArrayEquals(expected.getHashlow(), actual.getHashlow());
+        assertArrayEquals(expected.getRemark(), actual.getRemark());
+    }
+}
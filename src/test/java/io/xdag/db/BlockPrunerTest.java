@@ -0,0 +1,95 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.xdag.core.Blockchain;
+import io.xdag.core.XdagStats;
+import java.math.BigInteger;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BlockPrunerTest {
+
+    Blockchain blockchain;
+    BlockStore blockStore;
+    XdagStats stats = new XdagStats();
+    long time = 0x1234_5678L;
+
+    @Before
+    public void setUp() {
+        blockchain = mock(Blockchain.class);
+        blockStore = mock(BlockStore.class);
+        when(blockchain.getXdagStats()).thenReturn(stats);
+        when(blockStore.getMainChainRecord(90)).thenReturn(
+                new MainChainRecord(90, Bytes32.ZERO, time, BigInteger.ONE, 0));
+    }
+
+    @Test
+    public void testStep() {
+        byte[] cursor = {1};
+        long horizon = time & ~0xffffL;
+        when(blockchain.pruneBlocks(eq(0L), eq(horizon), isNull(), eq(2)))
+                .thenReturn(new Page<>(List.of(Bytes32.random(), Bytes32.random()), cursor));
+        when(blockchain.pruneBlocks(eq(0L), eq(horizon), eq(cursor), eq(2)))
+                .thenReturn(new Page<>(List.of(Bytes32.random()), null));
+        when(blockStore.pruneTxHistory(eq(horizon), isNull(), eq(2)))
+                .thenReturn(new Page<>(List.of(new byte[]{2}), null));
+
+        BlockPruner pruner = new BlockPruner(blockchain, blockStore, 10, 2);
+        // 主链还不够长
+        stats.nmain = 10;
+        assertFalse(pruner.step());
+        verify(blockchain, never()).pruneBlocks(anyLong(), anyLong(), any(), anyInt());
+
+        pruner = new BlockPruner(blockchain, blockStore, 10, 2);
+        stats.nmain = 100;
+        assertTrue(pruner.step());
+        assertTrue(pruner.step());
+        assertFalse(pruner.step());
+        assertEquals(horizon, pruner.getHorizon());
+        assertEquals(3, pruner.getPrunedBlocks());
+        assertEquals(1, pruner.getPrunedTxHistory());
+        assertEquals(1, pruner.getPasses());
+
+        // 下一次裁剪要等到间隔之后
+        assertFalse(pruner.step());
+        assertEquals(1, pruner.getPasses());
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.core.Address;
+import io.xdag.core.Block;
+import io.xdag.core.BlockInfo;
+import io.xdag.db.rocksdb.RocksdbFactory;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OrphanPoolTest {
+
+    @Rule
+    public TemporaryFolder root = new TemporaryFolder();
+
+    Config config = new DevnetConfig();
+    KVSource<byte[], byte[]> orphanSource;
+    OrphanPool orphanPool;
+
+    @Before
+    public void setUp() throws Exception {
+        config.getNodeSpec().setStoreDir(root.newFolder().getAbsolutePath());
+        config.getNodeSpec().setStoreBackupDir(root.newFolder().getAbsolutePath());
+        orphanSource = new RocksdbFactory(config).getDB(DatabaseName.ORPHANIND);
+        orphanPool = new OrphanPool(orphanSource);
+        orphanPool.reset();
+    }
+
+    @Test
+    public void testGetOrphanByTime() {
+        long[] sendTime = new long[2];
+        assertNull(orphanPool.getOrphan(16, sendTime));
+
+        // 乱序加入
+        for (int time : new int[]{50, 10, 40, 20, 30}) {
+            orphanPool.addOrphan(block(time));
+        }
+        assertEquals(5, orphanPool.getOrphanSize());
+
+        sendTime[0] = 35;
+        List<Address> res = orphanPool.getOrphan(16, sendTime);
+        assertEquals(3, res.size());
+        assertEquals(hashlow(10), res.get(0).getHashLow());
+        assertEquals(hashlow(20), res.get(1).getHashLow());
+        assertEquals(hashlow(30), res.get(2).getHashLow());
+        assertEquals(31, sendTime[1]);
+
+        sendTime[0] = 100;
+        sendTime[1] = 0;
+        res = orphanPool.getOrphan(2, sendTime);
+        assertEquals(2, res.size());
+        assertEquals(21, sendTime[1]);
+
+        orphanPool.deleteByHash(hashlow(10).toArray());
+        orphanPool.deleteByHash(hashlow(10).toArray());
+        assertEquals(4, orphanPool.getOrphanSize());
+        assertEquals(hashlow(20), orphanPool.getOrphan(1, new long[]{100, 0}).get(0).getHashLow());
+
+        // 重新加载
+        OrphanPool reloaded = new OrphanPool(orphanSource);
+        reloaded.init();
+        assertEquals(4, reloaded.getOrphanSize());
+        assertEquals(hashlow(20), reloaded.getOrphan(1, new long[]{100, 0}).get(0).getHashLow());
+    }
+
+    @Test
+    public void testBatch() {
+        orphanPool.addOrphan(block(10));
+
+        orphanPool.beginBatch();
+        orphanPool.addOrphan(block(5));
+        orphanPool.deleteByHash(hashlow(10).toArray());
+        // 提交前内存索引不变
+        assertEquals(hashlow(10), orphanPool.getOrphan(1, new long[]{100, 0}).get(0).getHashLow());
+        orphanPool.rollbackBatch();
+        assertEquals(1, orphanPool.getOrphanSize());
+        assertEquals(hashlow(10), orphanPool.getOrphan(1, new long[]{100, 0}).get(0).getHashLow());
+
+        orphanPool.beginBatch();
+        orphanPool.addOrphan(block(5));
+        orphanPool.deleteByHash(hashlow(10).toArray());
+        orphanPool.commitBatch(false);
+        assertEquals(1, orphanPool.getOrphanSize());
+        assertEquals(hashlow(5), orphanPool.getOrphan(1, new long[]{100, 0}).get(0).getHashLow());
+
+        OrphanPool reloaded = new OrphanPool(orphanSource);
+        reloaded.init();
+        assertEquals(1, reloaded.getOrphanSize());
+        assertEquals(hashlow(5), reloaded.getOrphan(1, new long[]{100, 0}).get(0).getHashLow());
+    }
+
+    @Test
+    public void testNestedRollback() {
+        orphanPool.addOrphan(block(10));
+
+        orphanPool.beginBatch();
+        orphanPool.addOrphan(block(5));
+        orphanPool.beginBatch();
+        orphanPool.addOrphan(block(6));
+        orphanPool.rollbackBatch();
+        // 内层回滚后仍在外层批量中, 修改不可见
+        orphanPool.deleteByHash(hashlow(10).toArray());
+        assertEquals(1, orphanPool.getOrphanSize());
+        assertEquals(hashlow(10), orphanPool.getOrphan(1, new long[]{100, 0}).get(0).getHashLow());
+        // 数据库写入失败时内存索引不变
+        assertThrows(IllegalStateException.class, () -> orphanPool.commitBatch(false));
+        assertEquals(1, orphanPool.getOrphanSize());
+        assertEquals(hashlow(10), orphanPool.getOrphan(1, new long[]{100, 0}).get(0).getHashLow());
+
+        OrphanPool reloaded = new OrphanPool(orphanSource);
+        reloaded.init();
+        assertEquals(1, reloaded.getOrphanSize());
+    }
+
+    private Block block(long time) {
+        BlockInfo info = new BlockInfo();
+        info.setHashlow(hashlow(time).toArray());
+        info.setTimestamp(time);
+        return new Block(info);
+    }
+
+    private Bytes32 hashlow(long time) {
+        return Bytes32.leftPad(Bytes.ofUnsignedLong(time));
+    }
+}
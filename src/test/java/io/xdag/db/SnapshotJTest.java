@@ -33,7 +33,6 @@ import io.xdag.crypto.SampleKeys;
 import io.xdag.crypto.Sign;
 import io.xdag.crypto.jni.Native;
 import io.xdag.db.rocksdb.RocksdbFactory;
-import io.xdag.db.rocksdb.RocksdbKVSource;
 import io.xdag.mine.randomx.RandomX;
 import io.xdag.utils.BasicUtils;
 import io.xdag.utils.BytesUtils;
@@ -221,12 +220,13 @@ public class SnapshotJTest {
 
         dataConfig.getNodeSpec().setStoreDir(backup.getAbsolutePath());
         dataConfig.getNodeSpec().setStoreBackupDir(root2.newFolder().getAbsolutePath());
-        RocksdbKVSource blockSource = new RocksdbKVSource(DatabaseName.BLOCK.toString());
-        blockSource.setConfig(dataConfig);
+        RocksdbFactory dataFactory = new RocksdbFactory(dataConfig);
+        KVSource<byte[], byte[]> blockSource = dataFactory.getDB(DatabaseName.BLOCK);
         blockSource.init();
 
         SnapshotJ index = new SnapshotJ(DatabaseName.INDEX.toString());
         index.setConfig(dataConfig);
+        index.setFactory(dataFactory);
         index.init();
 
         snapshotSource = new SnapshotJ("SNAPSHOTJ");
@@ -0,0 +1,229 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.mmap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.db.DatabaseName;
+import io.xdag.db.KVIterator;
+import io.xdag.db.KVSource;
+import io.xdag.db.rocksdb.RocksdbFactory;
+import java.nio.ReadOnlyBufferException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.bytes.MutableBytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedBlockSourceTest {
+
+    @Rule
+    public TemporaryFolder root = new TemporaryFolder();
+
+    Config config = new DevnetConfig();
+    RocksdbFactory factory;
+    Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        config.getNodeSpec().setStoreDir(root.newFolder().getAbsolutePath());
+        config.getNodeSpec().setStoreBackupDir(root.newFolder().getAbsolutePath());
+        dir = Paths.get(config.getNodeSpec().getStoreDir(), RocksdbFactory.MAPPED_BLOCKS_DIR);
+        factory = new RocksdbFactory(config);
+    }
+
+    @After
+    public void tearDown() {
+        factory.close();
+    }
+
+    @Test
+    public void testPutGet() {
+        MappedBlockSource source = open();
+        List<byte[]> keys = new ArrayList<>();
+        // 每段 4 条记录, 跨越 3 个分段
+        for (int i = 0; i < 10; i++) {
+            byte[] key = Bytes32.random().toArray();
+            keys.add(key);
+            source.put(key, record(i));
+        }
+        for (int i = 0; i < 10; i++) {
+            assertArrayEquals(record(i), source.get(keys.get(i)));
+            assertEquals(Bytes.wrap(record(i)), source.getView(keys.get(i)));
+        }
+        assertNull(source.get(Bytes32.random().toArray()));
+
+        List<byte[]> values = source.multiGet(List.of(keys.get(9), Bytes32.ZERO.toArray(), keys.get(0)));
+        assertArrayEquals(record(9), values.get(0));
+        assertNull(values.get(1));
+        assertArrayEquals(record(0), values.get(2));
+        assertEquals(10, source.keys().size());
+
+        source.delete(keys.get(0));
+        assertNull(source.get(keys.get(0)));
+        assertEquals(9, source.prefixKeyLookup(new byte[0]).size());
+    }
+
+    @Test
+    public void testDeleteRange() {
+        MappedBlockSource source = open();
+        List<byte[]> keys = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            byte[] key = Bytes32.random().toArray();
+            key[0] = (byte) i;
+            keys.add(key);
+            source.put(key, record(i));
+        }
+        source.deleteRange(new byte[]{2}, new byte[]{4});
+        assertArrayEquals(record(1), source.get(keys.get(0)));
+        assertNull(source.get(keys.get(1)));
+        assertNull(source.get(keys.get(2)));
+        assertArrayEquals(record(4), source.get(keys.get(3)));
+
+        // 写入位置不受影响
+        source.deleteRange(new byte[]{0}, null);
+        assertTrue(source.keys().isEmpty());
+        byte[] key = Bytes32.random().toArray();
+        source.put(key, record(5));
+        assertArrayEquals(record(5), source.get(key));
+    }
+
+    @Test(expected = ReadOnlyBufferException.class)
+    public void testViewIsReadOnly() {
+        MappedBlockSource source = open();
+        byte[] key = Bytes32.random().toArray();
+        source.put(key, record(1));
+        MutableBytes view = source.getView(key);
+        view.set(0, (byte) 1);
+    }
+
+    @Test
+    public void testRecover() {
+        MappedBlockSource source = open();
+        byte[] committed = Bytes32.random().toArray();
+        source.put(committed, record(1));
+
+        // 回滚的记录不可见
+        byte[] discarded = Bytes32.random().toArray();
+        source.beginBatch();
+        source.put(discarded, record(2));
+        assertArrayEquals(record(2), source.get(discarded));
+        source.rollbackBatch();
+        assertNull(source.get(discarded));
+
+        source.beginBatch();
+        byte[] last = Bytes32.random().toArray();
+        source.put(last, record(3));
+        source.commitBatch(true);
+        source.close();
+        factory.close();
+
+        // 重新打开后从最后一条已提交的记录之后继续写
+        factory = new RocksdbFactory(config);
+        source = open();
+        byte[] next = Bytes32.random().toArray();
+        source.put(next, record(4));
+        assertArrayEquals(record(1), source.get(committed));
+        assertArrayEquals(record(3), source.get(last));
+        assertArrayEquals(record(4), source.get(next));
+        assertNull(source.get(discarded));
+    }
+
+    @Test
+    public void testIterator() {
+        MappedBlockSource source = open();
+        for (int i = 0; i < 3; i++) {
+            byte[] key = Bytes32.random().toArray();
+            key[0] = (byte) i;
+            source.put(key, record(i));
+        }
+        int n = 0;
+        try (KVIterator<byte[], byte[]> it = source.rangeIterator(new byte[0], null)) {
+            while (it.hasNext()) {
+                assertArrayEquals(record(n++), it.next().getValue());
+            }
+        }
+        assertEquals(3, n);
+        try (KVIterator<byte[], byte[]> it = source.prefixIterator(new byte[]{1})) {
+            assertArrayEquals(record(1), it.next().getValue());
+            assertFalse(it.hasNext());
+        }
+    }
+
+    @Test
+    public void testMigrateLegacy() {
+        KVSource<byte[], byte[]> legacy = factory.getDB(DatabaseName.BLOCK);
+        legacy.init();
+        byte[] key = Bytes32.random().toArray();
+        legacy.put(key, record(5));
+
+        MappedBlockSource source = open();
+        assertArrayEquals(record(5), source.get(key));
+        assertNull(legacy.get(key));
+        assertTrue(dir.resolve("00000000.dat").toFile().exists());
+    }
+
+    @Test
+    public void testFactory() {
+        ((DevnetConfig) config).setStoreMappedBlocks(true);
+        KVSource<byte[], byte[]> source = factory.getDB(DatabaseName.BLOCK);
+        assertTrue(source instanceof MappedBlockSource);
+        source.init();
+        byte[] key = Bytes32.random().toArray();
+        source.put(key, record(6));
+        assertArrayEquals(record(6), source.get(key));
+        source.reset();
+        assertNull(source.get(key));
+    }
+
+    private MappedBlockSource open() {
+        MappedBlockSource source = new MappedBlockSource(DatabaseName.BLOCK.toString(), dir,
+                factory.getDB(DatabaseName.BLOCKOFFSET), 4);
+        KVSource<byte[], byte[]> legacy = factory.getDB(DatabaseName.BLOCK);
+        source.setLegacy(legacy);
+        source.init();
+        return source;
+    }
+
+    private static byte[] record(int i) {
+        byte[] data = new byte[MappedBlockSource.RECORD_SIZE];
+        data[0] = (byte) i;
+        data[MappedBlockSource.RECORD_SIZE - 1] = (byte) (i + 1);
+        return data;
+    }
+}
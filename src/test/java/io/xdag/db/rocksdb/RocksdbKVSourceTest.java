@@ -24,18 +24,28 @@
 
 package io.xdag.db.rocksdb;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
 import io.xdag.config.Config;
 import io.xdag.config.DevnetConfig;
 import io.xdag.crypto.Hash;
 import io.xdag.db.DatabaseFactory;
 import io.xdag.db.DatabaseName;
+import io.xdag.db.KVIterator;
 import io.xdag.db.KVSource;
 import io.xdag.db.BlockStore;
 
+import java.io.File;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
 import org.bouncycastle.util.encoders.Hex;
@@ -106,4 +116,261 @@ public class RocksdbKVSourceTest {
         List<byte[]> values = indexSource.prefixValueLookup(key);
         assertEquals(2, values.size());
     }
+
+    @Test
+    public void testBatch() throws InterruptedException {
+        DatabaseFactory factory = new RocksdbFactory(config);
+        KVSource<byte[], byte[]> indexSource = factory.getDB(DatabaseName.INDEX);
+        indexSource.reset();
+
+        byte[] key1 = Hex.decode("FF01");
+        byte[] key2 = Hex.decode("FF02");
+
+        indexSource.beginBatch();
+        indexSource.put(key1, Hex.decode("1234"));
+        indexSource.put(key1, Hex.decode("2345"));
+        indexSource.put(key2, Hex.decode("3456"));
+        // reads see the pending writes
+        assertArrayEquals(Hex.decode("2345"), indexSource.get(key1));
+        assertEquals(2, indexSource.prefixKeyLookup(Hex.decode("FF")).size());
+        indexSource.rollbackBatch();
+        assertNull(indexSource.get(key1));
+
+        indexSource.beginBatch();
+        indexSource.put(key1, Hex.decode("1234"));
+        indexSource.beginBatch();
+        indexSource.put(key2, Hex.decode("3456"));
+        indexSource.commitBatch(false);
+        // the inner commit only joins the outer unit of work, other threads see nothing yet
+        AtomicReference<byte[]> seen = new AtomicReference<>(new byte[0]);
+        Thread reader = new Thread(() -> seen.set(indexSource.get(key2)));
+        reader.start();
+        reader.join();
+        assertNull(seen.get());
+        indexSource.commitBatch(true);
+        assertArrayEquals(Hex.decode("1234"), indexSource.get(key1));
+        assertArrayEquals(Hex.decode("3456"), indexSource.get(key2));
+    }
+
+    @Test
+    public void testRollbackOnlyBatch() {
+        RocksdbFactory factory = new RocksdbFactory(config);
+        KVSource<byte[], byte[]> indexSource = factory.getDB(DatabaseName.INDEX);
+        KVSource<byte[], byte[]> blockSource = factory.getDB(DatabaseName.BLOCK);
+        indexSource.init();
+        blockSource.init();
+
+        byte[] key = Hex.decode("FF01");
+        indexSource.beginBatch();
+        indexSource.put(key, Hex.decode("1234"));
+        blockSource.beginBatch();
+        blockSource.put(key, Hex.decode("2345"));
+        // the inner scope gives up, the outer one must not commit its writes
+        blockSource.rollbackBatch();
+        assertThrows(IllegalStateException.class, () -> indexSource.commitBatch(false));
+        assertNull(indexSource.get(key));
+        assertNull(blockSource.get(key));
+
+        // the next batch starts clean
+        indexSource.beginBatch();
+        indexSource.put(key, Hex.decode("1234"));
+        indexSource.commitBatch(false);
+        assertArrayEquals(Hex.decode("1234"), indexSource.get(key));
+        factory.close();
+    }
+
+    @Test
+    public void testOnCommit() {
+        RocksdbFactory factory = new RocksdbFactory(config);
+        KVSource<byte[], byte[]> indexSource = factory.getDB(DatabaseName.INDEX);
+        KVSource<byte[], byte[]> blockSource = factory.getDB(DatabaseName.BLOCK);
+        indexSource.init();
+        blockSource.init();
+
+        byte[] key = Hex.decode("FF01");
+        List<byte[]> seen = new ArrayList<>();
+        // registered through one source, fired by the outermost commit of the shared batch
+        indexSource.beginBatch();
+        blockSource.beginBatch();
+        indexSource.put(key, Hex.decode("1234"));
+        indexSource.onCommit(() -> seen.add(indexSource.get(key)));
+        indexSource.commitBatch(false);
+        assertTrue(seen.isEmpty());
+        blockSource.commitBatch(false);
+        assertEquals(1, seen.size());
+        assertArrayEquals(Hex.decode("1234"), seen.get(0));
+
+        // dropped on rollback
+        indexSource.beginBatch();
+        indexSource.onCommit(() -> seen.add(null));
+        indexSource.rollbackBatch();
+        assertEquals(1, seen.size());
+
+        // no batch, run right away
+        indexSource.onCommit(() -> seen.add(null));
+        assertEquals(2, seen.size());
+        factory.close();
+    }
+
+    @Test
+    public void testCrossSourceBatch() {
+        RocksdbFactory factory = new RocksdbFactory(config);
+        KVSource<byte[], byte[]> indexSource = factory.getDB(DatabaseName.INDEX);
+        KVSource<byte[], byte[]> blockSource = factory.getDB(DatabaseName.BLOCK);
+        indexSource.init();
+        blockSource.init();
+
+        byte[] key = Hex.decode("FF01");
+        indexSource.beginBatch();
+        blockSource.beginBatch();
+        indexSource.put(key, Hex.decode("1234"));
+        blockSource.put(key, Hex.decode("2345"));
+        // column families are separate key spaces
+        assertArrayEquals(Hex.decode("1234"), indexSource.get(key));
+        assertArrayEquals(Hex.decode("2345"), blockSource.get(key));
+        blockSource.commitBatch(false);
+        // both sources share one unit of work, nothing is written until the outermost commit
+        indexSource.rollbackBatch();
+        assertNull(indexSource.get(key));
+        assertNull(blockSource.get(key));
+
+        indexSource.put(key, Hex.decode("1234"));
+        blockSource.reset();
+        assertArrayEquals(Hex.decode("1234"), indexSource.get(key));
+        factory.close();
+    }
+
+    @Test
+    public void testMigrateLegacy() throws Exception {
+        // 旧版本的独立库, 区块原始数据存在 TIME 目录下
+        RocksdbKVSource legacyIndex = new RocksdbKVSource(DatabaseName.INDEX.toString());
+        RocksdbKVSource legacyBlock = new RocksdbKVSource(DatabaseName.TIME.toString());
+        byte[] hashlow = Bytes32.random().toArray();
+        for (RocksdbKVSource legacy : List.of(legacyIndex, legacyBlock)) {
+            legacy.setConfig(config);
+            legacy.init();
+            legacy.put(hashlow, Hex.decode("1234"));
+            legacy.close();
+        }
+
+        RocksdbFactory factory = new RocksdbFactory(config);
+        KVSource<byte[], byte[]> indexSource = factory.getDB(DatabaseName.INDEX);
+        KVSource<byte[], byte[]> blockSource = factory.getDB(DatabaseName.BLOCK);
+        indexSource.init();
+        blockSource.init();
+        assertArrayEquals(Hex.decode("1234"), indexSource.get(hashlow));
+        assertArrayEquals(Hex.decode("1234"), blockSource.get(hashlow));
+        assertFalse(new File(config.getNodeSpec().getStoreDir(), DatabaseName.INDEX.toString()).exists());
+        factory.close();
+    }
+
+    @Test
+    public void testMultiGet() {
+        RocksdbFactory factory = new RocksdbFactory(config);
+        KVSource<byte[], byte[]> indexSource = factory.getDB(DatabaseName.INDEX);
+        indexSource.init();
+        indexSource.put(Hex.decode("01"), Hex.decode("11"));
+        indexSource.put(Hex.decode("03"), Hex.decode("33"));
+
+        List<byte[]> values = indexSource.multiGet(List.of(Hex.decode("01"), Hex.decode("02"), Hex.decode("03")));
+        assertArrayEquals(Hex.decode("11"), values.get(0));
+        assertNull(values.get(1));
+        assertArrayEquals(Hex.decode("33"), values.get(2));
+
+        // 未提交的写入可见
+        indexSource.beginBatch();
+        indexSource.put(Hex.decode("02"), Hex.decode("22"));
+        indexSource.delete(Hex.decode("03"));
+        values = indexSource.multiGet(List.of(Hex.decode("01"), Hex.decode("02"), Hex.decode("03")));
+        assertArrayEquals(Hex.decode("22"), values.get(1));
+        assertNull(values.get(2));
+        indexSource.rollbackBatch();
+        factory.close();
+    }
+
+    @Test
+    public void testRangeIterator() {
+        RocksdbFactory factory = new RocksdbFactory(config);
+        // TIME 使用 9 字节的前缀提取器, 范围跨越多个前缀
+        KVSource<byte[], byte[]> timeSource = factory.getDB(DatabaseName.TIME);
+        timeSource.init();
+        List<Bytes32> hashlows = new ArrayList<>();
+        for (long t = 0; t < 5; t++) {
+            Bytes32 hashlow = Bytes32.random();
+            hashlows.add(hashlow);
+            timeSource.put(BlockStore.getTimeKey(t << 16, hashlow), new byte[]{0});
+        }
+
+        List<byte[]> keys = new ArrayList<>();
+        try (KVIterator<byte[], byte[]> it = timeSource.rangeIterator(BlockStore.getTimeKey(1 << 16, null),
+                BlockStore.getTimeKey(4 << 16, null))) {
+            it.forEachRemaining(pair -> keys.add(pair.getKey()));
+        }
+        assertEquals(3, keys.size());
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(BlockStore.getTimeKey((i + 1L) << 16, hashlows.get(i + 1)), keys.get(i));
+        }
+
+        // 批量写入中的 key 同样按序出现, 且受范围约束
+        timeSource.beginBatch();
+        timeSource.put(BlockStore.getTimeKey(2 << 16, Bytes32.ZERO), new byte[]{0});
+        timeSource.put(BlockStore.getTimeKey(9 << 16, Bytes32.ZERO), new byte[]{0});
+        try (KVIterator<byte[], byte[]> it = timeSource.prefixIterator(BlockStore.getTimeKey(2 << 16, null))) {
+            assertArrayEquals(BlockStore.getTimeKey(2 << 16, Bytes32.ZERO), it.next().getKey());
+            assertArrayEquals(BlockStore.getTimeKey(2 << 16, hashlows.get(2)), it.next().getKey());
+            assertFalse(it.hasNext());
+        }
+        timeSource.rollbackBatch();
+
+        // close 之后释放读锁, reset 不会被阻塞
+        KVIterator<byte[], byte[]> it = timeSource.prefixIterator(new byte[]{BlockStore.TIME_HASH_INFO});
+        assertTrue(it.hasNext());
+        it.close();
+        assertFalse(it.hasNext());
+        timeSource.reset();
+        try (KVIterator<byte[], byte[]> empty = timeSource.rangeIterator(new byte[]{0}, null)) {
+            assertFalse(empty.hasNext());
+        }
+        factory.close();
+    }
+
+    @Test
+    public void testDeleteRange() {
+        RocksdbFactory factory = new RocksdbFactory(config);
+        KVSource<byte[], byte[]> timeSource = factory.getDB(DatabaseName.TIME);
+        timeSource.init();
+        List<Bytes32> hashlows = new ArrayList<>();
+        for (long t = 0; t < 5; t++) {
+            Bytes32 hashlow = Bytes32.random();
+            hashlows.add(hashlow);
+            timeSource.put(BlockStore.getTimeKey(t << 16, hashlow), new byte[]{0});
+        }
+
+        timeSource.deleteRange(BlockStore.getTimeKey(1 << 16, null), BlockStore.getTimeKey(3 << 16, null));
+        assertNotNull(timeSource.get(BlockStore.getTimeKey(0, hashlows.get(0))));
+        assertNull(timeSource.get(BlockStore.getTimeKey(1 << 16, hashlows.get(1))));
+        assertNull(timeSource.get(BlockStore.getTimeKey(2 << 16, hashlows.get(2))));
+        assertNotNull(timeSource.get(BlockStore.getTimeKey(3 << 16, hashlows.get(3))));
+
+        // 批量写入中逐个删除, 回滚后仍在
+        timeSource.beginBatch();
+        timeSource.deleteRange(BlockStore.getTimeKey(3 << 16, null), BlockStore.getTimeKey(5 << 16, null));
+        assertNull(timeSource.get(BlockStore.getTimeKey(4 << 16, hashlows.get(4))));
+        timeSource.rollbackBatch();
+        assertNotNull(timeSource.get(BlockStore.getTimeKey(4 << 16, hashlows.get(4))));
+
+        timeSource.beginBatch();
+        timeSource.deleteRange(BlockStore.getTimeKey(3 << 16, null), BlockStore.getTimeKey(5 << 16, null));
+        timeSource.commitBatch(false);
+        assertNull(timeSource.get(BlockStore.getTimeKey(3 << 16, hashlows.get(3))));
+        assertNull(timeSource.get(BlockStore.getTimeKey(4 << 16, hashlows.get(4))));
+        factory.close();
+    }
+
+    @Test
+    public void testPrefixEnd() {
+        assertArrayEquals(Hex.decode("2001"), RocksdbKVSource.prefixEnd(Hex.decode("2000")));
+        assertArrayEquals(Hex.decode("21"), RocksdbKVSource.prefixEnd(Hex.decode("20ff")));
+        assertNull(RocksdbKVSource.prefixEnd(Hex.decode("ffff")));
+    }
 }
@@ -25,18 +25,29 @@
 package io.xdag.db.store;
 
 import static io.xdag.BlockBuilder.generateAddressBlock;
+import static io.xdag.config.Constants.BI_APPLIED;
+import static io.xdag.config.Constants.BI_MAIN;
+import static io.xdag.config.Constants.BI_MAIN_REF;
+import static io.xdag.config.Constants.BI_OURS;
 import static io.xdag.utils.BytesUtils.equalBytes;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.nio.ByteOrder;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
+import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.xdag.db.BlockStore;
+import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.bytes.MutableBytes;
 import org.bouncycastle.util.encoders.Hex;
 import org.hyperledger.besu.crypto.KeyPair;
@@ -48,13 +59,20 @@ import org.junit.rules.TemporaryFolder;
 import io.xdag.config.Config;
 import io.xdag.config.DevnetConfig;
 import io.xdag.core.Block;
+import io.xdag.core.BlockInfo;
+import io.xdag.core.TxHistory;
+import io.xdag.core.XdagField;
 import io.xdag.core.XdagBlock;
 import io.xdag.core.XdagStats;
 import io.xdag.crypto.Keys;
+import io.xdag.crypto.PubKeyCache;
 import io.xdag.db.DatabaseFactory;
 import io.xdag.db.DatabaseName;
 import io.xdag.db.KVSource;
+import io.xdag.db.MainChainRecord;
+import io.xdag.db.Page;
 import io.xdag.db.rocksdb.RocksdbFactory;
+import io.xdag.utils.BytesUtils;
 
 public class BlockStoreTest {
 
@@ -122,6 +140,82 @@ public class BlockStoreTest {
         assertArrayEquals(block.toBytes(), storedBlock.toBytes());
     }
 
+    @Test
+    public void testBlockInfoCache()
+            throws InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchProviderException {
+        BlockStore bs = new BlockStore(indexSource, timeSource, blockSource, txHistory);
+        bs.init();
+        long time = System.currentTimeMillis();
+        KeyPair key = Keys.createEcKeyPair();
+        Block block = generateAddressBlock(config, key, time);
+        bs.saveBlock(block);
+
+        Block first = bs.getBlockInfoByHash(block.getHashLow());
+        // mutating a returned info must not leak into the cache
+        first.getInfo().setFlags(0xff);
+        Block second = bs.getBlockInfoByHash(block.getHashLow());
+        assertEquals(block.getInfo().getFlags(), second.getInfo().getFlags());
+        assertEquals(2, bs.getBlockInfoCacheStats().hitCount());
+
+        // flag updates are written through
+        second.getInfo().setFlags(0x10);
+        bs.saveBlockInfo(second.getInfo());
+        assertEquals(0x10, bs.getBlockInfoByHash(block.getHashLow()).getInfo().getFlags());
+    }
+
+    @Test
+    public void testGetBlockInfosByHashCorrupt()
+            throws InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchProviderException {
+        BlockStore bs = new BlockStore(indexSource, timeSource, blockSource, txHistory);
+        bs.init();
+        Block block = generateAddressBlock(config, Keys.createEcKeyPair(), System.currentTimeMillis());
+        bs.saveBlock(block);
+        Bytes32 corrupt = Bytes32.random();
+        indexSource.put(BytesUtils.merge(BlockStore.HASH_BLOCK_INFO, corrupt.toArray()), new byte[]{1, 2, 3});
+
+        BlockStore reopened = new BlockStore(indexSource, timeSource, blockSource, txHistory);
+        List<Block> res = reopened.getBlockInfosByHash(List.of(block.getHashLow(), corrupt));
+        assertEquals(block.getHashLow(), res.get(0).getHashLow());
+        assertNull(res.get(1));
+        assertNull(reopened.getBlockInfoByHash(corrupt));
+    }
+
+    @Test
+    public void testBlockInfoBatch() throws Exception {
+        BlockStore bs = new BlockStore(indexSource, timeSource, blockSource, txHistory);
+        bs.init();
+        long time = System.currentTimeMillis();
+        KeyPair key = Keys.createEcKeyPair();
+        Block block = generateAddressBlock(config, key, time);
+        bs.saveBlock(block);
+        int flags = block.getInfo().getFlags();
+        AtomicInteger seen = new AtomicInteger();
+        Runnable reader = () -> seen.set(bs.getBlockInfoByHash(block.getHashLow()).getInfo().getFlags());
+
+        BlockInfo info = bs.getBlockInfoByHash(block.getHashLow()).getInfo();
+        info.setFlags(0x10);
+        bs.beginBatch();
+        bs.saveBlockInfo(info);
+        // 本线程读到未提交的修改, 其它线程读不到
+        assertEquals(0x10, bs.getBlockInfoByHash(block.getHashLow()).getInfo().getFlags());
+        runAndJoin(reader);
+        assertEquals(flags, seen.get());
+        bs.rollbackBatch();
+        assertEquals(flags, bs.getBlockInfoByHash(block.getHashLow()).getInfo().getFlags());
+
+        bs.beginBatch();
+        bs.saveBlockInfo(info);
+        bs.commitBatch(false);
+        runAndJoin(reader);
+        assertEquals(0x10, seen.get());
+    }
+
+    private static void runAndJoin(Runnable runnable) throws InterruptedException {
+        Thread thread = new Thread(runnable);
+        thread.start();
+        thread.join();
+    }
+
     @Test
     public void testSaveOurBlock()
             throws InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchProviderException {
@@ -164,6 +258,37 @@ public class BlockStoreTest {
         bs.loadSum(time, time + 64 * 1024, sums);
     }
 
+    @Test
+    public void testSumsFlush()
+            throws InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchProviderException {
+        BlockStore bs = new BlockStore(indexSource, timeSource, blockSource, txHistory);
+        bs.init();
+        bs.setSumsFlushInterval(Long.MAX_VALUE);
+        long time = 1602951025307L;
+        KeyPair key = Keys.createEcKeyPair();
+        Block block = generateAddressBlock(config, key, time);
+        String leaf = BlockStore.getFileName(time).get(3);
+        int index = (int) ((time >> 16) & 0xff);
+
+        // 回滚的修改不进入内存
+        bs.beginBatch();
+        bs.saveBlockSums(block);
+        bs.rollbackBatch();
+        assertNull(bs.getSums(leaf));
+
+        bs.beginBatch();
+        bs.saveBlockSums(block);
+        bs.commitBatch(false);
+        MutableBytes sums = bs.getSums(leaf);
+        assertEquals(block.getXdagBlock().getSum(), sums.getLong(index * 16, ByteOrder.LITTLE_ENDIAN));
+        assertEquals(512, sums.getLong(index * 16 + 8, ByteOrder.LITTLE_ENDIAN));
+        // 尚未写回
+        assertNull(new BlockStore(indexSource, timeSource, blockSource, txHistory).getSums(leaf));
+
+        bs.flushSums();
+        assertEquals(sums, new BlockStore(indexSource, timeSource, blockSource, txHistory).getSums(leaf));
+    }
+
     @Test
     public void getBlockByTimeTest() {
         BlockStore blockStore = new BlockStore(indexSource, timeSource, blockSource, txHistory);
@@ -186,4 +311,330 @@ public class BlockStoreTest {
         assertEquals(block, blocks.get(0));
 
     }
+
+    @Test
+    public void testGetBlocksUsedTime()
+            throws InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchProviderException {
+        BlockStore bs = new BlockStore(indexSource, timeSource, blockSource, txHistory);
+        bs.init();
+        long base = 1602951025307L & ~0xffffL;
+        KeyPair key = Keys.createEcKeyPair();
+        List<Block> saved = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Block block = generateAddressBlock(config, key, base + ((long) i << 16));
+            bs.saveBlock(block);
+            saved.add(block);
+        }
+
+        // 与逐段查询的结果一致: startTime 不对齐时最后一段是 endTime 之前的 startTime + k * 0x10000 所在段
+        long start = base + 0x8000 + (1 << 16);
+        long end = base + (4 << 16) + 0x100;
+        List<Block> expected = new ArrayList<>();
+        for (long t = start; t < end; t += 0x10000) {
+            expected.addAll(bs.getBlocksByTime(t));
+        }
+        List<Block> blocks = bs.getBlocksUsedTime(start, end);
+        assertEquals(3, blocks.size());
+        assertEquals(expected, blocks);
+        assertEquals(saved.subList(1, 4), blocks);
+        assertArrayEquals(saved.get(1).toBytes(), blocks.get(0).toBytes());
+        assertTrue(bs.getBlocksUsedTime(end, start).isEmpty());
+
+        // 缺少源数据的区块略过
+        blockSource.delete(saved.get(2).getHashLow().toArray());
+        assertEquals(List.of(saved.get(1), saved.get(3)), bs.getBlocksUsedTime(start, end));
+        assertNull(bs.getBlockInfosByHash(List.of(Bytes32.ZERO)).get(0));
+    }
+
+    @Test
+    public void testTxHistory() {
+        BlockStore bs = new BlockStore(indexSource, timeSource, blockSource, txHistory);
+        bs.init();
+        Bytes32 address = Bytes32.random();
+        Bytes32 tx = Bytes32.random();
+        bs.saveTxHistory(address, tx, XdagField.FieldType.XDAG_FIELD_IN, BigInteger.TEN, 100, 0, "hi".getBytes(), true);
+        bs.saveTxHistory(address, tx, XdagField.FieldType.XDAG_FIELD_OUT, BigInteger.ONE, 100, 1, null, false);
+        bs.saveTxHistory(Bytes32.random(), tx, XdagField.FieldType.XDAG_FIELD_IN, BigInteger.ONE, 100, 0, null, true);
+
+        List<TxHistory> histories = bs.getTxHistoryByAddress(address);
+        assertEquals(2, histories.size());
+        assertEquals("hi", histories.get(0).getRemark());
+        assertEquals(BigInteger.TEN, histories.get(0).getAddress().getAmount());
+        assertEquals(XdagField.FieldType.XDAG_FIELD_OUT, histories.get(1).getAddress().getType());
+        assertTrue(histories.get(0).isApplied());
+        assertFalse(histories.get(1).isApplied());
+
+        bs.updateTxHistoryApplied(address, tx, 100, 1, true);
+        assertTrue(bs.getTxHistoryByAddress(address).get(1).isApplied());
+        bs.updateTxHistoryApplied(address, tx, 100, 0, false);
+        assertFalse(bs.getTxHistoryByAddress(address).get(0).isApplied());
+        assertEquals("hi", bs.getTxHistoryByAddress(address).get(0).getRemark());
+    }
+
+    @Test
+    public void testTxHistoryPaged() {
+        BlockStore bs = new BlockStore(indexSource, timeSource, blockSource, txHistory);
+        bs.init();
+        Bytes32 address = Bytes32.random();
+        Bytes32 other = Bytes32.random();
+        for (int i = 0; i < 5; i++) {
+            bs.saveTxHistory(address, Bytes32.random(), XdagField.FieldType.XDAG_FIELD_IN, BigInteger.ONE,
+                    100L * i, 0, null, true);
+            bs.saveTxHistory(other, Bytes32.random(), XdagField.FieldType.XDAG_FIELD_OUT, BigInteger.ONE,
+                    100L * i + 50, 0, null, true);
+        }
+        // 相邻地址的记录不会出现在结果中
+        bs.saveTxHistory(Bytes32.ZERO, Bytes32.random(), XdagField.FieldType.XDAG_FIELD_IN, BigInteger.ONE,
+                1000, 0, null, true);
+
+        List<Long> times = new ArrayList<>();
+        byte[] cursor = null;
+        int pages = 0;
+        do {
+            Page<TxHistory> page = bs.getTxHistoryByAddress(address, cursor, 2);
+            page.getItems().forEach(h -> times.add(h.getTimeStamp()));
+            cursor = page.getCursor();
+            pages++;
+        } while (cursor != null);
+        assertEquals(3, pages);
+        // 从新到旧
+        assertEquals(List.of(400L, 300L, 200L, 100L, 0L), times);
+        assertEquals(5, bs.getTxHistoryByAddress(address, null, 5).getItems().size());
+        assertFalse(bs.getTxHistoryByAddress(address, null, 5).hasMore());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTxHistoryInvalidCursor() {
+        BlockStore bs = new BlockStore(indexSource, timeSource, blockSource, txHistory);
+        bs.init();
+        bs.getTxHistoryByAddress(Bytes32.random(), new byte[]{BlockStore.TX_HISTORY_INDEX}, 1);
+    }
+
+    @Test
+    public void testMigrateTxHistory()
+            throws InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchProviderException {
+        BlockStore bs = new BlockStore(indexSource, timeSource, blockSource, txHistory);
+        bs.init();
+        KeyPair key = Keys.createEcKeyPair();
+        Block tx = generateAddressBlock(config, key, 1602951025307L);
+        tx.getInfo().setFlags(BI_APPLIED);
+        bs.saveBlock(tx);
+        Bytes32 address = Bytes32.random();
+        // 旧版本: 0xa0 + address + tx + id -> type + tx + amount + time + remark_length + remark
+        for (int id = 0; id < 2; id++) {
+            Bytes32 txHashlow = id == 0 ? tx.getHashLow() : Bytes32.random();
+            byte[] value = BytesUtils.merge(XdagField.FieldType.XDAG_FIELD_IN.asByte(),
+                    BytesUtils.merge(txHashlow.toArray(), BytesUtils.longToBytes(10, true),
+                            BytesUtils.longToBytes(100L + id, true), BytesUtils.longToBytes(2, true),
+                            "hi".getBytes()));
+            txHistory.put(BytesUtils.merge(BlockStore.TX_HISTORY,
+                    BytesUtils.merge(address.toArray(), txHashlow.toArray(), BytesUtils.intToBytes(id, true))), value);
+        }
+
+        bs.init();
+        List<TxHistory> histories = bs.getTxHistoryByAddress(address);
+        assertEquals(2, histories.size());
+        assertEquals(101L, histories.get(0).getTimeStamp());
+        assertFalse(histories.get(0).isApplied());
+        assertEquals(tx.getHashLow(), histories.get(1).getAddress().getHashLow());
+        assertTrue(histories.get(1).isApplied());
+        assertEquals("hi", histories.get(1).getRemark());
+        assertEquals(0, txHistory.prefixKeyLookup(new byte[]{BlockStore.TX_HISTORY}).size());
+    }
+
+    @Test
+    public void testGetHashlowsByTimePaged()
+            throws InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchProviderException {
+        BlockStore bs = new BlockStore(indexSource, timeSource, blockSource, txHistory);
+        bs.init();
+        long base = 1602951025307L & ~0xffffL;
+        KeyPair key = Keys.createEcKeyPair();
+        List<Bytes32> expected = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            // 第 1 段有两个区块, 第 3 段为空
+            long time = base + ((long) (i < 2 ? 1 : i + 1) << 16) + i;
+            Block block = generateAddressBlock(config, key, time);
+            bs.saveBlock(block);
+            expected.add(block.getHashLow());
+        }
+        // 同一时间段内按 hashlow 排序
+        expected.subList(0, 2).sort(Bytes32::compareTo);
+        bs.saveBlock(generateAddressBlock(config, key, base + (9L << 16)));
+
+        List<Bytes32> hashlows = new ArrayList<>();
+        byte[] cursor = null;
+        int pages = 0;
+        do {
+            Page<Bytes32> page = bs.getHashlowsByTime(base, base + (6L << 16), cursor, 2);
+            assertTrue(page.getItems().size() <= 2);
+            hashlows.addAll(page.getItems());
+            cursor = page.getCursor();
+            pages++;
+        } while (cursor != null);
+        assertEquals(3, pages);
+        assertEquals(expected, hashlows);
+        assertEquals(expected, bs.getHashlowsByTime(base, base + (6L << 16), null, 0).getItems());
+        assertEquals(expected.subList(0, 2), bs.getHashlowsByTime(base + (1L << 16)));
+    }
+
+    @Test
+    public void testMappedBlocks()
+            throws InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchProviderException {
+        factory.close();
+        ((DevnetConfig) config).setStoreMappedBlocks(true);
+        factory = new RocksdbFactory(config);
+        BlockStore bs = new BlockStore(factory.getDB(DatabaseName.INDEX), factory.getDB(DatabaseName.TIME),
+                factory.getDB(DatabaseName.BLOCK), factory.getDB(DatabaseName.TXHISTORY));
+        bs.init();
+        long time = System.currentTimeMillis();
+        KeyPair key = Keys.createEcKeyPair();
+        Block block = generateAddressBlock(config, key, time);
+        bs.beginBatch();
+        bs.saveBlock(block);
+        bs.commitBatch(true);
+
+        assertTrue(bs.hasBlock(block.getHashLow()));
+        assertArrayEquals(block.toBytes(), bs.getRawBlockByHash(block.getHashLow()).toBytes());
+        assertEquals(List.of(block), bs.getBlocksByTime(time));
+        factory.close();
+    }
+
+    @Test
+    public void testMainChainIndex()
+            throws InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchProviderException {
+        BlockStore bs = new BlockStore(indexSource, timeSource, blockSource, txHistory);
+        bs.init();
+        long time = 1602951025307L;
+        KeyPair key = Keys.createEcKeyPair();
+        List<Block> mains = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            Block block = generateAddressBlock(config, key, time + i);
+            block.getInfo().setHeight(i);
+            block.getInfo().setFlags(BI_MAIN);
+            block.getInfo().setAmount(i * 100L);
+            bs.saveBlock(block);
+            mains.add(block);
+        }
+        // 非主块不覆盖高度记录
+        Block other = generateAddressBlock(config, key, time);
+        bs.saveBlock(other);
+
+        MainChainRecord record = bs.getMainChainRecord(2);
+        assertEquals(mains.get(1).getHashLow(), record.getHashlow());
+        assertEquals(mains.get(1).getTimestamp(), record.getTimestamp());
+        assertEquals(200L, record.getAmount());
+        assertEquals(mains.get(1).getHashLow(), bs.getBlockByHeight(2).getHashLow());
+
+        List<MainChainRecord> records = bs.getMainChainRecords(2, 10);
+        assertEquals(3, records.size());
+        assertEquals(4, records.get(2).getHeight());
+        List<Block> blocks = bs.getMainBlocks(1, 4);
+        assertEquals(4, blocks.size());
+        assertEquals(mains.get(3).getHashLow(), blocks.get(0).getHashLow());
+
+        // 取消主块身份后删除记录
+        Block top = bs.getBlockInfoByHash(mains.get(3).getHashLow());
+        top.getInfo().setFlags(0);
+        bs.saveBlockInfo(top.getInfo());
+        assertNull(bs.getMainChainRecord(4));
+        assertNull(bs.getBlockByHeight(4));
+
+        // 旧版本只有 BLOCK_HEIGHT, 启动时迁移; 已不是主块的旧记录丢弃
+        indexSource.delete(BlockStore.getMainKey(3));
+        indexSource.put(BlockStore.getHeight(3), mains.get(2).getHashLow().toArray());
+        indexSource.put(BlockStore.getHeight(4), mains.get(3).getHashLow().toArray());
+        assertNull(bs.getMainChainRecord(3));
+        BlockStore reopened = new BlockStore(indexSource, timeSource, blockSource, txHistory);
+        reopened.init();
+        assertEquals(300L, reopened.getMainChainRecord(3).getAmount());
+        assertNull(reopened.getBlockByHeight(4));
+        assertEquals(3, reopened.getMainChainRecords(1, 4).size());
+        assertNull(indexSource.get(BlockStore.getHeight(3)));
+        assertNull(indexSource.get(BlockStore.getHeight(4)));
+    }
+
+    @Test
+    public void testPruneBlocks()
+            throws InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchProviderException {
+        BlockStore bs = new BlockStore(indexSource, timeSource, blockSource, txHistory);
+        bs.init();
+        long base = 1602951025307L & ~0xffffL;
+        KeyPair key = Keys.createEcKeyPair();
+        List<Block> blocks = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Block block;
+            if (i == 3) {
+                // 嵌入公钥的区块
+                block = new Block(config, base + ((long) i << 16), null, null, false, List.of(key), null, 0);
+                block.signOut(key);
+            } else {
+                block = generateAddressBlock(config, key, base + ((long) i << 16));
+            }
+            block.getInfo().setFlags(BI_MAIN_REF);
+            bs.saveBlock(block);
+            blocks.add(block);
+        }
+        // 嵌入公钥的区块只保留输出签名的公钥, 没有公钥的不论余额都保留源数据; 未被主链引用和本钱包的区块不裁剪
+        blocks.get(0).getInfo().setAmount(100);
+        bs.saveBlockInfo(blocks.get(0).getInfo());
+        blocks.get(1).getInfo().setFlags(0);
+        bs.saveBlockInfo(blocks.get(1).getInfo());
+        blocks.get(2).getInfo().setFlags(BI_MAIN_REF | BI_OURS);
+        bs.saveBlockInfo(blocks.get(2).getInfo());
+
+        List<Bytes32> pruned = new ArrayList<>();
+        byte[] cursor = null;
+        do {
+            Page<Bytes32> page = bs.pruneBlocks(0, base + (4L << 16), cursor, 2);
+            pruned.addAll(page.getItems());
+            cursor = page.getCursor();
+        } while (cursor != null);
+        assertEquals(List.of(blocks.get(0).getHashLow(), blocks.get(3).getHashLow()), pruned);
+
+        Block info = bs.getBlockInfoByHash(blocks.get(0).getHashLow());
+        assertTrue(info.getInfo().isSnapshot());
+        assertFalse(info.getInfo().getSnapshotInfo().getType());
+        assertArrayEquals(blocks.get(0).toBytes(), info.getInfo().getSnapshotInfo().getData());
+        assertFalse(bs.hasBlock(blocks.get(0).getHashLow()));
+        Block empty = bs.getBlockInfoByHash(blocks.get(3).getHashLow());
+        assertTrue(empty.getInfo().isSnapshot());
+        assertTrue(empty.getInfo().getSnapshotInfo().getType());
+        assertArrayEquals(PubKeyCache.compress(key.getPublicKey()).toArray(),
+                empty.getInfo().getSnapshotInfo().getData());
+        assertFalse(bs.hasBlock(blocks.get(3).getHashLow()));
+
+        // 时间索引只剩没有裁剪的区块
+        assertEquals(List.of(blocks.get(1).getHashLow(), blocks.get(2).getHashLow(), blocks.get(4).getHashLow()),
+                bs.getHashlowsByTime(base, base + (5L << 16), null, 0).getItems());
+        assertTrue(bs.hasBlock(blocks.get(4).getHashLow()));
+        assertTrue(bs.pruneBlocks(0, base + (4L << 16), null, 0).getItems().isEmpty());
+    }
+
+    @Test
+    public void testPruneTxHistory() {
+        BlockStore bs = new BlockStore(indexSource, timeSource, blockSource, txHistory);
+        bs.init();
+        Bytes32 address = Bytes32.random();
+        Bytes32 other = Bytes32.random();
+        for (int i = 0; i < 5; i++) {
+            bs.saveTxHistory(address, Bytes32.random(), XdagField.FieldType.XDAG_FIELD_IN, BigInteger.ONE,
+                    100L * i, 0, null, true);
+            bs.saveTxHistory(other, Bytes32.random(), XdagField.FieldType.XDAG_FIELD_OUT, BigInteger.ONE,
+                    100L * i + 50, 0, null, true);
+        }
+        int pruned = 0;
+        byte[] cursor = null;
+        do {
+            Page<byte[]> page = bs.pruneTxHistory(250, cursor, 2);
+            pruned += page.getItems().size();
+            cursor = page.getCursor();
+        } while (cursor != null);
+        assertEquals(5, pruned);
+        List<TxHistory> histories = bs.getTxHistoryByAddress(address);
+        assertEquals(2, histories.size());
+        assertTrue(histories.stream().allMatch(h -> h.getTimeStamp() >= 250));
+        assertEquals(3, bs.getTxHistoryByAddress(other).size());
+        // 时间索引同时删除, 再次裁剪不扫描已删除的记录
+        assertTrue(bs.pruneTxHistory(250, null, 0).getItems().isEmpty());
+    }
 }
@@ -0,0 +1,130 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.mine.manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Test;
+
+public class ShareProcessorTest {
+
+    private ShareProcessor processor;
+
+    @After
+    public void tearDown() {
+        if (processor != null) {
+            processor.stop();
+        }
+    }
+
+    @Test
+    public void testOrderPerKey() throws InterruptedException {
+        processor = new ShareProcessor(4, 1024);
+        processor.start();
+        List<Integer> a = new CopyOnWriteArrayList<>();
+        List<Integer> b = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(200);
+        for (int i = 0; i < 100; i++) {
+            int n = i;
+            assertTrue(processor.submit("a", () -> false, () -> {
+                a.add(n);
+                latch.countDown();
+            }));
+            assertTrue(processor.submit("b", () -> false, () -> {
+                b.add(n);
+                latch.countDown();
+            }));
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (int) a.get(i));
+            assertEquals(i, (int) b.get(i));
+        }
+        assertEquals(200, processor.getAccepted().get());
+    }
+
+    @Test
+    public void testDropWhenFull() throws InterruptedException {
+        processor = new ShareProcessor(1, 2);
+        processor.start();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        assertTrue(processor.submit("a", () -> false, () -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        assertTrue(processor.submit("a", () -> false, () -> {}));
+        assertTrue(processor.submit("a", () -> false, () -> {}));
+        assertFalse(processor.submit("a", () -> false, () -> {}));
+        assertEquals(1, processor.getDropped().get());
+        release.countDown();
+    }
+
+    @Test
+    public void testStale() throws InterruptedException {
+        processor = new ShareProcessor(1, 16);
+        processor.start();
+        AtomicBoolean ran = new AtomicBoolean(false);
+        // 入队前已过期, 不进队列
+        assertFalse(processor.submit("a", () -> true, () -> ran.set(true)));
+
+        // 入队后任务切换, 执行前被丢弃
+        AtomicBoolean stale = new AtomicBoolean(false);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        processor.submit("a", () -> false, () -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        assertTrue(processor.submit("a", stale::get, () -> ran.set(true)));
+        stale.set(true);
+        release.countDown();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (processor.getStale().get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, processor.getStale().get());
+        assertFalse(ran.get());
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.mine.randomx;
+
+import static io.xdag.crypto.jni.RandomX.allocCache;
+import static io.xdag.crypto.jni.RandomX.allocDataSet;
+import static io.xdag.crypto.jni.RandomX.initCache;
+import static io.xdag.crypto.jni.RandomX.initDataSet;
+import static io.xdag.crypto.jni.RandomX.releaseCache;
+import static io.xdag.crypto.jni.RandomX.releaseDataSet;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import io.xdag.config.AbstractConfig;
+import io.xdag.config.DevnetConfig;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.tuweni.bytes.Bytes;
+import org.junit.Test;
+
+public class RandomXVmPoolTest {
+
+    @Test
+    public void testConcurrentHash() throws Exception {
+        byte[] key = "hello rx".getBytes(StandardCharsets.UTF_8);
+        long rxCache = allocCache();
+        initCache(rxCache, key, key.length);
+        long rxDataset = allocDataSet();
+        initDataSet(rxCache, rxDataset, 4);
+
+        RandomXVmPool pool = new RandomXVmPool(rxCache, rxDataset, 4);
+        assertEquals(4, pool.size());
+
+        List<byte[]> inputs = new ArrayList<>();
+        List<byte[]> expected = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            byte[] data = ("share " + i).getBytes(StandardCharsets.UTF_8);
+            inputs.add(data);
+            expected.add(pool.calculate(data, data.length));
+        }
+
+        // 多线程同时计算, 结果与串行一致
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<byte[]>> results = new ArrayList<>();
+        for (byte[] data : inputs) {
+            results.add(executor.submit(() -> pool.calculate(data, data.length)));
+        }
+        for (int i = 0; i < inputs.size(); i++) {
+            assertArrayEquals(expected.get(i), results.get(i).get());
+        }
+        executor.shutdown();
+
+        pool.destroy();
+        releaseDataSet(rxDataset);
+        releaseCache(rxCache);
+    }
+
+    @Test
+    public void testHashWithoutVmPool() {
+        AbstractConfig config = new DevnetConfig();
+        config.setRandomxVmPoolSize(2);
+        RandomX randomX = new RandomX(config);
+        randomX.init();
+        assertEquals(2, randomX.vmPoolSize);
+        // seed 还未初始化, vmPool 为 null 时计算失败而不是 NPE
+        assertThrows(IllegalStateException.class,
+                () -> randomX.randomXPoolCalcHash(Bytes.wrap(new byte[64]), 64, 0));
+    }
+}
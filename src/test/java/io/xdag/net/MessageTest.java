@@ -24,14 +24,24 @@
 
 package io.xdag.net;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import io.xdag.net.message.AbstractMessage;
 import io.xdag.net.message.XdagMessageCodes;
+import io.xdag.net.message.Message;
+import io.xdag.net.message.impl.NewBlockHashesMessage;
 import io.xdag.net.message.impl.SumReplyMessage;
+import io.xdag.net.message.impl.Xdag03MessageFactory;
 import io.xdag.utils.BytesUtils;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.bytes.MutableBytes;
+import org.apache.tuweni.bytes.MutableBytes32;
 import org.bouncycastle.util.encoders.Hex;
 import org.junit.Test;
 
@@ -291,4 +301,33 @@ public class MessageTest {
         byte[] res = BytesUtils.merge(inetAddress.getAddress(), BytesUtils.shortToBytes((short) 4444, true));
         assertEquals("7f0000015c11", Hex.toHexString(res));
     }
+
+    @Test
+    public void testBlockHashesMessage() {
+        List<Bytes32> hashes = new ArrayList<>();
+        int[] ttls = new int[NewBlockHashesMessage.MAX_HASHES];
+        for (int i = 0; i < NewBlockHashesMessage.MAX_HASHES; i++) {
+            MutableBytes32 hashLow = MutableBytes32.create();
+            hashLow.set(8, Bytes32.random().slice(0, 24));
+            hashes.add(hashLow);
+            ttls[i] = i % 6;
+        }
+        NewBlockHashesMessage msg = new NewBlockHashesMessage(hashes, ttls);
+
+        // 接收端会清空transport header后再解析
+        byte[] received = msg.getEncoded().toArray();
+        System.arraycopy(BytesUtils.longToBytes(0, true), 0, received, 0, 8);
+        Message parsed = new Xdag03MessageFactory().create(
+                (byte) (received[8] >> 4 & 0xf), MutableBytes.wrap(received));
+
+        assertTrue(parsed instanceof NewBlockHashesMessage);
+        assertEquals(XdagMessageCodes.NEW_BLOCK_HASHES, parsed.getCommand());
+        NewBlockHashesMessage decoded = (NewBlockHashesMessage) parsed;
+        assertEquals(hashes, decoded.getHashes());
+        int[] decodedTtls = new int[hashes.size()];
+        for (int i = 0; i < hashes.size(); i++) {
+            decodedTtls[i] = decoded.getTtl(i);
+        }
+        assertArrayEquals(ttls, decodedTtls);
+    }
 }
@@ -27,7 +27,14 @@ package io.xdag.net;
 import io.xdag.Kernel;
 import io.xdag.config.Config;
 import io.xdag.config.DevnetConfig;
+import io.xdag.core.Block;
+import io.xdag.core.BlockWrapper;
+import io.xdag.net.handler.Xdag;
 import io.xdag.net.manager.XdagChannelManager;
+import io.xdag.net.message.impl.GetBlocksByHashMessage;
+import io.xdag.net.node.Node;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.bytes.MutableBytes32;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -35,7 +42,20 @@ import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 public class XdagChannelManagerTest {
 
@@ -51,6 +71,9 @@ public class XdagChannelManagerTest {
         }
         config.getNodeSpec().setWhiteIPList(addressList);
         kernel = new Kernel(config);
+        XdagClient client = mock(XdagClient.class);
+        when(client.getNode()).thenReturn(new Node("127.0.0.1", 1000));
+        kernel.setClient(client);
     }
 
     @Test
@@ -59,4 +82,98 @@ public class XdagChannelManagerTest {
         InetSocketAddress inetSocketAddress = new InetSocketAddress("127.0.0.1", 1001);
         assertTrue(channelManager.isAcceptable(inetSocketAddress));
     }
+
+    @Test
+    public void testSkipKnownBlocks() {
+        XdagChannelManager channelManager = new XdagChannelManager(kernel);
+        Node sender = new Node("127.0.0.1", 1001);
+        Node other = new Node("127.0.0.1", 1002);
+        Channel senderChannel = channel(sender, mock(Xdag.class));
+        Channel otherChannel = channel(other, mock(Xdag.class));
+        channelManager.onChannelActive(senderChannel, sender);
+        channelManager.onChannelActive(otherChannel, other);
+
+        BlockWrapper bw = new BlockWrapper(block(), 5, sender);
+        channelManager.sendNewBlock(bw);
+        channelManager.sendNewBlock(bw);
+
+        verify(senderChannel, never()).sendNewBlock(any());
+        verify(otherChannel, times(1)).sendNewBlock(bw);
+    }
+
+    @Test
+    public void testRelayInventory() {
+        ((DevnetConfig) config).setRelayInventory(true);
+        XdagChannelManager channelManager = new XdagChannelManager(kernel);
+        Node sender = new Node("127.0.0.1", 1001);
+        Node other = new Node("127.0.0.1", 1002);
+        Xdag otherXdag = mock(Xdag.class);
+        Channel senderChannel = channel(sender, mock(Xdag.class));
+        Channel otherChannel = channel(other, otherXdag);
+        channelManager.onChannelActive(senderChannel, sender);
+        channelManager.onChannelActive(otherChannel, other);
+
+        Block block = block();
+        channelManager.start();
+        try {
+            channelManager.onNewForeignBlock(new BlockWrapper(block, 5, sender));
+            verify(otherXdag, timeout(2000)).sendNewBlockHashes(eq(List.of(block.getHashLow())), eq(new int[]{5}));
+            verify(otherChannel, never()).sendNewBlock(any());
+            verify(senderChannel.getXdag(), never()).sendNewBlockHashes(any(), any());
+        } finally {
+            channelManager.stop();
+        }
+    }
+
+    @Test
+    public void testRequestNextAnnouncer() {
+        XdagChannelManager channelManager = new XdagChannelManager(kernel);
+        Node first = new Node("127.0.0.1", 1001);
+        Node second = new Node("127.0.0.1", 1002);
+        Xdag secondXdag = mock(Xdag.class);
+        Channel firstChannel = channel(first, mock(Xdag.class));
+        Channel secondChannel = channel(second, secondXdag);
+        doReturn(new InetSocketAddress("127.0.0.1", 1001)).when(firstChannel).getInetSocketAddress();
+        doReturn(new InetSocketAddress("127.0.0.1", 1002)).when(secondChannel).getInetSocketAddress();
+        doReturn(true).when(firstChannel).isActive();
+        doReturn(true).when(secondChannel).isActive();
+        channelManager.onChannelActive(firstChannel, first);
+        channelManager.onChannelActive(secondChannel, second);
+
+        Bytes32 hashLow = Bytes32.random();
+        assertTrue(channelManager.markRequested(hashLow, firstChannel, 5));
+        assertFalse(channelManager.markRequested(hashLow, secondChannel, 5));
+        assertFalse(channelManager.markRequested(hashLow, firstChannel, 5));
+
+        // 被请求的节点断开, 改向下一个通告者拉取
+        channelManager.remove(firstChannel);
+        verify(secondXdag).sendMessage(any(GetBlocksByHashMessage.class));
+        // 已断开的通告者不再请求
+        assertFalse(channelManager.markRequested(hashLow, firstChannel, 5));
+        // 没有可用的通告者, 标记清除, 下一次通告重新拉取
+        channelManager.remove(secondChannel);
+        assertTrue(channelManager.markRequested(hashLow, secondChannel, 5));
+
+        // 收到的区块不再重复拉取
+        Bytes32 received = Bytes32.random();
+        assertTrue(channelManager.markRequested(received, secondChannel, 5));
+        channelManager.onBlockReceived(received);
+        assertFalse(channelManager.markRequested(received, firstChannel, 5));
+    }
+
+    private Channel channel(Node node, Xdag xdag) {
+        Channel channel = mock(Channel.class, withSettings().useConstructor().defaultAnswer(CALLS_REAL_METHODS));
+        doReturn(node).when(channel).getNode();
+        doReturn(xdag).when(channel).getXdag();
+        doNothing().when(channel).sendNewBlock(any());
+        doNothing().when(channel).setActive(any(Boolean.class));
+        doNothing().when(channel).dropConnection();
+        return channel;
+    }
+
+    private Block block() {
+        Block block = mock(Block.class);
+        when(block.getHashLow()).thenReturn(MutableBytes32.wrap(Bytes32.random().mutableCopy().toArrayUnsafe()));
+        return block;
+    }
 }
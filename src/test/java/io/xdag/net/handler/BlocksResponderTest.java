@@ -0,0 +1,176 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.xdag.core.Block;
+import io.xdag.core.XdagBlock;
+import io.xdag.db.BlockStore;
+import io.xdag.db.Page;
+import io.xdag.net.message.Message;
+import io.xdag.net.message.MessageQueue;
+import io.xdag.net.message.XdagMessageCodes;
+import io.xdag.net.message.impl.NewBlockMessage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BlocksResponderTest {
+
+    private BlockStore blockStore;
+    private MessageQueue msgQueue;
+    private final List<Message> sent = new CopyOnWriteArrayList<>();
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicBoolean writable = new AtomicBoolean(true);
+    private final List<Runnable> writableListeners = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() {
+        blockStore = mock(BlockStore.class);
+        msgQueue = mock(MessageQueue.class);
+        when(msgQueue.isRunning()).thenReturn(true);
+        when(msgQueue.pendingBytes()).thenAnswer(i -> pending.get());
+        when(msgQueue.isWritable()).thenAnswer(i -> writable.get());
+        when(msgQueue.bytesBeforeUnwritable()).thenReturn(Long.MAX_VALUE);
+        doAnswer(i -> writableListeners.add(i.getArgument(0))).when(msgQueue).addWritableListener(any());
+        doAnswer(i -> sent.add(i.getArgument(0))).when(msgQueue).sendMessage(any());
+
+        // 只有0x20000和0x50000两个时间段有区块
+        Map<Long, List<Bytes32>> slots = Map.of(0x20000L, hashlows(3), 0x50000L, hashlows(2));
+        when(blockStore.getHashlowsByTime(anyLong(), anyLong(), any(), anyInt())).thenAnswer(i -> {
+            List<Bytes32> items = new ArrayList<>();
+            for (long time = i.<Long>getArgument(0); time < i.<Long>getArgument(1); time += 0x10000) {
+                items.addAll(slots.getOrDefault(time, Collections.emptyList()));
+            }
+            return new Page<>(items, null);
+        });
+        when(blockStore.getBlockByHash(any(), anyBoolean())).thenAnswer(i -> {
+            Block block = mock(Block.class);
+            when(block.getXdagBlock()).thenReturn(new XdagBlock(new byte[512]));
+            return block;
+        });
+    }
+
+    @Test
+    public void testStreamInOrder() throws InterruptedException {
+        BlocksResponder responder = new BlocksResponder(blockStore, msgQueue, 1024 * 1024);
+        Message reply1 = reply();
+        Message reply2 = reply();
+        assertTrue(responder.submit(0, 0x40000, () -> reply1));
+        assertTrue(responder.submit(0x40000, 0x60000, () -> reply2));
+        waitFor(7);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(sent.get(i) instanceof NewBlockMessage);
+        }
+        assertEquals(reply1, sent.get(3));
+        assertTrue(sent.get(4) instanceof NewBlockMessage);
+        assertTrue(sent.get(5) instanceof NewBlockMessage);
+        assertEquals(reply2, sent.get(6));
+    }
+
+    @Test
+    public void testPaced() throws InterruptedException {
+        BlocksResponder responder = new BlocksResponder(blockStore, msgQueue, 1024);
+        pending.set(1024);
+        Message reply = reply();
+        assertTrue(responder.submit(0, 0x40000, () -> reply));
+        Thread.sleep(100);
+        // 积压已满, 不再读取区块
+        assertTrue(sent.isEmpty());
+
+        // 队列发送完后由可写通知恢复
+        pending.set(0);
+        writableListeners.forEach(Runnable::run);
+        waitFor(4);
+        assertEquals(reply, sent.get(3));
+    }
+
+    @Test
+    public void testResumeWhenWritable() throws InterruptedException {
+        BlocksResponder responder = new BlocksResponder(blockStore, msgQueue, 1024 * 1024);
+        writable.set(false);
+        Message reply = reply();
+        assertTrue(responder.submit(0, 0x40000, () -> reply));
+        Thread.sleep(100);
+        assertTrue(sent.isEmpty());
+
+        writable.set(true);
+        writableListeners.forEach(Runnable::run);
+        waitFor(4);
+        assertEquals(reply, sent.get(3));
+    }
+
+    @Test
+    public void testRejectWhenTooManyRequests() {
+        BlocksResponder responder = new BlocksResponder(blockStore, msgQueue, 1024);
+        pending.set(1024);
+        for (int i = 0; i < BlocksResponder.MAX_PENDING_REQUESTS; i++) {
+            assertTrue(responder.submit(0, 0x10000, this::reply));
+        }
+        assertFalse(responder.submit(0, 0x10000, this::reply));
+        responder.close();
+        assertEquals(0, responder.pendingRequests());
+    }
+
+    private void waitFor(int n) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sent.size() < n && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(n, sent.size());
+    }
+
+    private Message reply() {
+        Message reply = mock(Message.class);
+        when(reply.getCommand()).thenReturn(XdagMessageCodes.BLOCKS_REPLY);
+        return reply;
+    }
+
+    private static List<Bytes32> hashlows(int n) {
+        List<Bytes32> list = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            list.add(Bytes32.random());
+        }
+        return list;
+    }
+}
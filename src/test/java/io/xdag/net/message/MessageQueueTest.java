@@ -0,0 +1,136 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net.message;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.xdag.net.Channel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessageQueueTest {
+
+    private final List<Message> written = new ArrayList<>();
+    private boolean writable = true;
+    private MessageQueue queue;
+    private ChannelHandlerContext ctx;
+
+    @Before
+    public void setUp() {
+        Channel channel = mock(Channel.class);
+        ctx = mock(ChannelHandlerContext.class);
+        io.netty.channel.Channel nettyChannel = mock(io.netty.channel.Channel.class);
+        ChannelFuture future = mock(ChannelFuture.class);
+        when(future.addListener(any())).thenReturn(future);
+        when(nettyChannel.isWritable()).thenAnswer(i -> writable);
+        when(ctx.channel()).thenReturn(nettyChannel);
+        when(ctx.executor()).thenReturn(ImmediateEventExecutor.INSTANCE);
+        when(ctx.write(any())).thenAnswer(i -> {
+            written.add(i.getArgument(0));
+            return future;
+        });
+        queue = new MessageQueue(channel);
+    }
+
+    @Test
+    public void testRequestsFirst() {
+        Message respond1 = message(false);
+        Message respond2 = message(false);
+        Message request = message(true);
+        queue.sendMessage(respond1);
+        queue.sendMessage(respond2);
+        queue.sendMessage(request);
+        assertEquals(3, queue.size());
+        assertEquals(1, queue.getRequestQueueSize());
+        assertEquals(2, queue.getRespondQueueSize());
+
+        queue.activate(ctx);
+        assertEquals(List.of(request, respond1, respond2), written);
+        assertEquals(0, queue.size());
+        assertEquals(3, queue.getMaxQueueSize());
+        assertEquals(3, queue.getSentMessages());
+    }
+
+    @Test
+    public void testDrainOnEnqueue() {
+        queue.activate(ctx);
+        Message msg = message(false);
+        queue.sendMessage(msg);
+        assertEquals(List.of(msg), written);
+    }
+
+    @Test
+    public void testBackpressure() {
+        queue.activate(ctx);
+        writable = false;
+        queue.sendMessage(message(false));
+        queue.sendMessage(message(true));
+        assertEquals(0, written.size());
+        assertEquals(2, queue.size());
+
+        writable = true;
+        queue.onWritable();
+        assertEquals(2, written.size());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testWritableListener() {
+        AtomicInteger notified = new AtomicInteger();
+        queue.addWritableListener(notified::incrementAndGet);
+        queue.activate(ctx);
+        writable = false;
+        queue.sendMessage(message(false));
+        assertEquals(0, notified.get());
+        assertFalse(queue.isWritable());
+
+        // 重新可写
+        writable = true;
+        queue.onWritable();
+        assertTrue(notified.get() >= 1);
+        // 队列清空且始终可写时也会通知
+        int before = notified.get();
+        queue.sendMessage(message(false));
+        assertEquals(before + 1, notified.get());
+    }
+
+    private Message message(boolean request) {
+        Message msg = mock(Message.class);
+        doReturn(request ? Message.class : null).when(msg).getAnswerMessage();
+        return msg;
+    }
+}
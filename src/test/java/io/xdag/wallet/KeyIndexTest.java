@@ -0,0 +1,88 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.wallet;
+
+import static io.xdag.BlockBuilder.generateAddressBlock;
+import static io.xdag.BlockBuilder.generateTransactionBlock;
+import static org.junit.Assert.assertEquals;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.core.Address;
+import io.xdag.core.Block;
+import io.xdag.core.XdagBlock;
+import io.xdag.crypto.Keys;
+import io.xdag.utils.XdagTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.hyperledger.besu.crypto.KeyPair;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KeyIndexTest {
+
+    Config config = new DevnetConfig();
+    List<KeyPair> keys = new ArrayList<>();
+    KeyIndex index;
+    long time = XdagTime.getCurrentTimestamp();
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            keys.add(Keys.createEcKeyPair());
+        }
+        index = new KeyIndex(keys);
+    }
+
+    private int findSigner(Block block, boolean fullScan) {
+        // 按收到的区块处理
+        Block received = new Block(new XdagBlock(block.toBytes()));
+        return index.findSigner(received, received.getOutsig(), fullScan);
+    }
+
+    @Test
+    public void testIndexOf() throws Exception {
+        assertEquals(2, index.indexOf(KeyIndex.compress(keys.get(2).getPublicKey())));
+        assertEquals(-1, index.indexOf(KeyIndex.compress(Keys.createEcKeyPair().getPublicKey())));
+    }
+
+    @Test
+    public void testFindSigner() throws Exception {
+        // 嵌入公钥的交易块
+        Block from = generateAddressBlock(config, keys.get(0), time);
+        Block tx = generateTransactionBlock(config, keys.get(2), time, new Address(from), new Address(from), 1);
+        assertEquals(2, findSigner(tx, false));
+
+        // 默认key签名, 没有嵌入公钥
+        assertEquals(0, findSigner(from, false));
+
+        // 非默认key且没有嵌入公钥, 只有完整扫描能找到
+        Block other = generateAddressBlock(config, keys.get(1), time);
+        assertEquals(-1, findSigner(other, false));
+        assertEquals(1, findSigner(other, true));
+
+        Block foreign = generateAddressBlock(config, Keys.createEcKeyPair(), time);
+        assertEquals(-1, findSigner(foreign, true));
+    }
+}
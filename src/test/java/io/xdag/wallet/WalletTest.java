@@ -105,6 +105,19 @@ public class WalletTest {
         assertEquals(k2, key2);
     }
 
+    @Test
+    public void testKeyIndexFollowsAccounts()
+            throws InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchProviderException {
+        wallet.unlock(pwd);
+        KeyPair key = Keys.createEcKeyPair();
+        wallet.addAccount(key);
+        assertEquals(2, wallet.getKeyIndex().size());
+        wallet.removeAccount(Keys.toBytesAddress(key));
+        assertEquals(1, wallet.getKeyIndex().size());
+        wallet.setAccounts(Collections.singletonList(key));
+        assertEquals(0, wallet.getKeyIndex().indexOf(KeyIndex.compress(key.getPublicKey())));
+    }
+
     @Test
     public void testFlush() throws InterruptedException {
         File file = wallet.getFile();